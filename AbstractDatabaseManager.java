@@ -3,46 +3,97 @@ package photo_renamer;
 import java.io.*;
 import java.util.ArrayList;
 
-/** An abstract class for managing database files. */
-abstract class AbstractDatabaseManager {
-    /** The path of the managed database file. */
-    private String path;
-    /** The ArrayList of managed objects. */
-    ArrayList managedObjects;
+/**
+ * An abstract class for managing databases kept by a DatabaseStore.
+ * Subclasses mutate their managed objects while holding the monitor of the manager, one writer at a time,
+ * and publish immutable snapshots for readers, so saving, scanning and serving queries can run on any thread.
+ * Every change is passed on to the store as it is made, and made durable when the store is flushed.
+ *
+ * @param <T> the type of the managed objects
+ */
+abstract class AbstractDatabaseManager<T> {
+    /** The DatabaseStore holding the managed objects. */
+    final DatabaseStore<T> store;
+    /** Whether every change is written to the database file as soon as it is made. */
+    private volatile boolean autoSave = true;
+    /** The number of changes recorded since the database was loaded. */
+    private volatile long version;
 
     /**
-     * Construct an AbstractManager for managing database files.
+     * Construct an AbstractManager for managing a database kept by a store.
      *
-     * @param path the path of the managed database file
-     * @throws IOException            an IOException exception
-     * @throws ClassNotFoundException a ClassNotFoundException
-     */
-    @SuppressWarnings("unchecked")
-    AbstractDatabaseManager(String path) throws IOException, ClassNotFoundException {
-        this.path = path;
-        File databaseFile = new File(this.path);
-        if (databaseFile.exists()) {
-            InputStream file = new FileInputStream(this.path);
-            InputStream buffer = new BufferedInputStream(file);
-            ObjectInput input = new ObjectInputStream(buffer);
-            this.managedObjects = (ArrayList<Object>) input.readObject();
-            input.close();
-        } else {
-            this.managedObjects = new ArrayList<>();
+     * @param store the DatabaseStore holding the managed objects
+     */
+    AbstractDatabaseManager(DatabaseStore<T> store) {
+        this.store = store;
+    }
+
+    /**
+     * Return every object held by the store, in key order.
+     *
+     * @return an ArrayList of the stored objects
+     * @throws IOException an IOException exception
+     */
+    ArrayList<T> loadAll() throws IOException {
+        ArrayList<T> loaded = new ArrayList<>();
+        store.scan(null, null, loaded::add);
+        return loaded;
+    }
+
+    /**
+     * Save the changes passed on to the store so far to the database.
+     *
+     * @throws IOException an IOException exception
+     */
+    synchronized void toFile() throws IOException {
+        store.flush();
+    }
+
+    /**
+     * Set whether every change is written to the database file as soon as it is made.
+     * Batch jobs turn this off and call toFile themselves once a batch of changes is complete.
+     *
+     * @param autoSave whether changes are saved immediately
+     */
+    void setAutoSave(boolean autoSave) {
+        this.autoSave = autoSave;
+    }
+
+    /**
+     * Record that the managed objects changed, saving them to the database file unless saving is deferred.
+     *
+     * @throws IOException an IOException exception
+     */
+    synchronized void changed() throws IOException {
+        version++;
+        if (autoSave) {
+            toFile();
         }
     }
 
     /**
-     * Save the contents of the managed objects ArrayList to the history database file.
+     * Apply the changes other processes sharing the database made since they were last applied.
      *
      * @throws IOException an IOException exception
      */
-    void toFile() throws IOException {
-        System.out.println("Making new file!");
-        OutputStream file = new FileOutputStream(path);
-        OutputStream buffer = new BufferedOutputStream(file);
-        ObjectOutput output = new ObjectOutputStream(buffer);
-        output.writeObject(managedObjects);
-        output.close();
+    synchronized void refresh() throws IOException {
+        store.refresh();
+    }
+
+    /**
+     * Record that another process sharing the database changed the managed objects, without saving them.
+     * Called by the listener to the store, while holding the monitor of this manager.
+     */
+    void changedElsewhere() {
+        version++;
+    }
+
+    /**
+     * Return the number of changes recorded since the database was loaded.
+     *
+     * @return the version of the managed objects
+     */
+    long getVersion() {
+        return version;
     }
 }
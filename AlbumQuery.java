@@ -0,0 +1,227 @@
+package photo_renamer;
+
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.function.Predicate;
+
+/**
+ * A saved query over the Tags, paths and metadata of ImageFiles, such as "2016 AND family NOT reviewed".
+ * A bare word or quoted phrase matches images carrying the Tag of that case-insensitive name, and "tag:",
+ * "name:" and "path:" prefixes match a Tag name, or a case-insensitive part of the image name or path.
+ * The keywords "untagged", "missing" and "renamed" match images carrying no Tags, whose files were found missing,
+ * and which have past names. Terms are combined with AND, OR and NOT and grouped with parentheses; terms side by
+ * side are ANDed, and AND binds tighter than OR.
+ */
+class AlbumQuery {
+
+    /** The text of this query, as written. */
+    final String text;
+    /** The test an ImageFile must pass to match this query. */
+    private final Predicate<ImageFile> test;
+
+    /**
+     * Parse a query.
+     *
+     * @param text the text of the query
+     * @throws IllegalArgumentException if the query is malformed
+     */
+    AlbumQuery(String text) {
+        this.text = text;
+        Parser parser = new Parser(tokenize(text));
+        this.test = parser.parseOr();
+        if (parser.at < parser.tokens.size()) {
+            throw new IllegalArgumentException("Unexpected " + parser.tokens.get(parser.at) + " in query: " + text);
+        }
+    }
+
+    /**
+     * Return whether an ImageFile matches this query.
+     *
+     * @param image the ImageFile
+     * @return a boolean of whether the ImageFile matches
+     */
+    boolean matches(ImageFile image) {
+        return test.test(image);
+    }
+
+    /**
+     * Return whether an ImageFile carries a Tag of a case-insensitive name.
+     *
+     * @param image   the ImageFile
+     * @param tagName the name of the Tag
+     * @return a boolean of whether the ImageFile carries the Tag
+     */
+    private static boolean carries(ImageFile image, String tagName) {
+        for (Tag tag : image.tags) {
+            if (tag.name.equalsIgnoreCase(tagName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Split the text of a query into words, quoted phrases and parentheses.
+     * A quoted phrase keeps its opening quote, so that it is never read as an operator.
+     *
+     * @param text the text of the query
+     * @return an ArrayList of the tokens
+     * @throws IllegalArgumentException if a quote is not closed
+     */
+    private static ArrayList<String> tokenize(String text) {
+        ArrayList<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else {
+                StringBuilder token = new StringBuilder();
+                boolean quoted = false;
+                while (i < text.length() && (quoted || !(Character.isWhitespace(text.charAt(i))
+                        || text.charAt(i) == '(' || text.charAt(i) == ')'))) {
+                    if (text.charAt(i) == '"') {
+                        quoted = !quoted;
+                        if (token.length() == 0) {
+                            token.append('"');
+                        }
+                    } else {
+                        token.append(text.charAt(i));
+                    }
+                    i++;
+                }
+                if (quoted) {
+                    throw new IllegalArgumentException("Unclosed quote in query: " + text);
+                }
+                tokens.add(token.toString());
+            }
+        }
+        return tokens;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    /** A recursive descent parser of the tokens of a query. */
+    private static final class Parser {
+
+        /** The tokens of the query. */
+        private final ArrayList<String> tokens;
+        /** The index of the next token to read. */
+        private int at;
+
+        /**
+         * Construct a parser of tokens.
+         *
+         * @param tokens the tokens
+         */
+        Parser(ArrayList<String> tokens) {
+            this.tokens = tokens;
+        }
+
+        /**
+         * Parse terms joined by OR.
+         *
+         * @return the test of the terms
+         */
+        Predicate<ImageFile> parseOr() {
+            Predicate<ImageFile> test = parseAnd();
+            while (accept("OR")) {
+                test = test.or(parseAnd());
+            }
+            return test;
+        }
+
+        /**
+         * Parse terms joined by AND or side by side.
+         *
+         * @return the test of the terms
+         */
+        private Predicate<ImageFile> parseAnd() {
+            Predicate<ImageFile> test = parseNot();
+            while (at < tokens.size() && !tokens.get(at).equals(")") && !tokens.get(at).equals("OR")) {
+                accept("AND");
+                test = test.and(parseNot());
+            }
+            return test;
+        }
+
+        /**
+         * Parse a term, possibly negated.
+         *
+         * @return the test of the term
+         */
+        private Predicate<ImageFile> parseNot() {
+            if (accept("NOT")) {
+                return parseNot().negate();
+            }
+            if (accept("(")) {
+                Predicate<ImageFile> test = parseOr();
+                if (!accept(")")) {
+                    throw new IllegalArgumentException("Missing ')' in query");
+                }
+                return test;
+            }
+            if (at == tokens.size() || tokens.get(at).equals(")")
+                    || tokens.get(at).equals("AND") || tokens.get(at).equals("OR")) {
+                throw new IllegalArgumentException("Missing term in query");
+            }
+            return parseTerm(tokens.get(at++));
+        }
+
+        /**
+         * Parse a single term.
+         *
+         * @param token the token of the term
+         * @return the test of the term
+         */
+        private static Predicate<ImageFile> parseTerm(String token) {
+            if (token.startsWith("\"")) {
+                String tagName = token.substring(1);
+                return image -> carries(image, tagName);
+            }
+            switch (token) {
+                case "untagged":
+                    return image -> image.tags.isEmpty();
+                case "missing":
+                    return image -> image.missingSince != 0;
+                case "renamed":
+                    return image -> image.nameHistory.size() > 1;
+                default:
+            }
+            int colon = token.indexOf(':');
+            String field = colon < 0 ? "" : token.substring(0, colon);
+            String value = token.substring(colon + 1);
+            String folded = value.toLowerCase(Locale.ROOT);
+            switch (field) {
+                case "tag":
+                    return image -> carries(image, value);
+                case "name":
+                    return image -> image.name.toLowerCase(Locale.ROOT).contains(folded);
+                case "path":
+                    return image -> image.imgFilePath.toLowerCase(Locale.ROOT).contains(folded);
+                default:
+                    return image -> carries(image, token);
+            }
+        }
+
+        /**
+         * Read the next token if it is the argued one.
+         *
+         * @param token the expected token
+         * @return a boolean of whether the token was read
+         */
+        private boolean accept(String token) {
+            if (at < tokens.size() && tokens.get(at).equals(token)) {
+                at++;
+                return true;
+            }
+            return false;
+        }
+    }
+}
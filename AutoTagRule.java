@@ -0,0 +1,159 @@
+package photo_renamer;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * A compiled rule deriving a Tag from an ImageFile's path, name, dimensions or date.
+ * Rules are declared one per line as "tag kind argument", for example "beach path-regex (^|/)beach/".
+ */
+class AutoTagRule {
+
+    /** The Tag applied to matching ImageFiles. */
+    final Tag tag;
+    /** The kind of the rule, as declared. */
+    final String kind;
+    /** The argument of the rule, as declared. */
+    final String argument;
+    /** The number of ImageFiles this rule matched. */
+    final LongAdder matches;
+    /** The compiled glob matcher of glob rules. */
+    private PathMatcher globMatcher;
+    /** The compiled pattern of regex rules. */
+    private Pattern pattern;
+    /** The minimum width of min-size rules. */
+    private int minWidth;
+    /** The minimum height of min-size rules. */
+    private int minHeight;
+    /** The year of year rules. */
+    private int year;
+
+    /**
+     * Compile a rule from its declaration.
+     *
+     * @param declaration the line declaring the rule
+     * @throws IllegalArgumentException if the declaration is malformed
+     */
+    AutoTagRule(String declaration) {
+        String[] parts = declaration.trim().split("\\s+", 3);
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Expected 'tag kind argument': " + declaration);
+        }
+        this.tag = new Tag(parts[0]);
+        this.kind = parts[1];
+        this.argument = parts[2];
+        this.matches = new LongAdder();
+        switch (kind) {
+            case "path-glob":
+            case "name-glob":
+                globMatcher = FileSystems.getDefault().getPathMatcher("glob:" + argument);
+                break;
+            case "path-regex":
+            case "name-regex":
+                pattern = Pattern.compile(argument);
+                break;
+            case "min-size":
+                String[] size = argument.split("x");
+                minWidth = Integer.parseInt(size[0]);
+                minHeight = Integer.parseInt(size[1]);
+                break;
+            case "year":
+                year = Integer.parseInt(argument);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown rule kind '" + kind + "': " + declaration);
+        }
+    }
+
+    /**
+     * Return whether this rule needs the pixel dimensions of the ImageFiles it tests.
+     *
+     * @return a boolean of whether dimensions are needed
+     */
+    boolean needsDimensions() {
+        return kind.equals("min-size");
+    }
+
+    /**
+     * Return whether an ImageFile matches this rule, counting the match.
+     *
+     * @param facts the facts gathered about the ImageFile
+     * @return a boolean of whether the ImageFile matches
+     */
+    boolean test(ImageFacts facts) {
+        boolean matched;
+        switch (kind) {
+            case "path-glob":
+                matched = globMatcher.matches(Paths.get(facts.relativePath));
+                break;
+            case "name-glob":
+                matched = globMatcher.matches(Paths.get(facts.image.name));
+                break;
+            case "path-regex":
+                matched = pattern.matcher(facts.relativePath).find();
+                break;
+            case "name-regex":
+                matched = pattern.matcher(facts.image.name).find();
+                break;
+            case "min-size":
+                matched = facts.width >= minWidth && facts.height >= minHeight;
+                break;
+            default:
+                matched = facts.modified > 0 && Instant.ofEpochMilli(facts.modified)
+                        .atZone(ZoneId.systemDefault()).getYear() == year;
+                break;
+        }
+        if (matched) {
+            matches.increment();
+        }
+        return matched;
+    }
+
+    /**
+     * Return the declaration of this rule.
+     *
+     * @return the declaration
+     */
+    @Override
+    public String toString() {
+        return tag + " " + kind + " " + argument;
+    }
+
+    /** The facts about an ImageFile that rules are tested against. */
+    static class ImageFacts {
+
+        /** The ImageFile the facts are about. */
+        final ImageFile image;
+        /** The path of the image relative to the scanned root, with '/' separators. */
+        final String relativePath;
+        /** The last modification time of the image file, standing in for its capture date. */
+        final long modified;
+        /** The pixel width of the image, or -1 when not read. */
+        int width = -1;
+        /** The pixel height of the image, or -1 when not read. */
+        int height = -1;
+
+        /**
+         * Gather the cheap facts about an ImageFile.
+         *
+         * @param image    the ImageFile
+         * @param rootPath the absolute path of the scanned root
+         */
+        ImageFacts(ImageFile image, String rootPath) {
+            this.image = image;
+            String path = image.imgFilePath.startsWith(rootPath)
+                    ? image.imgFilePath.substring(rootPath.length()) : image.imgFilePath;
+            while (path.startsWith(File.separator)) {
+                path = path.substring(1);
+            }
+            this.relativePath = path.replace(File.separatorChar, '/');
+            this.modified = image.imgFile.lastModified();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package photo_renamer;
+
+import java.awt.*;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * An engine matching a set of compiled AutoTagRules against scanned ImageFiles in parallel across all cores.
+ * Matching only reads ImageFiles; the derived Tags are applied afterwards by the caller on a single thread.
+ */
+class AutoTagger {
+
+    /** The compiled rules of this engine. */
+    final List<AutoTagRule> rules;
+    /** Whether any rule needs the pixel dimensions of images. */
+    private final boolean needsDimensions;
+
+    /**
+     * Construct an engine applying the argued rules.
+     *
+     * @param rules the compiled rules
+     */
+    AutoTagger(List<AutoTagRule> rules) {
+        this.rules = rules;
+        boolean dimensions = false;
+        for (AutoTagRule rule : rules) {
+            dimensions |= rule.needsDimensions();
+        }
+        this.needsDimensions = dimensions;
+    }
+
+    /**
+     * Compile the rules declared in a UTF-8 file, one per line, ignoring blank lines and lines starting with '#'.
+     *
+     * @param rulesFile the file declaring the rules
+     * @return the engine applying the rules
+     * @throws IOException an IOException exception
+     */
+    static AutoTagger load(File rulesFile) throws IOException {
+        ArrayList<AutoTagRule> rules = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(rulesFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty() && !line.trim().startsWith("#")) {
+                    rules.add(new AutoTagRule(line));
+                }
+            }
+        }
+        return new AutoTagger(rules);
+    }
+
+    /**
+     * Return the Tags derived by the rules for each ImageFile, computed in parallel.
+     *
+     * @param images   the scanned ImageFiles
+     * @param rootPath the absolute path of the scanned root
+     * @return the derived Tags of each ImageFile, parallel to images
+     */
+    List<ArrayList<Tag>> match(List<ImageFile> images, String rootPath) {
+        return images.parallelStream()
+                .map(image -> match(image, rootPath))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Return the Tags derived by the rules for a single ImageFile.
+     *
+     * @param image    the ImageFile
+     * @param rootPath the absolute path of the scanned root
+     * @return the derived Tags
+     */
+    private ArrayList<Tag> match(ImageFile image, String rootPath) {
+        AutoTagRule.ImageFacts facts = new AutoTagRule.ImageFacts(image, rootPath);
+        if (needsDimensions) {
+            try {
+                Dimension size = ImageDecoder.readSize(image.imgFile);
+                facts.width = size.width;
+                facts.height = size.height;
+            } catch (IOException e) {
+                // Unreadable images simply fail dimension rules.
+            }
+        }
+        ArrayList<Tag> derived = null;
+        for (AutoTagRule rule : rules) {
+            if (rule.test(facts)) {
+                if (derived == null) {
+                    derived = new ArrayList<>();
+                }
+                if (!derived.contains(rule.tag)) {
+                    derived.add(rule.tag);
+                }
+            }
+        }
+        return derived == null ? new ArrayList<>() : derived;
+    }
+}
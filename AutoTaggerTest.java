@@ -0,0 +1,113 @@
+package photo_renamer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** A class for testing AutoTagRule and AutoTagger. */
+public class AutoTaggerTest {
+    /** The temporary directory scanned as the root. */
+    private File root;
+    /** The images under the root, in the order they are matched. */
+    private List<ImageFile> images;
+
+    @Before
+    /* Set up a root of a wide image and a small one in different folders for testing. */
+    public void setUp() throws Exception {
+        root = Files.createTempDirectory("AutoTaggerTest").toFile();
+        images = new ArrayList<>();
+        for (String path : Arrays.asList("beach/wide.png", "city/small.png")) {
+            File file = new File(root, path);
+            file.getParentFile().mkdirs();
+            ImageIO.write(new BufferedImage(path.contains("wide") ? 300 : 30, 20, BufferedImage.TYPE_INT_RGB),
+                    "png", file);
+            file.setLastModified(path.contains("wide") ? 1262347200000L : 1577880000000L);
+            images.add(new ImageFile(file.getName(), new ArrayList<>(), file.getAbsolutePath()));
+        }
+    }
+
+    @After
+    /* Delete the temporary directory. */
+    public void tearDown() throws Exception {
+        Files.walk(root.toPath()).sorted(Collections.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+
+    /**
+     * Return whether a declaration fails to compile.
+     *
+     * @param declaration the declaration of the rule
+     * @return a boolean of whether compiling threw an IllegalArgumentException
+     */
+    private static boolean rejected(String declaration) {
+        try {
+            new AutoTagRule(declaration);
+            return false;
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+    }
+
+    @Test
+    /* Test that declarations compile into their parts, and that malformed ones are rejected. */
+    public void testParse() throws Exception {
+        AutoTagRule rule = new AutoTagRule("  beach   path-regex (^|/)beach/ ");
+        assertEquals(new Tag("beach"), rule.tag);
+        assertEquals("path-regex", rule.kind);
+        assertEquals("(^|/)beach/", rule.argument);
+        assertEquals("beach path-glob **/*.png", new AutoTagRule("beach path-glob **/*.png").toString());
+        assertEquals("a b", new AutoTagRule("city name-glob a b").argument);
+        assertTrue(new AutoTagRule("big min-size 100x10").needsDimensions() && !rule.needsDimensions());
+        assertTrue(rejected("beach path-regex"));
+        assertTrue(rejected("beach colour blue"));
+        assertTrue(rejected("big min-size wide"));
+        assertTrue(rejected("old year last"));
+    }
+
+    @Test
+    /* Test that every kind of rule matches by path, name, dimensions or date, counting its matches. */
+    public void testMatch() throws Exception {
+        AutoTagger tagger = new AutoTagger(Arrays.asList(
+                new AutoTagRule("beach path-regex (^|/)beach/"),
+                new AutoTagRule("beach path-glob beach/*"),
+                new AutoTagRule("town path-glob city/**"),
+                new AutoTagRule("tiny name-regex ^small"),
+                new AutoTagRule("png name-glob *.png"),
+                new AutoTagRule("big min-size 100x10"),
+                new AutoTagRule("old year 2010")));
+        List<ArrayList<Tag>> derived = tagger.match(images, root.getAbsolutePath());
+        assertEquals(Arrays.asList(new Tag("beach"), new Tag("png"), new Tag("big"), new Tag("old")),
+                derived.get(0));
+        assertEquals(Arrays.asList(new Tag("town"), new Tag("tiny"), new Tag("png")), derived.get(1));
+        long[] matches = new long[tagger.rules.size()];
+        for (int i = 0; i < matches.length; i++) {
+            matches[i] = tagger.rules.get(i).matches.sum();
+        }
+        assertTrue(Arrays.equals(new long[]{1, 1, 1, 1, 2, 1, 1}, matches));
+    }
+
+    @Test
+    /* Test that a rules file is read as UTF-8, skipping blank lines and comments. */
+    public void testLoad() throws Exception {
+        File rules = new File(root, "rules.txt");
+        Files.write(rules.toPath(), Arrays.asList("# Rules", "", "\u00e9t\u00e9 path-glob beach/*", "  # indented"),
+                StandardCharsets.UTF_8);
+        AutoTagger tagger = AutoTagger.load(rules);
+        assertEquals(1, tagger.rules.size());
+        assertEquals("\u00e9t\u00e9", tagger.rules.get(0).tag.name);
+        assertEquals(Collections.singletonList(new Tag("\u00e9t\u00e9")),
+                tagger.match(images, root.getAbsolutePath()).get(0));
+    }
+}
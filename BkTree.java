@@ -0,0 +1,144 @@
+package photo_renamer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A Burkhard-Keller tree over 64-bit hashes under the Hamming distance.
+ * The triangle inequality lets a query within distance d skip every subtree whose edge distance
+ * differs from the query's distance to the node by more than d, so small-radius queries visit few nodes.
+ */
+class BkTree {
+
+    /** The root node, or null while the tree is empty. */
+    private Node root;
+
+    /**
+     * Add a hash, identified by an integer key such as a list index.
+     *
+     * @param hash the hash
+     * @param key  the key of the hashed item
+     */
+    void add(long hash, int key) {
+        if (root == null) {
+            root = new Node(hash, key);
+            return;
+        }
+        Node node = root;
+        while (true) {
+            int distance = PerceptualHash.distance(hash, node.hash);
+            if (distance == 0) {
+                node.addKey(key);
+                return;
+            }
+            Node child = node.child(distance);
+            if (child == null) {
+                node.addChild(distance, new Node(hash, key));
+                return;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Return the keys of every hash within a distance of a query hash.
+     *
+     * @param hash        the query hash
+     * @param maxDistance the largest distance matched
+     * @return an ArrayList of the matching keys
+     */
+    ArrayList<Integer> within(long hash, int maxDistance) {
+        ArrayList<Integer> found = new ArrayList<>();
+        ArrayList<Node> pending = new ArrayList<>();
+        if (root != null) {
+            pending.add(root);
+        }
+        while (!pending.isEmpty()) {
+            Node node = pending.remove(pending.size() - 1);
+            int distance = PerceptualHash.distance(hash, node.hash);
+            if (distance <= maxDistance) {
+                for (int i = 0; i < node.keyCount; i++) {
+                    found.add(node.keys[i]);
+                }
+            }
+            for (int i = 0; i < node.childCount; i++) {
+                if (Math.abs(node.edges[i] - distance) <= maxDistance) {
+                    pending.add(node.children[i]);
+                }
+            }
+        }
+        return found;
+    }
+
+    /** A node of the tree holding one hash. */
+    private static class Node {
+
+        /** The hash held by this node. */
+        private final long hash;
+        /** The keys of the items with exactly this hash, valid up to keyCount. */
+        private int[] keys;
+        /** The number of keys of this node. */
+        private int keyCount;
+        /** The distances of the children from this node's hash, parallel to children. */
+        private byte[] edges = new byte[0];
+        /** The children of this node, valid up to childCount. */
+        private Node[] children = new Node[0];
+        /** The number of children of this node. */
+        private int childCount;
+
+        /**
+         * Construct a leaf node.
+         *
+         * @param hash the hash
+         * @param key  the key of the hashed item
+         */
+        Node(long hash, int key) {
+            this.hash = hash;
+            this.keys = new int[]{key};
+            this.keyCount = 1;
+        }
+
+        /**
+         * Add the key of another item with exactly this node's hash.
+         *
+         * @param key the key
+         */
+        void addKey(int key) {
+            if (keyCount == keys.length) {
+                keys = Arrays.copyOf(keys, keyCount * 2);
+            }
+            keys[keyCount++] = key;
+        }
+
+        /**
+         * Return the child at a distance from this node's hash, or null if there is none.
+         *
+         * @param distance the distance
+         * @return the child, or null
+         */
+        Node child(int distance) {
+            for (int i = 0; i < childCount; i++) {
+                if (edges[i] == distance) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Attach a child at a distance from this node's hash.
+         *
+         * @param distance the distance
+         * @param child    the child node
+         */
+        void addChild(int distance, Node child) {
+            if (childCount == children.length) {
+                int capacity = Math.max(2, childCount * 2);
+                edges = Arrays.copyOf(edges, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+            edges[childCount] = (byte) distance;
+            children[childCount++] = child;
+        }
+    }
+}
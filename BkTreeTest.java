@@ -0,0 +1,66 @@
+package photo_renamer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/** A class for testing BkTree. */
+public class BkTreeTest {
+    /** The BkTree being tested. */
+    private BkTree bkTree;
+
+    @Before
+    /* Set up a new, empty BkTree for testing. */
+    public void setUp() throws Exception {
+        bkTree = new BkTree();
+    }
+
+    @Test
+    /* Test querying an empty BkTree. */
+    public void testWithinEmpty() throws Exception {
+        Object result = bkTree.within(0L, 64);
+        ArrayList<Integer> expected = new ArrayList<>();
+        assertEquals(expected, result);
+    }
+
+    @Test
+    /* Test that identical hashes are all found at distance 0. */
+    public void testWithinIdentical() throws Exception {
+        bkTree.add(0xF0F0L, 1);
+        bkTree.add(0xF0F0L, 2);
+        bkTree.add(0x0F0FL, 3);
+        ArrayList<Integer> result = bkTree.within(0xF0F0L, 0);
+        Collections.sort(result);
+        ArrayList<Integer> expected = new ArrayList<>(Arrays.asList(1, 2));
+        assertEquals(expected, result);
+    }
+
+    @Test
+    /* Test that querying agrees with comparing every hash directly. */
+    public void testWithinMatchesBruteForce() throws Exception {
+        Random random = new Random(42);
+        long[] hashes = new long[2000];
+        for (int i = 0; i < hashes.length; i++) {
+            // Flip a few bits of a handful of base hashes so that near neighbours exist.
+            hashes[i] = (i % 20 == 0 ? random.nextLong() : hashes[i - i % 20]) ^ (1L << random.nextInt(64));
+            bkTree.add(hashes[i], i);
+        }
+        for (int query = 0; query < hashes.length; query += 97) {
+            ArrayList<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < hashes.length; i++) {
+                if (PerceptualHash.distance(hashes[query], hashes[i]) <= 4) {
+                    expected.add(i);
+                }
+            }
+            ArrayList<Integer> result = bkTree.within(hashes[query], 4);
+            Collections.sort(result);
+            assertEquals(expected, result);
+        }
+    }
+}
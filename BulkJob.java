@@ -0,0 +1,357 @@
+package photo_renamer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A checkpointed bulk operation over the images under a root, resumable after a crash or kill.
+ * Images are visited depth first in name order, so the relative path of the last image finished orders every
+ * image before it; images not yet visited keep their names, so resuming skips everything up to that path and
+ * revisits at worst images renamed past it, which the idempotent bulk operations leave unchanged.
+ * The checkpoint file holds the command line, the number of images finished and the last of them, followed by
+ * a journal of the renames made since, each written before its file is renamed. A checkpoint is taken only
+ * after the databases were saved, and replaces the file atomically, emptying the journal; on resuming, the
+ * journal brings the history of the files renamed after the last checkpoint up to date.
+ */
+class BulkJob implements ImageFileManager.RenameJournal {
+
+    /** The first line of a checkpoint file. */
+    private static final String HEADER = "photo_renamer bulk checkpoint";
+    /** The number of images visited after which a checkpoint is taken. */
+    static final int CHECKPOINT_VISITS = 10000;
+
+    /** The checkpoint file. */
+    private final File file;
+    /** The command and arguments of the operation. */
+    final String[] commandLine;
+    /** The root directory the operation works under. */
+    private final Path root;
+    /** The path relative to root of the last image finished, or null if none was. */
+    private Path lastDone;
+    /** The number of images finished. */
+    private long doneCount;
+    /** The renames journaled since the last checkpoint, as pairs of old and new system paths. */
+    private final ArrayList<String[]> journaled;
+    /** The writer appending to the journal. */
+    private Writer journal;
+    /** Whether this operation resumes an interrupted one. */
+    private final boolean resumed;
+
+    /**
+     * Construct a bulk operation, starting it afresh or resuming it from its checkpoint file.
+     *
+     * @param file        the checkpoint file
+     * @param commandLine the command and arguments of the operation
+     * @param root        the root directory the operation works under
+     * @throws IOException an IOException exception, also thrown if another operation was interrupted
+     */
+    BulkJob(File file, String[] commandLine, File root) throws IOException {
+        this.file = file;
+        this.commandLine = commandLine;
+        this.root = root.getAbsoluteFile().toPath();
+        this.journaled = new ArrayList<>();
+        String[] interrupted = interrupted(file);
+        if (interrupted != null && !Arrays.equals(interrupted, commandLine)) {
+            throw new IOException("An interrupted bulk operation must be resumed first: "
+                    + String.join(" ", interrupted));
+        }
+        this.resumed = interrupted != null;
+        if (!resumed) {
+            checkpoint();
+        } else {
+            // The journal is kept until the renames it holds are recovered and the next checkpoint is taken.
+            read();
+            journal = new BufferedWriter(
+                    new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Return the command line of an interrupted operation, or null if none was interrupted.
+     *
+     * @param file the checkpoint file
+     * @return the command and arguments, or null
+     * @throws IOException an IOException exception
+     */
+    static String[] interrupted(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        try (BufferedReader reader = open(file)) {
+            String commandLine = reader.readLine();
+            return commandLine == null ? null : fields(commandLine);
+        }
+    }
+
+    /**
+     * Return whether this operation resumes an interrupted one.
+     *
+     * @return a boolean of whether this operation was interrupted before
+     */
+    boolean resumed() {
+        return resumed;
+    }
+
+    /**
+     * Bring the history of the images renamed after the last checkpoint of an interrupted operation up to date.
+     * A journaled rename is recovered only if its old file is gone, its new file exists and the history still
+     * records the image at its old path; its Tags are taken from the new name.
+     *
+     * @param tagManager     the TagManager managing the database of Tags
+     * @param historyManager the ImageHistoryManager managing the history database
+     * @return the number of renames recovered
+     * @throws IOException an IOException exception
+     */
+    int recover(TagManager tagManager, ImageHistoryManager historyManager) throws IOException {
+        int recovered = 0;
+        for (String[] rename : journaled) {
+            File oldFile = new File(rename[0]);
+            File newFile = new File(rename[1]);
+            if (oldFile.exists() || !newFile.exists()) {
+                continue;
+            }
+            ArrayList<Tag> tags = new ArrayList<>();
+            for (String tagName : ImageFileManager.tagNamesIn(newFile.getName())) {
+                tagManager.addTag(new Tag(tagName));
+                tags.add(tagManager.getTag(tagName));
+            }
+            if (historyManager.recoverRename(rename[0], newFile, tags)) {
+                recovered++;
+            }
+        }
+        return recovered;
+    }
+
+    /**
+     * Visit the images under the root not finished before, depth first in name order, recording each in the
+     * history database like ImageFileManager.visitImages. Directories wholly before the last image finished
+     * are skipped without being listed.
+     *
+     * @param historyManager the ImageHistoryManager being used
+     * @param visitor        the visitor receiving each ImageFile, which calls done once it is finished
+     * @throws IOException an IOException exception
+     */
+    void walk(ImageHistoryManager historyManager, ImageFileManager.ImageVisitor visitor) throws IOException {
+        walk(root.toFile(), historyManager, visitor);
+    }
+
+    /**
+     * Visit the images under a directory not finished before, depth first in name order.
+     *
+     * @param dir            the directory
+     * @param historyManager the ImageHistoryManager being used
+     * @param visitor        the visitor receiving each ImageFile
+     * @throws IOException an IOException exception
+     */
+    private void walk(File dir, ImageHistoryManager historyManager, ImageFileManager.ImageVisitor visitor)
+            throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> a.getName().compareTo(b.getName()));
+        for (File sub : files) {
+            Path relative = root.relativize(sub.toPath());
+            if (sub.isDirectory()) {
+                // A directory before the last image finished, and not holding it, holds only finished images.
+                if (lastDone == null || compare(relative, lastDone) >= 0 || lastDone.startsWith(relative)) {
+                    walk(sub, historyManager, visitor);
+                }
+            } else if (ImageFileManager.isImageName(sub.getName())
+                    && (lastDone == null || compare(relative, lastDone) > 0)) {
+                ImageFile image;
+                try {
+                    image = new ImageFile(sub.getName(), new ArrayList<>(), sub.getAbsolutePath());
+                } catch (ClassNotFoundException e) {
+                    throw new IOException(e);
+                }
+                ImageBytes visit = ImageBytes.visit(image.imgFile);
+                try {
+                    visitor.visit(historyManager.historicizeImage(image));
+                } finally {
+                    visit.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Record that an image is finished, to be skipped when resuming after the next checkpoint.
+     *
+     * @param path the system path the image had when it was visited
+     */
+    void done(String path) {
+        lastDone = root.relativize(new File(path).toPath());
+        doneCount++;
+    }
+
+    /**
+     * Return the number of images finished, including those finished before resuming.
+     *
+     * @return the number of images
+     */
+    long doneCount() {
+        return doneCount;
+    }
+
+    @Override
+    public void renaming(String oldPath, String newPath) throws IOException {
+        // Flushing each entry makes it survive the process being killed; the checkpoint forces it to disk.
+        journal.write("R\t" + escape(oldPath) + "\t" + escape(newPath) + "\n");
+        journal.flush();
+        journaled.add(new String[]{oldPath, newPath});
+    }
+
+    /**
+     * Take a checkpoint, which must follow saving the databases: replace the checkpoint file with one recording
+     * the images finished so far and an empty journal.
+     *
+     * @throws IOException an IOException exception
+     */
+    void checkpoint() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream output = new FileOutputStream(temp)) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            writer.write(HEADER + "\n");
+            StringBuilder commandFields = new StringBuilder("C");
+            for (String arg : commandLine) {
+                commandFields.append('\t').append(escape(arg));
+            }
+            writer.write(commandFields + "\n");
+            writer.write("D\t" + doneCount + "\t" + (lastDone == null ? "" : escape(lastDone.toString())) + "\n");
+            writer.flush();
+            output.getFD().sync();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        journal = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Finish this operation, deleting its checkpoint file.
+     *
+     * @throws IOException an IOException exception
+     */
+    void finish() throws IOException {
+        journal.close();
+        Files.deleteIfExists(file.toPath());
+    }
+
+    /**
+     * Read the progress and journal of an interrupted operation from the checkpoint file.
+     * A last journal entry cut short by the interruption is ignored.
+     *
+     * @throws IOException an IOException exception
+     */
+    private void read() throws IOException {
+        try (BufferedReader reader = open(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = fields(line);
+                if (fields.length == 2 && line.startsWith("D\t")) {
+                    doneCount = Long.parseLong(fields[0]);
+                    lastDone = fields[1].isEmpty() ? null : root.getFileSystem().getPath(fields[1]);
+                } else if (fields.length == 2 && line.startsWith("R\t")) {
+                    journaled.add(fields);
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed checkpoint file " + file, e);
+        }
+    }
+
+    /**
+     * Open a checkpoint file for reading, checking its header.
+     *
+     * @param file the checkpoint file
+     * @return the reader, positioned after the header
+     * @throws IOException an IOException exception, also thrown if the file is not a checkpoint file
+     */
+    private static BufferedReader open(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+        if (!HEADER.equals(reader.readLine())) {
+            reader.close();
+            throw new IOException(file + " is not a bulk checkpoint file");
+        }
+        return reader;
+    }
+
+    /**
+     * Compare two relative paths in the order of a depth first walk visiting entries in name order.
+     *
+     * @param a one path
+     * @param b the other path
+     * @return a negative, zero or positive int as a is visited before, as or after b
+     */
+    static int compare(Path a, Path b) {
+        for (int i = 0; i < a.getNameCount() && i < b.getNameCount(); i++) {
+            int byName = a.getName(i).toString().compareTo(b.getName(i).toString());
+            if (byName != 0) {
+                return byName;
+            }
+        }
+        return Integer.compare(a.getNameCount(), b.getNameCount());
+    }
+
+    /**
+     * Return the escaped fields of a checkpoint line after its type, unescaped.
+     *
+     * @param line the line
+     * @return the fields
+     */
+    private static String[] fields(String line) {
+        String[] fields = line.split("\t", -1);
+        String[] unescaped = new String[fields.length - 1];
+        for (int i = 1; i < fields.length; i++) {
+            unescaped[i - 1] = unescape(fields[i]);
+        }
+        return unescaped;
+    }
+
+    /**
+     * Escape the backslashes, tabs and line breaks of a value written to a checkpoint line.
+     *
+     * @param value the value
+     * @return the escaped value
+     */
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    /**
+     * Undo escape.
+     *
+     * @param value the escaped value
+     * @return the value
+     */
+    private static String unescape(String value) {
+        StringBuilder unescaped = new StringBuilder();
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char escaped = value.charAt(++i);
+                unescaped.append(escaped == 't' ? '\t' : escaped == 'n' ? '\n' : escaped == 'r' ? '\r' : escaped);
+            } else {
+                unescaped.append(c);
+            }
+        }
+        return unescaped.toString();
+    }
+}
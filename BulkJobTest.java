@@ -0,0 +1,117 @@
+package photo_renamer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/** A class for testing BulkJob. */
+public class BulkJobTest {
+    /** The temporary directory holding the databases, the checkpoint and the images. */
+    private File dir;
+    /** The root directory of the images. */
+    private File root;
+    /** The checkpoint file. */
+    private File checkpoint;
+    /** The command line of the tested operation. */
+    private String[] commandLine;
+    /** The ImageHistoryManager used by the tested operation. */
+    private ImageHistoryManager historyManager;
+
+    @Before
+    /* Set up a root of three images and empty databases in a temporary directory for testing. */
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("BulkJobTest").toFile();
+        root = new File(dir, "images");
+        for (String path : Arrays.asList("a/one.jpg", "a/two.jpg", "b/three.jpg")) {
+            File image = new File(root, path);
+            image.getParentFile().mkdirs();
+            Files.write(image.toPath(), path.getBytes("UTF-8"));
+        }
+        checkpoint = new File(dir, "bulk.checkpoint");
+        commandLine = new String[]{"tag", root.getPath(), "**", "sun"};
+        historyManager = new ImageHistoryManager(new File(dir, "history.ser").getPath());
+    }
+
+    @After
+    /* Delete the temporary directory. */
+    public void tearDown() throws Exception {
+        Files.walk(dir.toPath()).sorted(Collections.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+
+    /**
+     * Return the names of the images a job visits.
+     *
+     * @param job the BulkJob
+     * @return the names, in the order visited
+     * @throws IOException an IOException exception
+     */
+    private ArrayList<String> visit(BulkJob job) throws IOException {
+        ArrayList<String> names = new ArrayList<>();
+        job.walk(historyManager, image -> names.add(image.name));
+        return names;
+    }
+
+    @Test
+    /* Test that a resumed operation skips the images finished before its last checkpoint. */
+    public void testResume() throws Exception {
+        BulkJob job = new BulkJob(checkpoint, commandLine, root);
+        assertFalse(job.resumed());
+        assertEquals(Arrays.asList("one.jpg", "two.jpg", "three.jpg"), visit(job));
+        job.done(new File(root, "a/one.jpg").getPath());
+        job.checkpoint();
+        job.done(new File(root, "a/two.jpg").getPath());
+
+        assertEquals(Arrays.asList(commandLine), Arrays.asList(BulkJob.interrupted(checkpoint)));
+        try {
+            new BulkJob(checkpoint, new String[]{"untag", root.getPath(), "**", "sun"}, root);
+            fail("Another operation started before the interrupted one was resumed");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("resumed first"));
+        }
+        BulkJob resumed = new BulkJob(checkpoint, commandLine, root);
+        assertTrue(resumed.resumed());
+        assertEquals(1, resumed.doneCount());
+        assertEquals(Arrays.asList("two.jpg", "three.jpg"), visit(resumed));
+        resumed.finish();
+        assertNull(BulkJob.interrupted(checkpoint));
+    }
+
+    @Test
+    /* Test that resuming recovers the history of an image renamed after the last checkpoint. */
+    public void testRecover() throws Exception {
+        BulkJob job = new BulkJob(checkpoint, commandLine, root);
+        visit(job);
+        ImageFile image = historyManager.getImage(new File(root, "a/one.jpg").getAbsolutePath());
+        ImageFileManager manager = new ImageFileManager(image, null, historyManager);
+        manager.setJournal(job);
+        // The rename is journaled and made on disk, but the process dies before the history hears of it.
+        manager.applyTags(new ArrayList<>(Arrays.asList(new Tag("sun"))));
+        String oldPath = new File(root, "a/one.jpg").getAbsolutePath();
+        String newPath = new File(root, "a/one @sun.jpg").getAbsolutePath();
+        assertTrue(new File(newPath).exists());
+
+        TagManager reloadedTags = new TagManager(new File(dir, "tags.ser").getPath());
+        ImageHistoryManager reloaded = new ImageHistoryManager(new File(dir, "history.ser").getPath());
+        assertEquals("one.jpg", reloaded.getImage(oldPath).name);
+        BulkJob resumed = new BulkJob(checkpoint, commandLine, root);
+        assertEquals(1, resumed.recover(reloadedTags, reloaded));
+        ImageFile recovered = reloaded.getImage(newPath);
+        assertEquals(Arrays.asList(new Tag("sun")), recovered.tags);
+        assertTrue(recovered.nameHistory.contains("one.jpg"));
+        assertNull(reloaded.getImage(oldPath));
+        assertEquals(0, resumed.recover(reloadedTags, reloaded));
+    }
+}
@@ -0,0 +1,174 @@
+package photo_renamer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** A class for testing the managers under concurrent readers and writers. */
+public class ConcurrencyStressTest {
+    /** The number of threads writing at once. */
+    private static final int THREADS = 8;
+    /** The directory holding the databases and images used for testing. */
+    private File dir;
+    /** The TagManager being tested. */
+    private TagManager tagManager;
+    /** The ImageHistoryManager being tested. */
+    private ImageHistoryManager historyManager;
+    /** The threads running the writers and readers. */
+    private ExecutorService pool;
+
+    @Before
+    /* Set up new, empty managers in a temporary directory for testing. */
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("ConcurrencyStressTest").toFile();
+        tagManager = new TagManager(new File(dir, "tags.ser").getPath());
+        tagManager.setAutoSave(false);
+        historyManager = new ImageHistoryManager(new File(dir, "history.ser").getPath());
+        historyManager.setAutoSave(false);
+        pool = Executors.newFixedThreadPool(THREADS + 1);
+    }
+
+    @Test
+    /* Test that no Tag is lost when many threads add Tags while another reads snapshots. */
+    public void testAddTagsConcurrently() throws Exception {
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Future<Integer> reader = pool.submit(() -> readTagsUntilDone(writing));
+        runWriters(thread -> {
+            for (int i = 0; i < 500; i++) {
+                tagManager.addTag(new Tag("t" + thread + "-" + i));
+            }
+        });
+        writing.set(false);
+        assertTrue(reader.get() > 0);
+        assertEquals(THREADS * 500, tagManager.tags.size());
+        assertEquals(THREADS * 500, new HashSet<>(tagManager.tags).size());
+    }
+
+    @Test
+    /* Test that no Tag is lost when many threads tag the same images at once. */
+    public void testApplyTagsConcurrently() throws Exception {
+        ArrayList<ImageFile> images = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            File file = new File(dir, "img" + i + ".jpg");
+            assertTrue(file.createNewFile());
+            images.add(historyManager.historicizeImage(new ImageFile(file.getName(), new ArrayList<>(),
+                    file.getAbsolutePath())));
+        }
+        PhotoRenameLogger logger = PhotoRenameLogger.getInstance();
+        runWriters(thread -> {
+            for (ImageFile image : images) {
+                ImageFileManager manager = new ImageFileManager(image, logger, historyManager);
+                image.addObserver(manager);
+                // Five Tags a thread keep the names within the 255 characters file systems allow.
+                for (int i = 0; i < 5; i++) {
+                    manager.applyTags(new ArrayList<>(Collections.singletonList(new Tag("t" + thread + "x" + i))));
+                }
+                image.deleteObserver(manager);
+            }
+        });
+        for (ImageFile image : images) {
+            assertEquals(THREADS * 5, image.tags.size());
+            assertTrue(image.imgFile.exists());
+            for (Tag tag : image.tags) {
+                assertTrue(image.name.contains(" @" + tag.name));
+            }
+        }
+        assertEquals(images, historyManager.getImages());
+    }
+
+    @Test
+    /* Test that an image scanned by many threads at once is recorded exactly once. */
+    public void testHistoricizeConcurrently() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            assertTrue(new File(dir, "img" + i + ".png").createNewFile());
+        }
+        runWriters(thread -> ImageFileManager.visitImages(dir, historyManager, image -> { }));
+        List<ImageFile> recorded = historyManager.getImages();
+        assertEquals(50, recorded.size());
+        assertEquals(50, new HashSet<>(recorded).size());
+    }
+
+    /** A writer run on each of the test threads. */
+    private interface Writer {
+        /**
+         * Run the writes of one thread.
+         *
+         * @param thread the index of the thread
+         * @throws Exception an Exception
+         */
+        void write(int thread) throws Exception;
+    }
+
+    /**
+     * Run a writer on every test thread at once and wait for them all to finish.
+     *
+     * @param writer the writer
+     * @throws Exception any Exception thrown by a writer
+     */
+    private void runWriters(Writer writer) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        ArrayList<Future<Void>> writers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            writers.add(pool.submit(() -> {
+                start.await();
+                writer.write(thread);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<Void> future : writers) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Iterate snapshots of the managed Tags until writing stops, checking each is internally consistent.
+     *
+     * @param writing whether the writers are still running
+     * @return the number of snapshots read
+     */
+    private int readTagsUntilDone(AtomicBoolean writing) {
+        int reads = 0;
+        do {
+            List<Tag> snapshot = tagManager.tags;
+            int size = snapshot.size();
+            for (Tag tag : snapshot) {
+                assertTrue(tag != null);
+                size--;
+            }
+            assertEquals(0, size);
+            reads++;
+        } while (writing.get());
+        return reads;
+    }
+
+    @After
+    /* Delete system artifacts generated by concurrency testing. */
+    public void tearDown() throws Exception {
+        pool.shutdownNow();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+}
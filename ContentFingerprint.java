@@ -0,0 +1,119 @@
+package photo_renamer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A helper computing cheap content fingerprints that identify an image file wherever it is moved or renamed.
+ * A fingerprint combines the file size with a 64-bit FNV-1a hash of a chunk from the head and the tail of the file,
+ * so at most two chunks are read however large the file is.
+ */
+final class ContentFingerprint {
+
+    /** The number of bytes sampled from each end of a file. */
+    static final int CHUNK_SIZE = 16 * 1024;
+    /** The FNV-1a 64-bit offset basis. */
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    /** The FNV-1a 64-bit prime. */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** Prevent instantiation of this helper. */
+    private ContentFingerprint() {
+    }
+
+    /**
+     * Compute the fingerprint of a file, reading it through ImageBytes, or, if it is too large to map whole, reading
+     * its two chunks from a FileChannel.
+     *
+     * @param file the file
+     * @return the fingerprint, as the size and hash in hexadecimal separated by '-'
+     * @throws IOException if the file cannot be read
+     */
+    static String of(File file) throws IOException {
+        if (file.length() > Integer.MAX_VALUE) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                return of(channel);
+            }
+        }
+        try (ImageBytes bytes = ImageBytes.open(file)) {
+            return of(bytes.buffer());
+        }
+    }
+
+    /**
+     * Compute the fingerprint of the bytes of a file. Of a mapped file, only the pages of the two chunks are read.
+     *
+     * @param bytes the bytes of the file, from position 0 to the limit
+     * @return the fingerprint, as the size and hash in hexadecimal separated by '-'
+     */
+    static String of(ByteBuffer bytes) {
+        int size = bytes.limit();
+        long hash = FNV_OFFSET;
+        if (size <= 2 * CHUNK_SIZE) {
+            hash = hash(bytes, 0, size, hash);
+        } else {
+            hash = hash(bytes, 0, CHUNK_SIZE, hash);
+            hash = hash(bytes, size - CHUNK_SIZE, size, hash);
+        }
+        return Long.toHexString(size) + "-" + Long.toHexString(hash);
+    }
+
+    /**
+     * Compute the fingerprint of the file a channel reads, reading only its two chunks at their positions.
+     *
+     * @param channel the channel
+     * @return the fingerprint, as the size and hash in hexadecimal separated by '-'
+     * @throws IOException if the file ends early or cannot be read
+     */
+    static String of(FileChannel channel) throws IOException {
+        long size = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size, 2L * CHUNK_SIZE));
+        if (size <= 2L * CHUNK_SIZE) {
+            readFully(channel, buffer, 0);
+        } else {
+            buffer.limit(CHUNK_SIZE);
+            readFully(channel, buffer, 0);
+            buffer.limit(2 * CHUNK_SIZE);
+            readFully(channel, buffer, size - CHUNK_SIZE);
+        }
+        long hash = hash(buffer, 0, buffer.limit(), FNV_OFFSET);
+        return Long.toHexString(size) + "-" + Long.toHexString(hash);
+    }
+
+    /**
+     * Fill a buffer up to its limit from a channel position.
+     *
+     * @param channel  the channel
+     * @param buffer   the buffer
+     * @param position the position in the channel of the buffer's position
+     * @throws IOException if the file ends early or cannot be read
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position() - start);
+            if (read < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+    }
+
+    /**
+     * Continue a hash over a range of bytes.
+     *
+     * @param bytes the bytes
+     * @param from  the index of the first byte
+     * @param to    the index after the last byte
+     * @param hash  the hash so far
+     * @return the hash
+     */
+    private static long hash(ByteBuffer bytes, int from, int to, long hash) {
+        for (int i = from; i < to; i++) {
+            hash = (hash ^ (bytes.get(i) & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,184 @@
+package photo_renamer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * A storage provider holding the records of a database manager by key, with point reads, upserts, deletes,
+ * key range scans and lookups by index term.
+ * Changes may be buffered until flush is called, and implementations are safe to call from any thread.
+ *
+ * @param <T> the type of the records
+ */
+interface DatabaseStore<T> {
+
+    /** The system property choosing the storage backend: "file", "memory", "shared" or a JDBC URL prefix. */
+    String STORAGE_PROPERTY = "photo_renamer.storage";
+
+    /**
+     * A description of how the records of a store are keyed and indexed.
+     *
+     * @param <T> the type of the records
+     */
+    interface Schema<T> {
+        /**
+         * Return the unique key of a record.
+         *
+         * @param record the record
+         * @return the key
+         */
+        String keyOf(T record);
+
+        /**
+         * Return the terms a record is indexed under.
+         *
+         * @param record the record
+         * @return the index terms
+         */
+        Collection<String> termsOf(T record);
+    }
+
+    /**
+     * A callback receiving each record found by a scan.
+     *
+     * @param <T> the type of the records
+     */
+    interface Visitor<T> {
+        /**
+         * Receive a record found by a scan.
+         *
+         * @param record the record
+         * @throws IOException an IOException exception
+         */
+        void visit(T record) throws IOException;
+    }
+
+    /**
+     * A listener to the changes other processes sharing a database made, told of each once it is applied.
+     *
+     * @param <T> the type of the records
+     */
+    interface ChangeListener<T> {
+        /**
+         * Receive a record another process put.
+         *
+         * @param record the record
+         * @throws IOException an IOException exception
+         */
+        void put(T record) throws IOException;
+
+        /**
+         * Receive the key of a record another process removed.
+         *
+         * @param key the key
+         * @throws IOException an IOException exception
+         */
+        void removed(String key) throws IOException;
+    }
+
+    /**
+     * Return the record of a key, or null if there is none.
+     *
+     * @param key the key
+     * @return the record, or null
+     * @throws IOException an IOException exception
+     */
+    T get(String key) throws IOException;
+
+    /**
+     * Insert a record, or replace the record of the same key.
+     *
+     * @param record the record
+     * @throws IOException an IOException exception
+     */
+    void put(T record) throws IOException;
+
+    /**
+     * Delete the record of a key, if there is one.
+     *
+     * @param key the key
+     * @throws IOException an IOException exception
+     */
+    void remove(String key) throws IOException;
+
+    /**
+     * Pass the records whose keys lie in a range to a visitor in key order.
+     * The visitor must not change this store.
+     *
+     * @param fromKey the inclusive lower bound of the keys, or null if unbounded
+     * @param toKey   the exclusive upper bound of the keys, or null if unbounded
+     * @param visitor the visitor receiving each record
+     * @throws IOException an IOException exception
+     */
+    void scan(String fromKey, String toKey, Visitor<T> visitor) throws IOException;
+
+    /**
+     * Return the records indexed under a term, in key order.
+     *
+     * @param term the index term
+     * @return an ArrayList of the records
+     * @throws IOException an IOException exception
+     */
+    ArrayList<T> find(String term) throws IOException;
+
+    /**
+     * Make every change so far durable.
+     *
+     * @throws IOException an IOException exception
+     */
+    void flush() throws IOException;
+
+    /**
+     * Release the resources held by this store without flushing it.
+     *
+     * @throws IOException an IOException exception
+     */
+    void close() throws IOException;
+
+    /**
+     * Tell a listener of every later change other processes sharing the database make, replacing any previous
+     * listener. Stores not shared between processes never call it.
+     *
+     * @param listener the listener, or null
+     */
+    default void setChangeListener(ChangeListener<T> listener) {
+        // Only this process changes the database.
+    }
+
+    /**
+     * Apply the changes other processes sharing the database made since they were last applied.
+     *
+     * @return the number of changes applied
+     * @throws IOException an IOException exception
+     */
+    default int refresh() throws IOException {
+        return 0;
+    }
+
+    /**
+     * Open the store of a database path with the backend chosen by the storage system property.
+     * The default backend is the SerializedFileStore, which reads and writes the path itself; the shared backend
+     * keeps the path as the snapshot of a SharedLogStore.
+     *
+     * @param path   the path of the database
+     * @param schema the schema of the records
+     * @param <T>    the type of the records
+     * @return the open store
+     * @throws IOException            an IOException exception
+     * @throws ClassNotFoundException a ClassNotFoundException exception
+     */
+    static <T> DatabaseStore<T> open(String path, Schema<T> schema) throws IOException, ClassNotFoundException {
+        String backend = System.getProperty(STORAGE_PROPERTY, "file");
+        if (backend.equals("file")) {
+            return new SerializedFileStore<>(path, schema);
+        } else if (backend.equals("memory")) {
+            return new MemoryStore<>(schema);
+        } else if (backend.equals("shared")) {
+            return new SharedLogStore<>(path, schema, snapshot -> new SerializedFileStore<>(snapshot, schema));
+        } else if (backend.startsWith("jdbc:")) {
+            return new SqlStore<>(backend + path + ".db", schema);
+        }
+        throw new IOException("Unknown storage backend: " + backend);
+    }
+}
@@ -0,0 +1,159 @@
+package photo_renamer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/** A class for testing the DatabaseStore implementations. */
+public class DatabaseStoreTest {
+    /** The schema keying Strings by themselves and indexing them by their first letter. */
+    private static final DatabaseStore.Schema<String> SCHEMA = new DatabaseStore.Schema<String>() {
+        @Override
+        public String keyOf(String record) {
+            return record;
+        }
+
+        @Override
+        public Collection<String> termsOf(String record) {
+            return Arrays.asList(record.substring(0, 1));
+        }
+    };
+    /** The path where the tested SerializedFileStore database is stored. */
+    private String path = System.getProperty("user.dir") + "/DatabaseStoreTest.txt";
+    /** The temporary directory holding the tested SqlStore database. */
+    private File sqlDir;
+    /** The JDBC URL of the tested SqlStore database, kept in an embedded H2 database. */
+    private String sqlUrl;
+    /** The stores being tested, a MemoryStore and a SqlStore, each holding the same few records. */
+    private List<DatabaseStore<String>> stores;
+
+    @Before
+    /* Set up a new MemoryStore and SqlStore holding a few records for testing. */
+    public void setUp() throws Exception {
+        sqlDir = Files.createTempDirectory("DatabaseStoreTest").toFile();
+        sqlUrl = "jdbc:h2:" + new File(sqlDir, "records").getAbsolutePath();
+        stores = Arrays.asList(new MemoryStore<>(SCHEMA), new SqlStore<>(sqlUrl, SCHEMA));
+        for (DatabaseStore<String> store : stores) {
+            for (String record : Arrays.asList("cat", "apple", "dog", "avocado", "banana")) {
+                store.put(record);
+            }
+        }
+    }
+
+    /**
+     * Return every record of a store.
+     *
+     * @param store the store
+     * @return the records in key order
+     * @throws Exception an Exception
+     */
+    private static ArrayList<String> records(DatabaseStore<String> store) throws Exception {
+        ArrayList<String> records = new ArrayList<>();
+        store.scan(null, null, records::add);
+        return records;
+    }
+
+    @Test
+    /* Test point reads and deletes. */
+    public void testGetRemove() throws Exception {
+        for (DatabaseStore<String> store : stores) {
+            assertEquals("dog", store.get("dog"));
+            store.remove("dog");
+            assertNull(store.get("dog"));
+            assertNull(store.get("emu"));
+        }
+    }
+
+    @Test
+    /* Test scanning a range of keys in key order. */
+    public void testScanRange() throws Exception {
+        for (DatabaseStore<String> store : stores) {
+            ArrayList<String> result = new ArrayList<>();
+            store.scan("b", "d", result::add);
+            ArrayList<String> expected = new ArrayList<>(Arrays.asList("banana", "cat"));
+            assertEquals(expected, result);
+            assertEquals(Arrays.asList("apple", "avocado", "banana", "cat", "dog"), records(store));
+        }
+    }
+
+    @Test
+    /* Test finding records by index term after one of them is removed and another replaced. */
+    public void testFind() throws Exception {
+        for (DatabaseStore<String> store : stores) {
+            store.remove("apple");
+            store.put("avocado");
+            Object result = store.find("a");
+            ArrayList<String> expected = new ArrayList<>(Arrays.asList("avocado"));
+            assertEquals(expected, result);
+        }
+    }
+
+    @Test
+    /* Test that a SqlStore keeps flushed changes and drops unflushed ones when reopened, also through open. */
+    public void testSqlFlush() throws Exception {
+        DatabaseStore<String> sqlStore = stores.get(1);
+        sqlStore.flush();
+        sqlStore.remove("cat");
+        sqlStore.close();
+        SqlStore<String> reopened = new SqlStore<>(sqlUrl, SCHEMA);
+        assertEquals(Arrays.asList("apple", "avocado", "banana", "cat", "dog"), records(reopened));
+        reopened.remove("cat");
+        reopened.flush();
+        reopened.close();
+
+        String backend = System.getProperty(DatabaseStore.STORAGE_PROPERTY);
+        System.setProperty(DatabaseStore.STORAGE_PROPERTY, "jdbc:h2:");
+        try {
+            DatabaseStore<String> opened = DatabaseStore.open(new File(sqlDir, "opened").getAbsolutePath(), SCHEMA);
+            opened.put("emu");
+            opened.flush();
+            opened.close();
+            opened = DatabaseStore.open(new File(sqlDir, "opened").getAbsolutePath(), SCHEMA);
+            assertEquals(Collections.singletonList("emu"), opened.find("e"));
+            opened.close();
+        } finally {
+            if (backend == null) {
+                System.clearProperty(DatabaseStore.STORAGE_PROPERTY);
+            } else {
+                System.setProperty(DatabaseStore.STORAGE_PROPERTY, backend);
+            }
+        }
+        reopened = new SqlStore<>(sqlUrl, SCHEMA);
+        assertEquals(Arrays.asList("apple", "avocado", "banana", "dog"), records(reopened));
+        reopened.close();
+    }
+
+    @Test
+    /* Test that a flushed SerializedFileStore is read back by a new one. */
+    public void testFileWriteRead() throws Exception {
+        SerializedFileStore<String> fileStore = new SerializedFileStore<>(path, SCHEMA);
+        fileStore.put("dog");
+        fileStore.put("cat");
+        fileStore.flush();
+        Object result = new SerializedFileStore<>(path, SCHEMA).values();
+        ArrayList<String> expected = new ArrayList<>(Arrays.asList("cat", "dog"));
+        assertEquals(expected, result);
+    }
+
+    @After
+    /* Delete system artifacts generated by DatabaseStore testing. */
+    public void tearDown() throws Exception {
+        File database = new File(path);
+        database.delete();
+        for (DatabaseStore<String> store : stores) {
+            store.close();
+        }
+        Files.walk(sqlDir.toPath()).sorted(Collections.reverseOrder()).forEach(p -> p.toFile().delete());
+    }
+}
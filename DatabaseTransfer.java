@@ -0,0 +1,772 @@
+package photo_renamer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Streaming export and import of the Tag and history databases as text with one record per line, in JSON Lines or
+ * CSV. Tags are written first, then every recorded image with its current Tags, name history, fingerprint and
+ * hashes, one at a time, so exporting holds no more than a catalog snapshot. Importing reads chunks of lines on the
+ * calling thread, parses them in parallel with a bounded number of chunks in flight, and applies the records in
+ * file order, so memory stays bounded however large the file is.
+ */
+class DatabaseTransfer {
+
+    /** The number of records parsed together as one chunk. */
+    static final int CHUNK_LINES = 4096;
+    /** The header line of the CSV format, naming its columns. */
+    static final String CSV_HEADER = "type,path,name,tags,history,fingerprint,perceptual_hash,"
+            + "perceptual_hash_modified,missing_since";
+
+    /** The text formats of an exported database. */
+    enum Format {
+        /** One JSON object per line. */
+        JSONL,
+        /** One CSV row per record after a header, with lists joined by '|'. */
+        CSV;
+
+        /**
+         * Return the format of a file by its extension, JSON Lines unless it ends with ".csv".
+         *
+         * @param path the path of the file
+         * @return the Format
+         */
+        static Format of(String path) {
+            return path.toLowerCase().endsWith(".csv") ? CSV : JSONL;
+        }
+    }
+
+    /** The TagManager managing the database of Tags. */
+    private final TagManager tagManager;
+    /** The Library whose shards hold the history database. */
+    private final Library library;
+
+    /**
+     * Construct a transfer of the databases of two managers.
+     *
+     * @param tagManager     the TagManager managing the database of Tags
+     * @param historyManager the ImageHistoryManager managing the history database
+     */
+    DatabaseTransfer(TagManager tagManager, ImageHistoryManager historyManager) {
+        this(tagManager, new Library(historyManager));
+    }
+
+    /**
+     * Construct a transfer of the Tag database and the history database sharded by a Library. Images are exported
+     * shard by shard and imported into the shard of their root, without registering roots.
+     *
+     * @param tagManager the TagManager managing the database of Tags
+     * @param library    the Library whose shards hold the history database
+     */
+    DatabaseTransfer(TagManager tagManager, Library library) {
+        this.tagManager = tagManager;
+        this.library = library;
+    }
+
+    /**
+     * Write every Tag and every recorded image, one record per line.
+     *
+     * @param out    the writer the records are written to
+     * @param format the Format of the records
+     * @return the number of records written
+     * @throws IOException an IOException exception
+     */
+    long export(Writer out, Format format) throws IOException {
+        long count = 0;
+        if (format == Format.CSV) {
+            out.write(CSV_HEADER + "\n");
+        }
+        for (Tag tag : tagManager.tags) {
+            out.write(format == Format.CSV ? tagRow(tag) : tagObject(tag));
+            count++;
+        }
+        long[] images = {0};
+        library.forEachShard(shard -> {
+            for (ImageFile image : shard.getImages()) {
+                // The monitor keeps a record consistent with itself while its image is being renamed.
+                synchronized (image) {
+                    out.write(format == Format.CSV ? imageRow(image) : imageObject(image));
+                }
+                images[0]++;
+            }
+        });
+        return count + images[0];
+    }
+
+    /**
+     * Read records written by export and add them to the databases. An imported image replaces any record at its
+     * path; when merging, a record at its path instead keeps its Tags and fields, gains the imported past names and
+     * takes the fingerprint and perceptual hash it lacks. The databases are not saved.
+     *
+     * @param in      the reader the records are read from
+     * @param format  the Format of the records
+     * @param merge   whether to merge with records at the same paths rather than replace them
+     * @param threads the number of threads parsing chunks of lines
+     * @return the number of records imported
+     * @throws IOException an IOException exception, also thrown for a malformed record
+     */
+    long importFrom(BufferedReader in, Format format, boolean merge, int threads) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<ArrayList<Record>>> parsing = new ArrayDeque<>();
+        long count = 0;
+        try {
+            long recordNumber = 0;
+            if (format == Format.CSV) {
+                String header = in.readLine();
+                recordNumber++;
+                if (header != null && !header.equals(CSV_HEADER)) {
+                    throw new IOException("Record 1: unknown CSV header");
+                }
+            }
+            while (true) {
+                ArrayList<String> chunk = new ArrayList<>(CHUNK_LINES);
+                long firstRecord = recordNumber + 1;
+                String line;
+                while (chunk.size() < CHUNK_LINES && (line = readRecord(in, format)) != null) {
+                    chunk.add(line);
+                    recordNumber++;
+                }
+                if (chunk.isEmpty()) {
+                    break;
+                }
+                parsing.add(pool.submit(() -> parse(chunk, format, firstRecord)));
+                // Applying the oldest chunk once enough are in flight keeps the lines held in memory bounded.
+                if (parsing.size() > threads * 2) {
+                    count += apply(await(parsing.poll()), merge);
+                }
+            }
+            while (!parsing.isEmpty()) {
+                count += apply(await(parsing.poll()), merge);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return count;
+    }
+
+    /**
+     * Read the next record of a file, which in CSV may span lines inside a quoted field.
+     *
+     * @param in     the reader
+     * @param format the Format of the records
+     * @return the record, or null at the end of the file
+     * @throws IOException an IOException exception
+     */
+    private static String readRecord(BufferedReader in, Format format) throws IOException {
+        String line = in.readLine();
+        if (format == Format.JSONL || line == null) {
+            return line;
+        }
+        StringBuilder record = new StringBuilder(line);
+        while (quotes(record) % 2 != 0 && (line = in.readLine()) != null) {
+            record.append('\n').append(line);
+        }
+        return record.toString();
+    }
+
+    /**
+     * Return the number of double quotes in a CSV record.
+     *
+     * @param record the record
+     * @return the number of quotes
+     */
+    private static int quotes(CharSequence record) {
+        int quotes = 0;
+        for (int i = 0; i < record.length(); i++) {
+            if (record.charAt(i) == '"') {
+                quotes++;
+            }
+        }
+        return quotes;
+    }
+
+    /**
+     * Wait for a chunk to be parsed.
+     *
+     * @param future the parsing of the chunk
+     * @return the parsed records
+     * @throws IOException an IOException exception thrown by the parsing
+     */
+    private static ArrayList<Record> await(Future<ArrayList<Record>> future) throws IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while importing", e);
+        }
+    }
+
+    /**
+     * Parse a chunk of records, skipping blank lines.
+     *
+     * @param lines       the records
+     * @param format      the Format of the records
+     * @param firstRecord the number of the first record in the file, for error messages
+     * @return an ArrayList of the parsed records
+     * @throws IOException an IOException exception for a malformed record
+     */
+    private static ArrayList<Record> parse(List<String> lines, Format format, long firstRecord) throws IOException {
+        ArrayList<Record> records = new ArrayList<>(lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                records.add(format == Format.CSV ? Record.fromRow(line) : Record.fromObject(line));
+            } catch (IOException | RuntimeException e) {
+                throw new IOException("Record " + (firstRecord + i) + ": " + e.getMessage(), e);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Add parsed records to the databases, in order.
+     *
+     * @param records the records
+     * @param merge   whether to merge with records at the same paths rather than replace them
+     * @return the number of records added
+     * @throws IOException an IOException exception
+     */
+    private int apply(ArrayList<Record> records, boolean merge) throws IOException {
+        for (Record record : records) {
+            if (record.path == null) {
+                tagManager.addTag(new Tag(record.name));
+                continue;
+            }
+            ArrayList<Tag> tags = new ArrayList<>(record.tags.size());
+            for (String tagName : record.tags) {
+                tagManager.addTag(new Tag(tagName));
+                tags.add(tagManager.getTag(tagName));
+            }
+            ImageFile imported = new ImageFile(record.name, tags, record.path,
+                    record.history.isEmpty() ? NameHistory.EMPTY.with(record.name) : NameHistory.of(record.history));
+            imported.contentFingerprint = record.fingerprint;
+            imported.perceptualHash = record.perceptualHash;
+            imported.perceptualHashModified = record.perceptualHashModified;
+            imported.missingSince = record.missingSince;
+            ImageHistoryManager historyManager = library.shardOf(record.path);
+            ImageFile recorded = historyManager.getImage(record.path);
+            if (merge && recorded != null) {
+                recorded.merge(imported);
+                historyManager.changed(Collections.singletonList(recorded));
+            } else {
+                if (recorded != null) {
+                    tagManager.recordUsage(recorded.tags, -1);
+                }
+                historyManager.putImage(imported);
+                tagManager.recordUsage(tags, 1);
+            }
+        }
+        return records.size();
+    }
+
+    /**
+     * Return the JSON Lines record of a Tag.
+     *
+     * @param tag the Tag
+     * @return the record, ending with a newline
+     */
+    private static String tagObject(Tag tag) {
+        StringBuilder json = new StringBuilder("{\"type\":\"tag\",\"name\":");
+        QueryServer.appendString(json, tag.name);
+        return json.append("}\n").toString();
+    }
+
+    /**
+     * Return the JSON Lines record of an image.
+     *
+     * @param image the ImageFile
+     * @return the record, ending with a newline
+     */
+    private static String imageObject(ImageFile image) {
+        StringBuilder json = new StringBuilder("{\"type\":\"image\",\"path\":");
+        QueryServer.appendString(json, image.imgFilePath);
+        json.append(",\"name\":");
+        QueryServer.appendString(json, image.name);
+        json.append(",\"tags\":");
+        QueryServer.appendStrings(json, tagNames(image.tags));
+        json.append(",\"history\":");
+        QueryServer.appendStrings(json, image.nameHistory.toList());
+        if (image.contentFingerprint != null) {
+            json.append(",\"fingerprint\":");
+            QueryServer.appendString(json, image.contentFingerprint);
+        }
+        json.append(",\"perceptualHash\":").append(image.perceptualHash);
+        json.append(",\"perceptualHashModified\":").append(image.perceptualHashModified);
+        json.append(",\"missingSince\":").append(image.missingSince);
+        return json.append("}\n").toString();
+    }
+
+    /**
+     * Return the CSV record of a Tag.
+     *
+     * @param tag the Tag
+     * @return the record, ending with a newline
+     */
+    private static String tagRow(Tag tag) {
+        return "tag,\"\"," + PhotoRenamerCli.csvField(tag.name) + ",,,,,,\n";
+    }
+
+    /**
+     * Return the CSV record of an image.
+     *
+     * @param image the ImageFile
+     * @return the record, ending with a newline
+     */
+    private static String imageRow(ImageFile image) {
+        return "image," + PhotoRenamerCli.csvField(image.imgFilePath) + "," + PhotoRenamerCli.csvField(image.name)
+                + "," + PhotoRenamerCli.csvField(joinList(tagNames(image.tags)))
+                + "," + PhotoRenamerCli.csvField(joinList(image.nameHistory.toList()))
+                + "," + (image.contentFingerprint == null ? "" : image.contentFingerprint)
+                + "," + image.perceptualHash + "," + image.perceptualHashModified + "," + image.missingSince + "\n";
+    }
+
+    /**
+     * Return the names of Tags.
+     *
+     * @param tags the Tags
+     * @return an ArrayList of the names
+     */
+    private static ArrayList<String> tagNames(List<Tag> tags) {
+        ArrayList<String> names = new ArrayList<>(tags.size());
+        for (Tag tag : tags) {
+            names.add(tag.name);
+        }
+        return names;
+    }
+
+    /**
+     * Return values joined by '|', escaping '|' and '\' in them with '\'.
+     *
+     * @param values the values
+     * @return the joined values
+     */
+    static String joinList(List<String> values) {
+        StringBuilder joined = new StringBuilder();
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                joined.append('|');
+            }
+            String value = values.get(i);
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                if (c == '|' || c == '\\') {
+                    joined.append('\\');
+                }
+                joined.append(c);
+            }
+        }
+        return joined.toString();
+    }
+
+    /**
+     * Return the values joined by joinList.
+     *
+     * @param joined the joined values
+     * @return an ArrayList of the values, empty if the joined values are empty
+     */
+    static ArrayList<String> splitList(String joined) {
+        ArrayList<String> values = new ArrayList<>();
+        if (joined.isEmpty()) {
+            return values;
+        }
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < joined.length(); i++) {
+            char c = joined.charAt(i);
+            if (c == '\\' && i + 1 < joined.length()) {
+                value.append(joined.charAt(++i));
+            } else if (c == '|') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+        return values;
+    }
+
+    /** A parsed record of a Tag, whose path is null, or of an image. */
+    private static final class Record {
+
+        /** The system path of the image, or null for a Tag. */
+        private String path;
+        /** The name of the image or Tag. */
+        private String name;
+        /** The names of the Tags of the image. */
+        private List<String> tags = Collections.emptyList();
+        /** The past names of the image. */
+        private List<String> history = Collections.emptyList();
+        /** The ContentFingerprint of the image, or null. */
+        private String fingerprint;
+        /** The perceptual hash of the image. */
+        private long perceptualHash;
+        /** The modification time the perceptual hash was computed at, or 0. */
+        private long perceptualHashModified;
+        /** The time the image was first found missing, or 0. */
+        private long missingSince;
+
+        /**
+         * Parse a JSON Lines record. Unknown fields are ignored.
+         *
+         * @param line the record
+         * @return the Record
+         * @throws IOException an IOException exception for a malformed record
+         */
+        static Record fromObject(String line) throws IOException {
+            HashMap<String, Object> fields = new JsonReader(line).readObject();
+            Record record = new Record();
+            Object type = fields.get("type");
+            record.name = string(fields, "name");
+            if ("image".equals(type)) {
+                record.path = string(fields, "path");
+                record.tags = strings(fields, "tags");
+                record.history = strings(fields, "history");
+                Object fingerprint = fields.get("fingerprint");
+                record.fingerprint = fingerprint instanceof String ? (String) fingerprint : null;
+                record.perceptualHash = number(fields, "perceptualHash");
+                record.perceptualHashModified = number(fields, "perceptualHashModified");
+                record.missingSince = number(fields, "missingSince");
+            } else if (!"tag".equals(type)) {
+                throw new IOException("unknown record type " + type);
+            }
+            return record;
+        }
+
+        /**
+         * Parse a CSV record.
+         *
+         * @param row the record
+         * @return the Record
+         * @throws IOException an IOException exception for a malformed record
+         */
+        static Record fromRow(String row) throws IOException {
+            ArrayList<String> fields = csvFields(row);
+            if (fields.size() != 9) {
+                throw new IOException("expected 9 fields but found " + fields.size());
+            }
+            Record record = new Record();
+            record.name = fields.get(2);
+            if (fields.get(0).equals("image")) {
+                record.path = fields.get(1);
+                record.tags = splitList(fields.get(3));
+                record.history = splitList(fields.get(4));
+                record.fingerprint = fields.get(5).isEmpty() ? null : fields.get(5);
+                record.perceptualHash = Long.parseLong(fields.get(6));
+                record.perceptualHashModified = Long.parseLong(fields.get(7));
+                record.missingSince = Long.parseLong(fields.get(8));
+            } else if (!fields.get(0).equals("tag")) {
+                throw new IOException("unknown record type " + fields.get(0));
+            }
+            if (record.name.isEmpty()) {
+                throw new IOException("missing name");
+            }
+            return record;
+        }
+
+        /**
+         * Split a CSV record into its unquoted fields.
+         *
+         * @param row the record
+         * @return an ArrayList of the fields
+         */
+        private static ArrayList<String> csvFields(String row) {
+            ArrayList<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < row.length(); i++) {
+                char c = row.charAt(i);
+                if (quoted) {
+                    if (c != '"') {
+                        field.append(c);
+                    } else if (i + 1 < row.length() && row.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else {
+                    field.append(c);
+                }
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+
+        /**
+         * Return a required string field of a JSON object.
+         *
+         * @param fields the fields of the object
+         * @param key    the name of the field
+         * @return the string
+         * @throws IOException an IOException exception if the field is missing or not a string
+         */
+        private static String string(HashMap<String, Object> fields, String key) throws IOException {
+            Object value = fields.get(key);
+            if (!(value instanceof String) || ((String) value).isEmpty()) {
+                throw new IOException("missing " + key);
+            }
+            return (String) value;
+        }
+
+        /**
+         * Return an optional array of strings field of a JSON object.
+         *
+         * @param fields the fields of the object
+         * @param key    the name of the field
+         * @return the strings, empty if the field is missing
+         * @throws IOException an IOException exception if the field is not an array of strings
+         */
+        @SuppressWarnings("unchecked")
+        private static List<String> strings(HashMap<String, Object> fields, String key) throws IOException {
+            Object value = fields.get(key);
+            if (value == null) {
+                return Collections.emptyList();
+            }
+            if (!(value instanceof List)) {
+                throw new IOException(key + " is not an array");
+            }
+            for (Object item : (List<Object>) value) {
+                if (!(item instanceof String)) {
+                    throw new IOException(key + " holds a value that is not a string");
+                }
+            }
+            return (List<String>) value;
+        }
+
+        /**
+         * Return an optional whole number field of a JSON object.
+         *
+         * @param fields the fields of the object
+         * @param key    the name of the field
+         * @return the number, or 0 if the field is missing
+         * @throws IOException an IOException exception if the field is not a number
+         */
+        private static long number(HashMap<String, Object> fields, String key) throws IOException {
+            Object value = fields.get(key);
+            if (value == null) {
+                return 0;
+            }
+            if (!(value instanceof Long)) {
+                throw new IOException(key + " is not a whole number");
+            }
+            return (Long) value;
+        }
+    }
+
+    /**
+     * A reader of the flat JSON objects written by export: string keys whose values are strings, whole numbers,
+     * arrays of those, booleans or null.
+     */
+    private static final class JsonReader {
+
+        /** The JSON being read. */
+        private final String json;
+        /** The index of the next character to read. */
+        private int at;
+
+        /**
+         * Construct a reader of a JSON text.
+         *
+         * @param json the JSON text
+         */
+        JsonReader(String json) {
+            this.json = json;
+        }
+
+        /**
+         * Read the object making up the whole text.
+         *
+         * @return a HashMap of the fields of the object
+         * @throws IOException an IOException exception for malformed JSON
+         */
+        HashMap<String, Object> readObject() throws IOException {
+            HashMap<String, Object> fields = new HashMap<>();
+            expect('{');
+            if (peek() == '}') {
+                at++;
+            } else {
+                do {
+                    String key = readString();
+                    expect(':');
+                    fields.put(key, readValue());
+                } while (next(',', '}') == ',');
+            }
+            if (peek() != 0) {
+                throw error("trailing characters");
+            }
+            return fields;
+        }
+
+        /**
+         * Read a value that is not an object.
+         *
+         * @return the String, Long, List, Boolean or null read
+         * @throws IOException an IOException exception for malformed JSON
+         */
+        private Object readValue() throws IOException {
+            char c = peek();
+            if (c == '"') {
+                return readString();
+            } else if (c == '[') {
+                at++;
+                ArrayList<Object> values = new ArrayList<>();
+                if (peek() == ']') {
+                    at++;
+                    return values;
+                }
+                do {
+                    values.add(readValue());
+                } while (next(',', ']') == ',');
+                return values;
+            } else if (c == '-' || (c >= '0' && c <= '9')) {
+                int start = at++;
+                while (at < json.length() && Character.isDigit(json.charAt(at))) {
+                    at++;
+                }
+                try {
+                    return Long.parseLong(json.substring(start, at));
+                } catch (NumberFormatException e) {
+                    throw error("malformed number");
+                }
+            }
+            for (String literal : new String[]{"true", "false", "null"}) {
+                if (json.startsWith(literal, at)) {
+                    at += literal.length();
+                    return literal.equals("null") ? null : Boolean.valueOf(literal);
+                }
+            }
+            throw error("unexpected character");
+        }
+
+        /**
+         * Read a string literal.
+         *
+         * @return the decoded string
+         * @throws IOException an IOException exception for malformed JSON
+         */
+        private String readString() throws IOException {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                if (at >= json.length()) {
+                    throw error("unterminated string");
+                }
+                char c = json.charAt(at++);
+                if (c == '"') {
+                    return value.toString();
+                } else if (c != '\\') {
+                    value.append(c);
+                } else if (at >= json.length()) {
+                    throw error("unterminated string");
+                } else {
+                    char escaped = json.charAt(at++);
+                    switch (escaped) {
+                        case 'b':
+                            value.append('\b');
+                            break;
+                        case 'f':
+                            value.append('\f');
+                            break;
+                        case 'n':
+                            value.append('\n');
+                            break;
+                        case 'r':
+                            value.append('\r');
+                            break;
+                        case 't':
+                            value.append('\t');
+                            break;
+                        case 'u':
+                            if (at + 4 > json.length()) {
+                                throw error("malformed escape");
+                            }
+                            try {
+                                value.append((char) Integer.parseInt(json.substring(at, at + 4), 16));
+                            } catch (NumberFormatException e) {
+                                throw error("malformed escape");
+                            }
+                            at += 4;
+                            break;
+                        default:
+                            value.append(escaped);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Skip whitespace and return the next character without reading it.
+         *
+         * @return the character, or 0 at the end of the text
+         */
+        private char peek() {
+            while (at < json.length() && Character.isWhitespace(json.charAt(at))) {
+                at++;
+            }
+            return at < json.length() ? json.charAt(at) : 0;
+        }
+
+        /**
+         * Read a character that must come next.
+         *
+         * @param c the character
+         * @throws IOException an IOException exception if another character comes next
+         */
+        private void expect(char c) throws IOException {
+            if (peek() != c) {
+                throw error("expected '" + c + "'");
+            }
+            at++;
+        }
+
+        /**
+         * Read the next character, which must be one of two.
+         *
+         * @param a one character
+         * @param b the other character
+         * @return the character read
+         * @throws IOException an IOException exception if neither comes next
+         */
+        private char next(char a, char b) throws IOException {
+            char c = peek();
+            if (c != a && c != b) {
+                throw error("expected '" + a + "' or '" + b + "'");
+            }
+            at++;
+            return c;
+        }
+
+        /**
+         * Return an exception for malformed JSON at the current character.
+         *
+         * @param message what is wrong
+         * @return the IOException
+         */
+        private IOException error(String message) {
+            return new IOException(message + " at column " + (at + 1));
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package photo_renamer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/** A class for testing DatabaseTransfer. */
+public class DatabaseTransferTest {
+    /** The temporary directory holding the databases. */
+    private File dir;
+    /** The directory the transferred images are said to be in. */
+    private String imageDir = new File(System.getProperty("user.dir"), "transfer").getAbsolutePath() + File.separator;
+
+    @Before
+    /* Set up a new temporary directory for testing. */
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("DatabaseTransferTest").toFile();
+    }
+
+    @After
+    /* Delete the databases written by a test. */
+    public void tearDown() throws Exception {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    /**
+     * Return a transfer of new, empty databases.
+     *
+     * @param name the name distinguishing the databases
+     * @return the DatabaseTransfer
+     * @throws Exception an Exception
+     */
+    private DatabaseTransfer transfer(String name) throws Exception {
+        return new DatabaseTransfer(new TagManager(new File(dir, name + "-tags.ser").getPath()),
+                new ImageHistoryManager(new File(dir, name + "-history.ser").getPath()));
+    }
+
+    /**
+     * Record an image carrying Tags through a TagManager and an ImageHistoryManager.
+     *
+     * @param tagManager     the TagManager
+     * @param historyManager the ImageHistoryManager
+     * @param name           the name of the image
+     * @param tagNames       the names of the Tags
+     * @return the recorded ImageFile
+     * @throws Exception an Exception
+     */
+    private ImageFile record(TagManager tagManager, ImageHistoryManager historyManager, String name,
+                             String... tagNames) throws Exception {
+        ArrayList<Tag> tags = new ArrayList<>();
+        for (String tagName : tagNames) {
+            tagManager.addTag(new Tag(tagName));
+            tags.add(tagManager.getTag(tagName));
+        }
+        ImageFile image = new ImageFile(name, tags, imageDir + name);
+        historyManager.putImage(image);
+        return image;
+    }
+
+    @Test
+    /* Test that every field survives exporting and importing in both formats, including awkward names. */
+    public void testRoundTrip() throws Exception {
+        TagManager tagManager = new TagManager(new File(dir, "tags.ser").getPath());
+        ImageHistoryManager historyManager = new ImageHistoryManager(new File(dir, "history.ser").getPath());
+        tagManager.addTag(new Tag("unused"));
+        ImageFile image = record(tagManager, historyManager, "a \"quoted\", b|c @sun.jpg", "sun");
+        image.nameHistory = NameHistory.of(Arrays.asList("a\\b\nline.jpg", image.name));
+        image.contentFingerprint = "1f4-8000000000000abc";
+        image.perceptualHash = -42;
+        image.perceptualHashModified = 7;
+        image.missingSince = 9;
+        historyManager.changed(Arrays.asList(image));
+        for (DatabaseTransfer.Format format : DatabaseTransfer.Format.values()) {
+            StringWriter exported = new StringWriter();
+            assertEquals(3, new DatabaseTransfer(tagManager, historyManager).export(exported, format));
+            TagManager tagCopy = new TagManager(new File(dir, format + "-tags.ser").getPath());
+            ImageHistoryManager historyCopy = new ImageHistoryManager(new File(dir, format + "-history.ser").getPath());
+            assertEquals(3, new DatabaseTransfer(tagCopy, historyCopy).importFrom(
+                    new BufferedReader(new StringReader(exported.toString())), format, false, 2));
+            assertTrue(tagCopy.hasTag(new Tag("unused")));
+            ImageFile read = historyCopy.getImage(image.imgFilePath);
+            assertNotNull(read);
+            assertEquals(image.name, read.name);
+            assertEquals(image.tags, read.tags);
+            assertEquals(new ArrayList<>(image.nameHistory.toList()), new ArrayList<>(read.nameHistory.toList()));
+            assertEquals(image.contentFingerprint, read.contentFingerprint);
+            assertEquals(-42, read.perceptualHash);
+            assertEquals(7, read.perceptualHashModified);
+            assertEquals(9, read.missingSince);
+        }
+    }
+
+    @Test
+    /* Test that merging keeps the Tags of a recorded image and gains the imported past names and hashes. */
+    public void testMerge() throws Exception {
+        TagManager tagManager = new TagManager(new File(dir, "tags.ser").getPath());
+        ImageHistoryManager historyManager = new ImageHistoryManager(new File(dir, "history.ser").getPath());
+        ImageFile exported = record(tagManager, historyManager, "one.jpg", "sea");
+        exported.nameHistory = exported.nameHistory.with("old.jpg");
+        exported.perceptualHash = 5;
+        exported.perceptualHashModified = 6;
+        StringWriter out = new StringWriter();
+        new DatabaseTransfer(tagManager, historyManager).export(out, DatabaseTransfer.Format.JSONL);
+
+        TagManager otherTags = new TagManager(new File(dir, "other-tags.ser").getPath());
+        ImageHistoryManager otherHistory = new ImageHistoryManager(new File(dir, "other-history.ser").getPath());
+        ImageFile kept = record(otherTags, otherHistory, "one.jpg", "sun");
+        new DatabaseTransfer(otherTags, otherHistory).importFrom(
+                new BufferedReader(new StringReader(out.toString())), DatabaseTransfer.Format.JSONL, true, 1);
+        ImageFile merged = otherHistory.getImage(kept.imgFilePath);
+        assertEquals(Arrays.asList(new Tag("sun")), merged.tags);
+        assertEquals(Arrays.asList("one.jpg", "old.jpg"), new ArrayList<>(merged.nameHistory.toList()));
+        assertEquals(5, merged.perceptualHash);
+        assertTrue(otherTags.hasTag(new Tag("sea")));
+    }
+
+    @Test
+    /* Test that a malformed record is reported with its number. */
+    public void testMalformed() throws Exception {
+        String lines = "{\"type\":\"tag\",\"name\":\"sun\"}\n{\"type\":\"image\",\"name\":\"x.jpg\"}\n";
+        try {
+            transfer("bad").importFrom(new BufferedReader(new StringReader(lines)),
+                    DatabaseTransfer.Format.JSONL, false, 1);
+            fail("A record without a path was imported");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Record 2: missing path"));
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package photo_renamer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A finder of near-duplicate ImageFiles by the Hamming distance between their perceptual hashes.
+ * Hashes are kept on each ImageFile, and so saved with the history database, and only recomputed
+ * when the image file has been modified since.
+ */
+class DuplicateFinder {
+
+    /** The ImageFiles being compared. */
+    private final List<ImageFile> images;
+
+    /**
+     * Construct a finder comparing the argued ImageFiles.
+     *
+     * @param images the ImageFiles being compared
+     */
+    DuplicateFinder(List<ImageFile> images) {
+        this.images = images;
+    }
+
+    /**
+     * Compute in parallel the perceptual hash of every ImageFile whose hash is missing or out of date.
+     * Images that cannot be decoded are left without a hash and are never reported as duplicates.
+     *
+     * @return an ArrayList of the ImageFiles whose hashes were computed
+     */
+    ArrayList<ImageFile> computeHashes() {
+        ConcurrentLinkedQueue<ImageFile> computed = new ConcurrentLinkedQueue<>();
+        images.parallelStream().forEach(image -> {
+            long modified = image.imgFile.lastModified();
+            if (modified != 0 && image.perceptualHashModified != modified) {
+                try {
+                    image.perceptualHash = PerceptualHash.of(image.imgFile);
+                    image.perceptualHashModified = modified;
+                    computed.add(image);
+                } catch (IOException | RuntimeException e) {
+                    image.perceptualHashModified = 0;
+                }
+            }
+        });
+        return new ArrayList<>(computed);
+    }
+
+    /**
+     * Group the hashed ImageFiles into clusters in which every ImageFile is within a distance
+     * of at least one other, found with one BK-tree query per ImageFile rather than comparing every pair.
+     *
+     * @param maxDistance the largest Hamming distance between near-duplicates
+     * @return the clusters of two or more near-duplicate ImageFiles
+     */
+    List<List<ImageFile>> findClusters(int maxDistance) {
+        BkTree tree = new BkTree();
+        for (int i = 0; i < images.size(); i++) {
+            if (images.get(i).perceptualHashModified != 0) {
+                tree.add(images.get(i).perceptualHash, i);
+            }
+        }
+        // Union every ImageFile with its neighbours, then gather each set with more than one member.
+        int[] parents = new int[images.size()];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = i;
+        }
+        for (int i = 0; i < images.size(); i++) {
+            if (images.get(i).perceptualHashModified != 0) {
+                for (int neighbour : tree.within(images.get(i).perceptualHash, maxDistance)) {
+                    parents[find(parents, neighbour)] = find(parents, i);
+                }
+            }
+        }
+        HashMap<Integer, List<ImageFile>> clusters = new HashMap<>();
+        for (int i = 0; i < images.size(); i++) {
+            clusters.computeIfAbsent(find(parents, i), root -> new ArrayList<>()).add(images.get(i));
+        }
+        List<List<ImageFile>> duplicates = new ArrayList<>();
+        for (List<ImageFile> cluster : clusters.values()) {
+            if (cluster.size() > 1) {
+                duplicates.add(cluster);
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * Return the representative of an element's set, halving the path to it along the way.
+     *
+     * @param parents the parent of each element
+     * @param element the element
+     * @return the representative of its set
+     */
+    private static int find(int[] parents, int element) {
+        while (parents[element] != element) {
+            parents[element] = parents[parents[element]];
+            element = parents[element];
+        }
+        return element;
+    }
+}
@@ -0,0 +1,100 @@
+package photo_renamer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A garbage collector of history entries whose image files have disappeared.
+ * An entry is first marked missing, giving a moved file the chance to be relinked by its content fingerprint
+ * on a later scan, and only removed once it has stayed missing for a grace period.
+ * Checking the file system is split from changing the history, so the slow part can run on a background thread.
+ */
+class HistorySweeper {
+
+    /** The time an entry may stay missing before it is removed. */
+    static final long GRACE_MILLIS = TimeUnit.DAYS.toMillis(30);
+    /** The ImageHistoryManager being swept. */
+    private final ImageHistoryManager historyManager;
+    /** The time an entry may stay missing before it is removed by this sweeper. */
+    private final long graceMillis;
+
+    /**
+     * Construct a sweeper for a history database.
+     *
+     * @param historyManager the ImageHistoryManager being swept
+     * @param graceMillis    the time an entry may stay missing before it is removed
+     */
+    HistorySweeper(ImageHistoryManager historyManager, long graceMillis) {
+        this.historyManager = historyManager;
+        this.graceMillis = graceMillis;
+    }
+
+    /**
+     * Check which of the argued ImageFiles exist, touching only the file system, so it is safe to call
+     * off the thread mutating the history on a snapshot of the list of ImageFiles.
+     *
+     * @param images a snapshot of the ImageFiles in the history
+     * @return the result of the check, to be passed to apply
+     */
+    Sweep check(List<ImageFile> images) {
+        Sweep sweep = new Sweep();
+        for (ImageFile image : images) {
+            String path = image.imgFilePath;
+            boolean exists = new File(path).exists();
+            if (!exists || image.missingSince != 0) {
+                sweep.images.add(image);
+                sweep.paths.add(path);
+                sweep.exists.add(exists);
+            }
+        }
+        return sweep;
+    }
+
+    /**
+     * Mark newly missing entries, unmark reappeared ones and remove those missing beyond the grace period.
+     * Must be called on the thread mutating the history.
+     *
+     * @param sweep the result of check
+     * @return the number of entries removed
+     * @throws IOException an IOException exception
+     */
+    int apply(Sweep sweep) throws IOException {
+        long now = System.currentTimeMillis();
+        ArrayList<ImageFile> dead = new ArrayList<>();
+        ArrayList<ImageFile> marked = new ArrayList<>();
+        for (int i = 0; i < sweep.images.size(); i++) {
+            ImageFile image = sweep.images.get(i);
+            // Entries renamed or relinked since they were checked are left for the next sweep.
+            if (!image.imgFilePath.equals(sweep.paths.get(i))) {
+                continue;
+            }
+            if (sweep.exists.get(i)) {
+                image.missingSince = 0;
+                marked.add(image);
+            } else if (image.missingSince == 0) {
+                image.missingSince = now;
+                marked.add(image);
+            } else if (now - image.missingSince >= graceMillis) {
+                dead.add(image);
+            }
+        }
+        historyManager.removeImages(dead);
+        if (!marked.isEmpty()) {
+            historyManager.changed(marked);
+        }
+        return dead.size();
+    }
+
+    /** The existence of the history entries found missing or previously marked missing by a check. */
+    static class Sweep {
+        /** The checked ImageFiles. */
+        final ArrayList<ImageFile> images = new ArrayList<>();
+        /** The path each ImageFile had when checked. */
+        final ArrayList<String> paths = new ArrayList<>();
+        /** Whether each ImageFile's image file existed when checked. */
+        final ArrayList<Boolean> exists = new ArrayList<>();
+    }
+}
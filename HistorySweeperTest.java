@@ -0,0 +1,102 @@
+package photo_renamer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/** A class for testing HistorySweeper. */
+public class HistorySweeperTest {
+    /** The temporary directory holding the history and the images. */
+    private File dir;
+    /** The image that goes missing. */
+    private File lost;
+    /** The image that stays in place. */
+    private File kept;
+    /** The ImageHistoryManager being swept. */
+    private ImageHistoryManager manager;
+
+    @Before
+    /* Set up a history recording two images in a temporary directory for testing. */
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("HistorySweeperTest").toFile();
+        lost = new File(dir, "lost.jpg");
+        kept = new File(dir, "kept.jpg");
+        manager = new ImageHistoryManager(new File(dir, "history.ser").getPath());
+        for (File file : new File[]{lost, kept}) {
+            Files.write(file.toPath(), file.getName().getBytes("UTF-8"));
+            manager.historicizeImage(new ImageFile(file.getName(), new ArrayList<>(), file.getAbsolutePath()));
+        }
+    }
+
+    @After
+    /* Delete the temporary directory. */
+    public void tearDown() throws Exception {
+        Files.walk(dir.toPath()).sorted(Collections.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+
+    /**
+     * Return when the recorded ImageFile of an image was marked missing.
+     *
+     * @param file the image file
+     * @return the time it was marked missing, or 0 if it is not
+     */
+    private long missingSince(File file) {
+        return manager.getImage(file.getAbsolutePath()).missingSince;
+    }
+
+    @Test
+    /* Test that a missing entry is marked, unmarked when it reappears, and removed once the grace period passed. */
+    public void testSweep() throws Exception {
+        HistorySweeper patient = new HistorySweeper(manager, HistorySweeper.GRACE_MILLIS);
+        assertTrue(patient.check(manager.getImages()).images.isEmpty());
+
+        byte[] content = Files.readAllBytes(lost.toPath());
+        assertTrue(lost.delete());
+        HistorySweeper.Sweep sweep = patient.check(manager.getImages());
+        assertEquals(1, sweep.images.size());
+        assertEquals(0, patient.apply(sweep));
+        assertTrue(missingSince(lost) > 0);
+        assertEquals(0, missingSince(kept));
+        assertEquals(0, patient.apply(patient.check(manager.getImages())));
+        assertTrue(missingSince(lost) > 0);
+
+        Files.write(lost.toPath(), content);
+        assertEquals(0, patient.apply(patient.check(manager.getImages())));
+        assertEquals(0, missingSince(lost));
+
+        assertTrue(lost.delete());
+        HistorySweeper hasty = new HistorySweeper(manager, 0);
+        assertEquals(0, hasty.apply(hasty.check(manager.getImages())));
+        assertTrue(missingSince(lost) > 0);
+        assertEquals(1, hasty.apply(hasty.check(manager.getImages())));
+        assertNull(manager.getImage(lost.getAbsolutePath()));
+        assertEquals(1, manager.getImages().size());
+    }
+
+    @Test
+    /* Test that an entry relinked between its check and the sweep is left for the next sweep. */
+    public void testRenamedSinceCheck() throws Exception {
+        HistorySweeper hasty = new HistorySweeper(manager, 0);
+        File moved = new File(dir, "found.jpg");
+        Files.move(lost.toPath(), moved.toPath());
+        assertEquals(0, hasty.apply(hasty.check(manager.getImages())));
+        assertTrue(missingSince(lost) > 0);
+
+        HistorySweeper.Sweep sweep = hasty.check(manager.getImages());
+        ImageFile relinked = manager.historicizeImage(
+                new ImageFile(moved.getName(), new ArrayList<>(), moved.getAbsolutePath()));
+        assertEquals(moved.getAbsolutePath(), relinked.imgFilePath);
+        assertEquals(0, hasty.apply(sweep));
+        assertEquals(0, missingSince(moved));
+        assertEquals(2, manager.getImages().size());
+    }
+}
@@ -0,0 +1,317 @@
+package photo_renamer;
+
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageInputStreamImpl;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+
+/**
+ * The bytes of an image file, read through a FileChannel without copying them into the heap: files of at least the
+ * mapping threshold are memory-mapped, smaller ones are read into a pooled direct buffer. The file is opened on the
+ * first access, so a visit that never reads the file costs nothing.
+ * While a thread visits a file, opening the same file again on that thread shares the visit's bytes, so the
+ * fingerprint, the metadata and the decoders of one visit read the file through a single mapping.
+ * The bytes are only valid until closed; mappings are released at once rather than when collected, so that the
+ * file can be renamed straight after its visit.
+ */
+final class ImageBytes implements Closeable {
+
+    /** The system property setting the size, in bytes, from which files are memory-mapped. */
+    static final String MAP_THRESHOLD_PROPERTY = "photo_renamer.mapThreshold";
+    /** The size, in bytes, from which files are memory-mapped; smaller files are read into pooled buffers. */
+    static final int MAP_THRESHOLD = Integer.getInteger(MAP_THRESHOLD_PROPERTY, 64 * 1024);
+    /** The largest number of idle direct buffers kept for reuse. */
+    private static final int POOL_SIZE = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    /** The idle direct buffers, each MAP_THRESHOLD bytes. */
+    private static final ArrayDeque<ByteBuffer> POOL = new ArrayDeque<>();
+    /** The file each thread is visiting, or null. */
+    private static final ThreadLocal<ImageBytes> VISITING = new ThreadLocal<>();
+    /** The way this runtime releases a mapping at once. */
+    private static final Unmapper UNMAPPER = Unmapper.find();
+
+    /** The file. */
+    final File file;
+    /** The number of times these bytes were opened and not yet closed. */
+    private int opened;
+    /** The visit of the thread before this one began, if these bytes are a visit. */
+    private final ImageBytes previous;
+    /** Whether these bytes are the visit of the thread that opened them. */
+    private final boolean visit;
+    /** The bytes of the file, positioned at 0 and limited to its size, or null until first accessed. */
+    private ByteBuffer bytes;
+    /** Whether bytes is a mapping rather than a pooled buffer. */
+    private boolean mapped;
+
+    /**
+     * Construct the unread bytes of a file.
+     *
+     * @param file  the file
+     * @param visit whether these bytes become the visit of the current thread
+     */
+    private ImageBytes(File file, boolean visit) {
+        this.file = file;
+        this.opened = 1;
+        this.visit = visit;
+        this.previous = visit ? VISITING.get() : null;
+        if (visit) {
+            VISITING.set(this);
+        }
+    }
+
+    /**
+     * Open the bytes of a file, sharing those of the file the current thread is visiting, if it is the same.
+     *
+     * @param file the file
+     * @return the ImageBytes, to be closed by the caller
+     */
+    static ImageBytes open(File file) {
+        ImageBytes current = VISITING.get();
+        if (current != null && current.file.equals(file)) {
+            current.opened++;
+            return current;
+        }
+        return new ImageBytes(file, false);
+    }
+
+    /**
+     * Begin a visit of a file by the current thread, during which every opening of the file on this thread shares
+     * the same bytes. The file is not read until its bytes are first accessed.
+     *
+     * @param file the file
+     * @return the ImageBytes, to be closed by the caller when the visit ends
+     */
+    static ImageBytes visit(File file) {
+        ImageBytes current = VISITING.get();
+        if (current != null && current.file.equals(file)) {
+            current.opened++;
+            return current;
+        }
+        return new ImageBytes(file, true);
+    }
+
+    /**
+     * Return the bytes of the file, reading or mapping it on first access.
+     *
+     * @return a read-only buffer of the whole file, positioned at 0
+     * @throws IOException if the file cannot be read or is too large to map
+     */
+    ByteBuffer buffer() throws IOException {
+        if (bytes == null) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size > Integer.MAX_VALUE) {
+                    throw new IOException("Too large to read: " + file);
+                }
+                if (size >= MAP_THRESHOLD) {
+                    bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                    mapped = true;
+                } else {
+                    ByteBuffer pooled = borrow();
+                    pooled.limit((int) size);
+                    while (pooled.hasRemaining()) {
+                        if (channel.read(pooled, pooled.position()) < 0) {
+                            giveBack(pooled);
+                            throw new IOException("Unexpected end of file");
+                        }
+                    }
+                    pooled.flip();
+                    bytes = pooled;
+                }
+            }
+        }
+        return bytes.asReadOnlyBuffer();
+    }
+
+    /**
+     * Return a stream of the bytes of the file for ImageIO decoders, reading them from the shared buffer.
+     *
+     * @return the ImageInputStream, which need not be closed before these bytes
+     * @throws IOException if the file cannot be read
+     */
+    ImageInputStream stream() throws IOException {
+        return new BufferInputStream(buffer());
+    }
+
+    /**
+     * Close these bytes, releasing the mapping or pooled buffer once every opening of them is closed.
+     */
+    @Override
+    public void close() {
+        if (--opened > 0) {
+            return;
+        }
+        if (visit) {
+            if (previous == null) {
+                VISITING.remove();
+            } else {
+                VISITING.set(previous);
+            }
+        }
+        releaseBytes();
+    }
+
+    /**
+     * Release the bytes of the file the current thread is visiting, if it is the argued one, before it is renamed,
+     * which a mapped file cannot be on every platform. The file is read again if accessed later in the visit.
+     *
+     * @param file the file
+     */
+    static void release(File file) {
+        ImageBytes current = VISITING.get();
+        if (current != null && current.file.equals(file)) {
+            current.releaseBytes();
+        }
+    }
+
+    /** Release the mapping or pooled buffer holding the bytes of the file, if they were read. */
+    private void releaseBytes() {
+        if (bytes != null) {
+            if (mapped) {
+                UNMAPPER.unmap(bytes);
+            } else {
+                giveBack(bytes);
+            }
+            bytes = null;
+        }
+    }
+
+    /**
+     * Take an idle direct buffer from the pool, or allocate one.
+     *
+     * @return a cleared buffer of MAP_THRESHOLD bytes
+     */
+    private static ByteBuffer borrow() {
+        ByteBuffer buffer;
+        synchronized (POOL) {
+            buffer = POOL.poll();
+        }
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(MAP_THRESHOLD);
+    }
+
+    /**
+     * Return a buffer to the pool, unless the pool is full.
+     *
+     * @param buffer the buffer
+     */
+    private static void giveBack(ByteBuffer buffer) {
+        buffer.clear();
+        synchronized (POOL) {
+            if (POOL.size() < POOL_SIZE) {
+                POOL.push(buffer);
+            }
+        }
+    }
+
+    /** An ImageInputStream reading from a buffer. */
+    private static final class BufferInputStream extends ImageInputStreamImpl {
+        /** The buffer read from, whose position is not used. */
+        private final ByteBuffer buffer;
+
+        /**
+         * Construct a stream of a buffer.
+         *
+         * @param buffer the buffer, positioned at 0
+         */
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkClosed();
+            bitOffset = 0;
+            if (streamPos >= buffer.limit()) {
+                return -1;
+            }
+            return buffer.get((int) streamPos++) & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkClosed();
+            bitOffset = 0;
+            if (len == 0) {
+                return 0;
+            }
+            long available = buffer.limit() - streamPos;
+            if (available <= 0) {
+                return -1;
+            }
+            int read = (int) Math.min(len, available);
+            buffer.position((int) streamPos);
+            buffer.get(b, off, read);
+            streamPos += read;
+            return read;
+        }
+
+        @Override
+        public long length() {
+            return buffer.limit();
+        }
+    }
+
+    /** The runtime's way of releasing a mapping at once, which Java offers no public method for. */
+    private static final class Unmapper {
+        /** The Unsafe instance, or null before Java 9. */
+        private final Object unsafe;
+        /** Unsafe.invokeCleaner, or null before Java 9. */
+        private final Method invokeCleaner;
+
+        /**
+         * Construct an Unmapper.
+         *
+         * @param unsafe        the Unsafe instance, or null
+         * @param invokeCleaner Unsafe.invokeCleaner, or null
+         */
+        private Unmapper(Object unsafe, Method invokeCleaner) {
+            this.unsafe = unsafe;
+            this.invokeCleaner = invokeCleaner;
+        }
+
+        /**
+         * Find the way this runtime releases mappings.
+         *
+         * @return the Unmapper
+         */
+        static Unmapper find() {
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                return new Unmapper(theUnsafe.get(null), unsafeClass.getMethod("invokeCleaner", ByteBuffer.class));
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // Before Java 9, the cleaner of each mapping is called directly.
+                return new Unmapper(null, null);
+            }
+        }
+
+        /**
+         * Release a mapping.
+         *
+         * @param mapping the mapping, which must not be used afterwards
+         */
+        void unmap(ByteBuffer mapping) {
+            try {
+                if (invokeCleaner != null) {
+                    invokeCleaner.invoke(unsafe, mapping);
+                } else {
+                    Method cleaner = mapping.getClass().getMethod("cleaner");
+                    cleaner.setAccessible(true);
+                    Object clean = cleaner.invoke(mapping);
+                    if (clean != null) {
+                        clean.getClass().getMethod("clean").invoke(clean);
+                    }
+                }
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // The mapping is released when collected instead.
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package photo_renamer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/** A class for testing ImageBytes and the readers built on it. */
+public class ImageBytesTest {
+    /** The temporary directory holding the images. */
+    private File dir;
+    /** An image file smaller than the mapping threshold. */
+    private File small;
+    /** An image file larger than the mapping threshold. */
+    private File large;
+
+    @Before
+    /* Set up a small, flat image and a large, noisy one in a temporary directory for testing. */
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("ImageBytesTest").toFile();
+        small = new File(dir, "small.png");
+        ImageIO.write(new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB), "png", small);
+        BufferedImage noise = new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(7);
+        for (int y = 0; y < noise.getHeight(); y++) {
+            for (int x = 0; x < noise.getWidth(); x++) {
+                noise.setRGB(x, y, random.nextInt());
+            }
+        }
+        large = new File(dir, "large.png");
+        ImageIO.write(noise, "png", large);
+        assertTrue(small.length() < ImageBytes.MAP_THRESHOLD && large.length() >= ImageBytes.MAP_THRESHOLD);
+    }
+
+    @After
+    /* Delete the temporary directory. */
+    public void tearDown() throws Exception {
+        Files.walk(dir.toPath()).sorted(Collections.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+
+    /**
+     * Compute a fingerprint the way it was computed before ImageBytes, from the file read into the heap.
+     *
+     * @param file the file
+     * @return the fingerprint
+     * @throws Exception an Exception
+     */
+    private static String heapFingerprint(File file) throws Exception {
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        int chunk = ContentFingerprint.CHUNK_SIZE;
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes.length <= 2 * chunk || i < chunk || i >= bytes.length - chunk) {
+                hash = (hash ^ (bytes[i] & 0xff)) * 0x100000001b3L;
+            }
+        }
+        return Long.toHexString(bytes.length) + "-" + Long.toHexString(hash);
+    }
+
+    @Test
+    /* Test that fingerprints and decodes of pooled and mapped files match those read into the heap. */
+    public void testRead() throws Exception {
+        for (File file : new File[]{small, large}) {
+            assertEquals(heapFingerprint(file), ContentFingerprint.of(file));
+            BufferedImage decoded = ImageIO.read(file);
+            assertEquals(new Dimension(decoded.getWidth(), decoded.getHeight()), ImageDecoder.readSize(file));
+            BufferedImage subsampled = ImageDecoder.readSubsampled(file, decoded.getWidth(), decoded.getHeight());
+            assertEquals(decoded.getRGB(3, 5), subsampled.getRGB(3, 5));
+        }
+    }
+
+    @Test
+    /* Test that readers of a file share the bytes of its visit, which renaming releases. */
+    public void testVisit() throws Exception {
+        File renamed = new File(dir, "renamed.png");
+        String fingerprint;
+        try (ImageBytes visit = ImageBytes.visit(large)) {
+            try (ImageBytes opened = ImageBytes.open(large)) {
+                assertSame(visit, opened);
+            }
+            try (ImageBytes other = ImageBytes.open(small)) {
+                assertTrue(visit != other);
+            }
+            fingerprint = ContentFingerprint.of(large);
+            assertEquals(new Dimension(400, 300), ImageDecoder.readSize(large));
+            ImageBytes.release(large);
+            assertTrue(large.renameTo(renamed));
+        }
+        try (ImageBytes opened = ImageBytes.open(renamed)) {
+            assertEquals(fingerprint, ContentFingerprint.of(opened.buffer()));
+        }
+    }
+
+    @Test
+    /* Test that files too large to map whole are fingerprinted from positional reads matching the mapped ones. */
+    public void testFingerprintUnmappable() throws Exception {
+        for (File file : new File[]{small, large}) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                assertEquals(heapFingerprint(file), ContentFingerprint.of(channel));
+            }
+        }
+        File huge = new File(dir, "huge.jpg");
+        try (RandomAccessFile sparse = new RandomAccessFile(huge, "rw")) {
+            sparse.write(1);
+            sparse.setLength(Integer.MAX_VALUE + 2L);
+            sparse.write(2);
+        }
+        String fingerprint = ContentFingerprint.of(huge);
+        assertTrue(fingerprint.startsWith(Long.toHexString(Integer.MAX_VALUE + 2L) + "-"));
+        try (FileChannel channel = FileChannel.open(huge.toPath(), StandardOpenOption.READ)) {
+            assertEquals(fingerprint, ContentFingerprint.of(channel));
+        }
+    }
+}
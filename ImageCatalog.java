@@ -0,0 +1,1133 @@
+package photo_renamer;
+
+import java.io.*;
+import java.lang.ref.ReferenceQueue;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.lang.ref.WeakReference;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * A DatabaseStore of ImageFiles kept column-wise in primitive arrays, one row per image.
+ * Directories are nodes of a path trie shared by every image beneath them, names are ranges of one char pool,
+ * and equal lists of Tags are stored once and referenced by number, so a row costs a few dozen bytes
+ * instead of the hundreds an ImageFile object with its path, File, lists and Observable state costs.
+ * ImageFiles are views materialized from a row on demand. The view of a row is remembered while it is
+ * reachable, so every caller holding an image holds the same object, and writing it back keeps its row.
+ * Rows are numbered in the order they were added; a number is never reused until the catalog is reloaded.
+ * With a path, the catalog is saved as one serialized ArrayList of ImageFiles, the format of SerializedFileStore.
+ */
+final class ImageCatalog implements DatabaseStore<ImageFile> {
+
+    /** The initial number of rows, directories and pooled chars allocated. */
+    private static final int INITIAL_CAPACITY = 1024;
+    /** The fingerprint size column value of a row without a ContentFingerprint. */
+    private static final long NO_FINGERPRINT = -1;
+
+    /** The path of the database file, or null if the catalog is kept in the heap only. */
+    private final String path;
+    /** The lock held while saving, taken before the monitor of the catalog, so saves are written one at a time. */
+    private final Object saveLock = new Object();
+
+    /** The parent node of each directory node; the root node 0 stands for the empty prefix. */
+    private int[] dirParent;
+    /** The name of each directory node, without its separator. */
+    private String[] dirSegment;
+    /** The child nodes of each directory node by name, or null for a node without children. */
+    private final ArrayList<HashMap<String, Integer>> dirChildren;
+    /** The number of directory nodes. */
+    private int dirCount;
+    /** The last directory node materialized as a path. */
+    private int lastDir = -1;
+    /** The path of lastDir, ending with a separator. */
+    private String lastDirPath;
+
+    /** The chars of every row's name. */
+    private char[] namePool;
+    /** The number of chars used in namePool. */
+    private int poolSize;
+    /** The number of chars in namePool no longer referenced by any row. */
+    private int poolGarbage;
+
+    /** The distinct lists of Tags, shared by every view carrying them and never modified. */
+    private final ArrayList<ArrayList<Tag>> tagSets;
+    /** The number of each list in tagSets by the names of its Tags. */
+    private final HashMap<String, Integer> tagSetIds;
+    /** The number of live rows carrying each list in tagSets. */
+    private int[] tagSetRows;
+    /** The distinct case-folded Tag names of each list in tagSets. */
+    private final ArrayList<String[]> tagSetTerms;
+    /** The lists in tagSets carrying each case-folded Tag name. */
+    private final HashMap<String, BitSet> setsByTerm;
+    /** The rows written with a list carrying each case-folded Tag name, including rows retagged or removed since. */
+    private final HashMap<String, RowList> rowsByTerm;
+    /** The listener told of every change in the number of rows carrying a list of Tags, or null. */
+    private TagSetListener tagSetListener;
+    /** The listener told of every row written or removed, or null. */
+    private RowListener rowListener;
+
+    /** The number of rows. */
+    private int rowCount;
+    /** The directory node of each row. */
+    private int[] dir;
+    /** The offset of each row's name in namePool. */
+    private int[] nameStart;
+    /** The length of each row's name. */
+    private int[] nameLength;
+    /** The number of each row's list of Tags in tagSets. */
+    private int[] tagSet;
+    /** The perceptual hash of each row. */
+    private long[] perceptualHash;
+    /** The modification time each row's perceptual hash was computed at. */
+    private long[] perceptualHashModified;
+    /** The time each row was first found missing, or 0. */
+    private long[] missingSince;
+    /** The file size of each row's ContentFingerprint, or NO_FINGERPRINT. */
+    private long[] fingerprintSize;
+    /** The content hash of each row's ContentFingerprint. */
+    private long[] fingerprintHash;
+    /** The NameHistory of each row, or null if it holds the row's name alone. */
+    private NameHistory[] histories;
+    /** The rows removed from the catalog. */
+    private final BitSet removed;
+
+    /** The rows in the order added, including rows removed since the last snapshot; shared with snapshots. */
+    private int[] order;
+    /** The number of rows in order. */
+    private int orderSize;
+    /** Whether a row was removed since the last snapshot. */
+    private boolean orderStale;
+
+    /** The live rows by path. */
+    private final IdTable byPath;
+    /** The live rows with a ContentFingerprint by fingerprint. */
+    private final IdTable byFingerprint;
+    /** The reachable view of each row that has one, read by snapshots without locking the catalog. */
+    private final ConcurrentHashMap<Integer, View> views;
+    /** The views no longer reachable. */
+    private final ReferenceQueue<ImageFile> collected;
+
+    /**
+     * Construct a catalog of the ImageFiles in a database file, which need not exist yet.
+     *
+     * @param path the path of the database file, or null to keep the catalog in the heap only
+     * @throws IOException            an IOException exception
+     * @throws ClassNotFoundException a ClassNotFoundException exception
+     */
+    @SuppressWarnings("unchecked")
+    ImageCatalog(String path) throws IOException, ClassNotFoundException {
+        this.path = path;
+        this.dirParent = new int[INITIAL_CAPACITY];
+        this.dirSegment = new String[INITIAL_CAPACITY];
+        this.dirChildren = new ArrayList<>();
+        this.dirChildren.add(null);
+        this.dirCount = 1;
+        this.namePool = new char[INITIAL_CAPACITY * 16];
+        this.tagSets = new ArrayList<>();
+        this.tagSetIds = new HashMap<>();
+        this.tagSetRows = new int[INITIAL_CAPACITY];
+        this.tagSetTerms = new ArrayList<>();
+        this.setsByTerm = new HashMap<>();
+        this.rowsByTerm = new HashMap<>();
+        this.dir = new int[INITIAL_CAPACITY];
+        this.nameStart = new int[INITIAL_CAPACITY];
+        this.nameLength = new int[INITIAL_CAPACITY];
+        this.tagSet = new int[INITIAL_CAPACITY];
+        this.perceptualHash = new long[INITIAL_CAPACITY];
+        this.perceptualHashModified = new long[INITIAL_CAPACITY];
+        this.missingSince = new long[INITIAL_CAPACITY];
+        this.fingerprintSize = new long[INITIAL_CAPACITY];
+        this.fingerprintHash = new long[INITIAL_CAPACITY];
+        this.histories = new NameHistory[INITIAL_CAPACITY];
+        this.removed = new BitSet();
+        this.order = new int[INITIAL_CAPACITY];
+        this.byPath = new IdTable(this::pathHash);
+        this.byFingerprint = new IdTable(this::fingerprintHash);
+        this.views = new ConcurrentHashMap<>();
+        this.collected = new ReferenceQueue<>();
+        if (path != null && new File(path).exists()) {
+            try (ObjectInput input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+                for (ImageFile image : (ArrayList<ImageFile>) input.readObject()) {
+                    write(newRow(), image);
+                }
+            }
+        }
+    }
+
+    /** A listener to changes in the number of rows carrying a list of Tags. */
+    interface TagSetListener {
+        /**
+         * Receive a change in the number of rows carrying a list of Tags.
+         *
+         * @param tags  the list of Tags, which must not be modified
+         * @param delta the change in the number of rows
+         */
+        void counted(List<Tag> tags, int delta);
+    }
+
+    /**
+     * Tell a listener of every later change in the number of rows carrying each list of Tags,
+     * replacing any previous listener.
+     *
+     * @param listener the listener, or null
+     */
+    synchronized void setTagSetListener(TagSetListener listener) {
+        tagSetListener = listener;
+    }
+
+    /**
+     * Pass each list of Tags carried by live rows to a listener, with the number of rows carrying it.
+     *
+     * @param listener the listener
+     */
+    synchronized void countTagSets(TagSetListener listener) {
+        for (int set = 0; set < tagSets.size(); set++) {
+            if (tagSetRows[set] > 0) {
+                listener.counted(tagSets.get(set), tagSetRows[set]);
+            }
+        }
+    }
+
+    /** A listener to rows being written and removed, told while the catalog is locked. */
+    interface RowListener {
+        /**
+         * Receive a row written with the state of an ImageFile.
+         *
+         * @param row   the row
+         * @param image the ImageFile written, which is or is about to be the view of the row
+         */
+        void written(int row, ImageFile image);
+
+        /**
+         * Receive a removed row.
+         *
+         * @param row the row
+         */
+        void removed(int row);
+    }
+
+    /**
+     * Tell a listener of every later row written or removed, replacing any previous listener.
+     *
+     * @param listener the listener, or null
+     */
+    synchronized void setRowListener(RowListener listener) {
+        rowListener = listener;
+    }
+
+    /**
+     * Pass every live row to a visitor in ascending order, with a copy of its ImageFile unless its view is cached.
+     *
+     * @param visitor the visitor, receiving each ImageFile and its row
+     */
+    synchronized void scanRows(ObjIntConsumer<ImageFile> visitor) {
+        for (int row = removed.nextClearBit(0); row < rowCount; row = removed.nextClearBit(row + 1)) {
+            ImageFile image = cachedView(row);
+            visitor.accept(image == null ? materialize(row) : image, row);
+        }
+    }
+
+    /**
+     * Return the number of live rows.
+     *
+     * @return the number of ImageFiles in this catalog
+     */
+    synchronized int size() {
+        return rowCount - removed.cardinality();
+    }
+
+    @Override
+    public synchronized ImageFile get(String key) {
+        int row = rowAt(key);
+        return row < 0 ? null : view(row);
+    }
+
+    /**
+     * Write an ImageFile to the row of its path, adding a row if there is none, and make it the view of the row.
+     *
+     * @param image the ImageFile
+     */
+    @Override
+    public synchronized void put(ImageFile image) {
+        int row = rowAt(image.imgFilePath);
+        if (row < 0) {
+            row = newRow();
+        }
+        write(row, image);
+        remember(row, image);
+    }
+
+    @Override
+    public synchronized void remove(String key) {
+        int row = rowAt(key);
+        if (row >= 0) {
+            removeRow(row);
+        }
+    }
+
+    /**
+     * Write a renamed or moved ImageFile back to its row, replacing any other row at its new path.
+     * An ImageFile that is not the view of the row at its old path is put as if new.
+     *
+     * @param image   the ImageFile
+     * @param oldPath the system path of the ImageFile before it was renamed or moved
+     * @return a boolean of whether the ImageFile kept its row
+     */
+    synchronized boolean move(ImageFile image, String oldPath) {
+        int row = rowAt(oldPath);
+        if (row < 0 || cachedView(row) != image) {
+            put(image);
+            return false;
+        }
+        int other = rowAt(image.imgFilePath);
+        if (other >= 0 && other != row) {
+            removeRow(other);
+        }
+        write(row, image);
+        return true;
+    }
+
+    /**
+     * Return whether an ImageFile is the view of the row at its path.
+     *
+     * @param image the ImageFile
+     * @return a boolean of whether the ImageFile is managed by this catalog
+     */
+    synchronized boolean isView(ImageFile image) {
+        int row = rowAt(image.imgFilePath);
+        return row >= 0 && cachedView(row) == image;
+    }
+
+    /**
+     * Return the views of the live rows with a ContentFingerprint, such as those of copies of one image.
+     *
+     * @param fingerprint the ContentFingerprint
+     * @return an ArrayList of the ImageFiles, empty if there is none
+     */
+    synchronized ArrayList<ImageFile> withFingerprint(String fingerprint) {
+        ArrayList<ImageFile> found = new ArrayList<>();
+        long[] parsed = parseFingerprint(fingerprint);
+        if (parsed != null) {
+            for (int row : byFingerprint.findAll(fingerprintHash(parsed[0], parsed[1]),
+                    r -> fingerprintSize[r] == parsed[0] && fingerprintHash[r] == parsed[1])) {
+                found.add(view(row));
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public void scan(String fromKey, String toKey, Visitor<ImageFile> visitor) throws IOException {
+        // Visit copies, so that the lock is not held by the visitor.
+        ArrayList<ImageFile> inRange = new ArrayList<>();
+        synchronized (this) {
+            for (int row : sortedRows(fromKey, toKey, null)) {
+                inRange.add(materialize(row));
+            }
+        }
+        for (ImageFile image : inRange) {
+            visitor.visit(image);
+        }
+    }
+
+    /**
+     * Return the views of the live rows carrying a case-folded Tag name, ordered by path, looking them up in the
+     * rows indexed by the name rather than scanning every row.
+     *
+     * @param term the case-folded Tag name
+     * @return an ArrayList of the ImageFiles
+     */
+    @Override
+    public synchronized ArrayList<ImageFile> find(String term) {
+        ArrayList<ImageFile> found = new ArrayList<>();
+        RowList indexed = rowsByTerm.get(term);
+        if (indexed == null) {
+            return found;
+        }
+        BitSet sets = setsByTerm.get(term);
+        BitSet matching = new BitSet();
+        for (int i = 0; i < indexed.size; i++) {
+            int row = indexed.rows[i];
+            if (!removed.get(row) && sets.get(tagSet[row])) {
+                matching.set(row);
+            }
+        }
+        int live = matching.cardinality();
+        if (indexed.size > 2 * live + INITIAL_CAPACITY) {
+            // Drop the rows retagged or removed since they were indexed once they outnumber the live ones.
+            indexed.rows = matching.stream().toArray();
+            indexed.size = live;
+        }
+        for (int row : sortedRows(null, null, matching)) {
+            found.add(view(row));
+        }
+        return found;
+    }
+
+    /**
+     * Save every row to the database file, if there is one. The rows are copied while the catalog is locked,
+     * then sorted and written without holding the lock, so that readers and writers wait for the copy only.
+     *
+     * @throws IOException an IOException exception
+     */
+    @Override
+    public void flush() throws IOException {
+        if (path == null) {
+            return;
+        }
+        synchronized (saveLock) {
+            ArrayList<ImageFile> images;
+            synchronized (this) {
+                images = new ArrayList<>(size());
+                for (int row = removed.nextClearBit(0); row < rowCount; row = removed.nextClearBit(row + 1)) {
+                    images.add(materialize(row));
+                }
+            }
+            images.sort((a, b) -> a.imgFilePath.compareTo(b.imgFilePath));
+            // Writing a new file and moving it over the old one never leaves a half written database behind.
+            File temp = new File(path + ".tmp");
+            try (ObjectOutput output = new ObjectOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp)))) {
+                output.writeObject(images);
+            }
+            Files.move(temp.toPath(), new File(path).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // No resources are held.
+    }
+
+    /**
+     * Return an immutable snapshot of the live rows in the order they were added.
+     * Rows added later never appear in the snapshot; its ImageFiles are the views of its rows when read.
+     *
+     * @return the snapshot
+     */
+    synchronized Snapshot snapshot() {
+        if (orderStale) {
+            // Earlier snapshots keep the old array; appends after this write past the end of the new one.
+            int[] live = new int[Math.max(INITIAL_CAPACITY, orderSize)];
+            int liveSize = 0;
+            for (int i = 0; i < orderSize; i++) {
+                if (!removed.get(order[i])) {
+                    live[liveSize++] = order[i];
+                }
+            }
+            order = live;
+            orderSize = liveSize;
+            orderStale = false;
+        }
+        return new Snapshot(this, order, orderSize);
+    }
+
+    /**
+     * Return the live rows, or those of a set of live rows, whose paths lie in a range, ordered by path.
+     *
+     * @param fromKey the inclusive lower bound of the paths, or null if unbounded
+     * @param toKey   the exclusive upper bound of the paths, or null if unbounded
+     * @param among   the live rows considered, or null for every live row
+     * @return the rows
+     */
+    private int[] sortedRows(String fromKey, String toKey, BitSet among) {
+        ArrayList<String> paths = new ArrayList<>();
+        ArrayList<Integer> rows = new ArrayList<>();
+        for (int row = nextRow(among, 0); row >= 0 && row < rowCount; row = nextRow(among, row + 1)) {
+            String rowPath = pathOf(row);
+            if ((fromKey == null || rowPath.compareTo(fromKey) >= 0) && (toKey == null || rowPath.compareTo(toKey) < 0)) {
+                paths.add(rowPath);
+                rows.add(row);
+            }
+        }
+        Integer[] byPathOrder = new Integer[rows.size()];
+        for (int i = 0; i < byPathOrder.length; i++) {
+            byPathOrder[i] = i;
+        }
+        Arrays.sort(byPathOrder, (a, b) -> paths.get(a).compareTo(paths.get(b)));
+        int[] sorted = new int[byPathOrder.length];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = rows.get(byPathOrder[i]);
+        }
+        return sorted;
+    }
+
+    /**
+     * Return the first live row, or row of a set of live rows, from a row.
+     *
+     * @param among the live rows considered, or null for every live row
+     * @param from  the first row considered
+     * @return the row, which is -1 or at least rowCount if there is none
+     */
+    private int nextRow(BitSet among, int from) {
+        return among == null ? removed.nextClearBit(from) : among.nextSetBit(from);
+    }
+
+    /**
+     * Return the reachable view of a row, materializing and remembering a new one if there is none.
+     *
+     * @param row the row
+     * @return the view
+     */
+    private ImageFile view(int row) {
+        ImageFile image = cachedView(row);
+        if (image == null) {
+            image = materialize(row);
+            remember(row, image);
+        }
+        return image;
+    }
+
+    /**
+     * Return the reachable view of a row, or null if there is none.
+     *
+     * @param row the row
+     * @return the view, or null
+     */
+    private ImageFile cachedView(int row) {
+        expungeViews();
+        return peekView(row);
+    }
+
+    /**
+     * Return the reachable view of a row, or null if there is none, without locking the catalog.
+     *
+     * @param row the row
+     * @return the view, or null
+     */
+    private ImageFile peekView(int row) {
+        View view = views.get(row);
+        return view == null ? null : view.get();
+    }
+
+    /**
+     * Remember an ImageFile as the view of a row.
+     *
+     * @param row   the row
+     * @param image the ImageFile
+     */
+    private void remember(int row, ImageFile image) {
+        if (cachedView(row) != image) {
+            views.put(row, new View(image, row, collected));
+        }
+    }
+
+    /** Forget the views no longer reachable. */
+    private void expungeViews() {
+        for (Object ref = collected.poll(); ref != null; ref = collected.poll()) {
+            View view = (View) ref;
+            views.remove(view.row, view);
+        }
+    }
+
+    /**
+     * Materialize a new ImageFile from a row.
+     *
+     * @param row the row
+     * @return the ImageFile
+     */
+    private ImageFile materialize(int row) {
+        String name = new String(namePool, nameStart[row], nameLength[row]);
+        NameHistory history = histories[row] == null ? NameHistory.EMPTY.with(name) : histories[row];
+        ImageFile image = new ImageFile(name, tagSets.get(tagSet[row]), directoryPath(dir[row]) + name, history);
+        image.perceptualHash = perceptualHash[row];
+        image.perceptualHashModified = perceptualHashModified[row];
+        image.missingSince = missingSince[row];
+        if (fingerprintSize[row] != NO_FINGERPRINT) {
+            image.contentFingerprint = Long.toHexString(fingerprintSize[row]) + "-"
+                    + Long.toHexString(fingerprintHash[row]);
+        }
+        return image;
+    }
+
+    /**
+     * Write the state of an ImageFile to a row and index the row.
+     *
+     * @param row   the row
+     * @param image the ImageFile
+     */
+    private void write(int row, ImageFile image) {
+        // A row without a name is new, so it carries no list of Tags yet.
+        int oldSet = nameLength[row] > 0 ? tagSet[row] : -1;
+        unindex(row);
+        String imagePath = image.imgFilePath;
+        int dirEnd = imagePath.lastIndexOf(File.separatorChar) + 1;
+        dir[row] = directory(imagePath, dirEnd, true);
+        if (!nameEquals(row, imagePath, dirEnd)) {
+            poolGarbage += nameLength[row];
+            nameStart[row] = poolName(imagePath, dirEnd);
+            nameLength[row] = imagePath.length() - dirEnd;
+        }
+        tagSet[row] = tagSetOf(image.tags);
+        if (tagSet[row] != oldSet) {
+            if (oldSet >= 0) {
+                countTagSet(oldSet, -1);
+            }
+            countTagSet(tagSet[row], 1);
+            indexTerms(row, oldSet);
+        }
+        perceptualHash[row] = image.perceptualHash;
+        perceptualHashModified[row] = image.perceptualHashModified;
+        missingSince[row] = image.missingSince;
+        long[] fingerprint = parseFingerprint(image.contentFingerprint);
+        fingerprintSize[row] = fingerprint == null ? NO_FINGERPRINT : fingerprint[0];
+        fingerprintHash[row] = fingerprint == null ? 0 : fingerprint[1];
+        NameHistory history = image.nameHistory;
+        histories[row] = history.size() == 1 && history.get(0).equals(image.name) ? null : history;
+        byPath.add(pathHash(row), row);
+        if (fingerprintSize[row] != NO_FINGERPRINT) {
+            byFingerprint.add(fingerprintHash(row), row);
+        }
+        if (poolGarbage > INITIAL_CAPACITY * 16 && poolGarbage > poolSize / 2) {
+            compactPool();
+        }
+        if (rowListener != null) {
+            rowListener.written(row, image);
+        }
+    }
+
+    /**
+     * Drop a row from the indexes, if it is indexed.
+     *
+     * @param row the row
+     */
+    private void unindex(int row) {
+        if (nameLength[row] > 0) {
+            byPath.remove(pathHash(row), row);
+        }
+        if (fingerprintSize[row] != NO_FINGERPRINT) {
+            byFingerprint.remove(fingerprintHash(row), row);
+        }
+    }
+
+    /**
+     * Remove a row from the catalog, keeping its columns for snapshots and views taken before.
+     *
+     * @param row the row
+     */
+    private void removeRow(int row) {
+        unindex(row);
+        countTagSet(tagSet[row], -1);
+        removed.set(row);
+        orderStale = true;
+        if (rowListener != null) {
+            rowListener.removed(row);
+        }
+    }
+
+    /**
+     * Add an empty row, growing the columns if they are full.
+     *
+     * @return the new row
+     */
+    private int newRow() {
+        if (rowCount == dir.length) {
+            int capacity = rowCount * 2;
+            dir = Arrays.copyOf(dir, capacity);
+            nameStart = Arrays.copyOf(nameStart, capacity);
+            nameLength = Arrays.copyOf(nameLength, capacity);
+            tagSet = Arrays.copyOf(tagSet, capacity);
+            perceptualHash = Arrays.copyOf(perceptualHash, capacity);
+            perceptualHashModified = Arrays.copyOf(perceptualHashModified, capacity);
+            missingSince = Arrays.copyOf(missingSince, capacity);
+            fingerprintSize = Arrays.copyOf(fingerprintSize, capacity);
+            fingerprintHash = Arrays.copyOf(fingerprintHash, capacity);
+            histories = Arrays.copyOf(histories, capacity);
+        }
+        int row = rowCount++;
+        fingerprintSize[row] = NO_FINGERPRINT;
+        if (orderSize == order.length) {
+            order = Arrays.copyOf(order, orderSize * 2);
+        }
+        order[orderSize++] = row;
+        return row;
+    }
+
+    /**
+     * Return the live row at a system path, or -1 if there is none.
+     *
+     * @param imagePath the system path
+     * @return the row, or -1
+     */
+    private int rowAt(String imagePath) {
+        int dirEnd = imagePath.lastIndexOf(File.separatorChar) + 1;
+        int node = directory(imagePath, dirEnd, false);
+        if (node < 0) {
+            return -1;
+        }
+        int hash = 31 * node + imagePath.substring(dirEnd).hashCode();
+        return byPath.find(hash, row -> dir[row] == node && nameEquals(row, imagePath, dirEnd));
+    }
+
+    /**
+     * Return the system path of a row.
+     *
+     * @param row the row
+     * @return the system path
+     */
+    private String pathOf(int row) {
+        return directoryPath(dir[row]) + new String(namePool, nameStart[row], nameLength[row]);
+    }
+
+    /**
+     * Return the directory node of a path prefix, walking the path trie one separator at a time.
+     *
+     * @param imagePath the path
+     * @param dirEnd    the length of the prefix, which ends with a separator unless empty
+     * @param create    whether missing nodes are added
+     * @return the node, or -1 if it is missing and not created
+     */
+    private int directory(String imagePath, int dirEnd, boolean create) {
+        int node = 0;
+        int from = 0;
+        while (from < dirEnd) {
+            int separator = imagePath.indexOf(File.separatorChar, from);
+            String segment = imagePath.substring(from, separator);
+            HashMap<String, Integer> children = dirChildren.get(node);
+            Integer child = children == null ? null : children.get(segment);
+            if (child == null) {
+                if (!create) {
+                    return -1;
+                }
+                if (children == null) {
+                    children = new HashMap<>();
+                    dirChildren.set(node, children);
+                }
+                child = newDirectory(node, segment);
+                children.put(segment, child);
+            }
+            node = child;
+            from = separator + 1;
+        }
+        return node;
+    }
+
+    /**
+     * Add a directory node.
+     *
+     * @param parent  the parent node
+     * @param segment the name of the directory
+     * @return the new node
+     */
+    private int newDirectory(int parent, String segment) {
+        if (dirCount == dirParent.length) {
+            dirParent = Arrays.copyOf(dirParent, dirCount * 2);
+            dirSegment = Arrays.copyOf(dirSegment, dirCount * 2);
+        }
+        dirParent[dirCount] = parent;
+        dirSegment[dirCount] = segment;
+        dirChildren.add(null);
+        return dirCount++;
+    }
+
+    /**
+     * Return the path of a directory node, ending with a separator unless it is the root.
+     *
+     * @param node the node
+     * @return the path
+     */
+    private String directoryPath(int node) {
+        if (node != lastDir) {
+            ArrayList<String> segments = new ArrayList<>();
+            for (int n = node; n != 0; n = dirParent[n]) {
+                segments.add(dirSegment[n]);
+            }
+            StringBuilder builder = new StringBuilder();
+            for (int i = segments.size() - 1; i >= 0; i--) {
+                builder.append(segments.get(i)).append(File.separatorChar);
+            }
+            lastDir = node;
+            lastDirPath = builder.toString();
+        }
+        return lastDirPath;
+    }
+
+    /**
+     * Return whether the name of a row equals the end of a path.
+     *
+     * @param row       the row
+     * @param imagePath the path
+     * @param nameBegin the index of the name in the path
+     * @return a boolean of whether the names are equal
+     */
+    private boolean nameEquals(int row, String imagePath, int nameBegin) {
+        int length = nameLength[row];
+        if (length != imagePath.length() - nameBegin) {
+            return false;
+        }
+        int start = nameStart[row];
+        for (int i = 0; i < length; i++) {
+            if (namePool[start + i] != imagePath.charAt(nameBegin + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Append the end of a path to the name pool.
+     *
+     * @param imagePath the path
+     * @param nameBegin the index of the name in the path
+     * @return the offset of the name in the pool
+     */
+    private int poolName(String imagePath, int nameBegin) {
+        int length = imagePath.length() - nameBegin;
+        if (poolSize + length > namePool.length) {
+            namePool = Arrays.copyOf(namePool, Math.max(namePool.length * 2, poolSize + length));
+        }
+        imagePath.getChars(nameBegin, imagePath.length(), namePool, poolSize);
+        poolSize += length;
+        return poolSize - length;
+    }
+
+    /** Copy the names of every row, including removed ones, to a new pool without the names replaced since. */
+    private void compactPool() {
+        char[] compacted = new char[Math.max(INITIAL_CAPACITY * 16, (poolSize - poolGarbage) * 2)];
+        int size = 0;
+        for (int row = 0; row < rowCount; row++) {
+            System.arraycopy(namePool, nameStart[row], compacted, size, nameLength[row]);
+            nameStart[row] = size;
+            size += nameLength[row];
+        }
+        namePool = compacted;
+        poolSize = size;
+        poolGarbage = 0;
+    }
+
+    /**
+     * Change the number of rows carrying a list of Tags and tell the listener.
+     *
+     * @param set   the number of the list in tagSets
+     * @param delta the change in the number of rows
+     */
+    private void countTagSet(int set, int delta) {
+        tagSetRows[set] += delta;
+        if (tagSetListener != null) {
+            tagSetListener.counted(tagSets.get(set), delta);
+        }
+    }
+
+    /**
+     * Index a row under the case-folded names of the Tags of its list that the list it carried before lacked.
+     *
+     * @param row    the row
+     * @param oldSet the number of the list the row carried before, or -1 if it is new
+     */
+    private void indexTerms(int row, int oldSet) {
+        for (String term : tagSetTerms.get(tagSet[row])) {
+            if (oldSet >= 0 && setsByTerm.get(term).get(oldSet)) {
+                continue;
+            }
+            rowsByTerm.computeIfAbsent(term, folded -> new RowList()).add(row);
+        }
+    }
+
+    /**
+     * Return the number of the stored list of Tags with the same names, storing a copy if there is none.
+     *
+     * @param tags the Tags
+     * @return the number of the list in tagSets
+     */
+    private int tagSetOf(ArrayList<Tag> tags) {
+        StringBuilder key = new StringBuilder();
+        for (Tag tag : tags) {
+            key.append(tag.name).append('\u0000');
+        }
+        Integer set = tagSetIds.get(key.toString());
+        if (set == null) {
+            set = tagSets.size();
+            tagSets.add(new ArrayList<>(tags));
+            if (set == tagSetRows.length) {
+                tagSetRows = Arrays.copyOf(tagSetRows, set * 2);
+            }
+            String[] terms = tags.stream().map(tag -> TagTrie.fold(tag.name)).distinct().toArray(String[]::new);
+            tagSetTerms.add(terms);
+            for (String term : terms) {
+                setsByTerm.computeIfAbsent(term, folded -> new BitSet()).set(tagSets.size() - 1);
+            }
+            tagSetIds.put(key.toString(), set);
+        }
+        return set;
+    }
+
+    /**
+     * Return the hash of the path of a row.
+     *
+     * @param row the row
+     * @return the hash, equal to 31 times the directory node plus the hash code of the name
+     */
+    private int pathHash(int row) {
+        int hash = 0;
+        for (int i = nameStart[row], end = i + nameLength[row]; i < end; i++) {
+            hash = 31 * hash + namePool[i];
+        }
+        return 31 * dir[row] + hash;
+    }
+
+    /**
+     * Return the hash of the ContentFingerprint of a row.
+     *
+     * @param row the row
+     * @return the hash
+     */
+    private int fingerprintHash(int row) {
+        return fingerprintHash(fingerprintSize[row], fingerprintHash[row]);
+    }
+
+    /**
+     * Return the hash of a ContentFingerprint.
+     *
+     * @param size the file size of the fingerprint
+     * @param hash the content hash of the fingerprint
+     * @return the hash
+     */
+    private static int fingerprintHash(long size, long hash) {
+        return Long.hashCode(31 * size + hash);
+    }
+
+    /**
+     * Parse a ContentFingerprint into its file size and content hash.
+     *
+     * @param fingerprint the ContentFingerprint, or null
+     * @return the size and hash, or null if there is no fingerprint or it cannot be parsed
+     */
+    private static long[] parseFingerprint(String fingerprint) {
+        int dash = fingerprint == null ? -1 : fingerprint.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            return new long[]{Long.parseUnsignedLong(fingerprint.substring(0, dash), 16),
+                    Long.parseUnsignedLong(fingerprint.substring(dash + 1), 16)};
+        } catch (NumberFormatException e) {
+            // A malformed fingerprint is dropped, to be computed again when the image is next seen.
+            return null;
+        }
+    }
+
+    /** A growable list of rows. */
+    private static final class RowList {
+        /** The rows, in the order added. */
+        int[] rows = new int[4];
+        /** The number of rows. */
+        int size;
+
+        /**
+         * Add a row.
+         *
+         * @param row the row
+         */
+        void add(int row) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, Math.max(4, size * 2));
+            }
+            rows[size++] = row;
+        }
+    }
+
+    /** A weak reference to the view of a row. */
+    private static final class View extends WeakReference<ImageFile> {
+        /** The row viewed. */
+        final int row;
+
+        /**
+         * Construct a reference to a view.
+         *
+         * @param image the view
+         * @param row   the row viewed
+         * @param queue the queue the reference is enqueued on once the view is unreachable
+         */
+        View(ImageFile image, int row, ReferenceQueue<ImageFile> queue) {
+            super(image, queue);
+            this.row = row;
+        }
+    }
+
+    /**
+     * An open-addressing hash table of rows, keyed by hashes of their columns.
+     * Several rows may share a key; lookups compare the candidates with a predicate.
+     */
+    private static final class IdTable {
+        /** The slot value of an empty slot. */
+        private static final int EMPTY = 0;
+        /** The slot value of a slot whose row was removed. */
+        private static final int DELETED = -1;
+        /** The hash of the key of each row. */
+        private final IntUnaryOperator hashOf;
+        /** The slots, holding each row plus one. */
+        private int[] slots = new int[16];
+        /** The number of slots holding a row or DELETED. */
+        private int used;
+
+        /**
+         * Construct an empty table.
+         *
+         * @param hashOf the hash of the key of each row
+         */
+        IdTable(IntUnaryOperator hashOf) {
+            this.hashOf = hashOf;
+        }
+
+        /**
+         * Return the first row of a hash matching a predicate, or -1 if there is none.
+         *
+         * @param hash    the hash of the key
+         * @param matches the predicate comparing a candidate row with the key
+         * @return the row, or -1
+         */
+        int find(int hash, IntPredicate matches) {
+            int mask = slots.length - 1;
+            for (int i = spread(hash) & mask; slots[i] != EMPTY; i = (i + 1) & mask) {
+                if (slots[i] != DELETED && matches.test(slots[i] - 1)) {
+                    return slots[i] - 1;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Return every row of a hash matching a predicate.
+         *
+         * @param hash    the hash of the key
+         * @param matches the predicate comparing a candidate row with the key
+         * @return the rows, in no particular order
+         */
+        int[] findAll(int hash, IntPredicate matches) {
+            int[] rows = new int[0];
+            int mask = slots.length - 1;
+            for (int i = spread(hash) & mask; slots[i] != EMPTY; i = (i + 1) & mask) {
+                if (slots[i] != DELETED && matches.test(slots[i] - 1)) {
+                    rows = Arrays.copyOf(rows, rows.length + 1);
+                    rows[rows.length - 1] = slots[i] - 1;
+                }
+            }
+            return rows;
+        }
+
+        /**
+         * Add a row.
+         *
+         * @param hash the hash of the key of the row
+         * @param row  the row
+         */
+        void add(int hash, int row) {
+            if ((used + 1) * 2 > slots.length) {
+                rehash();
+            }
+            int mask = slots.length - 1;
+            int i = spread(hash) & mask;
+            while (slots[i] != EMPTY && slots[i] != DELETED) {
+                i = (i + 1) & mask;
+            }
+            if (slots[i] == EMPTY) {
+                used++;
+            }
+            slots[i] = row + 1;
+        }
+
+        /**
+         * Remove a row, if present.
+         *
+         * @param hash the hash of the key of the row
+         * @param row  the row
+         */
+        void remove(int hash, int row) {
+            int mask = slots.length - 1;
+            for (int i = spread(hash) & mask; slots[i] != EMPTY; i = (i + 1) & mask) {
+                if (slots[i] == row + 1) {
+                    slots[i] = DELETED;
+                    return;
+                }
+            }
+        }
+
+        /** Reinsert every row into a table sized for them, dropping the removed slots. */
+        private void rehash() {
+            int[] old = slots;
+            int live = 0;
+            for (int slot : old) {
+                if (slot > 0) {
+                    live++;
+                }
+            }
+            int capacity = 16;
+            while (capacity < (live + 1) * 4) {
+                capacity *= 2;
+            }
+            slots = new int[capacity];
+            used = 0;
+            for (int slot : old) {
+                if (slot > 0) {
+                    add(hashOf.applyAsInt(slot - 1), slot - 1);
+                }
+            }
+        }
+
+        /**
+         * Spread the bits of a hash so that similar hashes land far apart.
+         *
+         * @param hash the hash
+         * @return the spread hash
+         */
+        private static int spread(int hash) {
+            int h = hash * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    /** An immutable list of the rows of a catalog at one moment, read as their views. */
+    static final class Snapshot extends AbstractList<ImageFile> implements RandomAccess {
+        /** The catalog the rows belong to. */
+        private final ImageCatalog catalog;
+        /** The rows, possibly shared with later snapshots beyond size. */
+        private final int[] rows;
+        /** The number of rows visible in this snapshot. */
+        private final int size;
+
+        /**
+         * Construct a snapshot of a prefix of an array of rows.
+         *
+         * @param catalog the catalog the rows belong to
+         * @param rows    the rows
+         * @param size    the number of rows visible
+         */
+        Snapshot(ImageCatalog catalog, int[] rows, int size) {
+            this.catalog = catalog;
+            this.rows = rows;
+            this.size = size;
+        }
+
+        @Override
+        public ImageFile get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            // Rows with a reachable view are read without waiting for writers or saves.
+            ImageFile image = catalog.peekView(rows[index]);
+            if (image != null) {
+                return image;
+            }
+            synchronized (catalog) {
+                return catalog.view(rows[index]);
+            }
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
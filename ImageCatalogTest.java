@@ -0,0 +1,167 @@
+package photo_renamer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/** A class for testing ImageCatalog. */
+public class ImageCatalogTest {
+    /** The path where the tested database is stored. */
+    private String path = System.getProperty("user.dir") + "/ImageCatalogTest.txt";
+    /** The directory the catalogued images are said to be in. */
+    private String dir = new File(System.getProperty("user.dir"), "catalog").getAbsolutePath() + File.separator;
+    /** The ImageCatalog being tested. */
+    private ImageCatalog catalog;
+
+    @Before
+    /* Set up a new ImageCatalog for testing. */
+    public void setUp() throws Exception {
+        catalog = new ImageCatalog(path);
+    }
+
+    @After
+    /* Delete the database written by a test. */
+    public void tearDown() throws Exception {
+        new File(path).delete();
+    }
+
+    /**
+     * Return a new ImageFile in the test directory carrying Tags.
+     *
+     * @param subPath  the path of the image under the test directory
+     * @param tagNames the names of the Tags
+     * @return the ImageFile
+     * @throws Exception an Exception
+     */
+    private ImageFile image(String subPath, String... tagNames) throws Exception {
+        ArrayList<Tag> tags = new ArrayList<>();
+        for (String tagName : tagNames) {
+            tags.add(new Tag(tagName));
+        }
+        return new ImageFile(new File(subPath).getName(), tags, dir + subPath.replace('/', File.separatorChar));
+    }
+
+    @Test
+    /* Test that the view of a row is the ImageFile put there, and keeps its row when renamed. */
+    public void testViewIdentity() throws Exception {
+        ImageFile image = image("a/one.jpg");
+        catalog.put(image);
+        assertSame(image, catalog.get(image.imgFilePath));
+        String oldPath = image.imgFilePath;
+        image.name = "one @sun.jpg";
+        image.imgFilePath = dir + "a" + File.separator + image.name;
+        image.tags = new ArrayList<>(Arrays.asList(new Tag("sun")));
+        assertTrue(catalog.move(image, oldPath));
+        assertNull(catalog.get(oldPath));
+        assertSame(image, catalog.get(image.imgFilePath));
+        assertTrue(catalog.isView(image));
+        assertFalse(catalog.isView(image("a/one @sun.jpg")));
+        assertEquals(1, catalog.size());
+    }
+
+    @Test
+    /* Test that a snapshot keeps its rows while rows are later added and removed. */
+    public void testSnapshot() throws Exception {
+        catalog.put(image("a/one.jpg"));
+        catalog.put(image("b/two.jpg"));
+        List<ImageFile> before = catalog.snapshot();
+        catalog.remove(dir + "a" + File.separator + "one.jpg");
+        catalog.put(image("b/three.jpg"));
+        assertEquals(2, before.size());
+        assertEquals("one.jpg", before.get(0).name);
+        List<ImageFile> after = catalog.snapshot();
+        assertEquals(2, after.size());
+        assertEquals("two.jpg", after.get(0).name);
+        assertEquals("three.jpg", after.get(1).name);
+    }
+
+    @Test
+    /* Test that a snapshot reads the views of its rows while another thread holds the catalog. */
+    public void testSnapshotReadsWhileLocked() throws Exception {
+        ImageFile image = image("a/one.jpg");
+        catalog.put(image);
+        List<ImageFile> snapshot = catalog.snapshot();
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch read = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            synchronized (catalog) {
+                locked.countDown();
+                try {
+                    read.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        holder.start();
+        locked.await();
+        long start = System.nanoTime();
+        assertSame(image, snapshot.get(0));
+        // Had the read waited for the lock, it would have returned only once the holder gave up after 5 seconds.
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(4));
+        read.countDown();
+        holder.join();
+    }
+
+    @Test
+    /* Test that every field of an image survives saving and loading the catalog. */
+    public void testFileRoundTrip() throws Exception {
+        ImageFile image = image("a/b/one @sun @sea.jpg", "sun", "sea");
+        image.nameHistory = NameHistory.EMPTY.with("one.jpg").with(image.name);
+        image.contentFingerprint = "1f4-8000000000000abc";
+        image.perceptualHash = -42;
+        image.perceptualHashModified = 7;
+        image.missingSince = 9;
+        catalog.put(image);
+        catalog.put(image("a/two.png"));
+        catalog.flush();
+        ImageCatalog loaded = new ImageCatalog(path);
+        ImageFile read = loaded.get(image.imgFilePath);
+        assertEquals(image, read);
+        assertEquals(image.tags, read.tags);
+        assertEquals(new ArrayList<>(image.nameHistory.toList()), new ArrayList<>(read.nameHistory.toList()));
+        assertEquals(image.contentFingerprint, read.contentFingerprint);
+        assertEquals(-42, read.perceptualHash);
+        assertEquals(7, read.perceptualHashModified);
+        assertEquals(9, read.missingSince);
+        assertEquals(Collections.singletonList(read), loaded.withFingerprint("1f4-8000000000000abc"));
+        assertSame(read, loaded.withFingerprint("1f4-8000000000000abc").get(0));
+        assertEquals(2, loaded.size());
+    }
+
+    @Test
+    /* Test finding images by case-folded Tag name, in path order. */
+    public void testFind() throws Exception {
+        catalog.put(image("b/two @Sun.jpg", "Sun"));
+        catalog.put(image("a/one @sun @sea.jpg", "sun", "sea"));
+        catalog.put(image("c/three @sea.jpg", "sea"));
+        ArrayList<ImageFile> found = catalog.find("sun");
+        assertEquals(2, found.size());
+        assertEquals("one @sun @sea.jpg", found.get(0).name);
+        assertEquals("two @Sun.jpg", found.get(1).name);
+        assertTrue(catalog.find("sky").isEmpty());
+
+        // Removed and retagged rows drop out of the rows indexed by a Tag, however often they are retagged.
+        catalog.remove(dir + "b" + File.separator + "two @Sun.jpg");
+        for (int i = 0; i < 3000; i++) {
+            catalog.put(image("c/three @sea.jpg", i % 2 == 0 ? "SUN" : "sea"));
+            assertEquals(i % 2 == 0 ? 2 : 1, catalog.find("sun").size());
+        }
+        assertEquals("one @sun @sea.jpg", catalog.find("sun").get(0).name);
+        assertEquals(2, catalog.find("sea").size());
+    }
+}
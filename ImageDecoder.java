@@ -0,0 +1,75 @@
+package photo_renamer;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * A helper for decoding images no larger than they will be displayed or analysed.
+ * Decoders read the file through ImageBytes, sharing the mapping of the visit of the file, if any.
+ */
+final class ImageDecoder {
+
+    /** Prevent instantiation of this helper. */
+    private ImageDecoder() {
+    }
+
+    /**
+     * Decode an image, skipping source pixels so that the result is at least the argued size where possible.
+     * Decoding a subsample reads every byte but allocates and converts far fewer pixels than a full decode.
+     *
+     * @param file   the image file
+     * @param width  the smallest useful width
+     * @param height the smallest useful height
+     * @return the subsampled image
+     * @throws IOException if the file cannot be read or decoded
+     */
+    static BufferedImage readSubsampled(File file, int width, int height) throws IOException {
+        try (ImageBytes bytes = ImageBytes.open(file); ImageInputStream input = bytes.stream()) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("No decoder for " + file);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int step = Math.max(1, Math.min(reader.getWidth(0) / Math.max(1, width),
+                        reader.getHeight(0) / Math.max(1, height)));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Read the pixel dimensions of an image from its header without decoding it.
+     *
+     * @param file the image file
+     * @return the dimensions of the image
+     * @throws IOException if the file cannot be read or has no decoder
+     */
+    static Dimension readSize(File file) throws IOException {
+        try (ImageBytes bytes = ImageBytes.open(file); ImageInputStream input = bytes.stream()) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("No decoder for " + file);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+}
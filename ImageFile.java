@@ -2,6 +2,7 @@ package photo_renamer;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Objects;
@@ -10,21 +11,32 @@ import java.util.Observable;
 /**
  * An object representing an image file on the system.
  * Extends Observable to allow ImageFileManager Observers to know of renaming events.
+ * Changes are made while holding the monitor of this ImageFile, and the list of Tags and the NameHistory are
+ * replaced rather than modified, so other threads may read them at any time without locking.
+ * The File of the image is not serialized, being rebuilt from its path when read back.
  */
 class ImageFile extends Observable implements Serializable {
 
     /** The serialVersionUID for this class. */
     private static final long serialVersionUID = 3962603919026990230L;
     /** The name of this imageFile. */
-    String name;
-    /** The ArrayList of tags for this image. */
-    ArrayList<Tag> tags;
+    volatile String name;
+    /** The ArrayList of tags for this image, replaced rather than modified once shared. */
+    volatile ArrayList<Tag> tags;
     /** The path of the image in the system. */
-    String imgFilePath;
+    volatile String imgFilePath;
     /** The File object of the image in the system. */
-    File imgFile;
-    /** The ArrayList of past names of the image. */
-    ArrayList<String> nameHistoryList;
+    transient volatile File imgFile;
+    /** The past names of the image. */
+    volatile NameHistory nameHistory;
+    /** The perceptual hash of the image's pixels, valid when perceptualHashModified is non-zero. */
+    volatile long perceptualHash;
+    /** The last modification time of the image file when perceptualHash was computed, or 0 if never. */
+    volatile long perceptualHashModified;
+    /** The ContentFingerprint of the image file, or null if not yet computed. */
+    volatile String contentFingerprint;
+    /** The time the image file was first found missing by a HistorySweeper, or 0 if it was not. */
+    volatile long missingSince;
 
     /**
      * Construct an observable ImageFile object.
@@ -36,12 +48,23 @@ class ImageFile extends Observable implements Serializable {
      * @throws ClassNotFoundException a ClassNotFoundException exception
      */
     ImageFile(String name, ArrayList<Tag> tags, String imgFilePath) throws IOException, ClassNotFoundException {
+        this(name, tags, imgFilePath, NameHistory.EMPTY.with(name));
+    }
+
+    /**
+     * Construct an observable ImageFile object with a known history, such as a view of an ImageCatalog row.
+     *
+     * @param name        the name of this ImageFile
+     * @param tags        the Tags for this image
+     * @param imgFilePath the system path for the image
+     * @param nameHistory the past names of the image
+     */
+    ImageFile(String name, ArrayList<Tag> tags, String imgFilePath, NameHistory nameHistory) {
         this.name = name;
         this.tags = tags;
         this.imgFilePath = imgFilePath;
         this.imgFile = new File(imgFilePath);
-        this.nameHistoryList = new ArrayList<>();
-        this.nameHistoryList.add(this.name);
+        this.nameHistory = nameHistory;
     }
 
     /**
@@ -50,20 +73,19 @@ class ImageFile extends Observable implements Serializable {
      * @param newName the name to change the ImageFile to
      * @throws IOException an IOException exception
      */
-    void renameImage(String newName) throws IOException {
+    synchronized void renameImage(String newName) throws IOException {
         String oldName = name;
         if (!Objects.equals(oldName, newName)) {
-            name = newName;
-            // Record, rename, and point to the new pathname of this ImageFile.
-            imgFilePath = imgFilePath.substring(0, imgFilePath.length() - oldName.length());
-            imgFilePath += name;
-            File newFile = new File(imgFilePath);
-            // Attempt to rename the image file.
+            String newPath = imgFilePath.substring(0, imgFilePath.length() - oldName.length()) + newName;
+            File newFile = new File(newPath);
+            // Attempt to rename the image file, which must not stay mapped by its visit.
+            ImageBytes.release(imgFile);
+            // Record, rename, and point to the new pathname of this ImageFile, unless the file kept its name.
             if (imgFile.renameTo(newFile)) {
+                name = newName;
+                imgFilePath = newPath;
                 imgFile = newFile;
-                if (!nameHistoryList.contains(oldName)) {
-                    nameHistoryList.add(oldName);
-                }
+                addPastName(oldName);
                 // Mark this ImageFile as changed and notify any Observers of this rename event.
                 setChanged();
                 notifyObservers(oldName);
@@ -71,6 +93,76 @@ class ImageFile extends Observable implements Serializable {
         }
     }
 
+    /**
+     * Point this ImageFile at the location its image file was moved to outside of the application,
+     * recording the name it had before as a past name.
+     *
+     * @param movedFile the image file at its new location
+     */
+    synchronized void relocate(File movedFile) {
+        String oldName = name;
+        name = movedFile.getName();
+        imgFilePath = movedFile.getAbsolutePath();
+        imgFile = movedFile;
+        addPastName(oldName);
+        missingSince = 0;
+    }
+
+    /**
+     * Merge another record of the same image into this ImageFile, such as one imported from another database.
+     * This ImageFile keeps its name, Tags and fields, gains the past names of the other, and takes the
+     * fingerprint and perceptual hash of the other if it has none.
+     *
+     * @param other the other record of the image
+     */
+    synchronized void merge(ImageFile other) {
+        for (String pastName : other.nameHistory.toList()) {
+            addPastName(pastName);
+        }
+        if (contentFingerprint == null) {
+            contentFingerprint = other.contentFingerprint;
+        }
+        if (perceptualHashModified == 0) {
+            perceptualHash = other.perceptualHash;
+            perceptualHashModified = other.perceptualHashModified;
+        }
+    }
+
+    /**
+     * Record a past name of this ImageFile by replacing its NameHistory with an extended one.
+     *
+     * @param pastName the past name
+     */
+    private void addPastName(String pastName) {
+        nameHistory = nameHistory.with(pastName);
+    }
+
+    /**
+     * Read this ImageFile from a stream, converting the list of past names and the File written by
+     * earlier versions of this class.
+     *
+     * @param in the stream
+     * @throws IOException            an IOException exception
+     * @throws ClassNotFoundException a ClassNotFoundException exception
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        name = (String) fields.get("name", null);
+        tags = (ArrayList<Tag>) fields.get("tags", null);
+        imgFilePath = (String) fields.get("imgFilePath", null);
+        perceptualHash = fields.get("perceptualHash", 0L);
+        perceptualHashModified = fields.get("perceptualHashModified", 0L);
+        contentFingerprint = (String) fields.get("contentFingerprint", null);
+        missingSince = fields.get("missingSince", 0L);
+        if (fields.getObjectStreamClass().getField("nameHistoryList") != null) {
+            nameHistory = NameHistory.of((ArrayList<String>) fields.get("nameHistoryList", null));
+        } else {
+            nameHistory = (NameHistory) fields.get("nameHistory", null);
+        }
+        imgFile = new File(imgFilePath);
+    }
+
     /**
      * Return a string representation of this ImageFile object.
      *
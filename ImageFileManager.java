@@ -1,9 +1,11 @@
 package photo_renamer;
 
-import javax.swing.*;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Observable;
 import java.util.Observer;
 
@@ -21,6 +23,20 @@ class ImageFileManager implements Observer {
     private PhotoRenameLogger photoRenameLogger;
     /** The ImageHistoryManager used to manage the history of ImageFiles. */
     private ImageHistoryManager historyManager;
+    /** The journal told of every rename before it is made, or null. */
+    private RenameJournal journal;
+
+    /** A journal of renames, written ahead of each rename so that an interrupted bulk operation can recover. */
+    interface RenameJournal {
+        /**
+         * Record that an image is about to be renamed.
+         *
+         * @param oldPath the system path of the image before the rename
+         * @param newPath the system path of the image after the rename
+         * @throws IOException an IOException exception
+         */
+        void renaming(String oldPath, String newPath) throws IOException;
+    }
 
     /**
      * Construct a manager for observing an ImageFile.
@@ -37,77 +53,194 @@ class ImageFileManager implements Observer {
         this.historyManager = historyManager;
     }
 
+    /**
+     * Return the ImageFile managed by this ImageFileManager.
+     *
+     * @return the managed ImageFile
+     */
+    ImageFile getManagedImage() {
+        return managedImage;
+    }
+
+    /**
+     * Tell a journal of every later rename of the managed image before it is made.
+     *
+     * @param journal the RenameJournal, or null
+     */
+    void setJournal(RenameJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Rename the managed image, telling the journal first, after changing its Tags. If the image file keeps its
+     * name, because the name already matched or the file could not be renamed, the history is told of the changed
+     * Tags at once; otherwise it learns of them through the rename.
+     *
+     * @param newName the new name of the managed image
+     * @throws IOException an IOException exception
+     */
+    private void rename(String newName) throws IOException {
+        File before = managedImage.imgFile;
+        if (journal != null && !newName.equals(managedImage.name)) {
+            String oldPath = managedImage.imgFilePath;
+            journal.renaming(oldPath, oldPath.substring(0, oldPath.length() - managedImage.name.length()) + newName);
+        }
+        try {
+            managedImage.renameImage(newName);
+        } catch (UncheckedIOException e) {
+            // The history failed to record the rename in update, which cannot throw the IOException itself.
+            throw e.getCause();
+        }
+        if (managedImage.imgFile == before) {
+            historyManager.changed(Collections.singletonList(managedImage));
+        }
+    }
+
     /**
      * Rename and modify an ImageFile to include the argued Tags.
+     * The managed image is locked for the whole change, so concurrent changes to it are never lost.
      *
      * @param toApply the list of tags to apply to the managed image
+     * @return the ArrayList of tags newly added to the managed image
      */
-    void applyTags(ArrayList<Tag> toApply) throws IOException {
-        // Record the old name for logging purposes.
-        String oldName = managedImage.name;
-        int extBeginning = oldName.lastIndexOf(".");
-        String oldExt = oldName.substring(extBeginning);
-        String newName = oldName.substring(0, extBeginning);
-        boolean shouldRename = false;
-        // Add each tag to the ImageFile Tag list, as well as the new name to be used.
-        for (Tag tag : toApply) {
-            if (!managedImage.tags.contains(tag) && !oldName.contains("@" + tag)) {
-                managedImage.tags.add(tag);
-                newName += " @" + tag.name;
-                shouldRename = true;
+    ArrayList<Tag> applyTags(ArrayList<Tag> toApply) throws IOException {
+        synchronized (managedImage) {
+            // Record the old name for logging purposes.
+            String oldName = managedImage.name;
+            int extBeginning = oldName.lastIndexOf(".");
+            String oldExt = oldName.substring(extBeginning);
+            String newName = oldName.substring(0, extBeginning);
+            ArrayList<Tag> tags = new ArrayList<>(managedImage.tags);
+            ArrayList<Tag> applied = new ArrayList<>();
+            // Add each tag to the ImageFile Tag list, as well as the new name to be used.
+            for (Tag tag : toApply) {
+                if (!tags.contains(tag) && !oldName.contains("@" + tag)) {
+                    tags.add(tag);
+                    newName += " @" + tag.name;
+                    applied.add(tag);
+                }
             }
-        }
-        if (shouldRename) {
-            newName += oldExt;
-            managedImage.renameImage(newName);
+            if (!applied.isEmpty()) {
+                managedImage.tags = tags;
+                newName += oldExt;
+                rename(newName);
+            }
+            return applied;
         }
     }
 
     /**
      * Modify and rename the managed image to remove the argued Tags.
+     * The managed image is locked for the whole change, so concurrent changes to it are never lost.
      *
      * @param toDelete the list of tags to delete from the managed image
+     * @return the ArrayList of tags removed from the managed image's Tag list
      */
-    void deleteTags(ArrayList<Tag> toDelete) throws IOException {
-        // Record the old name and file extension.
-        String oldName = managedImage.name;
-        int extBeginning = oldName.lastIndexOf(".");
-        String oldExt = oldName.substring(extBeginning);
-        String newName = oldName.substring(0, extBeginning);
-        boolean shouldRename = false;
-        // Remove each tag from the ImageFile object and/or its old name.
-        for (Tag tag : toDelete) {
-            String removeTag = " @" + tag.name;
-            if (managedImage.tags.contains(tag)) {
-                managedImage.tags.remove(tag);
-                shouldRename = true;
+    ArrayList<Tag> deleteTags(ArrayList<Tag> toDelete) throws IOException {
+        synchronized (managedImage) {
+            // Record the old name and file extension.
+            String oldName = managedImage.name;
+            int extBeginning = oldName.lastIndexOf(".");
+            String oldExt = oldName.substring(extBeginning);
+            String newName = oldName.substring(0, extBeginning);
+            boolean shouldRename = false;
+            ArrayList<Tag> tags = new ArrayList<>(managedImage.tags);
+            ArrayList<Tag> deleted = new ArrayList<>();
+            // Remove each tag from the ImageFile object and/or its old name.
+            for (Tag tag : toDelete) {
+                String removeTag = " @" + tag.name;
+                if (tags.remove(tag)) {
+                    deleted.add(tag);
+                    shouldRename = true;
+                }
+                if (oldName.contains(removeTag)) {
+                    newName = newName.replace(removeTag, "");
+                    shouldRename = true;
+                }
             }
-            if (oldName.contains(removeTag)) {
-                newName = newName.replace(removeTag, "");
-                shouldRename = true;
+            if (shouldRename) {
+                managedImage.tags = tags;
+                newName += oldExt;
+                rename(newName);
             }
-        }
-        if (shouldRename) {
-            newName += oldExt;
-            managedImage.renameImage(newName);
+            return deleted;
         }
     }
 
     /**
      * Log rename events for the observed ImageFile and update the history database.
+     * A failure to update the history is thrown on to the caller renaming the image, which reports it.
      *
      * @param o       the ImageFile this ImageManager observes
      * @param oldName the oldName of this ImageFile
+     * @throws UncheckedIOException if the history database could not be updated
      */
     @Override
     public void update(Observable o, Object oldName) {
+        ImageFile renamed = (ImageFile) o;
+        String dirPath = renamed.imgFilePath.substring(0, renamed.imgFilePath.length() - renamed.name.length());
+        IOException failure = null;
         try {
-            historyManager.toFile();
+            historyManager.reindexImage(renamed, dirPath + oldName);
+            historyManager.changed();
         } catch (IOException e) {
-            JOptionPane.showMessageDialog(new JFrame(), "Failed to access history database!");
-            e.printStackTrace();
+            failure = e;
         }
         photoRenameLogger.logRename(oldName, o);
+        if (failure != null) {
+            throw new UncheckedIOException("Failed to access history database", failure);
+        }
+    }
+
+    /**
+     * Retag the managed image so that its Tags match those in one of its past names.
+     *
+     * @param pastName   the past name being reverted to
+     * @param tagManager the TagManager recording Tag usage, or null
+     * @throws IOException an IOException exception
+     */
+    void revertTo(String pastName, TagManager tagManager) throws IOException {
+        ArrayList<Tag> revertAddTags = new ArrayList<>();
+        ArrayList<Tag> revertDeleteTags = new ArrayList<>();
+        for (String tagName : tagNamesIn(pastName)) {
+            Tag revertTag = new Tag(tagName);
+            revertAddTags.add(revertTag);
+        }
+        for (Tag currentTag : managedImage.tags) {
+            if (!revertAddTags.contains(currentTag)) {
+                revertDeleteTags.add(currentTag);
+            }
+        }
+        ArrayList<Tag> applied = applyTags(revertAddTags);
+        ArrayList<Tag> deleted = deleteTags(revertDeleteTags);
+        if (tagManager != null) {
+            tagManager.recordUsage(applied, 1);
+            tagManager.recordUsage(deleted, -1);
+        }
+    }
+
+    /**
+     * Return the names of the Tags written into an image name by applyTags.
+     *
+     * @param name the image name
+     * @return an ArrayList of the Tag names, in the order they appear
+     */
+    static ArrayList<String> tagNamesIn(String name) {
+        int extBeginning = name.lastIndexOf(".");
+        ArrayList<String> tagNames = new ArrayList<>(Arrays.asList(name.substring(0, extBeginning).split(" @")));
+        tagNames.remove(0);
+        return tagNames;
+    }
+
+    /** A callback receiving each ImageFile found while scanning a directory. */
+    interface ImageVisitor {
+        /**
+         * Receive an ImageFile found by a scan.
+         *
+         * @param image the ImageFile found, as recorded in the history database
+         * @throws IOException an IOException exception
+         */
+        void visit(ImageFile image) throws IOException;
     }
 
     /**
@@ -120,26 +253,53 @@ class ImageFileManager implements Observer {
      */
     static ArrayList<ImageFile> getImages(File dir, ArrayList<ImageFile> imageFiles, ImageHistoryManager historyManager)
             throws IOException, ClassNotFoundException {
+        visitImages(dir, historyManager, imageFiles::add);
+        return imageFiles;
+    }
+
+    /**
+     * Pass every ImageFile located anywhere under a given directory to a visitor as it is found,
+     * without collecting them, so that memory use does not grow with the size of the tree.
+     * Recording and visiting an image read its file through the ImageBytes of one visit.
+     *
+     * @param dir            the root directory
+     * @param historyManager the ImageHistoryManager being used
+     * @param visitor        the visitor receiving each ImageFile found
+     */
+    static void visitImages(File dir, ImageHistoryManager historyManager, ImageVisitor visitor)
+            throws IOException, ClassNotFoundException {
         File[] files = dir.listFiles();
         if (files != null) {
             // Recursively search this directory for any images under it.
             for (File sub : files) {
                 if (sub.isDirectory()) {
-                    getImages(sub, imageFiles, historyManager);
-                } else {
-                    String fileName = sub.getName().toLowerCase();
-                    // Check for image file extensions and append the file if compliant.
-                    for (String ext : EXTENSIONS) {
-                        if (fileName.endsWith(ext)) {
-                            ImageFile image = new ImageFile(sub.getName(), new ArrayList<>(), sub.getAbsolutePath());
-                            image = historyManager.historicizeImage(image);
-                            imageFiles.add(image);
-                            break;
-                        }
+                    visitImages(sub, historyManager, visitor);
+                } else if (isImageName(sub.getName())) {
+                    ImageFile image = new ImageFile(sub.getName(), new ArrayList<>(), sub.getAbsolutePath());
+                    ImageBytes visit = ImageBytes.visit(image.imgFile);
+                    try {
+                        visitor.visit(historyManager.historicizeImage(image));
+                    } finally {
+                        visit.close();
                     }
                 }
             }
         }
-        return imageFiles;
+    }
+
+    /**
+     * Return whether a file name has one of the permissible image file extensions.
+     *
+     * @param fileName the file name
+     * @return a boolean of whether the file name is that of an image
+     */
+    static boolean isImageName(String fileName) {
+        String lowerName = fileName.toLowerCase();
+        for (String ext : EXTENSIONS) {
+            if (lowerName.endsWith(ext)) {
+                return true;
+            }
+        }
+        return false;
     }
 }
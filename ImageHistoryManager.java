@@ -2,39 +2,360 @@ package photo_renamer;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
-/** A manager for the history database of ImageFiles. */
-class ImageHistoryManager extends AbstractDatabaseManager {
+/**
+ * A manager for the history database of ImageFiles.
+ * The managed ImageFiles are kept in an ImageCatalog, which is also the store of the "file" and "memory" backends;
+ * the "shared" backend keeps it as the base of a SharedLogStore, and other backends are loaded into a catalog of
+ * their own. The ImageFiles handed out are views of catalog rows. Changes other processes sharing the database make
+ * are written to the catalog as they are applied, replacing the views of their rows.
+ * The history changes only while holding the monitor of this manager. A thread holding the
+ * monitor of an ImageFile may go on to take this monitor, but never the other way round.
+ */
+class ImageHistoryManager extends AbstractDatabaseManager<ImageFile> {
 
-    /** The ArrayList containing managed ImageFiles. */
-    private ArrayList<ImageFile> images;
+    /** The schema keying stored ImageFiles by system path and indexing them by case-folded Tag name. */
+    private static final DatabaseStore.Schema<ImageFile> SCHEMA = new DatabaseStore.Schema<ImageFile>() {
+        @Override
+        public String keyOf(ImageFile image) {
+            return image.imgFilePath;
+        }
+
+        @Override
+        public Collection<String> termsOf(ImageFile image) {
+            ArrayList<String> terms = new ArrayList<>();
+            for (Tag tag : image.tags) {
+                terms.add(TagTrie.fold(tag.name));
+            }
+            return terms;
+        }
+    };
+
+    /** The catalog of managed ImageFiles, indexed by system path and ContentFingerprint. */
+    private final ImageCatalog catalog;
+    /** The statistics of the Tags carried by the managed ImageFiles, kept up to date by the catalog. */
+    final TagStatistics statistics;
+    /** The path the statistics are saved to, or null if they are kept in the heap only. */
+    private final String statisticsPath;
+    /** The SmartAlbums of the managed ImageFiles, kept up to date by the catalog. */
+    final SmartAlbums albums;
 
     /**
      * Construct a manager for the history database of ImageFiles.
      *
      * @param historyPath the pathname of the history database file
      */
-    @SuppressWarnings("unchecked")
     ImageHistoryManager(String historyPath) throws IOException, ClassNotFoundException {
-        super(historyPath);
-        this.images = super.managedObjects;
+        super(openStore(historyPath));
+        if (store instanceof ImageCatalog) {
+            this.catalog = (ImageCatalog) store;
+        } else if (store instanceof SharedLogStore) {
+            this.catalog = (ImageCatalog) ((SharedLogStore<ImageFile>) store).base;
+        } else {
+            this.catalog = new ImageCatalog(null);
+            store.scan(null, null, catalog::put);
+        }
+        String backend = System.getProperty(DatabaseStore.STORAGE_PROPERTY, "file");
+        boolean inHeap = backend.equals("memory");
+        // Statistics saved by one of several processes would rarely match the history another one loads.
+        this.statisticsPath = inHeap || backend.equals("shared") ? null : historyPath + ".stats";
+        this.statistics = loadStatistics();
+        catalog.setTagSetListener(statistics::update);
+        this.albums = new SmartAlbums(catalog, inHeap ? null : historyPath + ".albums");
+        catalog.setRowListener(albums);
+        store.setChangeListener(new DatabaseStore.ChangeListener<ImageFile>() {
+            @Override
+            public void put(ImageFile image) {
+                changedElsewhere();
+            }
+
+            @Override
+            public void removed(String key) {
+                changedElsewhere();
+            }
+        });
+    }
+
+    /**
+     * Load the saved statistics of the Tags of the managed ImageFiles, counting them afresh from the lists of Tags
+     * in the catalog if they were never saved or do not match the history, which a crash between saving
+     * the history and the statistics can cause. Saved statistics match if they count the same images, Tags and
+     * checksum of each image's list of Tags, so retagging images without changing how many Tags they carry
+     * is noticed too.
+     *
+     * @return the statistics
+     */
+    private TagStatistics loadStatistics() {
+        TagStatistics saved = statisticsPath == null ? null : TagStatistics.load(statisticsPath);
+        long[] totals = new long[3];
+        catalog.countTagSets((tags, rows) -> {
+            totals[0] += rows;
+            totals[1] += (long) rows * tags.size();
+            totals[2] += rows * TagStatistics.checksumOf(tags);
+        });
+        if (saved != null && saved.counts(totals[0], totals[1], totals[2])) {
+            return saved;
+        }
+        TagStatistics counted = new TagStatistics();
+        catalog.countTagSets(counted::update);
+        return counted;
+    }
+
+    /**
+     * Save the changes passed on to the store so far to the database, together with the statistics of the Tags.
+     *
+     * @throws IOException an IOException exception
+     */
+    @Override
+    synchronized void toFile() throws IOException {
+        super.toFile();
+        if (statisticsPath != null) {
+            statistics.save(statisticsPath);
+        }
+    }
+
+    /**
+     * Open the store of a history database with the backend chosen by the storage system property,
+     * using an ImageCatalog for the backends kept in the heap and as the base of the shared backend.
+     *
+     * @param historyPath the pathname of the history database file
+     * @return the open store
+     * @throws IOException            an IOException exception
+     * @throws ClassNotFoundException a ClassNotFoundException exception
+     */
+    private static DatabaseStore<ImageFile> openStore(String historyPath) throws IOException, ClassNotFoundException {
+        String backend = System.getProperty(DatabaseStore.STORAGE_PROPERTY, "file");
+        if (backend.equals("file")) {
+            return new ImageCatalog(historyPath);
+        } else if (backend.equals("memory")) {
+            return new ImageCatalog(null);
+        } else if (backend.equals("shared")) {
+            return new SharedLogStore<>(historyPath, SCHEMA, ImageCatalog::new);
+        }
+        return DatabaseStore.open(historyPath, SCHEMA);
     }
 
     /**
      * Add an ImageFile to the historical database if not yet recorded and return the relevant ImageFile.
+     * An ImageFile recorded at another path whose image file has since disappeared, but whose content
+     * fingerprint matches, is relinked to the argued ImageFile's path so that its Tags and history survive
+     * the file being moved or renamed outside of the application.
+     * File contents are read without holding the monitor of this manager.
      *
      * @param newImage The ImageFile potentially being added.
      * @return an ImageFile if found, otherwise return the argued ImageFile
      * @throws IOException an IOException exception
      */
     ImageFile historicizeImage(ImageFile newImage) throws IOException {
-        if (images.contains(newImage)) {
-            int index = images.indexOf(newImage);
-            return images.get(index);
-        } else {
-            images.add(newImage);
-            toFile();
+        ImageFile recorded = recordedAt(newImage);
+        if (recorded != null) {
+            // Records made before fingerprints existed are fingerprinted the first time they are seen again.
+            if (recorded.contentFingerprint == null && fingerprint(recorded)) {
+                synchronized (this) {
+                    if (catalog.isView(recorded)) {
+                        put(recorded);
+                        changed();
+                    }
+                }
+            }
+            return recorded;
+        }
+        fingerprint(newImage);
+        List<ImageFile> sameContent;
+        synchronized (this) {
+            sameContent = newImage.contentFingerprint == null
+                    ? Collections.emptyList() : catalog.withFingerprint(newImage.contentFingerprint);
+        }
+        // Of several copies of the image, the one relinked is one whose file is gone; the others are left alone.
+        for (ImageFile moved : sameContent) {
+            String oldPath = null;
+            synchronized (moved) {
+                if (!moved.imgFile.exists()) {
+                    oldPath = moved.imgFilePath;
+                    moved.relocate(newImage.imgFile);
+                }
+            }
+            if (oldPath != null) {
+                synchronized (this) {
+                    reindexImage(moved, oldPath);
+                    changed();
+                }
+                return moved;
+            }
+        }
+        synchronized (this) {
+            // Another thread may have recorded the same path while this one was reading the file.
+            recorded = recordedAt(newImage);
+            if (recorded != null) {
+                return recorded;
+            }
+            put(newImage);
+            changed();
             return newImage;
         }
     }
+
+    /**
+     * Return the recorded ImageFile equal to the argued one, or null if there is none.
+     *
+     * @param image the ImageFile being looked up
+     * @return the recorded ImageFile, or null
+     */
+    private synchronized ImageFile recordedAt(ImageFile image) {
+        ImageFile recorded = catalog.get(image.imgFilePath);
+        return image.equals(recorded) ? recorded : null;
+    }
+
+    /**
+     * Return the recorded ImageFile at a system path, or null if there is none.
+     *
+     * @param path the system path
+     * @return the recorded ImageFile, or null
+     */
+    synchronized ImageFile getImage(String path) {
+        return catalog.get(path);
+    }
+
+    /**
+     * Record an ImageFile read from elsewhere, such as an imported database, replacing any record at its path.
+     *
+     * @param image the ImageFile
+     * @throws IOException an IOException exception
+     */
+    synchronized void putImage(ImageFile image) throws IOException {
+        put(image);
+        changed();
+    }
+
+    /**
+     * Bring the record of an image renamed on disk after the history was last saved up to date, as if the rename
+     * had been recorded, unless the history already records an image at its new path.
+     *
+     * @param oldPath the system path of the image before it was renamed
+     * @param renamed the image file at its new path
+     * @param tags    the Tags of the image after it was renamed
+     * @return a boolean of whether the record was updated
+     * @throws IOException an IOException exception
+     */
+    boolean recoverRename(String oldPath, File renamed, ArrayList<Tag> tags) throws IOException {
+        ImageFile recorded = getImage(oldPath);
+        if (recorded == null || getImage(renamed.getAbsolutePath()) != null) {
+            return false;
+        }
+        synchronized (recorded) {
+            recorded.tags = tags;
+            recorded.relocate(renamed);
+        }
+        synchronized (this) {
+            reindexImage(recorded, oldPath);
+            changed();
+        }
+        return true;
+    }
+
+    /**
+     * Write an ImageFile to the catalog and, if it is not the catalog, the store.
+     *
+     * @param image the ImageFile
+     * @throws IOException an IOException exception
+     */
+    private void put(ImageFile image) throws IOException {
+        catalog.put(image);
+        if (store != catalog) {
+            store.put(image);
+        }
+    }
+
+    /**
+     * Compute the ContentFingerprint of an ImageFile.
+     *
+     * @param image the ImageFile
+     * @return a boolean of whether the fingerprint could be computed
+     */
+    private static boolean fingerprint(ImageFile image) {
+        try {
+            image.contentFingerprint = ContentFingerprint.of(image.imgFile);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Remove ImageFiles from the historical database.
+     *
+     * @param dead the ImageFiles being removed
+     * @throws IOException an IOException exception
+     */
+    synchronized void removeImages(Collection<ImageFile> dead) throws IOException {
+        if (dead.isEmpty()) {
+            return;
+        }
+        for (ImageFile image : dead) {
+            if (catalog.isView(image)) {
+                catalog.remove(image.imgFilePath);
+                if (store != catalog) {
+                    store.remove(image.imgFilePath);
+                }
+            }
+        }
+        changed();
+    }
+
+    /**
+     * Move a renamed ImageFile to its new path in the catalog and the store of managed ImageFiles,
+     * keeping its catalog row.
+     *
+     * @param image   the renamed ImageFile
+     * @param oldPath the system path of the ImageFile before it was renamed
+     * @throws IOException an IOException exception
+     */
+    synchronized void reindexImage(ImageFile image, String oldPath) throws IOException {
+        boolean kept = catalog.move(image, oldPath);
+        if (store != catalog) {
+            if (kept) {
+                store.remove(oldPath);
+            }
+            store.put(image);
+        }
+    }
+
+    /**
+     * Record that managed ImageFiles were changed in place, without being renamed.
+     *
+     * @param changedImages the changed ImageFiles
+     * @throws IOException an IOException exception
+     */
+    synchronized void changed(Collection<ImageFile> changedImages) throws IOException {
+        for (ImageFile image : changedImages) {
+            if (catalog.isView(image)) {
+                put(image);
+            }
+        }
+        changed();
+    }
+
+    /**
+     * Return the recorded ImageFiles carrying a Tag, looked up by the Tag lists of the catalog.
+     *
+     * @param tag the Tag
+     * @return an ArrayList of the ImageFiles carrying the Tag, ordered by path
+     */
+    synchronized ArrayList<ImageFile> getImagesTagged(Tag tag) {
+        return catalog.find(TagTrie.fold(tag.name));
+    }
+
+    /**
+     * Return an immutable snapshot of the ImageFiles recorded in the historical database.
+     * Taking the snapshot only briefly locks the catalog, and changes made after it is taken are never added to
+     * or removed from it, though its ImageFiles are the current views of their rows.
+     *
+     * @return the snapshot of recorded ImageFiles
+     */
+    List<ImageFile> getImages() {
+        return catalog.snapshot();
+    }
 }
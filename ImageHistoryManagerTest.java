@@ -0,0 +1,154 @@
+package photo_renamer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/** A class for testing ImageHistoryManager. */
+public class ImageHistoryManagerTest {
+    /** The temporary directory holding the history and the images. */
+    private File dir;
+    /** The image recorded by setUp. */
+    private File photo;
+    /** The ImageHistoryManager being tested. */
+    private ImageHistoryManager manager;
+    /** The recorded ImageFile of the image, carrying a Tag. */
+    private ImageFile recorded;
+
+    @Before
+    /* Set up a history recording one tagged image in a temporary directory for testing. */
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("ImageHistoryManagerTest").toFile();
+        photo = new File(dir, "beach.jpg");
+        Files.write(photo.toPath(), "beach".getBytes("UTF-8"));
+        manager = new ImageHistoryManager(new File(dir, "history.ser").getPath());
+        recorded = manager.historicizeImage(image(photo));
+        recorded.tags = new ArrayList<>(Collections.singletonList(new Tag("sun")));
+        manager.changed(Collections.singletonList(recorded));
+    }
+
+    @After
+    /* Delete the temporary directory. */
+    public void tearDown() throws Exception {
+        Files.walk(dir.toPath()).sorted(Collections.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+
+    /**
+     * Return a new, untagged ImageFile of an image file.
+     *
+     * @param file the image file
+     * @return the ImageFile
+     * @throws Exception an Exception
+     */
+    private static ImageFile image(File file) throws Exception {
+        return new ImageFile(file.getName(), new ArrayList<>(), file.getAbsolutePath());
+    }
+
+    @Test
+    /* Test that an image moved outside the application is relinked to its record by content fingerprint. */
+    public void testRelinkMoved() throws Exception {
+        File moved = new File(dir, "trips/holiday.jpg");
+        moved.getParentFile().mkdirs();
+        Files.move(photo.toPath(), moved.toPath());
+
+        ImageFile relinked = manager.historicizeImage(image(moved));
+        assertSame(recorded, relinked);
+        assertEquals(moved.getAbsolutePath(), relinked.imgFilePath);
+        assertEquals("holiday.jpg", relinked.name);
+        assertEquals(Collections.singletonList(new Tag("sun")), relinked.tags);
+        assertSame(relinked, manager.getImage(moved.getAbsolutePath()));
+        assertNull(manager.getImage(photo.getAbsolutePath()));
+        assertEquals(1, manager.getImages().size());
+    }
+
+    @Test
+    /* Test that a moved copy of an image is relinked to its own record while another copy stays in place. */
+    public void testRelinkMovedCopy() throws Exception {
+        File copy = new File(dir, "copy.jpg");
+        Files.copy(photo.toPath(), copy.toPath());
+        ImageFile copied = manager.historicizeImage(image(copy));
+        copied.tags = new ArrayList<>(Collections.singletonList(new Tag("sea")));
+        manager.changed(Collections.singletonList(copied));
+        File moved = new File(dir, "trips/copy.jpg");
+        moved.getParentFile().mkdirs();
+        Files.move(copy.toPath(), moved.toPath());
+
+        assertSame(copied, manager.historicizeImage(image(moved)));
+        assertEquals(moved.getAbsolutePath(), copied.imgFilePath);
+        assertEquals(Collections.singletonList(new Tag("sea")), copied.tags);
+        assertEquals(photo.getAbsolutePath(), recorded.imgFilePath);
+        assertEquals(2, manager.getImages().size());
+    }
+
+    @Test
+    /* Test that a copy of an image whose recorded file still exists is recorded anew rather than relinked. */
+    public void testNoRelinkCopy() throws Exception {
+        File copy = new File(dir, "copy.jpg");
+        Files.copy(photo.toPath(), copy.toPath());
+
+        ImageFile copied = manager.historicizeImage(image(copy));
+        assertTrue(copied != recorded);
+        assertEquals(copy.getAbsolutePath(), copied.imgFilePath);
+        assertTrue(copied.tags.isEmpty());
+        assertEquals(photo.getAbsolutePath(), recorded.imgFilePath);
+        assertSame(recorded, manager.getImage(photo.getAbsolutePath()));
+        assertEquals(2, manager.getImages().size());
+    }
+
+    @Test
+    /* Test that Tags changed without renaming the image, as when absent from its name, are saved all the same. */
+    public void testRetagWithoutRename() throws Exception {
+        ImageFileManager imageManager = new ImageFileManager(recorded, PhotoRenameLogger.getInstance(), manager);
+        recorded.addObserver(imageManager);
+        assertEquals(Collections.singletonList(new Tag("sun")),
+                imageManager.deleteTags(new ArrayList<>(Collections.singletonList(new Tag("sun")))));
+        assertEquals("beach.jpg", recorded.name);
+        manager.toFile();
+
+        ImageHistoryManager reloaded = new ImageHistoryManager(new File(dir, "history.ser").getPath());
+        assertTrue(reloaded.getImage(photo.getAbsolutePath()).tags.isEmpty());
+    }
+
+    @Test
+    /* Test that Tags applied to an image whose file cannot be renamed keep its name and are saved all the same. */
+    public void testRetagFailedRename() throws Exception {
+        assertTrue(new File(dir, "beach @sea.jpg").mkdir());
+        ImageFileManager imageManager = new ImageFileManager(recorded, PhotoRenameLogger.getInstance(), manager);
+        recorded.addObserver(imageManager);
+        imageManager.applyTags(new ArrayList<>(Collections.singletonList(new Tag("sea"))));
+        assertEquals("beach.jpg", recorded.name);
+        assertEquals(photo.getAbsolutePath(), recorded.imgFilePath);
+        manager.toFile();
+
+        ImageHistoryManager reloaded = new ImageHistoryManager(new File(dir, "history.ser").getPath());
+        assertEquals(Arrays.asList(new Tag("sun"), new Tag("sea")), reloaded.getImage(photo.getAbsolutePath()).tags);
+        assertEquals(1, reloaded.getImages().size());
+    }
+
+    @Test
+    /* Test that a failure to save the history of a rename reaches the caller renaming the image. */
+    public void testRenameSaveFailure() throws Exception {
+        assertTrue(new File(dir, "history.ser.tmp").mkdir());
+        ImageFileManager imageManager = new ImageFileManager(recorded, PhotoRenameLogger.getInstance(), manager);
+        recorded.addObserver(imageManager);
+        try {
+            imageManager.applyTags(new ArrayList<>(Collections.singletonList(new Tag("sea"))));
+            fail("The failure to save the history was not thrown");
+        } catch (IOException e) {
+            assertTrue(new File(dir, "beach @sea.jpg").exists());
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package photo_renamer;
+
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+
+/**
+ * The ImageWindows of a PhotoRenamer application: one pane docked in the main window that is rebound on every
+ * selection, and at most MAX_DETACHED_WINDOWS detached windows, least recently used first to be reused.
+ */
+class ImageInspector {
+
+    /** The maximum number of detached ImageWindows open at once. */
+    static final int MAX_DETACHED_WINDOWS = 4;
+    /** The PhotoRenamer application being inspected. */
+    private PhotoRenamer mainApp;
+    /** The ImageWindow docked in the main window, created on the first selection. */
+    private ImageWindow dockedWindow;
+    /** The open detached ImageWindows, most recently used first. */
+    private ArrayDeque<ImageWindow> detachedWindows;
+    /** The ImageFileManager observing each bound ImageFile, shared by every ImageWindow showing it. */
+    private IdentityHashMap<ImageFile, ImageFileManager> managers;
+    /** The number of ImageWindows bound to each ImageFile in managers. */
+    private IdentityHashMap<ImageFile, Integer> bindings;
+
+    /**
+     * Construct an inspector for the images of a PhotoRenamer application.
+     *
+     * @param mainApp the PhotoRenamer application
+     */
+    ImageInspector(PhotoRenamer mainApp) {
+        this.mainApp = mainApp;
+        this.detachedWindows = new ArrayDeque<>();
+        this.managers = new IdentityHashMap<>();
+        this.bindings = new IdentityHashMap<>();
+    }
+
+    /**
+     * Return the ImageFileManager observing an ImageFile, creating it for the first ImageWindow bound to the image so
+     * that a rename is logged and reindexed once however many windows show it.
+     *
+     * @param image          the ImageFile being bound
+     * @param historyManager the ImageHistoryManager of the image's directory
+     * @return the shared ImageFileManager of the image
+     * @throws IOException            an IOException exception
+     * @throws ClassNotFoundException a ClassNotFoundException exception
+     */
+    ImageFileManager acquireManager(ImageFile image, ImageHistoryManager historyManager)
+            throws IOException, ClassNotFoundException {
+        ImageFileManager manager = managers.get(image);
+        if (manager == null) {
+            manager = new ImageFileManager(image, mainApp.photoRenameLogger, historyManager);
+            image.addObserver(manager);
+            managers.put(image, manager);
+            bindings.put(image, 0);
+        }
+        bindings.put(image, bindings.get(image) + 1);
+        return manager;
+    }
+
+    /**
+     * Release an ImageWindow's hold on an ImageFile, removing its ImageFileManager once no window shows the image.
+     *
+     * @param image the ImageFile being unbound
+     */
+    void releaseManager(ImageFile image) {
+        Integer count = bindings.get(image);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            bindings.put(image, count - 1);
+        } else {
+            image.deleteObserver(managers.remove(image));
+            bindings.remove(image);
+        }
+    }
+
+    /**
+     * Show an ImageFile in the docked pane.
+     *
+     * @param image the selected ImageFile
+     */
+    void inspect(ImageFile image) {
+        if (dockedWindow == null) {
+            dockedWindow = new ImageWindow(mainApp, false);
+            mainApp.mainFrame.add(dockedWindow.contentPanel, BorderLayout.EAST);
+        }
+        if (dockedWindow.selectedImage != image) {
+            dockedWindow.bind(image);
+        }
+        mainApp.mainFrame.pack();
+    }
+
+    /**
+     * Show an ImageFile in a detached window, reusing the window already showing it or the least recently used one.
+     *
+     * @param image the selected ImageFile
+     */
+    void detach(ImageFile image) {
+        ImageWindow window = null;
+        for (Iterator<ImageWindow> it = detachedWindows.iterator(); it.hasNext(); ) {
+            ImageWindow open = it.next();
+            if (open.selectedImage == image) {
+                it.remove();
+                window = open;
+                break;
+            }
+        }
+        if (window == null) {
+            if (detachedWindows.size() >= MAX_DETACHED_WINDOWS) {
+                window = detachedWindows.removeLast();
+            } else {
+                window = createDetachedWindow();
+            }
+            window.bind(image);
+        }
+        detachedWindows.addFirst(window);
+        window.imageFrame.setVisible(true);
+        window.imageFrame.toFront();
+    }
+
+    /**
+     * Create a detached ImageWindow that releases its ImageFile and leaves the cache when closed.
+     *
+     * @return the new ImageWindow
+     */
+    private ImageWindow createDetachedWindow() {
+        ImageWindow window = new ImageWindow(mainApp, true);
+        window.imageFrame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                window.unbind();
+                detachedWindows.remove(window);
+            }
+        });
+        return window;
+    }
+}
@@ -0,0 +1,223 @@
+package photo_renamer;
+
+import javax.swing.*;
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A read-only ListModel of ImageFiles backed directly by the list produced by a directory scan.
+ * The visible rows can be narrowed down by a filter query matched against image names, Tags and folders.
+ * Filtering runs off the Event Dispatch Thread and matching rows are published to the list in index ranges.
+ */
+class ImageListModel extends AbstractListModel<ImageFile> {
+
+    /** The serialVersionUID for this class. */
+    private static final long serialVersionUID = -2306614728834958611L;
+    /** The number of matching indices gathered before they are published to the list. */
+    private static final int PUBLISH_CHUNK = 4096;
+    /** The scan result backing this model. */
+    private final List<ImageFile> images;
+    /** The indices into images of the rows currently visible, valid up to visibleCount. */
+    private int[] visible;
+    /** The number of rows currently visible. */
+    private int visibleCount;
+    /** The filter query currently applied, or the empty String when unfiltered. */
+    private String query;
+    /** The worker computing the current filter, if any. */
+    private FilterWorker filterWorker;
+
+    /**
+     * Construct a model listing every ImageFile of a directory scan.
+     *
+     * @param images the ImageFiles found by the scan
+     */
+    ImageListModel(List<ImageFile> images) {
+        this.images = images;
+        this.visible = identity(images.size());
+        this.visibleCount = images.size();
+        this.query = "";
+    }
+
+    /**
+     * Return the number of rows currently visible.
+     *
+     * @return the number of visible rows
+     */
+    @Override
+    public int getSize() {
+        return visibleCount;
+    }
+
+    /**
+     * Return the ImageFile shown at a row of the list.
+     *
+     * @param index the row of the list
+     * @return the ImageFile shown at that row
+     */
+    @Override
+    public ImageFile getElementAt(int index) {
+        return images.get(visible[index]);
+    }
+
+    /**
+     * Narrow the visible rows down to the ImageFiles matching a query.
+     * A query that extends the current one only re-examines the rows that are already visible.
+     * Must be called on the Event Dispatch Thread.
+     *
+     * @param newQuery the text to match against image names, Tags and folders
+     */
+    void filter(String newQuery) {
+        String folded = newQuery.trim().toLowerCase(Locale.ROOT);
+        if (folded.equals(query)) {
+            return;
+        }
+        boolean narrowing = filterWorker == null && folded.startsWith(query);
+        if (filterWorker != null) {
+            filterWorker.cancel(false);
+        }
+        // Candidates are taken from the visible rows when narrowing, otherwise from the whole scan.
+        int[] candidates = narrowing ? Arrays.copyOf(visible, visibleCount) : null;
+        query = folded;
+        clearVisible();
+        if (folded.isEmpty()) {
+            visible = identity(images.size());
+            visibleCount = images.size();
+            if (visibleCount > 0) {
+                fireIntervalAdded(this, 0, visibleCount - 1);
+            }
+            filterWorker = null;
+        } else {
+            filterWorker = new FilterWorker(folded, candidates);
+            filterWorker.execute();
+        }
+    }
+
+    /** Remove every visible row from the list. */
+    private void clearVisible() {
+        int oldCount = visibleCount;
+        visibleCount = 0;
+        if (oldCount > 0) {
+            fireIntervalRemoved(this, 0, oldCount - 1);
+        }
+    }
+
+    /**
+     * Append a range of matching indices to the visible rows.
+     *
+     * @param matches the indices into images that match the current filter
+     * @param length  the number of valid entries of matches
+     */
+    private void appendVisible(int[] matches, int length) {
+        if (visibleCount + length > visible.length) {
+            visible = Arrays.copyOf(visible, Math.max(visible.length * 2, visibleCount + length));
+        }
+        System.arraycopy(matches, 0, visible, visibleCount, length);
+        int first = visibleCount;
+        visibleCount += length;
+        fireIntervalAdded(this, first, visibleCount - 1);
+    }
+
+    /**
+     * Return whether an ImageFile matches a case-folded query by name, Tag or containing folder.
+     *
+     * @param image  the ImageFile being tested
+     * @param folded the case-folded query
+     * @return a boolean of whether the ImageFile matches
+     */
+    static boolean matches(ImageFile image, String folded) {
+        if (image.name.toLowerCase(Locale.ROOT).contains(folded)) {
+            return true;
+        }
+        for (Tag tag : image.tags) {
+            if (tag.name.toLowerCase(Locale.ROOT).contains(folded)) {
+                return true;
+            }
+        }
+        int nameStart = image.imgFilePath.length() - image.name.length();
+        int folderStart = image.imgFilePath.lastIndexOf(File.separatorChar, nameStart - 2) + 1;
+        return nameStart > folderStart
+                && image.imgFilePath.substring(folderStart, nameStart).toLowerCase(Locale.ROOT).contains(folded);
+    }
+
+    /**
+     * Return an array holding the indices 0 to size - 1.
+     *
+     * @param size the number of indices
+     * @return the array of indices
+     */
+    private static int[] identity(int size) {
+        int[] indices = new int[size];
+        for (int i = 0; i < size; i++) {
+            indices[i] = i;
+        }
+        return indices;
+    }
+
+    /** A background task collecting the indices of ImageFiles matching a filter query. */
+    private class FilterWorker extends SwingWorker<Void, int[]> {
+
+        /** The case-folded query being matched. */
+        private final String folded;
+        /** The indices to examine, or null to examine the whole scan. */
+        private final int[] candidates;
+
+        /**
+         * Construct a task filtering ImageFiles by a query.
+         *
+         * @param folded     the case-folded query
+         * @param candidates the indices to examine, or null to examine the whole scan
+         */
+        FilterWorker(String folded, int[] candidates) {
+            this.folded = folded;
+            this.candidates = candidates;
+        }
+
+        /** Match every candidate against the query, publishing matches in chunks. */
+        @Override
+        protected Void doInBackground() {
+            int total = candidates == null ? images.size() : candidates.length;
+            int[] chunk = new int[PUBLISH_CHUNK];
+            int chunkLength = 0;
+            for (int i = 0; i < total && !isCancelled(); i++) {
+                int index = candidates == null ? i : candidates[i];
+                if (matches(images.get(index), folded)) {
+                    chunk[chunkLength++] = index;
+                    if (chunkLength == PUBLISH_CHUNK) {
+                        publish(chunk);
+                        chunk = new int[PUBLISH_CHUNK];
+                        chunkLength = 0;
+                    }
+                }
+            }
+            if (chunkLength > 0 && !isCancelled()) {
+                publish(Arrays.copyOf(chunk, chunkLength));
+            }
+            return null;
+        }
+
+        /**
+         * Append published chunks of matches to the visible rows.
+         *
+         * @param chunks the chunks of matching indices
+         */
+        @Override
+        protected void process(List<int[]> chunks) {
+            if (filterWorker != this || isCancelled()) {
+                return;
+            }
+            for (int[] chunk : chunks) {
+                appendVisible(chunk, chunk.length);
+            }
+        }
+
+        /** Release this task once filtering has finished. */
+        @Override
+        protected void done() {
+            if (filterWorker == this) {
+                filterWorker = null;
+            }
+        }
+    }
+}
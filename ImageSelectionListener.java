@@ -3,19 +3,19 @@ package photo_renamer;
 import javax.swing.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.util.ArrayList;
 
-/** A listener that opens ImageFiles selected from a list. */
+/**
+ * A listener that opens ImageFiles selected from a list.
+ * A single click shows the ImageFile in the docked inspector pane, a double click in a detached window.
+ */
 class ImageSelectionListener extends MouseAdapter {
 
     /** The PhotoRenamer application. */
     private PhotoRenamer mainApp;
     /** The JList being listened to. */
-    private JList<String> imageList;
+    private JList<ImageFile> imageList;
     /** The ListModel associated with the JList. */
-    private DefaultListModel<ImageFile> listModel;
-    /** The ArrayList of ImageWindows opened by this listener. */
-    private ArrayList<ImageWindow> openedWindows;
+    private ImageListModel listModel;
 
     /**
      * Construct a listener that opens selected ImageFiles.
@@ -24,26 +24,24 @@ class ImageSelectionListener extends MouseAdapter {
      * @param imageList the JList of ImageFiles
      * @param listModel the model used by the list of ImageFiles
      */
-    ImageSelectionListener(PhotoRenamer mainApp, JList<String> imageList, DefaultListModel<ImageFile> listModel) {
+    ImageSelectionListener(PhotoRenamer mainApp, JList<ImageFile> imageList, ImageListModel listModel) {
         this.mainApp = mainApp;
         this.imageList = imageList;
         this.listModel = listModel;
-        this.openedWindows = new ArrayList<>();
     }
 
     /** Handle mouse clicks on a selected ImageFile from the imageList. */
     @Override
     public void mouseClicked(MouseEvent e) {
         int selection = imageList.getSelectedIndex();
+        if (selection < 0) {
+            return;
+        }
         ImageFile selectedImage = listModel.getElementAt(selection);
-        // Prevent an ImageWindow for the same ImageFile from being opened twice.
-        for (ImageWindow window : openedWindows) {
-            if (window.selectedImage == selectedImage) {
-                window.imageFrame.dispose();
-                openedWindows.remove(window);
-                break;
-            }
+        if (e.getClickCount() >= 2) {
+            mainApp.inspector.detach(selectedImage);
+        } else {
+            mainApp.inspector.inspect(selectedImage);
         }
-        openedWindows.add(new ImageWindow(mainApp, selectedImage));
     }
 }
\ No newline at end of file
@@ -1,85 +1,94 @@
 package photo_renamer;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
+import javax.swing.event.PopupMenuEvent;
+import javax.swing.event.PopupMenuListener;
 import java.awt.*;
-import java.awt.event.WindowAdapter;
-import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
-/** A window for displaying and modifying a selected ImageFile. */
+/**
+ * A view for displaying and modifying a selected ImageFile, either docked in the main window or in its own JFrame.
+ * Its components are built once and rebound whenever another ImageFile is selected.
+ */
 class ImageWindow {
 
+    /** The width of the displayed image. */
+    private static final int DISPLAY_WIDTH = 400;
+    /** The height of the displayed image. */
+    private static final int DISPLAY_HEIGHT = 200;
+    /** The number of Tags suggested for the selected image. */
+    private static final int SUGGESTIONS = 5;
+    /** The PhotoRenamer application this view belongs to. */
+    private PhotoRenamer mainApp;
     /** The main PhotoRenamer JFrame. */
     private JFrame mainFrame;
     /** The TagManager managing the database of Tags. */
     private TagManager tagManager;
     /** The ImageFileManager managing the selected ImageFile. */
     private ImageFileManager imageFileManager;
-    /** The ArrayList of selected Tags in the window. */
-    private ArrayList<Tag> selectedTags;
-    /** The ArrayList of unselected Tags in the window. */
-    private ArrayList<Tag> unselectedTags;
-    /** The JScrollPane containing the selectable list of Tags. */
-    private JScrollPane tagScroller;
+    /** The ImageHistoryManager of the shard recording the selected ImageFile. */
+    private ImageHistoryManager historyManager;
+    /** The searchable list of Tags the user selects from. */
+    private TagPicker tagPicker;
+    /** The JLabel displaying the selected image. */
+    private JLabel imageLabel;
+    /** The JPanel of buttons applying the Tags suggested for the selected image. */
+    private JPanel suggestionPanel;
+    /** The JComboBox listing the past names of the selected ImageFile. */
+    private JComboBox<Object> historyDropdown;
+    /** The task decoding the selected image for display, if any. */
+    private SwingWorker<BufferedImage, Void> imageLoader;
     /** The file name to be potentially reverted to. */
     private String revertName;
-    /** The selected ImageFile associated with this ImageWindow. */
+    /** The selected ImageFile associated with this ImageWindow, or null before the first selection. */
     ImageFile selectedImage;
-    /** The JFrame of this ImageWindow. */
+    /** The JPanel holding every component of this ImageWindow. */
+    JPanel contentPanel;
+    /** The JFrame of this ImageWindow, or null when it is docked in the main window. */
     JFrame imageFrame;
 
-
     /**
-     * Construct a window for viewing and modifying ImageFiles.
+     * Construct a view for viewing and modifying ImageFiles.
      *
-     * @param mainApp       the PhotoRenamer application this window was launched from
-     * @param selectedImage the selected ImageFile that this ImageWindow is for
+     * @param mainApp  the PhotoRenamer application this view was launched from
+     * @param detached whether this view gets its own JFrame rather than being docked
      */
-    ImageWindow(PhotoRenamer mainApp, ImageFile selectedImage) {
+    ImageWindow(PhotoRenamer mainApp, boolean detached) {
+        this.mainApp = mainApp;
         this.mainFrame = mainApp.mainFrame;
         this.tagManager = mainApp.tagManager;
-        this.selectedImage = selectedImage;
-
-        this.imageFrame = new JFrame(selectedImage.name);
-        this.selectedTags = new ArrayList<>();
-        this.unselectedTags = new ArrayList<>();
-        this.tagScroller = new JScrollPane();
-        try {
-            this.imageFileManager = new ImageFileManager(this.selectedImage, mainApp.photoRenameLogger,
-                    mainApp.historyManager);
-            this.renderImageWindow();
-        } catch (IOException | ClassNotFoundException e) {
-            JOptionPane.showMessageDialog(new JFrame(), "Failed to render image window!");
-            e.printStackTrace();
+        this.tagPicker = new TagPicker(tagManager);
+        this.imageLabel = new JLabel(null, null, JLabel.CENTER);
+        this.suggestionPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 2, 0));
+        this.historyDropdown = new JComboBox<>();
+        this.contentPanel = new JPanel(new BorderLayout());
+        this.renderImageWindow();
+        if (detached) {
+            this.imageFrame = new JFrame();
+            imageFrame.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+            imageFrame.add(contentPanel);
+            imageFrame.setSize(415, 530);
+            imageFrame.setResizable(false);
         }
     }
 
-    /** Render a window for the selected ImageFile. */
-    private void renderImageWindow() throws IOException, ClassNotFoundException {
-        // Begin constructing a window for the observed selected ImageFile.
-        selectedImage.addObserver(imageFileManager);
-        imageFrame.add(createDisplayPanel(), BorderLayout.NORTH);
-
-        // Generate a scrollable JPanel of Tag checkboxes for the user to select from for tagging.
-        JPanel tagListPanel = new JPanel();
-        tagListPanel.setLayout(new BoxLayout(tagListPanel, BoxLayout.Y_AXIS));
-        for (Tag tag : tagManager.tags) {
-            createCheckbox(tag, tagListPanel);
-        }
-        tagScroller.setViewportView(tagListPanel);
+    /** Build the components of this ImageWindow. */
+    private void renderImageWindow() {
+        JPanel displayer = new JPanel();
+        imageLabel.setPreferredSize(new Dimension(DISPLAY_WIDTH, DISPLAY_HEIGHT));
+        displayer.add(imageLabel);
 
         // Button for retagging the selected ImageFile with the appropriate Tags.
         JButton retagButton = new JButton("Apply Selected/Delete Unselected Tag(s)");
         retagButton.addActionListener(press -> {
             try {
-                imageFileManager.applyTags(selectedTags);
-                imageFileManager.deleteTags(unselectedTags);
+                tagManager.recordUsage(imageFileManager.applyTags(tagPicker.getCheckedTags()), 1);
+                tagManager.recordUsage(imageFileManager.deleteTags(tagPicker.getUncheckedTags()), -1);
                 refreshWindows();
             } catch (IOException e1) {
                 JOptionPane.showMessageDialog(new JFrame(), "Failed to retag image!");
@@ -89,12 +98,16 @@ class ImageWindow {
 
         // Field to allow the user to add new Tags to the Tag database and apply it the selected ImageFile.
         JTextField newTagField = new JTextField("Enter a new tag for immediate retagging...", 10);
+        new TagCompleter(newTagField, tagManager);
         newTagField.addActionListener(press -> {
             Tag newTag = new Tag(newTagField.getText());
             try {
                 tagManager.addTag(newTag);
-                imageFileManager.applyTags(new ArrayList<>(Collections.singletonList(newTag)));
-                createCheckbox(newTag, tagListPanel);
+                // Apply the managed Tag so a differently cased entry reuses the existing one.
+                newTag = tagManager.getTag(newTag.name);
+                tagManager.recordUsage(imageFileManager.applyTags(new ArrayList<>(Collections.singletonList(newTag))), 1);
+                tagPicker.refresh();
+                tagPicker.check(newTag);
                 refreshWindows();
                 newTagField.setText("");
             } catch (IOException e1) {
@@ -117,72 +130,87 @@ class ImageWindow {
         // Collect the UI components the user interacts with to execute application functions.
         JPanel actionPanel = new JPanel();
         actionPanel.setLayout(new BoxLayout(actionPanel, BoxLayout.Y_AXIS));
+        actionPanel.add(suggestionPanel);
         actionPanel.add(newTagField);
         actionPanel.add(retagButton);
         createHistoryDropdown(actionPanel);
         actionPanel.add(openLocationButton);
         retagButton.setAlignmentX(Component.CENTER_ALIGNMENT);
+        suggestionPanel.setAlignmentX(Component.CENTER_ALIGNMENT);
         newTagField.setAlignmentX(Component.CENTER_ALIGNMENT);
         openLocationButton.setAlignmentX(Component.CENTER_ALIGNMENT);
 
         // Compose the whole ImageWindow.
-        imageFrame.add(tagScroller, BorderLayout.CENTER);
-        imageFrame.add(actionPanel, BorderLayout.SOUTH);
-        imageFrame.setSize(415, 500);
-        imageFrame.setResizable(false);
-        imageFrame.addWindowListener(new WindowAdapter() {
-            @Override
-            public void windowClosing(WindowEvent e) {
-                selectedImage.deleteObservers();
-            }
-        });
-        imageFrame.setVisible(true);
+        contentPanel.add(displayer, BorderLayout.NORTH);
+        contentPanel.add(tagPicker, BorderLayout.CENTER);
+        contentPanel.add(actionPanel, BorderLayout.SOUTH);
     }
 
-    /** Prepare and return a JPanel for displaying the selected image. */
-    private JPanel createDisplayPanel() {
-        BufferedImage img = null;
+    /**
+     * Point every component of this ImageWindow at another ImageFile.
+     *
+     * @param image the newly selected ImageFile
+     */
+    void bind(ImageFile image) {
+        unbind();
+        selectedImage = image;
+        // Images are only listed from the shard of the open directory, which stays pinned while bound here.
+        historyManager = mainApp.historyManager;
+        mainApp.library.pin(historyManager);
         try {
-            img = ImageIO.read(new File(selectedImage.imgFilePath));
-        } catch (IOException eio) {
-            JOptionPane.showMessageDialog(new JFrame(), "Failed to access image!");
-            eio.printStackTrace();
+            imageFileManager = mainApp.inspector.acquireManager(image, historyManager);
+        } catch (IOException | ClassNotFoundException e) {
+            JOptionPane.showMessageDialog(new JFrame(), "Failed to render image window!");
+            e.printStackTrace();
+            return;
         }
-        assert img != null;
-        ImageIcon display = new ImageIcon(img.getScaledInstance(400, 200, Image.SCALE_FAST));
-        JLabel imageLabel = new JLabel(null, display, JLabel.CENTER);
-        JPanel displayer = new JPanel();
-        displayer.add(imageLabel);
-        return displayer;
+        tagPicker.setChecked(image.tags);
+        refreshHistory();
+        loadDisplay();
+        refreshWindows();
     }
 
-    /**
-     * Create a JCheckBox for a Tag.
-     *
-     * @param tag      the Tag the checkbox is being created for
-     * @param tagPanel the JPanel the checkbox will be added to
-     */
-    private void createCheckbox(Tag tag, JPanel tagPanel) {
-        JCheckBox box = new JCheckBox(tag.name);
-        box.addItemListener(tick -> {
-            int tagIndex = tagManager.tags.indexOf(tag);
-            if (tagIndex != -1) {
-                if (tick.getStateChange() == 1) {
-                    selectedTags.add(tagManager.tags.get(tagIndex));
-                    unselectedTags.remove(tag);
-                } else {
-                    selectedTags.remove(tag);
-                    unselectedTags.add(tag);
-                }
-            }
-        });
-        if (selectedImage.tags.contains(tag)) {
-            box.setSelected(true);
+    /** Stop observing the selected ImageFile, leaving this ImageWindow free to be rebound or closed. */
+    void unbind() {
+        if (imageFileManager != null) {
+            mainApp.inspector.releaseManager(selectedImage);
+            imageFileManager = null;
         }
-        if (!box.isSelected()) {
-            unselectedTags.add(tag);
+        if (historyManager != null) {
+            mainApp.library.unpin(historyManager);
+            historyManager = null;
+        }
+        if (imageLoader != null) {
+            imageLoader.cancel(true);
+            imageLoader = null;
         }
-        tagPanel.add(box);
+    }
+
+    /** Decode the selected image off the Event Dispatch Thread and display it once ready. */
+    private void loadDisplay() {
+        imageLabel.setIcon(null);
+        File imgFile = new File(selectedImage.imgFilePath);
+        imageLoader = new SwingWorker<BufferedImage, Void>() {
+            @Override
+            protected BufferedImage doInBackground() throws IOException {
+                return ImageDecoder.readSubsampled(imgFile, DISPLAY_WIDTH, DISPLAY_HEIGHT);
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled() || imageLoader != this) {
+                    return;
+                }
+                try {
+                    Image img = get().getScaledInstance(DISPLAY_WIDTH, DISPLAY_HEIGHT, Image.SCALE_FAST);
+                    imageLabel.setIcon(new ImageIcon(img));
+                } catch (Exception eio) {
+                    JOptionPane.showMessageDialog(new JFrame(), "Failed to access image!");
+                    eio.printStackTrace();
+                }
+            }
+        };
+        imageLoader.execute();
     }
 
     /**
@@ -192,29 +220,35 @@ class ImageWindow {
      */
     private void createHistoryDropdown(JPanel actionPanel) {
         JLabel pastNameLabel = new JLabel("Filename History");
-        JComboBox<Object> historyDropdown = new JComboBox<>(selectedImage.nameHistoryList.toArray());
-        revertName = (String) historyDropdown.getSelectedItem();
         historyDropdown.addActionListener(select -> revertName = (String) historyDropdown.getSelectedItem());
+        historyDropdown.addPopupMenuListener(new PopupMenuListener() {
+            @Override
+            public void popupMenuWillBecomeVisible(PopupMenuEvent e) {
+                List<String> names = selectedImage.nameHistory.toList();
+                if (historyDropdown.getItemCount() != names.size()) {
+                    Object selected = historyDropdown.getSelectedItem();
+                    DefaultComboBoxModel<Object> model = new DefaultComboBoxModel<>(names.toArray());
+                    model.setSelectedItem(selected);
+                    historyDropdown.setModel(model);
+                }
+            }
+
+            @Override
+            public void popupMenuWillBecomeInvisible(PopupMenuEvent e) {
+            }
+
+            @Override
+            public void popupMenuCanceled(PopupMenuEvent e) {
+            }
+        });
         JButton revertButton = new JButton("Revert File");
         revertButton.addActionListener(press -> {
+            if (revertName == null) {
+                return;
+            }
             try {
-                ArrayList<Tag> revertAddTags = new ArrayList<>();
-                ArrayList<Tag> revertDeleteTags = new ArrayList<>();
-                int extBeginning = revertName.lastIndexOf(".");
-                ArrayList<String> revertTagNames = new ArrayList<>(Arrays.asList
-                        (revertName.substring(0, extBeginning).split(" @")));
-                revertTagNames.remove(0);
-                for (String tagName : revertTagNames) {
-                    Tag revertTag = new Tag(tagName);
-                    revertAddTags.add(revertTag);
-                }
-                for (Tag currentTag : selectedImage.tags) {
-                    if (!revertAddTags.contains(currentTag)) {
-                        revertDeleteTags.add(currentTag);
-                    }
-                }
-                imageFileManager.applyTags(revertAddTags);
-                imageFileManager.deleteTags(revertDeleteTags);
+                imageFileManager.revertTo(revertName, tagManager);
+                tagPicker.setChecked(selectedImage.tags);
                 refreshWindows();
             } catch (IOException e1) {
                 JOptionPane.showMessageDialog(new JFrame(), "Failed to revert name!");
@@ -230,12 +264,54 @@ class ImageWindow {
 
     }
 
+    /** Repopulate the history dropdown with the past names of the selected ImageFile. */
+    private void refreshHistory() {
+        // Only the first name is materialized until the dropdown is opened.
+        historyDropdown.setModel(new DefaultComboBoxModel<>(new Object[]{selectedImage.nameHistory.get(0)}));
+        revertName = (String) historyDropdown.getSelectedItem();
+    }
+
+    /**
+     * Replace the suggestion buttons with one per Tag most often carried with the Tags of the selected image.
+     * Pressing a button applies its Tag at once, as entering a new Tag does.
+     */
+    private void refreshSuggestions() {
+        suggestionPanel.removeAll();
+        suggestionPanel.add(new JLabel("Suggested:"));
+        for (Tag suggested : historyManager.statistics.suggest(selectedImage.tags, SUGGESTIONS)) {
+            Tag tag = tagManager.getTag(suggested.name);
+            if (tag == null) {
+                continue;
+            }
+            JButton suggestionButton = new JButton(tag.name);
+            suggestionButton.setMargin(new Insets(0, 4, 0, 4));
+            suggestionButton.addActionListener(press -> {
+                try {
+                    tagManager.recordUsage(imageFileManager.applyTags(new ArrayList<>(Collections.singletonList(tag))), 1);
+                    tagPicker.check(tag);
+                    refreshWindows();
+                } catch (IOException e1) {
+                    JOptionPane.showMessageDialog(new JFrame(), "Failed to retag image!");
+                    e1.printStackTrace();
+                }
+            });
+            suggestionPanel.add(suggestionButton);
+        }
+    }
+
     /** Refresh this ImageWindow and the main PhotoRenamer window. */
     private void refreshWindows() {
-        tagScroller.revalidate();
-        imageFrame.setTitle(selectedImage.name);
-        imageFrame.revalidate();
-        imageFrame.repaint();
+        refreshSuggestions();
+        tagPicker.revalidate();
+        if (imageFrame != null) {
+            imageFrame.setTitle(selectedImage.name);
+            imageFrame.revalidate();
+            imageFrame.repaint();
+        } else {
+            contentPanel.setBorder(BorderFactory.createTitledBorder(selectedImage.name));
+        }
+        contentPanel.revalidate();
+        contentPanel.repaint();
         mainFrame.invalidate();
         mainFrame.validate();
         mainFrame.repaint();
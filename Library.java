@@ -0,0 +1,585 @@
+package photo_renamer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * A library of image roots, each with a shard of the history database of its own, so that only the shards of the
+ * roots in use are held in the heap. Roots are registered the first time a directory outside every registered root
+ * is opened, and never nest: a root registered around others absorbs them. Images outside every root, including
+ * those recorded before roots existed, stay in the unsharded history.txt, whose images under a newly registered root
+ * are moved to its shard.
+ * Shards are loaded when first used and unloaded once idle, unless pinned, such as while they are shown. An unloaded
+ * shard is only released when nothing else
+ * holds its manager, so using it again until then revives the same manager rather than loading another.
+ * The monitor of this library may be taken before that of a shard, which may be taken before that of its
+ * ImageHistoryManager, but never the other way round.
+ */
+final class Library {
+
+    /** The name of the file listing the registered roots and their shards. */
+    static final String LIBRARY_FILE = "library.txt";
+    /** The name of the shard of the images outside every root. */
+    static final String UNSHARDED_FILE = "history.txt";
+    /** The milliseconds after its last use that a shard may be unloaded. */
+    static final long IDLE_MILLIS = 10 * 60 * 1000;
+
+    /** The directory of the databases, or null for a library of one ImageHistoryManager. */
+    private final String dbDir;
+    /** Whether the loaded shards save every change as soon as it is made. */
+    private final boolean autoSave;
+    /** The shards keyed by root, the root of the unsharded history being "". */
+    private final TreeMap<String, Shard> shards = new TreeMap<>();
+    /** The last modification time of the library file when it was read. */
+    private long libraryModified = -1;
+    /** The number of shards registered, loaded or unloaded by this library. */
+    private final AtomicLong changes = new AtomicLong();
+    /** The listener told of each shard the first time it is loaded, or null. */
+    private volatile LoadListener loadListener;
+
+    /** A listener told of each shard the first time it is loaded, such as to count the usage of its Tags. */
+    interface LoadListener {
+        /**
+         * Handle a shard loaded for the first time, on the thread that loaded it.
+         *
+         * @param shard the ImageHistoryManager of the shard
+         */
+        void loaded(ImageHistoryManager shard);
+    }
+
+    /** A visitor of the shards of a library. */
+    interface ShardVisitor {
+        /**
+         * Visit a shard.
+         *
+         * @param shard the ImageHistoryManager of the shard
+         * @throws IOException an IOException exception
+         */
+        void visit(ImageHistoryManager shard) throws IOException;
+    }
+
+    /**
+     * Construct the library of the databases in a directory, reading its registered roots without loading any shard.
+     *
+     * @param dbDir    the directory of the databases, ending with a separator
+     * @param autoSave whether the loaded shards save every change as soon as it is made
+     * @throws IOException an IOException exception
+     */
+    Library(String dbDir, boolean autoSave) throws IOException {
+        this.dbDir = dbDir;
+        this.autoSave = autoSave;
+        shards.put("", new Shard("", dbDir + UNSHARDED_FILE, null));
+        readRoots();
+    }
+
+    /**
+     * Construct a library of one loaded ImageHistoryManager holding every image, which never registers roots.
+     *
+     * @param historyManager the ImageHistoryManager
+     */
+    Library(ImageHistoryManager historyManager) {
+        this.dbDir = null;
+        this.autoSave = true;
+        shards.put("", new Shard("", null, historyManager));
+    }
+
+    /**
+     * Set the listener told of each shard the first time it is loaded.
+     *
+     * @param loadListener the LoadListener
+     */
+    void setLoadListener(LoadListener loadListener) {
+        this.loadListener = loadListener;
+    }
+
+    /**
+     * Return the shard of a directory, registering the directory as a root if no registered root holds it.
+     *
+     * @param dir the directory
+     * @return the ImageHistoryManager of the shard
+     * @throws IOException an IOException exception
+     */
+    synchronized ImageHistoryManager shardFor(File dir) throws IOException {
+        String root = rootOf(dir);
+        Shard shard = route(shards, root);
+        if (dbDir != null && shard.root.isEmpty()) {
+            // Another instance sharing the databases may have registered a root holding the directory since.
+            readRoots();
+            shard = route(shards, root);
+            if (shard.root.isEmpty()) {
+                shard = register(root);
+            }
+        }
+        return shard.use();
+    }
+
+    /**
+     * Return the shard recording an image, without registering any root.
+     *
+     * @param path the system path of the image
+     * @return the ImageHistoryManager of the shard
+     * @throws IOException an IOException exception
+     */
+    ImageHistoryManager shardOf(String path) throws IOException {
+        Shard shard;
+        synchronized (this) {
+            shard = route(shards, path);
+        }
+        return shard.use();
+    }
+
+    /**
+     * Pin a shard, keeping it loaded however long it is idle until it is unpinned as often as it was pinned.
+     * A manager of no shard, such as one absorbed by a root registered since, is ignored.
+     *
+     * @param shard the ImageHistoryManager of the shard
+     */
+    synchronized void pin(ImageHistoryManager shard) {
+        for (Shard candidate : shards.values()) {
+            if (candidate.pin(shard, 1)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Unpin a shard pinned before, letting it be unloaded once it is idle and no longer pinned.
+     *
+     * @param shard the ImageHistoryManager of the shard
+     */
+    synchronized void unpin(ImageHistoryManager shard) {
+        for (Shard candidate : shards.values()) {
+            if (candidate.pin(shard, -1)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Return the recorded ImageFiles carrying a Tag under every root, looking them up in every shard in parallel.
+     * Images a shard records outside its root, left there by an interrupted registration, are skipped.
+     *
+     * @param tag the Tag
+     * @return an ArrayList of the ImageFiles carrying the Tag, ordered by path
+     * @throws IOException an IOException exception
+     */
+    ArrayList<ImageFile> getImagesTagged(Tag tag) throws IOException {
+        TreeMap<String, Shard> routes;
+        synchronized (this) {
+            routes = new TreeMap<>(shards);
+        }
+        try {
+            return routes.values().parallelStream()
+                    .flatMap(shard -> {
+                        try {
+                            return shard.use().getImagesTagged(tag).stream()
+                                    .filter(image -> route(routes, image.imgFilePath) == shard);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .sorted(Comparator.comparing(image -> image.imgFilePath))
+                    .collect(Collectors.toCollection(ArrayList::new));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Visit every shard in turn, saving and unloading again each one that was not loaded before its visit,
+     * so that at most one more shard is held in the heap at a time.
+     *
+     * @param visitor the ShardVisitor
+     * @throws IOException an IOException exception
+     */
+    void forEachShard(ShardVisitor visitor) throws IOException {
+        ArrayList<Shard> all;
+        synchronized (this) {
+            all = new ArrayList<>(shards.values());
+        }
+        for (Shard shard : all) {
+            boolean wasLoaded = shard.isLoaded();
+            ImageHistoryManager manager = shard.use();
+            visitor.visit(manager);
+            if (!wasLoaded) {
+                shard.unload(Long.MAX_VALUE);
+            }
+        }
+    }
+
+    /**
+     * Return the ImageHistoryManagers of the loaded shards.
+     *
+     * @return an ArrayList of the loaded shards
+     */
+    synchronized ArrayList<ImageHistoryManager> loaded() {
+        ArrayList<ImageHistoryManager> loaded = new ArrayList<>();
+        for (Shard shard : shards.values()) {
+            ImageHistoryManager manager = shard.manager;
+            if (manager != null) {
+                loaded.add(manager);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Return a snapshot of the ImageFiles recorded by the loaded shards.
+     *
+     * @return the ImageFiles, shard by shard
+     */
+    List<ImageFile> loadedImages() {
+        ArrayList<ImageFile> images = new ArrayList<>();
+        for (ImageHistoryManager shard : loaded()) {
+            images.addAll(shard.getImages());
+        }
+        return images;
+    }
+
+    /**
+     * Return a number that changes whenever a loaded shard changes or a shard is registered, loaded or unloaded.
+     *
+     * @return the version of the loaded shards
+     */
+    long getVersion() {
+        long version = changes.get();
+        for (ImageHistoryManager shard : loaded()) {
+            version += shard.getVersion();
+        }
+        return version;
+    }
+
+    /**
+     * Save the loaded shards.
+     *
+     * @throws IOException an IOException exception
+     */
+    void save() throws IOException {
+        for (ImageHistoryManager shard : loaded()) {
+            shard.toFile();
+        }
+    }
+
+    /**
+     * Apply the roots other instances sharing the databases registered, and the changes they made to the loaded
+     * shards, since last refreshed.
+     *
+     * @throws IOException an IOException exception
+     */
+    void refresh() throws IOException {
+        synchronized (this) {
+            if (dbDir != null) {
+                readRoots();
+            }
+        }
+        for (ImageHistoryManager shard : loaded()) {
+            shard.refresh();
+        }
+    }
+
+    /**
+     * Save and unload the shards unused for an idle period. Shards held in the heap only are never unloaded.
+     *
+     * @param idleMillis the milliseconds since its last use after which a shard is unloaded
+     * @return the number of shards unloaded
+     * @throws IOException an IOException exception
+     */
+    int unloadIdle(long idleMillis) throws IOException {
+        ArrayList<Shard> all;
+        synchronized (this) {
+            all = new ArrayList<>(shards.values());
+        }
+        long idleSince = System.currentTimeMillis() - idleMillis;
+        int unloaded = 0;
+        for (Shard shard : all) {
+            if (shard.unload(idleSince)) {
+                unloaded++;
+            }
+        }
+        return unloaded;
+    }
+
+    /**
+     * Return the root of a directory, its absolute path ending with a separator.
+     *
+     * @param dir the directory
+     * @return the root
+     */
+    private static String rootOf(File dir) {
+        String path = dir.getAbsolutePath();
+        return path.endsWith(File.separator) ? path : path + File.separator;
+    }
+
+    /**
+     * Return the shard whose root holds a path. As roots never nest, the only root that can hold the path is the
+     * greatest one not after it.
+     *
+     * @param routes the shards keyed by root
+     * @param path   the system path
+     * @return the Shard, that of the unsharded history if no root holds the path
+     */
+    private static Shard route(TreeMap<String, Shard> routes, String path) {
+        Map.Entry<String, Shard> floor = routes.floorEntry(path);
+        return floor != null && path.startsWith(floor.getKey()) ? floor.getValue() : routes.get("");
+    }
+
+    /**
+     * Register a root, moving to its new shard the images of the unsharded history under it and every image and
+     * album of the roots it holds, which it absorbs. The new shard is saved before the library file, and the library
+     * file before the shards moved from, so that an interruption leaves every image in the shard it is routed to.
+     *
+     * @param root the root, ending with a separator
+     * @return the Shard of the root
+     * @throws IOException an IOException exception
+     */
+    private Shard register(String root) throws IOException {
+        Shard shard = new Shard(root, dbDir + "history-"
+                + UUID.nameUUIDFromBytes(root.getBytes(StandardCharsets.UTF_8)) + ".txt", null);
+        ArrayList<Shard> sources = new ArrayList<>();
+        sources.add(shards.get(""));
+        sources.addAll(shards.subMap(root, true, root + Character.MAX_VALUE, false).values());
+        ImageHistoryManager target = shard.load(false);
+        target.setAutoSave(false);
+        ArrayList<ArrayList<ImageFile>> moved = new ArrayList<>();
+        for (Shard source : sources) {
+            ImageHistoryManager manager = source.use();
+            ArrayList<ImageFile> under = new ArrayList<>();
+            for (ImageFile image : manager.getImages()) {
+                if (image.imgFilePath.startsWith(root)) {
+                    target.putImage(image);
+                    under.add(image);
+                }
+            }
+            for (SmartAlbum album : manager.albums.getAlbums()) {
+                if (target.albums.get(album.name) == null) {
+                    target.albums.add(album.name, album.query);
+                }
+            }
+            moved.add(under);
+        }
+        target.toFile();
+        target.setAutoSave(autoSave);
+        for (Shard source : sources) {
+            if (!source.root.isEmpty()) {
+                shards.remove(source.root);
+            }
+        }
+        shards.put(root, shard);
+        changes.incrementAndGet();
+        writeRoots();
+        for (int i = 0; i < sources.size(); i++) {
+            ImageHistoryManager manager = sources.get(i).use();
+            manager.removeImages(moved.get(i));
+            manager.toFile();
+        }
+        return shard;
+    }
+
+    /**
+     * Read the registered roots from the library file if it changed since last read, keeping the shards of the
+     * roots still registered and dropping those of the roots absorbed since.
+     *
+     * @throws IOException an IOException exception
+     */
+    private void readRoots() throws IOException {
+        File file = new File(dbDir + LIBRARY_FILE);
+        long modified = file.lastModified();
+        if (modified == libraryModified) {
+            return;
+        }
+        TreeMap<String, Shard> read = new TreeMap<>();
+        read.put("", shards.get(""));
+        if (file.exists()) {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int tab = line.lastIndexOf('\t');
+                    if (tab < 0) {
+                        continue;
+                    }
+                    String root = line.substring(0, tab);
+                    Shard known = shards.get(root);
+                    read.put(root, known != null ? known : new Shard(root, dbDir + line.substring(tab + 1), null));
+                }
+            }
+        }
+        shards.clear();
+        shards.putAll(read);
+        libraryModified = modified;
+        changes.incrementAndGet();
+    }
+
+    /**
+     * Write the registered roots to the library file, replacing it at once.
+     *
+     * @throws IOException an IOException exception
+     */
+    private void writeRoots() throws IOException {
+        File file = new File(dbDir + LIBRARY_FILE);
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream output = new FileOutputStream(temp)) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            for (Shard shard : shards.values()) {
+                if (!shard.root.isEmpty()) {
+                    writer.write(shard.root + "\t" + new File(shard.path).getName() + "\n");
+                }
+            }
+            writer.flush();
+            output.getFD().sync();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        libraryModified = file.lastModified();
+    }
+
+    /** The shard of the history database of one root, loaded when first used. */
+    private final class Shard {
+        /** The root, ending with a separator, or "" for the unsharded history. */
+        final String root;
+        /** The pathname of the database file of the shard, or null for a library of one manager. */
+        final String path;
+        /** The ImageHistoryManager of the shard, or null when it is not loaded. */
+        volatile ImageHistoryManager manager;
+        /** The ImageHistoryManager of the shard when it was last unloaded, until it is collected. */
+        private WeakReference<ImageHistoryManager> unloaded;
+        /** Whether the load listener was told of this shard. */
+        private boolean told;
+        /** The time this shard was last used, in milliseconds. */
+        private volatile long lastUsed;
+        /** The number of times this shard was pinned and not yet unpinned. */
+        private int pins;
+
+        /**
+         * Construct a shard.
+         *
+         * @param root    the root, ending with a separator, or ""
+         * @param path    the pathname of the database file of the shard, or null
+         * @param manager the loaded ImageHistoryManager of the shard, or null
+         */
+        Shard(String root, String path, ImageHistoryManager manager) {
+            this.root = root;
+            this.path = path;
+            this.manager = manager;
+            this.told = manager != null;
+        }
+
+        /**
+         * Return whether this shard is loaded.
+         *
+         * @return a boolean of whether this shard is loaded
+         */
+        boolean isLoaded() {
+            return manager != null;
+        }
+
+        /**
+         * Return the ImageHistoryManager of this shard, loading it if needed and telling the load listener of it.
+         *
+         * @return the ImageHistoryManager
+         * @throws IOException an IOException exception
+         */
+        ImageHistoryManager use() throws IOException {
+            return load(true);
+        }
+
+        /**
+         * Return the ImageHistoryManager of this shard, loading it if needed, reviving the one last unloaded if it
+         * was not collected.
+         *
+         * @param tell whether to tell the load listener of a shard loaded for the first time
+         * @return the ImageHistoryManager
+         * @throws IOException an IOException exception
+         */
+        synchronized ImageHistoryManager load(boolean tell) throws IOException {
+            lastUsed = System.currentTimeMillis();
+            if (manager == null) {
+                ImageHistoryManager revived = unloaded == null ? null : unloaded.get();
+                unloaded = null;
+                if (revived != null) {
+                    revived.refresh();
+                    manager = revived;
+                } else {
+                    try {
+                        manager = new ImageHistoryManager(path);
+                    } catch (ClassNotFoundException e) {
+                        throw new IOException(e);
+                    }
+                    manager.setAutoSave(autoSave);
+                }
+                changes.incrementAndGet();
+            }
+            if (!told) {
+                // A shard created by registering a root holds images its sources were loaded with.
+                told = true;
+                LoadListener listener = loadListener;
+                if (tell && listener != null) {
+                    listener.loaded(manager);
+                }
+            }
+            return manager;
+        }
+
+        /**
+         * Change the number of pins of this shard if it is that of a manager, reviving the manager if it was
+         * unloaded but is still held.
+         *
+         * @param shard the ImageHistoryManager
+         * @param delta 1 to pin this shard, -1 to unpin it
+         * @return a boolean of whether the manager is that of this shard
+         */
+        synchronized boolean pin(ImageHistoryManager shard, int delta) {
+            if (manager != shard) {
+                if (unloaded == null || unloaded.get() != shard) {
+                    return false;
+                }
+                manager = shard;
+                unloaded = null;
+                changes.incrementAndGet();
+            }
+            pins = Math.max(0, pins + delta);
+            lastUsed = System.currentTimeMillis();
+            return true;
+        }
+
+        /**
+         * Save and unload this shard if it is loaded, unpinned, was last used before a time and is not held in the
+         * heap only.
+         *
+         * @param idleSince the time before which this shard was last used, in milliseconds
+         * @return a boolean of whether this shard was unloaded
+         * @throws IOException an IOException exception
+         */
+        synchronized boolean unload(long idleSince) throws IOException {
+            if (manager == null || path == null || pins > 0 || lastUsed >= idleSince
+                    || System.getProperty(DatabaseStore.STORAGE_PROPERTY, "file").equals("memory")) {
+                return false;
+            }
+            manager.toFile();
+            unloaded = new WeakReference<>(manager);
+            manager = null;
+            changes.incrementAndGet();
+            return true;
+        }
+    }
+}
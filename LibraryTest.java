@@ -0,0 +1,166 @@
+package photo_renamer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/** A class for testing Library. */
+public class LibraryTest {
+    /** The temporary directory holding the databases and the images. */
+    private File dir;
+    /** The directory of the databases, ending with a separator. */
+    private String dbDir;
+    /** The directory of the images. */
+    private File photos;
+
+    @Before
+    /* Set up images in three folders and an empty database directory in a temporary directory for testing. */
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("LibraryTest").toFile();
+        File db = new File(dir, "db");
+        db.mkdirs();
+        dbDir = db.getPath() + File.separator;
+        photos = new File(dir, "photos");
+        for (String path : Arrays.asList("a/one.jpg", "a/two.jpg", "b/three.jpg", "c/four.jpg")) {
+            File image = new File(photos, path);
+            image.getParentFile().mkdirs();
+            Files.write(image.toPath(), path.getBytes("UTF-8"));
+        }
+    }
+
+    @After
+    /* Delete the temporary directory. */
+    public void tearDown() throws Exception {
+        Files.walk(dir.toPath()).sorted(Collections.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+
+    /**
+     * Return the names of ImageFiles.
+     *
+     * @param images the ImageFiles
+     * @return the names, in order
+     */
+    private static ArrayList<String> names(Iterable<ImageFile> images) {
+        ArrayList<String> names = new ArrayList<>();
+        for (ImageFile image : images) {
+            names.add(image.name);
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * Tag every image a shard records under a directory with a Tag.
+     *
+     * @param shard  the ImageHistoryManager of the shard
+     * @param folder the directory
+     * @param tag    the Tag
+     * @throws Exception an Exception
+     */
+    private static void tagAll(ImageHistoryManager shard, File folder, Tag tag) throws Exception {
+        ArrayList<ImageFile> images = ImageFileManager.getImages(folder, new ArrayList<>(), shard);
+        for (ImageFile image : images) {
+            image.tags = new ArrayList<>(Collections.singletonList(tag));
+        }
+        shard.changed(images);
+    }
+
+    @Test
+    /* Test that registering a root splits its images out of the unsharded history, and a root around it absorbs it. */
+    public void testRegister() throws Exception {
+        ImageHistoryManager unsharded = new ImageHistoryManager(dbDir + Library.UNSHARDED_FILE);
+        tagAll(unsharded, photos, new Tag("old"));
+        assertEquals(4, unsharded.getImages().size());
+
+        Library library = new Library(dbDir, true);
+        assertTrue(library.loaded().isEmpty());
+        ImageHistoryManager a = library.shardFor(new File(photos, "a"));
+        assertEquals(Arrays.asList("one.jpg", "two.jpg"), names(a.getImages()));
+        assertEquals(Arrays.asList("four.jpg", "three.jpg"),
+                names(new ImageHistoryManager(dbDir + Library.UNSHARDED_FILE).getImages()));
+        assertSame(a, library.shardFor(new File(photos, "a")));
+        assertSame(a, library.shardOf(new File(photos, "a/one.jpg").getAbsolutePath()));
+
+        ImageHistoryManager all = library.shardFor(photos);
+        assertEquals(Arrays.asList("four.jpg", "one.jpg", "three.jpg", "two.jpg"), names(all.getImages()));
+        assertSame(all, library.shardFor(new File(photos, "a")));
+        assertTrue(a.getImages().isEmpty());
+        assertTrue(new ImageHistoryManager(dbDir + Library.UNSHARDED_FILE).getImages().isEmpty());
+
+        Library reopened = new Library(dbDir, true);
+        ImageHistoryManager shard = reopened.shardOf(new File(photos, "a/two.jpg").getAbsolutePath());
+        assertEquals(4, shard.getImages().size());
+        assertEquals(Arrays.asList(new Tag("old")),
+                shard.getImage(new File(photos, "a/two.jpg").getAbsolutePath()).tags);
+    }
+
+    @Test
+    /* Test that Tag queries fan out across every root, and that idle shards unload until used again. */
+    public void testFanOutAndUnload() throws Exception {
+        Library library = new Library(dbDir, true);
+        ArrayList<ImageHistoryManager> told = new ArrayList<>();
+        library.setLoadListener(told::add);
+        Tag sun = new Tag("sun");
+        for (String folder : Arrays.asList("a", "b", "c")) {
+            tagAll(library.shardFor(new File(photos, folder)), new File(photos, folder), sun);
+        }
+        ImageHistoryManager held = library.shardFor(new File(photos, "a"));
+        // Only the unsharded history was loaded from disk, to split the roots out of it.
+        assertEquals(1, told.size());
+
+        Library reopened = new Library(dbDir, true);
+        assertEquals(4, reopened.getImagesTagged(sun).size());
+        ArrayList<String> paths = new ArrayList<>();
+        for (ImageFile image : reopened.getImagesTagged(new Tag("SUN"))) {
+            paths.add(image.imgFilePath);
+        }
+        ArrayList<String> sorted = new ArrayList<>(paths);
+        Collections.sort(sorted);
+        assertEquals(sorted, paths);
+        assertEquals(4, reopened.loaded().size());
+
+        long version = library.getVersion();
+        Thread.sleep(5);
+        assertEquals(4, library.unloadIdle(1));
+        assertTrue(library.loaded().isEmpty());
+        assertTrue(library.getVersion() != version);
+        assertSame(held, library.shardFor(new File(photos, "a")));
+        assertEquals(1, told.size());
+        assertEquals(Arrays.asList("one.jpg", "two.jpg"), names(library.getImagesTagged(sun).subList(0, 2)));
+        assertEquals(1, told.size());
+    }
+
+    @Test
+    /* Test that a pinned shard stays loaded however long it is idle, until unpinned as often as pinned. */
+    public void testPin() throws Exception {
+        Library library = new Library(dbDir, true);
+        ImageHistoryManager shown = library.shardFor(new File(photos, "a"));
+        library.pin(shown);
+        library.pin(shown);
+        Thread.sleep(5);
+        library.unloadIdle(1);
+        assertEquals(Collections.singletonList(shown), library.loaded());
+
+        library.unpin(shown);
+        Thread.sleep(5);
+        assertEquals(0, library.unloadIdle(1));
+        library.unpin(shown);
+        Thread.sleep(5);
+        assertEquals(1, library.unloadIdle(1));
+        assertTrue(library.loaded().isEmpty());
+
+        // Pinning a manager still held after it was unloaded loads it again.
+        library.pin(shown);
+        assertEquals(Collections.singletonList(shown), library.loaded());
+    }
+}
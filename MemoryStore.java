@@ -0,0 +1,140 @@
+package photo_renamer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A DatabaseStore keeping its records in the heap only, for tests and benchmarks.
+ *
+ * @param <T> the type of the records
+ */
+class MemoryStore<T> implements DatabaseStore<T> {
+
+    /** The schema of the records. */
+    private final Schema<T> schema;
+    /** The records by key, in key order. */
+    private final TreeMap<String, T> records;
+    /** The keys of the records indexed under each term. */
+    private final HashMap<String, TreeSet<String>> keysByTerm;
+    /** The terms each record was indexed under when it was put. */
+    private final HashMap<String, Collection<String>> termsByKey;
+
+    /**
+     * Construct an empty store.
+     *
+     * @param schema the schema of the records
+     */
+    MemoryStore(Schema<T> schema) {
+        this.schema = schema;
+        this.records = new TreeMap<>();
+        this.keysByTerm = new HashMap<>();
+        this.termsByKey = new HashMap<>();
+    }
+
+    @Override
+    public synchronized T get(String key) {
+        return records.get(key);
+    }
+
+    @Override
+    public synchronized void put(T record) {
+        String key = schema.keyOf(record);
+        unindex(key);
+        records.put(key, record);
+        Collection<String> terms = new ArrayList<>(schema.termsOf(record));
+        for (String term : terms) {
+            keysByTerm.computeIfAbsent(term, t -> new TreeSet<>()).add(key);
+        }
+        termsByKey.put(key, terms);
+    }
+
+    @Override
+    public synchronized void remove(String key) {
+        unindex(key);
+        records.remove(key);
+    }
+
+    /**
+     * Drop a key from the index of every term it was put under.
+     *
+     * @param key the key
+     */
+    private void unindex(String key) {
+        Collection<String> terms = termsByKey.remove(key);
+        if (terms != null) {
+            for (String term : terms) {
+                TreeSet<String> keys = keysByTerm.get(term);
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    keysByTerm.remove(term);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void scan(String fromKey, String toKey, Visitor<T> visitor) throws IOException {
+        // Visit a copy, so that the lock is not held by the visitor.
+        ArrayList<T> inRange;
+        synchronized (this) {
+            NavigableMap<String, T> range = records;
+            if (fromKey != null) {
+                range = range.tailMap(fromKey, true);
+            }
+            if (toKey != null) {
+                range = range.headMap(toKey, false);
+            }
+            inRange = new ArrayList<>(range.values());
+        }
+        for (T record : inRange) {
+            visitor.visit(record);
+        }
+    }
+
+    @Override
+    public synchronized ArrayList<T> find(String term) {
+        ArrayList<T> found = new ArrayList<>();
+        TreeSet<String> keys = keysByTerm.get(term);
+        if (keys != null) {
+            for (String key : keys) {
+                found.add(records.get(key));
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        // Nothing is kept beyond the heap.
+    }
+
+    @Override
+    public void close() throws IOException {
+        // No resources are held.
+    }
+
+    /**
+     * Return a copy of the records in key order.
+     *
+     * @return an ArrayList of the records
+     */
+    synchronized ArrayList<T> values() {
+        return new ArrayList<>(records.values());
+    }
+
+    /**
+     * Put every record of a collection.
+     *
+     * @param loaded the records
+     */
+    synchronized void putAll(Collection<T> loaded) {
+        for (T record : loaded) {
+            put(record);
+        }
+    }
+}
@@ -11,18 +11,19 @@ class ModifyTagsButton extends JButton implements ActionListener {
 
     /** The serialVersionUID for this class. */
     private static final long serialVersionUID = -9021117525598345699L;
-    /** the TagManager being modified. */
-    private final TagManager tagManager;
+    /** The PhotoRenamer application whose TagManager is modified. */
+    private final PhotoRenamer mainApp;
 
     /**
      * A button that can open a new window for modifying Tags.
+     * The TagManager is looked up on each click, as it is loaded after the button is shown.
      *
-     * @param label      the label of this button
-     * @param tagManager the TagManager managing the Tags
+     * @param label   the label of this button
+     * @param mainApp the PhotoRenamer application this button is attached to
      */
-    ModifyTagsButton(String label, TagManager tagManager) {
+    ModifyTagsButton(String label, PhotoRenamer mainApp) {
         super(label);
-        this.tagManager = tagManager;
+        this.mainApp = mainApp;
         this.addActionListener(this);
     }
 
@@ -34,6 +35,7 @@ class ModifyTagsButton extends JButton implements ActionListener {
     @Override
     @SuppressWarnings("unchecked")
     public void actionPerformed(ActionEvent click) {
+        TagManager tagManager = mainApp.tagManager;
         // Create the window to display the tag modifier in.
         JFrame modifierWindow = new JFrame("Modify Tags Database");
         // Create a list model to populate the list of Tags.
@@ -43,9 +45,10 @@ class ModifyTagsButton extends JButton implements ActionListener {
         JScrollPane tagsPane = new JScrollPane(tagList);
         // Create a text field for user entry of new Tags.
         JTextField newTagField = new JTextField("Enter new tag...", 20);
+        new TagCompleter(newTagField, tagManager);
         newTagField.addActionListener(enter -> {
             Tag newTag = new Tag(newTagField.getText());
-            if (!tagModel.contains(newTag)) {
+            if (!tagManager.hasTag(newTag)) {
                 tagModel.addElement(newTag);
                 newTagField.setText("");
                 try {
@@ -0,0 +1,217 @@
+package photo_renamer;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable, delta-encoded list of the past names of an ImageFile.
+ * A name is split into its base name, the name without its " @tag" parts, and the names of its Tags.
+ * Each distinct base name is stored once per history and each Tag name is one shared instance for the whole
+ * application, so a history holding the same base name under many Tag sets costs little more than the base name,
+ * and a database file writes each Tag name once. Full names are only materialized when asked for.
+ */
+final class NameHistory implements Serializable {
+
+    /** The serialVersionUID for this class. */
+    private static final long serialVersionUID = -2311683795906134521L;
+    /** The history holding no names. */
+    static final NameHistory EMPTY = new NameHistory(new String[0], new int[0], 0);
+    /** The shared instance of every Tag name seen in a history. */
+    private static final ConcurrentHashMap<String, String> TAG_NAMES = new ConcurrentHashMap<>();
+    /** The base names and Tag names referenced by codes. */
+    private final String[] strings;
+    /** For each name in order: the index of its base name, the number of its Tags and the index of each Tag name. */
+    private final int[] codes;
+    /** The number of names. */
+    private final int size;
+
+    /**
+     * Construct a history from its encoding.
+     *
+     * @param strings the base names and Tag names referenced by codes
+     * @param codes   the encoded names
+     * @param size    the number of names
+     */
+    private NameHistory(String[] strings, int[] codes, int size) {
+        this.strings = strings;
+        this.codes = codes;
+        this.size = size;
+    }
+
+    /**
+     * Return a history of the argued names, in order, without duplicates.
+     *
+     * @param names the names
+     * @return the history
+     */
+    static NameHistory of(Collection<String> names) {
+        NameHistory history = EMPTY;
+        for (String name : names) {
+            history = history.with(name);
+        }
+        return history;
+    }
+
+    /**
+     * Return this history extended by a name, or this history if it already holds the name.
+     *
+     * @param name the name
+     * @return the extended history
+     */
+    NameHistory with(String name) {
+        if (contains(name)) {
+            return this;
+        }
+        int extBeginning = name.lastIndexOf('.');
+        String ext = extBeginning < 0 ? "" : name.substring(extBeginning);
+        String[] parts = (extBeginning < 0 ? name : name.substring(0, extBeginning)).split(" @", -1);
+        ArrayList<String> newStrings = new ArrayList<>(Arrays.asList(strings));
+        int[] newCodes = Arrays.copyOf(codes, codes.length + parts.length + 1);
+        int at = codes.length;
+        newCodes[at++] = indexOf(newStrings, parts[0] + ext);
+        newCodes[at++] = parts.length - 1;
+        for (int i = 1; i < parts.length; i++) {
+            newCodes[at++] = indexOf(newStrings, canonical(parts[i]));
+        }
+        return new NameHistory(newStrings.toArray(new String[0]), newCodes, size + 1);
+    }
+
+    /**
+     * Return the index of a string in a list, appending it if absent.
+     *
+     * @param list   the list
+     * @param string the string
+     * @return the index of the string
+     */
+    private static int indexOf(ArrayList<String> list, String string) {
+        int index = list.indexOf(string);
+        if (index < 0) {
+            list.add(string);
+            index = list.size() - 1;
+        }
+        return index;
+    }
+
+    /**
+     * Return the shared instance of a Tag name.
+     *
+     * @param tagName the Tag name
+     * @return the shared instance
+     */
+    private static String canonical(String tagName) {
+        String shared = TAG_NAMES.putIfAbsent(tagName, tagName);
+        return shared == null ? tagName : shared;
+    }
+
+    /**
+     * Return the number of names in this history.
+     *
+     * @return the number of names
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Materialize the name at a position in this history.
+     *
+     * @param index the position of the name, 0 being the first name
+     * @return the full name
+     */
+    String get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        int at = 0;
+        for (int i = 0; i < index; i++) {
+            at += 2 + codes[at + 1];
+        }
+        return materialize(at);
+    }
+
+    /**
+     * Materialize the name encoded at an offset in codes.
+     *
+     * @param at the offset of the encoded name
+     * @return the full name
+     */
+    private String materialize(int at) {
+        String base = strings[codes[at]];
+        int extBeginning = base.lastIndexOf('.');
+        if (extBeginning < 0) {
+            extBeginning = base.length();
+        }
+        StringBuilder name = new StringBuilder(base.length() + 16).append(base, 0, extBeginning);
+        for (int t = 0; t < codes[at + 1]; t++) {
+            name.append(" @").append(strings[codes[at + 2 + t]]);
+        }
+        return name.append(base, extBeginning, base.length()).toString();
+    }
+
+    /**
+     * Return whether this history holds a name.
+     *
+     * @param name the name
+     * @return a boolean of whether the name is held
+     */
+    boolean contains(String name) {
+        for (int at = 0; at < codes.length; at += 2 + codes[at + 1]) {
+            if (materialize(at).equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return a read-only list view of the names in this history, materializing each name as it is read.
+     *
+     * @return the list of names
+     */
+    List<String> toList() {
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return NameHistory.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Replace a deserialized history by one sharing the Tag name instances of the application.
+     *
+     * @return the history sharing Tag names
+     * @throws ObjectStreamException an ObjectStreamException exception
+     */
+    private Object readResolve() throws ObjectStreamException {
+        String[] shared = strings.clone();
+        for (int at = 0; at < codes.length; at += 2 + codes[at + 1]) {
+            for (int t = 0; t < codes[at + 1]; t++) {
+                int index = codes[at + 2 + t];
+                shared[index] = canonical(shared[index]);
+            }
+        }
+        return new NameHistory(shared, codes, size);
+    }
+
+    /**
+     * Return the names of this history joined by commas.
+     *
+     * @return a string representing this history
+     */
+    @Override
+    public String toString() {
+        return toList().toString();
+    }
+}
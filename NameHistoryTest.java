@@ -0,0 +1,56 @@
+package photo_renamer;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/** A class for testing NameHistory. */
+public class NameHistoryTest {
+    /** Names sharing a base name, with and without Tags and extensions. */
+    private static final List<String> NAMES = Arrays.asList("beach.jpg", "beach @sun.jpg", "beach @sun @sea.jpg",
+            "beach @sea.jpg", "README", "notes @draft", "odd @.png", "two.dots @x.tar.gz");
+
+    @Test
+    /* Test that every name is materialized exactly as it was added, in order. */
+    public void testRoundTrip() throws Exception {
+        NameHistory history = NameHistory.of(NAMES);
+        assertEquals(NAMES.size(), history.size());
+        assertEquals(NAMES, new ArrayList<>(history.toList()));
+        for (String name : NAMES) {
+            assertTrue(history.contains(name));
+        }
+        assertFalse(history.contains("beach @sky.jpg"));
+    }
+
+    @Test
+    /* Test that adding a name already held returns the same history. */
+    public void testWithDuplicate() throws Exception {
+        NameHistory history = NameHistory.EMPTY.with("beach.jpg").with("beach @sun.jpg");
+        assertSame(history, history.with("beach.jpg"));
+        assertEquals(0, NameHistory.EMPTY.size());
+    }
+
+    @Test
+    /* Test that a history survives serialization. */
+    public void testSerialization() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(NameHistory.of(NAMES));
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            NameHistory read = (NameHistory) in.readObject();
+            assertEquals(NAMES, new ArrayList<>(read.toList()));
+        }
+    }
+}
@@ -1,13 +1,17 @@
 package photo_renamer;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 
-/** A button used to open a directory and list all images located under it. */
+/** A button used to open a directory or a SmartAlbum and list all images located under or in it. */
 class OpenDirButton extends JButton implements ActionListener {
 
     /** The serialVersionUID for this class. */
@@ -32,16 +36,55 @@ class OpenDirButton extends JButton implements ActionListener {
     }
 
     /**
-     * Attempt to render a list of images in a directory upon click.
+     * Offer to open a directory, or a SmartAlbum or a new SmartAlbum of the shard of the open directory, upon click.
      *
      * @param click the click event
      */
     @Override
     public void actionPerformed(ActionEvent click) {
+        JPopupMenu menu = new JPopupMenu();
+        JMenuItem directoryItem = new JMenuItem("Directory...");
+        directoryItem.addActionListener(choice -> openDirectory());
+        menu.add(directoryItem);
+        ArrayList<SmartAlbum> albums = mainApp.historyManager == null
+                ? new ArrayList<>() : mainApp.historyManager.albums.getAlbums();
+        if (!albums.isEmpty()) {
+            menu.addSeparator();
+        }
+        for (SmartAlbum album : albums) {
+            JMenuItem albumItem = new JMenuItem(album.name + " (" + album.size() + ")");
+            albumItem.setToolTipText(album.query.text);
+            albumItem.addActionListener(choice -> openAlbum(album));
+            menu.add(albumItem);
+        }
+        menu.addSeparator();
+        JMenuItem newAlbumItem = new JMenuItem("New Smart Album...");
+        newAlbumItem.addActionListener(choice -> newAlbum());
+        newAlbumItem.setEnabled(mainApp.historyManager != null);
+        menu.add(newAlbumItem);
+        menu.show(this, 0, getHeight());
+    }
+
+    /**
+     * Attempt to render a list of the images in a chosen directory, recorded in the shard of the root holding it,
+     * which is registered if there is none.
+     */
+    private void openDirectory() {
         int returnVal = fileChooser.showOpenDialog(null);
         if (returnVal == JFileChooser.APPROVE_OPTION) {
             try {
-                this.renderImageList();
+                File dir = fileChooser.getSelectedFile();
+                if (dir.exists()) {
+                    // The shard of the listed images stays pinned, and so loaded, while they are shown.
+                    ImageHistoryManager shard = mainApp.library.shardFor(dir);
+                    mainApp.library.pin(shard);
+                    if (mainApp.historyManager != null) {
+                        mainApp.library.unpin(mainApp.historyManager);
+                    }
+                    mainApp.historyManager = shard;
+                    renderImageList("Images in " + dir.getAbsolutePath(),
+                            ImageFileManager.getImages(dir, new ArrayList<>(), mainApp.historyManager));
+                }
             } catch (IOException | ClassNotFoundException e1) {
                 JOptionPane.showMessageDialog(new JFrame(), "Failed to search directory!");
                 e1.printStackTrace();
@@ -50,30 +93,78 @@ class OpenDirButton extends JButton implements ActionListener {
     }
 
     /**
-     * Render the list of images under the selected directory.
+     * Render the list of images in a SmartAlbum, which takes the same time however many images it holds.
      *
-     * @throws IOException            an IOException exception
-     * @throws ClassNotFoundException a ClassNotFoundException exception
+     * @param album the SmartAlbum
      */
-    @SuppressWarnings("unchecked")
-    private void renderImageList() throws IOException, ClassNotFoundException {
-        File dir = fileChooser.getSelectedFile();
-        if (dir.exists()) {
-            mainApp.dirLabel.setText("Images in " + dir.getAbsolutePath());
-            ArrayList<ImageFile> imageFiles = ImageFileManager.getImages(dir, new ArrayList<>(), mainApp.historyManager);
-            DefaultListModel<ImageFile> listModel = new DefaultListModel<>();
-            imageFiles.forEach(listModel::addElement);
-            JList<String> imageList = new JList(listModel);
-            imageList.addMouseListener(
-                    new ImageSelectionListener(mainApp, imageList, listModel));
-            JScrollPane imageListScroller = new JScrollPane(imageList);
-            imageListScroller.setSize(450, 300);
+    private void openAlbum(SmartAlbum album) {
+        renderImageList("Images in album " + album.name + ": " + album.query.text, album.images());
+    }
 
-            mainApp.dirPanel.removeAll();
-            mainApp.dirPanel.add(imageListScroller);
-            mainApp.mainFrame.revalidate();
-            mainApp.mainFrame.pack();
-            mainApp.mainFrame.repaint();
+    /** Ask for the name and query of a new SmartAlbum, save it and render its images. */
+    private void newAlbum() {
+        String name = JOptionPane.showInputDialog(mainApp.mainFrame, "Album name:");
+        if (name == null || name.trim().isEmpty()) {
+            return;
+        }
+        String query = JOptionPane.showInputDialog(mainApp.mainFrame,
+                "Query, such as: 2016 AND family NOT reviewed, untagged, path:holidays OR name:beach");
+        if (query == null || query.trim().isEmpty()) {
+            return;
+        }
+        try {
+            openAlbum(mainApp.historyManager.albums.add(name.trim(), new AlbumQuery(query.trim())));
+        } catch (IllegalArgumentException e1) {
+            JOptionPane.showMessageDialog(new JFrame(), "Failed to read query: " + e1.getMessage());
+        } catch (IOException e1) {
+            JOptionPane.showMessageDialog(new JFrame(), "Failed to save album!");
+            e1.printStackTrace();
         }
     }
+
+    /**
+     * Render a list of images in the main window.
+     *
+     * @param label      the label describing the images
+     * @param imageFiles the ImageFiles
+     */
+    private void renderImageList(String label, List<ImageFile> imageFiles) {
+        mainApp.dirLabel.setText(label);
+        ImageListModel listModel = new ImageListModel(imageFiles);
+        JList<ImageFile> imageList = new JList<>(listModel);
+        // A prototype row spares the list from measuring every image name in the scan.
+        imageList.setPrototypeCellValue(imageFiles.isEmpty() ? null : imageFiles.get(0));
+        imageList.addMouseListener(
+                new ImageSelectionListener(mainApp, imageList, listModel));
+        JScrollPane imageListScroller = new JScrollPane(imageList);
+        imageListScroller.setPreferredSize(new Dimension(450, 300));
+
+        // Field to narrow the listed images down by name, tag or folder as the user types.
+        JTextField filterField = new JTextField(20);
+        filterField.setToolTipText("Filter by name, tag or folder...");
+        filterField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                listModel.filter(filterField.getText());
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                listModel.filter(filterField.getText());
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                listModel.filter(filterField.getText());
+            }
+        });
+
+        mainApp.dirPanel.removeAll();
+        mainApp.dirPanel.setLayout(new BorderLayout());
+        mainApp.dirPanel.add(filterField, BorderLayout.NORTH);
+        mainApp.dirPanel.add(imageListScroller, BorderLayout.CENTER);
+        mainApp.mainFrame.revalidate();
+        mainApp.mainFrame.pack();
+        mainApp.mainFrame.repaint();
+    }
 }
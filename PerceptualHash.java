@@ -0,0 +1,67 @@
+package photo_renamer;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/** A helper computing 64-bit difference hashes (dHash) that stay close for visually similar images. */
+final class PerceptualHash {
+
+    /** The width of the grayscale thumbnail a hash is computed from. */
+    private static final int HASH_WIDTH = 9;
+    /** The height of the grayscale thumbnail a hash is computed from. */
+    private static final int HASH_HEIGHT = 8;
+    /** The smallest width and height decoded before shrinking to the thumbnail. */
+    private static final int DECODE_SIZE = 64;
+
+    /** Prevent instantiation of this helper. */
+    private PerceptualHash() {
+    }
+
+    /**
+     * Compute the difference hash of an image file from a subsampled decode.
+     *
+     * @param file the image file
+     * @return the 64-bit hash
+     * @throws IOException if the image cannot be read or decoded
+     */
+    static long of(File file) throws IOException {
+        return of(ImageDecoder.readSubsampled(file, DECODE_SIZE, DECODE_SIZE));
+    }
+
+    /**
+     * Compute the difference hash of a decoded image: one bit per pair of horizontally
+     * adjacent thumbnail pixels, set when the left pixel is brighter than the right.
+     *
+     * @param image the decoded image
+     * @return the 64-bit hash
+     */
+    static long of(BufferedImage image) {
+        BufferedImage thumbnail = new BufferedImage(HASH_WIDTH, HASH_HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D graphics = thumbnail.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(image, 0, 0, HASH_WIDTH, HASH_HEIGHT, null);
+        graphics.dispose();
+        long hash = 0;
+        for (int y = 0; y < HASH_HEIGHT; y++) {
+            for (int x = 0; x < HASH_WIDTH - 1; x++) {
+                int left = thumbnail.getRaster().getSample(x, y, 0);
+                int right = thumbnail.getRaster().getSample(x + 1, y, 0);
+                hash = (hash << 1) | (left > right ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Return the number of differing bits between two hashes.
+     *
+     * @param a the first hash
+     * @param b the second hash
+     * @return the Hamming distance
+     */
+    static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+}
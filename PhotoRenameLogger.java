@@ -76,4 +76,13 @@ public class PhotoRenameLogger {
         String formattedDate = dateFormat.format(date);
         logger.log(Level.FINE, "(" + oldName + " >>> " + o + " @ " + formattedDate + ")");
     }
+
+    /**
+     * Log the timing breakdown of an application startup.
+     *
+     * @param timings the StartupTimings of the startup
+     */
+    void logStartup(StartupTimings timings) {
+        logger.log(Level.INFO, "Startup timings:" + System.lineSeparator() + timings);
+    }
 }
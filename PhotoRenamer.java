@@ -5,43 +5,84 @@ import javax.swing.border.EmptyBorder;
 import java.awt.*;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /** A GUI driven application for exploring, viewing, and tagging images on system. */
 public class PhotoRenamer {
 
-    /** The directory PhotoRenamers are launched from. */
-    private static final String root = System.getProperty("user.dir") + "/";
+    /** The system property naming the directory of the databases, such as a location shared with other instances. */
+    static final String DB_PROPERTY = "photo_renamer.db";
+    /** The milliseconds between applying the changes other instances sharing the databases made. */
+    private static final long REFRESH_MILLIS = 1000;
+    /** The milliseconds between unloading the shards of the history database left idle. */
+    private static final long UNLOAD_MILLIS = 60 * 1000;
+    /** The directory of the databases, by default the directory PhotoRenamers are launched from. */
+    private static final String root = System.getProperty(DB_PROPERTY, System.getProperty("user.dir")) + "/";
     /** The main JFrame of the application. */
     JFrame mainFrame;
     /** The PhotoRenameLogger used for logging. */
     PhotoRenameLogger photoRenameLogger;
     /** The TagManager used for managing the database of Tags. */
     TagManager tagManager;
-    /** The ImageHistoryManager used for managing the history database. */
+    /** The Library whose shards hold the history database, one per root. */
+    Library library;
+    /** The ImageHistoryManager of the shard of the open directory, or null before one is opened. */
     ImageHistoryManager historyManager;
+    /** The ImageInspector displaying selected ImageFiles. */
+    ImageInspector inspector;
+    /** The QueryServer answering queries about the databases, or null when not enabled. */
+    QueryServer queryServer;
     /** The JLabel used display the working directory. */
     JLabel dirLabel;
     /** The JPanel displaying the directory contents. */
     JPanel dirPanel;
+    /** The record of how long this application took to start. */
+    private final StartupTimings timings;
+    /** The controls disabled until the databases are loaded. */
+    private final List<JComponent> gatedControls;
+
+    /** A loader of a startup dependency, run on its own thread. */
+    private interface Loader<T> {
+        /**
+         * Load the dependency.
+         *
+         * @return the loaded dependency
+         * @throws Exception an Exception
+         */
+        T load() throws Exception;
+    }
 
     /**
-     * Construct a PhotoRenamer application instance.
+     * Construct a PhotoRenamer application instance on the Event Dispatch Thread.
+     * The logger and databases load concurrently in the background while the main window is built and shown,
+     * and the controls depending on them are enabled once all have loaded.
      *
-     * @throws IOException            an IOException exception
-     * @throws ClassNotFoundException a ClassNotFoundException exception
+     * @param timings the record of the startup of this application
      */
-    private PhotoRenamer() throws IOException, ClassNotFoundException {
+    private PhotoRenamer(StartupTimings timings) {
+        this.timings = timings;
+        // Start loading first, so that building the window overlaps with it.
+        CompletableFuture<PhotoRenameLogger> loggerLoad = startLoading("logger", PhotoRenameLogger::getInstance);
+        CompletableFuture<TagManager> tagsLoad = startLoading("tags", () -> new TagManager(root + "tags.txt"));
+        // Shards of the history database are only loaded once a directory under their root is opened.
+        CompletableFuture<Library> libraryLoad = startLoading("library", () -> new Library(root, true));
+
         // Instantiate the central components for the application.
+        long start = System.nanoTime();
         this.mainFrame = new JFrame("Photo Renamer Pro 2017");
-        this.photoRenameLogger = PhotoRenameLogger.getInstance();
-        this.tagManager = new TagManager(root + "tags.txt");
-        this.historyManager = new ImageHistoryManager(root + "history.txt");
+        this.inspector = new ImageInspector(this);
         this.dirPanel = new JPanel();
-        this.dirLabel = new JLabel("Open a directory of images...");
+        this.dirLabel = new JLabel("Loading databases...");
         dirLabel.setBorder(new EmptyBorder(6, 12, 6, 0));
 
         // Create buttons for executing top level application functions and add them to a JPanel.
-        JButton modifyTagsButton = new ModifyTagsButton("Modify Tags", tagManager);
+        JButton modifyTagsButton = new ModifyTagsButton("Modify Tags", this);
         JButton openDirButton = new OpenDirButton("Open Directory", this);
         JButton exit = new JButton("Exit");
         exit.addActionListener(press -> System.exit(0));
@@ -59,25 +100,185 @@ public class PhotoRenamer {
         buttonsPanel.add(modifyTagsButton);
         buttonsPanel.add(viewLogButton);
         buttonsPanel.add(exit);
+        this.gatedControls = Arrays.asList(openDirButton, modifyTagsButton, viewLogButton);
+        for (JComponent control : gatedControls) {
+            control.setEnabled(false);
+        }
 
         // Collect all central components in the JFrame of this PhotoRenamer.
         mainFrame.add(dirPanel, BorderLayout.CENTER);
         mainFrame.add(buttonsPanel, BorderLayout.SOUTH);
         mainFrame.add(dirLabel, BorderLayout.NORTH);
         mainFrame.pack();
+        timings.phase("window", start);
+
+        // Finish starting on the Event Dispatch Thread, after this constructor, once everything has loaded.
+        CompletableFuture.allOf(loggerLoad, tagsLoad, libraryLoad).whenComplete((loaded, failure) ->
+                SwingUtilities.invokeLater(() -> {
+                    if (failure != null) {
+                        JOptionPane.showMessageDialog(new JFrame(), "Failed to launch application!");
+                        failure.printStackTrace();
+                        System.exit(1);
+                        return;
+                    }
+                    ready(loggerLoad.join(), tagsLoad.join(), libraryLoad.join());
+                }));
     }
 
     /**
-     * Execute the main program.
+     * Start loading a dependency on a new daemon thread, recording how long it takes.
      *
-     * @param args a String array of arguments
+     * @param phase  the name of the loading phase
+     * @param loader the loader of the dependency
+     * @param <T>    the type of the dependency
+     * @return the future dependency
      */
-    public static void main(String[] args) {
+    private <T> CompletableFuture<T> startLoading(String phase, Loader<T> loader) {
+        return CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            try {
+                return loader.load();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            } finally {
+                timings.phase(phase, start);
+            }
+        }, task -> {
+            Thread thread = new Thread(task, "startup-" + phase);
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
+    /**
+     * Install the loaded dependencies, start the background services and enable the gated controls.
+     *
+     * @param logger  the loaded PhotoRenameLogger
+     * @param tags    the loaded TagManager
+     * @param library the loaded Library
+     */
+    private void ready(PhotoRenameLogger logger, TagManager tags, Library library) {
+        this.photoRenameLogger = logger;
+        this.tagManager = tags;
+        this.library = library;
+        library.setLoadListener(shard -> {
+            tags.countUsage(shard.getImages());
+            SwingUtilities.invokeLater(() -> startHistorySweep(shard));
+        });
         try {
-            new PhotoRenamer().mainFrame.setVisible(true);
-        } catch (IOException | ClassNotFoundException e) {
-            JOptionPane.showMessageDialog(new JFrame(), "Failed to launch application!");
+            startQueryServer();
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(new JFrame(), "Failed to start query server!");
             e.printStackTrace();
         }
+        startMaintenance();
+        for (JComponent control : gatedControls) {
+            control.setEnabled(true);
+        }
+        dirLabel.setText("Open a directory of images...");
+        timings.milestone("ready");
+        if (logger != null) {
+            logger.logStartup(timings);
+        }
+    }
+
+    /**
+     * Garbage-collect history entries of a shard whose image files have long disappeared, checking the disk off
+     * the EDT.
+     *
+     * @param shard the ImageHistoryManager of the shard
+     */
+    private void startHistorySweep(ImageHistoryManager shard) {
+        HistorySweeper sweeper = new HistorySweeper(shard, HistorySweeper.GRACE_MILLIS);
+        List<ImageFile> images = shard.getImages();
+        new SwingWorker<HistorySweeper.Sweep, Void>() {
+            @Override
+            protected HistorySweeper.Sweep doInBackground() {
+                return sweeper.check(images);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    sweeper.apply(get());
+                } catch (Exception e) {
+                    JOptionPane.showMessageDialog(new JFrame(), "Failed to clean history database!");
+                    e.printStackTrace();
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * On a daemon thread, apply the changes other instances sharing the databases make once a second, if the
+     * databases are shared, and unload the shards of the history database left idle once a minute.
+     */
+    private void startMaintenance() {
+        boolean shared = System.getProperty(DatabaseStore.STORAGE_PROPERTY, "file").equals("shared");
+        long sleepMillis = shared ? REFRESH_MILLIS : UNLOAD_MILLIS;
+        Thread maintainer = new Thread(() -> {
+            long lastUnload = System.currentTimeMillis();
+            while (true) {
+                try {
+                    Thread.sleep(sleepMillis);
+                    if (shared) {
+                        tagManager.refresh();
+                        library.refresh();
+                    }
+                    if (System.currentTimeMillis() - lastUnload >= UNLOAD_MILLIS) {
+                        library.unloadIdle(Library.IDLE_MILLIS);
+                        lastUnload = System.currentTimeMillis();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                } catch (IOException e) {
+                    // The share may be briefly unreachable; the next refresh catches up.
+                    e.printStackTrace();
+                }
+            }
+        }, "maintenance");
+        maintainer.setDaemon(true);
+        maintainer.start();
+    }
+
+    /**
+     * Start serving queries if a port is configured, republishing a snapshot of the Tags and of the loaded shards of
+     * the history database at most once a second after they change. Snapshots copy every loaded image, so they are
+     * built on a daemon thread of their own rather than the Event Dispatch Thread.
+     *
+     * @throws IOException if the configured port cannot be bound
+     */
+    private void startQueryServer() throws IOException {
+        String port = System.getProperty(QueryServer.PORT_PROPERTY);
+        if (port == null) {
+            return;
+        }
+        queryServer = new QueryServer(Integer.parseInt(port), new QuerySnapshot(tagManager, library.loadedImages()));
+        long[] published = {tagManager.getVersion() + library.getVersion()};
+        ScheduledExecutorService republisher = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "query-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        republisher.scheduleWithFixedDelay(() -> {
+            long version = tagManager.getVersion() + library.getVersion();
+            if (version != published[0]) {
+                queryServer.publish(new QuerySnapshot(tagManager, library.loadedImages()));
+                published[0] = version;
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Execute the main program.
+     *
+     * @param args a String array of arguments
+     */
+    public static void main(String[] args) {
+        StartupTimings timings = new StartupTimings(System.nanoTime());
+        SwingUtilities.invokeLater(() -> {
+            new PhotoRenamer(timings).mainFrame.setVisible(true);
+            timings.milestone("first frame");
+        });
     }
 }
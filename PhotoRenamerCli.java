@@ -0,0 +1,611 @@
+package photo_renamer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A headless command line front end to the tagging and history logic of PhotoRenamer.
+ * Images are streamed from a directory scan one at a time and results are printed as they are produced.
+ */
+public class PhotoRenamerCli {
+
+    /** The usage message of the command line. */
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "usage: PhotoRenamerCli [--db <dir>] <command> <args...>",
+            "  scan   <root>...                      record and list every image under the roots",
+            "  tag    <root> <glob> <tag>...         apply tags to images whose path under root matches glob",
+            "  untag  <root> <glob> <tag>...         delete tags from images whose path under root matches glob",
+            "  revert <root> <glob> <index>          revert matching images to a past name, 0 being the first",
+            "  resume                                resume an interrupted tag, untag, revert or autotag",
+            "  report <root> <out.csv>               export name, tags and name history of every image",
+            "  tagged <tag>                          list every recorded image carrying a tag",
+            "  autotag <rules> <root>                apply the tags derived by a rules file to images under root",
+            "  dupes  <root> <distance> [<tag>]      list near-duplicate images, optionally tagging them",
+            "  gc     [<grace-days>]                 remove history of images missing longer than the grace period",
+            "  serve  <port>                         answer read-only JSON queries about the databases",
+            "  export <out.jsonl|out.csv>            stream both databases to a JSON Lines or CSV file",
+            "  import [--merge] <in.jsonl|in.csv>    load an export, merging rather than replacing records by path",
+            "  album  add <name> <query>...          save a smart album, such as: 2016 AND family NOT reviewed",
+            "  album  list|show|remove [<name>]      list the albums, or the images of one, or delete one");
+    /** The system property naming this instance among those sharing the databases. */
+    static final String INSTANCE_PROPERTY = "photo_renamer.instance";
+    /** The number of changed images after which the databases are saved during a run. */
+    static final int SAVE_INTERVAL = 10000;
+    /** The stream results are printed to. */
+    private final PrintStream out;
+    /** The TagManager managing the database of Tags. */
+    private final TagManager tagManager;
+    /** The Library whose shards hold the history database. */
+    private final Library library;
+    /** The ImageHistoryManager of the shard the command being run works on. */
+    private ImageHistoryManager historyManager;
+    /** The PhotoRenameLogger used to log rename events, created on the first rename. */
+    private PhotoRenameLogger photoRenameLogger;
+    /** The number of images changed since the databases were last saved. */
+    private int unsavedChanges;
+    /** The checkpoint file of interrupted bulk operations. */
+    private final File checkpointFile;
+    /** The bulk operation being run, or null. */
+    private BulkJob job;
+
+    /**
+     * Construct a command line front end working on the databases in a directory.
+     *
+     * @param dbDir the directory holding tags.txt and the shards of the history database
+     * @param out   the stream results are printed to
+     * @throws IOException            an IOException exception
+     * @throws ClassNotFoundException a ClassNotFoundException exception
+     */
+    PhotoRenamerCli(String dbDir, PrintStream out) throws IOException, ClassNotFoundException {
+        this.out = out;
+        this.tagManager = new TagManager(dbDir + "tags.txt");
+        // Saves are batched by this front end rather than made after every change.
+        this.library = new Library(dbDir, false);
+        this.checkpointFile = new File(dbDir + checkpointName());
+        tagManager.setAutoSave(false);
+    }
+
+    /**
+     * Return the name of the checkpoint file of interrupted bulk operations. Instances sharing the databases each
+     * keep their own, named by the instance system property or else the host name.
+     *
+     * @return the name of the checkpoint file
+     */
+    private static String checkpointName() {
+        if (!System.getProperty(DatabaseStore.STORAGE_PROPERTY, "file").equals("shared")) {
+            return "bulk.checkpoint";
+        }
+        String instance = System.getProperty(INSTANCE_PROPERTY);
+        if (instance == null) {
+            try {
+                instance = InetAddress.getLocalHost().getHostName();
+            } catch (UnknownHostException e) {
+                instance = "local";
+            }
+        }
+        return "bulk." + instance.replaceAll("[^A-Za-z0-9._-]", "_") + ".checkpoint";
+    }
+
+    /**
+     * Execute a command.
+     *
+     * @param command the command name
+     * @param args    the arguments of the command
+     * @return a boolean of whether the command was recognised
+     * @throws IOException            an IOException exception
+     * @throws ClassNotFoundException a ClassNotFoundException exception
+     */
+    boolean run(String command, String[] args) throws IOException, ClassNotFoundException {
+        switch (command) {
+            case "scan":
+                for (String root : args) {
+                    historyManager = library.shardFor(new File(root));
+                    ImageFileManager.visitImages(new File(root), historyManager,
+                            image -> out.println(image.imgFilePath + "\t" + image.tags));
+                }
+                break;
+            case "tag":
+            case "untag":
+                if (args.length < 3) {
+                    return false;
+                }
+                boolean apply = command.equals("tag");
+                ArrayList<Tag> tags = new ArrayList<>();
+                for (String tagName : Arrays.copyOfRange(args, 2, args.length)) {
+                    // Only applied Tags are added; deleting one that is not managed deletes nothing.
+                    if (apply) {
+                        tagManager.addTag(new Tag(tagName));
+                    }
+                    Tag tag = tagManager.getTag(tagName);
+                    if (tag != null) {
+                        tags.add(tag);
+                    }
+                }
+                forMatching(commandLine(command, args), args[0], args[1], manager -> {
+                    if (apply) {
+                        tagManager.recordUsage(manager.applyTags(tags), 1);
+                    } else {
+                        tagManager.recordUsage(manager.deleteTags(tags), -1);
+                    }
+                });
+                break;
+            case "revert":
+                if (args.length != 3) {
+                    return false;
+                }
+                int index;
+                try {
+                    index = Integer.parseInt(args[2]);
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+                if (index < 0) {
+                    return false;
+                }
+                forMatching(commandLine(command, args), args[0], args[1], manager -> {
+                    NameHistory history = manager.getManagedImage().nameHistory;
+                    if (index < history.size()) {
+                        manager.revertTo(history.get(index), tagManager);
+                    }
+                });
+                break;
+            case "autotag":
+                if (args.length != 2) {
+                    return false;
+                }
+                autotag(commandLine(command, args), AutoTagger.load(new File(args[0])), new File(args[1]));
+                break;
+            case "dupes":
+                if (args.length != 2 && args.length != 3) {
+                    return false;
+                }
+                dupes(new File(args[0]), Integer.parseInt(args[1]), args.length == 3 ? new Tag(args[2]) : null);
+                break;
+            case "gc":
+                if (args.length > 1) {
+                    return false;
+                }
+                long graceMillis = args.length == 1
+                        ? TimeUnit.DAYS.toMillis(Long.parseLong(args[0])) : HistorySweeper.GRACE_MILLIS;
+                int[] removed = {0};
+                library.forEachShard(shard -> {
+                    HistorySweeper sweeper = new HistorySweeper(shard, graceMillis);
+                    removed[0] += sweeper.apply(sweeper.check(shard.getImages()));
+                });
+                out.println("Removed " + removed[0] + " missing image(s) from history");
+                break;
+            case "serve":
+                if (args.length != 1) {
+                    return false;
+                }
+                ArrayList<ImageFile> images = new ArrayList<>();
+                library.forEachShard(shard -> images.addAll(shard.getImages()));
+                new QueryServer(Integer.parseInt(args[0]), new QuerySnapshot(tagManager, images));
+                out.println("Serving on http://localhost:" + args[0] + "/");
+                return true;
+            case "tagged":
+                if (args.length != 1) {
+                    return false;
+                }
+                for (ImageFile image : library.getImagesTagged(new Tag(args[0]))) {
+                    out.println(image.imgFilePath + "\t" + image.tags);
+                }
+                break;
+            case "report":
+                if (args.length != 2) {
+                    return false;
+                }
+                report(new File(args[0]), args[1]);
+                break;
+            case "export":
+                if (args.length != 1) {
+                    return false;
+                }
+                try (Writer writer = new BufferedWriter(
+                        new OutputStreamWriter(new FileOutputStream(args[0]), StandardCharsets.UTF_8))) {
+                    long count = new DatabaseTransfer(tagManager, library)
+                            .export(writer, DatabaseTransfer.Format.of(args[0]));
+                    out.println("Exported " + count + " records");
+                }
+                return true;
+            case "import":
+                boolean merge = args.length == 2 && args[0].equals("--merge");
+                if (args.length != (merge ? 2 : 1)) {
+                    return false;
+                }
+                String inPath = args[args.length - 1];
+                try (BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(new FileInputStream(inPath), StandardCharsets.UTF_8))) {
+                    long count = new DatabaseTransfer(tagManager, library).importFrom(reader,
+                            DatabaseTransfer.Format.of(inPath), merge, Runtime.getRuntime().availableProcessors());
+                    out.println("Imported " + count + " records");
+                }
+                break;
+            case "album":
+                return album(args);
+            case "resume":
+                if (args.length != 0) {
+                    return false;
+                }
+                String[] interrupted = BulkJob.interrupted(checkpointFile);
+                if (interrupted == null) {
+                    out.println("No interrupted bulk operation");
+                    return true;
+                }
+                return run(interrupted[0], Arrays.copyOfRange(interrupted, 1, interrupted.length));
+            default:
+                return false;
+        }
+        save();
+        if (job != null) {
+            job.finish();
+            job = null;
+        }
+        return true;
+    }
+
+    /**
+     * Return a command line as an array.
+     *
+     * @param command the command name
+     * @param args    the arguments of the command
+     * @return the command followed by its arguments
+     */
+    private static String[] commandLine(String command, String[] args) {
+        String[] commandLine = new String[args.length + 1];
+        commandLine[0] = command;
+        System.arraycopy(args, 0, commandLine, 1, args.length);
+        return commandLine;
+    }
+
+    /**
+     * Start a checkpointed bulk operation, or resume it if it was interrupted, first recovering the history of
+     * the images it renamed after its last checkpoint.
+     *
+     * @param commandLine the command and arguments of the operation
+     * @param root        the root directory the operation works under
+     * @throws IOException an IOException exception
+     */
+    private void startJob(String[] commandLine, File root) throws IOException {
+        job = new BulkJob(checkpointFile, commandLine, root);
+        if (job.resumed()) {
+            int recovered = job.recover(tagManager, historyManager);
+            out.println("Resuming after " + job.doneCount() + " images, recovering " + recovered + " renames");
+            save();
+        }
+    }
+
+    /**
+     * Record that the bulk operation finished an image, taking a checkpoint every CHECKPOINT_VISITS images.
+     *
+     * @param path the system path the image had when it was visited
+     * @throws IOException an IOException exception
+     */
+    private void finished(String path) throws IOException {
+        job.done(path);
+        if (job.doneCount() % BulkJob.CHECKPOINT_VISITS == 0) {
+            save();
+        }
+    }
+
+    /** An action on the ImageFileManager of a matching image. */
+    private interface ImageAction {
+        /**
+         * Act on a matching image.
+         *
+         * @param manager the ImageFileManager managing the image
+         * @throws IOException an IOException exception
+         */
+        void act(ImageFileManager manager) throws IOException;
+    }
+
+    /**
+     * Act on every image under a root whose path relative to the root matches a glob, printing each rename,
+     * as a checkpointed bulk operation.
+     *
+     * @param commandLine the command and arguments of the operation
+     * @param root        the root directory
+     * @param glob        the glob matched against paths relative to the root
+     * @param action      the action taken on each matching image
+     * @throws IOException an IOException exception
+     */
+    private void forMatching(String[] commandLine, String root, String glob, ImageAction action) throws IOException {
+        Path rootPath = new File(root).getAbsoluteFile().toPath();
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        historyManager = library.shardFor(rootPath.toFile());
+        startJob(commandLine, rootPath.toFile());
+        job.walk(historyManager, image -> {
+            String path = image.imgFilePath;
+            if (matcher.matches(rootPath.relativize(new File(path).toPath()))) {
+                manage(image, action);
+            }
+            finished(path);
+        });
+    }
+
+    /**
+     * Act on the ImageFileManager of an image, printing the rename if there was one.
+     *
+     * @param image  the image acted on
+     * @param action the action taken on the image
+     * @throws IOException an IOException exception
+     */
+    private void manage(ImageFile image, ImageAction action) throws IOException {
+        String oldName = image.name;
+        ImageFileManager manager;
+        try {
+            manager = new ImageFileManager(image, logger(), historyManager);
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+        image.addObserver(manager);
+        manager.setJournal(job);
+        try {
+            action.act(manager);
+        } finally {
+            image.deleteObserver(manager);
+        }
+        if (!oldName.equals(image.name)) {
+            out.println(oldName + " -> " + image.imgFilePath);
+            if (++unsavedChanges >= SAVE_INTERVAL) {
+                save();
+            }
+        }
+    }
+
+    /**
+     * Scan a root in batches of CHECKPOINT_VISITS images, match the rules of an AutoTagger against each batch in
+     * parallel, then apply each image's derived Tags and print the matches of each rule at the end,
+     * as a checkpointed bulk operation. A resumed operation prints the matches among the images left.
+     *
+     * @param commandLine the command and arguments of the operation
+     * @param autoTagger  the AutoTagger holding the rules
+     * @param root        the root directory
+     * @throws IOException an IOException exception
+     */
+    private void autotag(String[] commandLine, AutoTagger autoTagger, File root) throws IOException {
+        HashMap<Tag, Tag> managed = new HashMap<>();
+        for (AutoTagRule rule : autoTagger.rules) {
+            tagManager.addTag(rule.tag);
+            managed.put(rule.tag, tagManager.getTag(rule.tag.name));
+        }
+        historyManager = library.shardFor(root);
+        startJob(commandLine, root);
+        ArrayList<ImageFile> images = new ArrayList<>();
+        ArrayList<String> paths = new ArrayList<>();
+        job.walk(historyManager, image -> {
+            images.add(image);
+            paths.add(image.imgFilePath);
+            if (images.size() == BulkJob.CHECKPOINT_VISITS) {
+                autotagBatch(autoTagger, root, managed, images, paths);
+            }
+        });
+        autotagBatch(autoTagger, root, managed, images, paths);
+        for (AutoTagRule rule : autoTagger.rules) {
+            out.println(rule + "\t" + rule.matches.sum());
+        }
+    }
+
+    /**
+     * Match the rules of an AutoTagger against a batch of images in parallel, apply each image's derived Tags
+     * and empty the batch.
+     *
+     * @param autoTagger the AutoTagger holding the rules
+     * @param root       the root directory
+     * @param managed    the managed Tag of each rule's Tag
+     * @param images     the batch of images, in the order they were walked
+     * @param paths      the system path each image had when it was walked
+     * @throws IOException an IOException exception
+     */
+    private void autotagBatch(AutoTagger autoTagger, File root, Map<Tag, Tag> managed, ArrayList<ImageFile> images,
+                              ArrayList<String> paths) throws IOException {
+        List<ArrayList<Tag>> derived = autoTagger.match(images, root.getAbsolutePath());
+        for (int i = 0; i < images.size(); i++) {
+            ArrayList<Tag> tags = new ArrayList<>();
+            for (Tag tag : derived.get(i)) {
+                tags.add(managed.get(tag));
+            }
+            if (!tags.isEmpty()) {
+                manage(images.get(i), manager -> tagManager.recordUsage(manager.applyTags(tags), 1));
+            }
+            finished(paths.get(i));
+        }
+        images.clear();
+        paths.clear();
+    }
+
+    /**
+     * Print the clusters of near-duplicate images under a root, optionally applying a Tag to every clustered image.
+     *
+     * @param root        the root directory
+     * @param maxDistance the largest Hamming distance between the perceptual hashes of near-duplicates
+     * @param tag         the Tag applied to clustered images, or null
+     * @throws IOException            an IOException exception
+     * @throws ClassNotFoundException a ClassNotFoundException exception
+     */
+    private void dupes(File root, int maxDistance, Tag tag) throws IOException, ClassNotFoundException {
+        historyManager = library.shardFor(root);
+        ArrayList<ImageFile> images = ImageFileManager.getImages(root, new ArrayList<>(), historyManager);
+        DuplicateFinder finder = new DuplicateFinder(images);
+        ArrayList<ImageFile> hashed = finder.computeHashes();
+        if (!hashed.isEmpty()) {
+            historyManager.changed(hashed);
+        }
+        if (tag != null) {
+            tagManager.addTag(tag);
+            tag = tagManager.getTag(tag.name);
+        }
+        ArrayList<Tag> toApply = new ArrayList<>(Collections.singletonList(tag));
+        int clusterNumber = 0;
+        for (List<ImageFile> cluster : finder.findClusters(maxDistance)) {
+            out.println("cluster " + ++clusterNumber + ":");
+            for (ImageFile image : cluster) {
+                out.println("\t" + image.imgFilePath);
+                if (tag != null) {
+                    manage(image, manager -> tagManager.recordUsage(manager.applyTags(toApply), 1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Stream a CSV report of every image under a root to a UTF-8 file.
+     *
+     * @param root    the root directory
+     * @param csvPath the path of the report file
+     * @throws IOException            an IOException exception
+     * @throws ClassNotFoundException a ClassNotFoundException exception
+     */
+    private void report(File root, String csvPath) throws IOException, ClassNotFoundException {
+        try (Writer csv = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(csvPath), StandardCharsets.UTF_8))) {
+            csv.write("path,name,tags,history" + System.lineSeparator());
+            historyManager = library.shardFor(root);
+            ImageFileManager.visitImages(root, historyManager, image -> {
+                csv.write(csvField(image.imgFilePath) + "," + csvField(image.name) + ","
+                        + csvField(joinNames(image.tags)) + ","
+                        + csvField(String.join("|", image.nameHistory.toList())) + System.lineSeparator());
+                out.println(image.imgFilePath);
+            });
+        }
+    }
+
+    /**
+     * Execute a smart album subcommand on the albums of the shard holding the working directory.
+     *
+     * @param args the subcommand and its arguments
+     * @return a boolean of whether the subcommand was recognised
+     * @throws IOException an IOException exception
+     */
+    private boolean album(String[] args) throws IOException {
+        SmartAlbums albums = library.shardOf(new File("").getAbsolutePath() + File.separator).albums;
+        String subcommand = args.length == 0 ? "" : args[0];
+        if (subcommand.equals("add") && args.length >= 3) {
+            String query = String.join(" ", Arrays.copyOfRange(args, 2, args.length));
+            SmartAlbum album = albums.add(args[1], new AlbumQuery(query));
+            out.println(album.name + "\t" + album.size() + "\t" + album.query);
+        } else if (subcommand.equals("list") && args.length == 1) {
+            for (SmartAlbum album : albums.getAlbums()) {
+                out.println(album.name + "\t" + album.size() + "\t" + album.query);
+            }
+        } else if (subcommand.equals("show") && args.length == 2) {
+            SmartAlbum album = albums.get(args[1]);
+            if (album == null) {
+                throw new IllegalArgumentException("No album named " + args[1]);
+            }
+            for (ImageFile image : album.images()) {
+                out.println(image.imgFilePath + "\t" + image.tags);
+            }
+        } else if (subcommand.equals("remove") && args.length == 2) {
+            if (!albums.remove(args[1])) {
+                throw new IllegalArgumentException("No album named " + args[1]);
+            }
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Return the names of Tags separated by '|'.
+     *
+     * @param tags the Tags
+     * @return the joined Tag names
+     */
+    private static String joinNames(ArrayList<Tag> tags) {
+        StringBuilder joined = new StringBuilder();
+        for (Tag tag : tags) {
+            if (joined.length() > 0) {
+                joined.append('|');
+            }
+            joined.append(tag.name);
+        }
+        return joined.toString();
+    }
+
+    /**
+     * Return a value quoted for a CSV field.
+     *
+     * @param value the raw value
+     * @return the quoted value
+     */
+    static String csvField(String value) {
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Return the PhotoRenameLogger, creating it on first use so read-only commands never open the log.
+     *
+     * @return the PhotoRenameLogger
+     */
+    private PhotoRenameLogger logger() {
+        if (photoRenameLogger == null) {
+            photoRenameLogger = PhotoRenameLogger.getInstance();
+        }
+        return photoRenameLogger;
+    }
+
+    /**
+     * Save both databases, every loaded shard of the history database included, then take a checkpoint of the bulk operation being run.
+     *
+     * @throws IOException an IOException exception
+     */
+    private void save() throws IOException {
+        tagManager.toFile();
+        library.save();
+        unsavedChanges = 0;
+        if (job != null) {
+            job.checkpoint();
+        }
+    }
+
+    /**
+     * Execute the command line program.
+     *
+     * @param args a String array of arguments
+     */
+    public static void main(String[] args) {
+        String dbDir = System.getProperty("user.dir") + "/";
+        int first = 0;
+        if (args.length >= 2 && args[0].equals("--db")) {
+            dbDir = new File(args[1]).getAbsolutePath() + "/";
+            first = 2;
+        }
+        if (args.length <= first) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        try {
+            PhotoRenamerCli cli = new PhotoRenamerCli(dbDir, System.out);
+            if (!cli.run(args[first], Arrays.copyOfRange(args, first + 1, args.length))) {
+                System.err.println(USAGE);
+                System.exit(2);
+            }
+        } catch (IOException | ClassNotFoundException | IllegalArgumentException e) {
+            System.err.println("Failed: " + e);
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package photo_renamer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/** A class for testing PhotoRenamerCli. */
+public class PhotoRenamerCliTest {
+    /** The temporary directory holding the databases and the images. */
+    private File dir;
+    /** The directory of the databases, ending with a separator. */
+    private String dbDir;
+    /** The root directory of the images. */
+    private File root;
+    /** The stream the command line prints to. */
+    private ByteArrayOutputStream printed;
+    /** The command line front end being tested. */
+    private PhotoRenamerCli cli;
+
+    @Before
+    /* Set up a root of two images and empty databases in a temporary directory for testing. */
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("PhotoRenamerCliTest").toFile();
+        File db = new File(dir, "db");
+        db.mkdirs();
+        dbDir = db.getPath() + File.separator;
+        root = new File(dir, "images");
+        for (String path : Arrays.asList("a/one.jpg", "b/two.jpg")) {
+            File image = new File(root, path);
+            image.getParentFile().mkdirs();
+            Files.write(image.toPath(), path.getBytes("UTF-8"));
+        }
+        printed = new ByteArrayOutputStream();
+        cli = new PhotoRenamerCli(dbDir, new PrintStream(printed, true, "UTF-8"));
+    }
+
+    @After
+    /* Delete the temporary directory. */
+    public void tearDown() throws Exception {
+        Files.walk(dir.toPath()).sorted(Collections.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+
+    /**
+     * Run a command, returning what it printed.
+     *
+     * @param args the command and its arguments
+     * @return the printed lines
+     * @throws Exception an Exception
+     */
+    private List<String> run(String... args) throws Exception {
+        printed.reset();
+        assertTrue(cli.run(args[0], Arrays.copyOfRange(args, 1, args.length)));
+        String output = new String(printed.toByteArray(), StandardCharsets.UTF_8);
+        return output.isEmpty() ? Collections.emptyList() : Arrays.asList(output.split(System.lineSeparator()));
+    }
+
+    @Test
+    /* Test that tag and untag rename the matching images only, and that untagging never adds a Tag. */
+    public void testTagAndUntag() throws Exception {
+        List<String> renames = run("tag", root.getPath(), "a/**", "sun");
+        assertEquals(1, renames.size());
+        assertTrue(new File(root, "a/one @sun.jpg").exists());
+        assertTrue(new File(root, "b/two.jpg").exists());
+
+        run("untag", root.getPath(), "**", "sun", "typo");
+        assertTrue(new File(root, "a/one.jpg").exists());
+        TagManager saved = new TagManager(dbDir + "tags.txt");
+        assertEquals("sun", saved.getTag("sun").name);
+        assertNull(saved.getTag("typo"));
+    }
+
+    @Test
+    /* Test that revert renames matching images back to a past name, rejecting bad indexes, and that report lists
+       every image. */
+    public void testRevertAndReport() throws Exception {
+        run("tag", root.getPath(), "**", "sun");
+        run("untag", root.getPath(), "**", "sun");
+        assertFalse(cli.run("revert", new String[]{root.getPath(), "b/*", "-1"}));
+        assertFalse(cli.run("revert", new String[]{root.getPath(), "b/*", "first"}));
+        assertEquals(1, run("revert", root.getPath(), "b/*", "1").size());
+        assertTrue(new File(root, "b/two @sun.jpg").exists());
+        assertFalse(new File(root, "a/one @sun.jpg").exists());
+
+        File csv = new File(dir, "report.csv");
+        assertEquals(2, run("report", root.getPath(), csv.getPath()).size());
+        List<String> rows = Files.readAllLines(csv.toPath(), StandardCharsets.UTF_8);
+        assertEquals("path,name,tags,history", rows.get(0));
+        assertEquals(3, rows.size());
+        String reverted = "\"two @sun.jpg\",\"sun\",\"two.jpg|two @sun.jpg\"";
+        assertTrue(rows.stream().anyMatch(row -> row.endsWith(reverted)));
+    }
+
+    @Test
+    /* Test that autotag reads its rules as UTF-8 and applies the managed Tags of the rules' Tags. */
+    public void testAutotag() throws Exception {
+        run("tag", root.getPath(), "b/*", "Sun");
+        File rules = new File(dir, "rules.txt");
+        Files.write(rules.toPath(), Arrays.asList("sun path-glob a/*", "\u00e9t\u00e9 name-glob two*"),
+                StandardCharsets.UTF_8);
+        List<String> printed = run("autotag", rules.getPath(), root.getPath());
+        assertTrue(new File(root, "a/one @Sun.jpg").exists());
+        assertTrue(new File(root, "b/two @Sun @\u00e9t\u00e9.jpg").exists());
+        assertEquals(Arrays.asList("sun path-glob a/*\t1", "\u00e9t\u00e9 name-glob two*\t1"),
+                printed.subList(printed.size() - 2, printed.size()));
+    }
+}
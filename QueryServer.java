@@ -0,0 +1,248 @@
+package photo_renamer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * An optional local HTTP server answering read-only JSON queries about Tags, images and name history.
+ * Every request reads the latest published QuerySnapshot, so serving never blocks the UI or renames.
+ *
+ * <ul>
+ * <li>GET /tags lists every Tag name.</li>
+ * <li>GET /images?tag=T lists the images carrying Tag T, or every image without a tag parameter.</li>
+ * <li>GET /history?path=P returns the name history of the image at path P.</li>
+ * </ul>
+ */
+class QueryServer {
+
+    /** The system property naming the port the GUI serves queries on; no server runs when it is unset. */
+    static final String PORT_PROPERTY = "photo_renamer.http.port";
+    /** The underlying JDK HTTP server. */
+    private final HttpServer server;
+    /** The executor running one task per request. */
+    private final ExecutorService executor;
+    /** The snapshot requests are answered from. */
+    private volatile QuerySnapshot snapshot;
+
+    /**
+     * Construct and start a server bound to the loopback interface.
+     *
+     * @param port     the port to listen on
+     * @param snapshot the snapshot to answer from until another is published
+     * @throws IOException if the port cannot be bound
+     */
+    QueryServer(int port, QuerySnapshot snapshot) throws IOException {
+        this.snapshot = snapshot;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/tags", exchange -> respond(exchange, tagsJson()));
+        server.createContext("/images", exchange -> {
+            String tag = queryParameter(exchange, "tag");
+            QuerySnapshot current = this.snapshot;
+            respond(exchange, imagesJson(tag == null ? current.images : current.imagesWithTag(tag)));
+        });
+        server.createContext("/history", exchange -> {
+            String path = queryParameter(exchange, "path");
+            QuerySnapshot.ImageRecord record = path == null ? null : this.snapshot.imageAt(path);
+            if (record == null) {
+                respond(exchange, 404, "{\"error\":\"unknown path\"}");
+            } else {
+                respond(exchange, historyJson(record));
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * Replace the snapshot future requests are answered from.
+     *
+     * @param snapshot the new snapshot
+     */
+    void publish(QuerySnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /** Stop serving and release the request threads. */
+    void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    /**
+     * Return an executor starting a virtual thread per request when the running JDK supports them,
+     * otherwise one backed by a cached pool of daemon platform threads.
+     *
+     * @return the request executor
+     */
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "query-server");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Return the JSON listing every Tag name.
+     *
+     * @return the JSON text
+     */
+    private String tagsJson() {
+        StringBuilder json = new StringBuilder("[");
+        List<String> tagNames = snapshot.tagNames;
+        for (int i = 0; i < tagNames.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            appendString(json, tagNames.get(i));
+        }
+        return json.append(']').toString();
+    }
+
+    /**
+     * Return the JSON listing image records.
+     *
+     * @param records the image records
+     * @return the JSON text
+     */
+    private static String imagesJson(List<QuerySnapshot.ImageRecord> records) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < records.size(); i++) {
+            QuerySnapshot.ImageRecord record = records.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"path\":");
+            appendString(json, record.path);
+            json.append(",\"name\":");
+            appendString(json, record.name);
+            json.append(",\"tags\":");
+            appendStrings(json, record.tags);
+            json.append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    /**
+     * Return the JSON of the name history of an image record.
+     *
+     * @param record the image record
+     * @return the JSON text
+     */
+    private static String historyJson(QuerySnapshot.ImageRecord record) {
+        StringBuilder json = new StringBuilder("{\"path\":");
+        appendString(json, record.path);
+        json.append(",\"name\":");
+        appendString(json, record.name);
+        json.append(",\"history\":");
+        appendStrings(json, record.nameHistory.toList());
+        return json.append('}').toString();
+    }
+
+    /**
+     * Append a JSON array of strings.
+     *
+     * @param json   the JSON being built
+     * @param values the strings
+     */
+    static void appendStrings(StringBuilder json, List<String> values) {
+        json.append('[');
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            appendString(json, values.get(i));
+        }
+        json.append(']');
+    }
+
+    /**
+     * Append a JSON string literal.
+     *
+     * @param json  the JSON being built
+     * @param value the raw string
+     */
+    static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * Return the decoded value of a query parameter of a request, or null if absent.
+     *
+     * @param exchange the request exchange
+     * @param name     the parameter name
+     * @return the parameter value, or null
+     * @throws UnsupportedEncodingException never, as UTF-8 is always supported
+     */
+    private static String queryParameter(HttpExchange exchange, String name) throws UnsupportedEncodingException {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int equals = pair.indexOf('=');
+                if (equals > 0 && pair.substring(0, equals).equals(name)) {
+                    return URLDecoder.decode(pair.substring(equals + 1), "UTF-8");
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Send a successful JSON response.
+     *
+     * @param exchange the request exchange
+     * @param json     the JSON body
+     * @throws IOException an IOException exception
+     */
+    private static void respond(HttpExchange exchange, String json) throws IOException {
+        respond(exchange, 200, json);
+    }
+
+    /**
+     * Send a JSON response.
+     *
+     * @param exchange the request exchange
+     * @param status   the HTTP status code
+     * @param json     the JSON body
+     * @throws IOException an IOException exception
+     */
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        if (!exchange.getRequestMethod().equals("GET")) {
+            status = 405;
+            body = "{\"error\":\"read-only\"}".getBytes(StandardCharsets.UTF_8);
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package photo_renamer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable copy of the Tag and history databases taken at one moment, safe to read from any thread.
+ * Snapshots may be captured on any thread, copying each image under its monitor, and are then handed to readers.
+ */
+final class QuerySnapshot {
+
+    /** The names of every managed Tag, in database order. */
+    final List<String> tagNames;
+    /** The records of every ImageFile in the history database, in database order. */
+    final List<ImageRecord> images;
+    /** The records carrying each Tag, keyed by case-folded Tag name. */
+    private final Map<String, List<ImageRecord>> imagesByTag;
+    /** The records keyed by system path. */
+    private final Map<String, ImageRecord> imagesByPath;
+
+    /**
+     * Copy the contents of the databases into a new snapshot.
+     *
+     * @param tagManager     the TagManager managing the database of Tags
+     * @param historyManager the ImageHistoryManager managing the history database
+     */
+    QuerySnapshot(TagManager tagManager, ImageHistoryManager historyManager) {
+        this(tagManager, historyManager.getImages());
+    }
+
+    /**
+     * Copy the Tag database and a snapshot of recorded ImageFiles, such as those of the loaded shards of a Library,
+     * into a new snapshot.
+     *
+     * @param tagManager the TagManager managing the database of Tags
+     * @param images     the snapshot of recorded ImageFiles
+     */
+    QuerySnapshot(TagManager tagManager, List<ImageFile> images) {
+        List<Tag> tagSnapshot = tagManager.tags;
+        ArrayList<String> tags = new ArrayList<>(tagSnapshot.size());
+        for (Tag tag : tagSnapshot) {
+            tags.add(tag.name);
+        }
+        ArrayList<ImageRecord> records = new ArrayList<>(images.size());
+        HashMap<String, List<ImageRecord>> byTag = new HashMap<>();
+        HashMap<String, ImageRecord> byPath = new HashMap<>();
+        for (ImageFile image : images) {
+            ImageRecord record = new ImageRecord(image);
+            records.add(record);
+            byPath.putIfAbsent(record.path, record);
+            for (String tagName : record.tags) {
+                byTag.computeIfAbsent(TagTrie.fold(tagName), key -> new ArrayList<>()).add(record);
+            }
+        }
+        this.tagNames = Collections.unmodifiableList(tags);
+        this.images = Collections.unmodifiableList(records);
+        this.imagesByTag = byTag;
+        this.imagesByPath = byPath;
+    }
+
+    /**
+     * Return the records of the ImageFiles carrying a Tag.
+     *
+     * @param tagName the name of the Tag, in any case
+     * @return the unmodifiable list of matching records
+     */
+    List<ImageRecord> imagesWithTag(String tagName) {
+        List<ImageRecord> tagged = imagesByTag.get(TagTrie.fold(tagName));
+        return tagged == null ? Collections.emptyList() : Collections.unmodifiableList(tagged);
+    }
+
+    /**
+     * Return the record of the ImageFile at a system path, or null if there is none.
+     *
+     * @param path the system path
+     * @return the record, or null
+     */
+    ImageRecord imageAt(String path) {
+        return imagesByPath.get(path);
+    }
+
+    /** An immutable copy of one ImageFile. */
+    static final class ImageRecord {
+
+        /** The system path of the image. */
+        final String path;
+        /** The name of the image. */
+        final String name;
+        /** The names of the Tags of the image. */
+        final List<String> tags;
+        /** The past names of the image. */
+        final NameHistory nameHistory;
+
+        /**
+         * Copy an ImageFile.
+         *
+         * @param image the ImageFile being copied
+         */
+        ImageRecord(ImageFile image) {
+            // The monitor keeps the copy consistent with itself while the image is being renamed.
+            synchronized (image) {
+                this.path = image.imgFilePath;
+                this.name = image.name;
+                ArrayList<String> tagNames = new ArrayList<>(image.tags.size());
+                for (Tag tag : image.tags) {
+                    tagNames.add(tag.name);
+                }
+                this.tags = Collections.unmodifiableList(tagNames);
+                this.nameHistory = image.nameHistory;
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package photo_renamer;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+
+/**
+ * A DatabaseStore holding its records in the heap and saving all of them to a file of one serialized ArrayList,
+ * the format of the databases written before storage providers existed.
+ *
+ * @param <T> the type of the records
+ */
+class SerializedFileStore<T> extends MemoryStore<T> {
+
+    /** The path of the database file. */
+    private final String path;
+
+    /**
+     * Construct a store of the records in a database file, which need not exist yet.
+     *
+     * @param path   the path of the database file
+     * @param schema the schema of the records
+     * @throws IOException            an IOException exception
+     * @throws ClassNotFoundException a ClassNotFoundException exception
+     */
+    @SuppressWarnings("unchecked")
+    SerializedFileStore(String path, Schema<T> schema) throws IOException, ClassNotFoundException {
+        super(schema);
+        this.path = path;
+        File databaseFile = new File(path);
+        if (databaseFile.exists()) {
+            InputStream file = new FileInputStream(path);
+            InputStream buffer = new BufferedInputStream(file);
+            ObjectInput input = new ObjectInputStream(buffer);
+            putAll((ArrayList<T>) input.readObject());
+            input.close();
+        }
+    }
+
+    /**
+     * Save every record to the database file.
+     *
+     * @throws IOException an IOException exception
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        // Writing a new file and moving it over the old one never leaves a half written database behind.
+        File temp = new File(path + ".tmp");
+        OutputStream file = new FileOutputStream(temp);
+        OutputStream buffer = new BufferedOutputStream(file);
+        ObjectOutput output = new ObjectOutputStream(buffer);
+        output.writeObject(values());
+        output.close();
+        Files.move(temp.toPath(), new File(path).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+}
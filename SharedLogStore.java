@@ -0,0 +1,512 @@
+package photo_renamer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * A DatabaseStore several processes can share, for example on a network share: a base store loaded from a
+ * snapshot file, followed by an append-only log of the records put and keys removed since the snapshot.
+ * Changes are kept pending until flush, which, holding an exclusive byte-range lock on the header of the log,
+ * first applies the entries other processes appended since this one last read the log and then appends its own.
+ * Refreshing applies new entries the same way under a shared lock, so each process follows the others
+ * incrementally instead of reloading. The last entry appended for a key wins; entries of other processes for a key
+ * with a pending change are skipped, since the pending change will be appended after them.
+ * Once the log outgrows the snapshot, the flushing process compacts it: it saves the base store as the new snapshot
+ * and empties the log, advancing the epoch in its header, which also records how long the log was. A process that had
+ * read the whole log before it was compacted already holds the new snapshot, so it only follows the new log; one that
+ * fell behind reloads the snapshot and applies the records differing from its own. A process dying mid-append leaves
+ * a torn entry, which fails its checksum and is cut off by the next append.
+ *
+ * @param <T> the type of the records
+ */
+class SharedLogStore<T> implements DatabaseStore<T> {
+
+    /** The first int of a log file. */
+    private static final int MAGIC = 0x50524c32;
+    /** The size of the log header: the magic int, a reserved int, the epoch long and the compacted length long. */
+    private static final int HEADER_SIZE = 24;
+    /** The size, in bytes, of the chunks the log is read in, unless an entry is larger. */
+    private static final int READ_BYTES = 64 * 1024;
+    /** The type of an entry putting a record. */
+    private static final byte PUT = 1;
+    /** The type of an entry removing a key. */
+    private static final byte REMOVE = 2;
+    /** The size of the log, in bytes, under which it is never compacted. */
+    static final long COMPACT_BYTES = 16 << 20;
+    /** The monitors serializing locking of each log within this process, by canonical path. */
+    private static final ConcurrentHashMap<String, Object> PROCESS_LOCKS = new ConcurrentHashMap<>();
+
+    /** A loader of the snapshot file into a store. */
+    interface Loader<T> {
+        /**
+         * Load a snapshot file, which need not exist yet, into a new store that saves it to the file on flush.
+         *
+         * @param path the path of the snapshot file
+         * @return the loaded store
+         * @throws IOException            an IOException exception
+         * @throws ClassNotFoundException a ClassNotFoundException exception
+         */
+        DatabaseStore<T> load(String path) throws IOException, ClassNotFoundException;
+    }
+
+    /** The path of the snapshot file; the log is the same path ending in ".log". */
+    private final String path;
+    /** The schema of the records. */
+    private final Schema<T> schema;
+    /** The loader of the snapshot file. */
+    private final Loader<T> loader;
+    /** The store holding the records of the snapshot and of the log entries applied since. */
+    final DatabaseStore<T> base;
+    /** The open channel of the log. */
+    private final FileChannel log;
+    /** The monitor serializing locking of the log within this process. */
+    private final Object processLock;
+    /** The serialized records put and the keys removed, as null, since the last flush, by key. */
+    private final LinkedHashMap<String, byte[]> pending;
+    /** The epoch of the log when it was last read. */
+    private long epoch;
+    /** The offset in the log up to which its entries were applied. */
+    private long position;
+    /** The size of the log, in bytes, under which it is never compacted. */
+    long compactBytes = COMPACT_BYTES;
+    /** The listener told of every change made by other processes, or null. */
+    private ChangeListener<T> listener;
+
+    /**
+     * Construct a store of the records in a shared snapshot file and its log, creating the log if it does not
+     * exist yet.
+     *
+     * @param path   the path of the snapshot file
+     * @param schema the schema of the records
+     * @param loader the loader of the snapshot file
+     * @throws IOException            an IOException exception
+     * @throws ClassNotFoundException a ClassNotFoundException exception
+     */
+    @SuppressWarnings("resource")
+    SharedLogStore(String path, Schema<T> schema, Loader<T> loader) throws IOException, ClassNotFoundException {
+        this.path = path;
+        this.schema = schema;
+        this.loader = loader;
+        this.pending = new LinkedHashMap<>();
+        File logFile = new File(path + ".log");
+        this.processLock = PROCESS_LOCKS.computeIfAbsent(logFile.getCanonicalPath(), p -> new Object());
+        this.log = new RandomAccessFile(logFile, "rw").getChannel();
+        synchronized (processLock) {
+            if (log.size() < HEADER_SIZE) {
+                FileLock lock = log.lock(0, HEADER_SIZE, false);
+                try {
+                    if (log.size() < HEADER_SIZE) {
+                        writeHeader(0, HEADER_SIZE);
+                    }
+                } finally {
+                    lock.release();
+                }
+            }
+            FileLock lock = log.lock(0, HEADER_SIZE, true);
+            try {
+                this.epoch = readHeader().getLong();
+                this.base = loader.load(path);
+                replay(base, HEADER_SIZE, false);
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    @Override
+    public T get(String key) throws IOException {
+        return base.get(key);
+    }
+
+    @Override
+    public synchronized void put(T record) throws IOException {
+        base.put(record);
+        pending.put(schema.keyOf(record), serialize(record));
+    }
+
+    @Override
+    public synchronized void remove(String key) throws IOException {
+        base.remove(key);
+        pending.put(key, null);
+    }
+
+    @Override
+    public void scan(String fromKey, String toKey, Visitor<T> visitor) throws IOException {
+        base.scan(fromKey, toKey, visitor);
+    }
+
+    @Override
+    public ArrayList<T> find(String term) throws IOException {
+        return base.find(term);
+    }
+
+    @Override
+    public synchronized void setChangeListener(ChangeListener<T> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Apply the entries other processes appended to the log since it was last read, holding a shared lock.
+     *
+     * @return the number of changes applied
+     * @throws IOException an IOException exception
+     */
+    @Override
+    public synchronized int refresh() throws IOException {
+        synchronized (processLock) {
+            FileLock lock = log.lock(0, HEADER_SIZE, true);
+            try {
+                return follow();
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /**
+     * Append the pending changes to the log, holding an exclusive lock, after applying the entries other processes
+     * appended since it was last read, and compact the log if it has outgrown the snapshot.
+     *
+     * @throws IOException an IOException exception
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        synchronized (processLock) {
+            FileLock lock = log.lock(0, HEADER_SIZE, false);
+            try {
+                follow();
+                // Whatever follows the last whole entry was torn by a process dying mid-append.
+                if (log.size() > position) {
+                    log.truncate(position);
+                }
+                if (!pending.isEmpty()) {
+                    ByteArrayOutputStream entries = new ByteArrayOutputStream();
+                    for (Map.Entry<String, byte[]> change : pending.entrySet()) {
+                        byte[] body = change.getValue() == null
+                                ? entry(REMOVE, change.getKey().getBytes(StandardCharsets.UTF_8))
+                                : entry(PUT, change.getValue());
+                        CRC32 crc = new CRC32();
+                        crc.update(body);
+                        entries.write(ByteBuffer.allocate(8).putInt(body.length).putInt((int) crc.getValue())
+                                .array());
+                        entries.write(body);
+                    }
+                    write(ByteBuffer.wrap(entries.toByteArray()), position);
+                    log.force(false);
+                    position = log.size();
+                    pending.clear();
+                }
+                if (position - HEADER_SIZE > Math.max(compactBytes, new File(path).length())) {
+                    compact();
+                }
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /**
+     * Release the log without flushing the pending changes.
+     *
+     * @throws IOException an IOException exception
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        log.close();
+        base.close();
+    }
+
+    /**
+     * Apply the entries appended to the log since it was last read. If another process compacted the log since, the
+     * new snapshot holds every entry of the old log, so a store that had read the whole old log only follows the new
+     * one; otherwise it reloads the snapshot and applies the records differing from the base store.
+     * The caller holds a lock on the log.
+     *
+     * @return the number of changes applied
+     * @throws IOException an IOException exception
+     */
+    private int follow() throws IOException {
+        ByteBuffer header = readHeader();
+        long current = header.getLong();
+        long compactedLength = header.getLong();
+        if (current == epoch) {
+            return replay(base, position, true);
+        }
+        if (current == epoch + 1 && position == compactedLength) {
+            epoch = current;
+            return replay(base, HEADER_SIZE, true);
+        }
+        DatabaseStore<T> reloaded;
+        try {
+            reloaded = loader.load(path);
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+        replay(reloaded, HEADER_SIZE, false);
+        epoch = current;
+        // The keys of the base store missing from the snapshot were removed; the rest are put if they differ.
+        // Only a store that fell behind a compaction compares records, which it must serialize to do so.
+        HashSet<String> keys = new HashSet<>();
+        base.scan(null, null, record -> keys.add(schema.keyOf(record)));
+        ArrayList<T> changed = new ArrayList<>();
+        reloaded.scan(null, null, record -> {
+            String key = schema.keyOf(record);
+            T old = keys.remove(key) ? base.get(key) : null;
+            if (old == null || !Arrays.equals(serialize(old), serialize(record))) {
+                changed.add(record);
+            }
+        });
+        int applied = 0;
+        for (T record : changed) {
+            if (apply(base, PUT, schema.keyOf(record), record)) {
+                applied++;
+            }
+        }
+        for (String key : keys) {
+            if (apply(base, REMOVE, key, null)) {
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Apply the whole entries of the log from an offset to a store, stopping at a torn entry, and move the position
+     * past them. The caller holds a lock on the log.
+     *
+     * @param store  the store the entries are applied to
+     * @param from   the offset of the first entry
+     * @param remote whether the entries are changes of other processes, applied as such
+     * @return the number of changes applied
+     * @throws IOException an IOException exception
+     */
+    private int replay(DatabaseStore<T> store, long from, boolean remote) throws IOException {
+        position = from;
+        long size = log.size();
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BYTES);
+        buffer.flip();
+        long next = from;
+        int applied = 0;
+        while (true) {
+            if (buffer.remaining() < 8) {
+                next = fill(buffer, next, size);
+                if (buffer.remaining() < 8) {
+                    break;
+                }
+            }
+            int length = buffer.getInt(buffer.position());
+            int checksum = buffer.getInt(buffer.position() + 4);
+            if (length < 1 || length > size - position - 8) {
+                break;
+            }
+            if (buffer.remaining() < 8 + length) {
+                if (buffer.capacity() < 8 + length) {
+                    // An entry larger than a chunk is read whole into a buffer of its own size.
+                    ByteBuffer larger = ByteBuffer.allocate(8 + length);
+                    larger.put(buffer);
+                    larger.flip();
+                    buffer = larger;
+                }
+                next = fill(buffer, next, size);
+                if (buffer.remaining() < 8 + length) {
+                    break;
+                }
+            }
+            buffer.position(buffer.position() + 8);
+            byte[] body = new byte[length];
+            buffer.get(body);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            position += 8 + length;
+            T record = body[0] == PUT ? deserialize(body) : null;
+            String key = record != null ? schema.keyOf(record) : new String(body, 1, length - 1, StandardCharsets.UTF_8);
+            if (remote) {
+                if (apply(store, body[0], key, record)) {
+                    applied++;
+                }
+            } else if (record != null) {
+                store.put(record);
+            } else {
+                store.remove(key);
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Keep the unread bytes of a buffer and read as much of the log after them as fits, up to a size.
+     *
+     * @param buffer the buffer, ready to be read
+     * @param next   the offset of the first byte of the log not yet in the buffer
+     * @param size   the size of the log
+     * @return the offset of the first byte of the log not yet in the buffer, after reading
+     * @throws IOException an IOException exception
+     */
+    private long fill(ByteBuffer buffer, long next, long size) throws IOException {
+        buffer.compact();
+        buffer.limit((int) Math.min(buffer.capacity(), buffer.position() + (size - next)));
+        while (buffer.hasRemaining()) {
+            int read = log.read(buffer, next);
+            if (read < 0) {
+                break;
+            }
+            next += read;
+        }
+        buffer.flip();
+        return next;
+    }
+
+    /**
+     * Apply a change made by another process to a store and tell the listener, unless the key has a pending change.
+     *
+     * @param store  the store
+     * @param type   PUT or REMOVE
+     * @param key    the key of the change
+     * @param record the record put, or null
+     * @return a boolean of whether the change was applied
+     * @throws IOException an IOException exception
+     */
+    private boolean apply(DatabaseStore<T> store, byte type, String key, T record) throws IOException {
+        if (pending.containsKey(key)) {
+            return false;
+        }
+        if (type == PUT) {
+            store.put(record);
+            if (listener != null) {
+                listener.put(record);
+            }
+        } else {
+            store.remove(key);
+            if (listener != null) {
+                listener.removed(key);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Save the base store as the new snapshot and empty the log, advancing its epoch.
+     * The caller holds the exclusive lock and has applied and appended every entry.
+     *
+     * @throws IOException an IOException exception
+     */
+    private void compact() throws IOException {
+        // A crash between saving the snapshot and emptying the log only replays entries the snapshot holds.
+        base.flush();
+        epoch++;
+        writeHeader(epoch, position);
+        log.truncate(HEADER_SIZE);
+        log.force(true);
+        position = HEADER_SIZE;
+    }
+
+    /**
+     * Write the header of the log.
+     *
+     * @param newEpoch        the epoch of the log
+     * @param compactedLength the length the log had when it was last compacted
+     * @throws IOException an IOException exception
+     */
+    private void writeHeader(long newEpoch, long compactedLength) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(0).putLong(newEpoch)
+                .putLong(compactedLength);
+        header.flip();
+        write(header, 0);
+    }
+
+    /**
+     * Read the header of the log.
+     *
+     * @return the header, positioned at the epoch, which is followed by the length the log had when last compacted
+     * @throws IOException an IOException exception, also thrown if the file is not a log
+     */
+    private ByteBuffer readHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && log.read(header, header.position()) >= 0) {
+            // Read until the header is full.
+        }
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+            throw new IOException(path + ".log is not a database log");
+        }
+        header.getInt();
+        return header;
+    }
+
+    /**
+     * Write a buffer to the log at an offset.
+     *
+     * @param buffer the buffer, which must be ready to be read
+     * @param offset the offset
+     * @throws IOException an IOException exception
+     */
+    private void write(ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            log.write(buffer, offset + buffer.position());
+        }
+    }
+
+    /**
+     * Return the body of a log entry: its type followed by its data.
+     *
+     * @param type PUT or REMOVE
+     * @param data the serialized record or the UTF-8 key
+     * @return the body
+     */
+    private static byte[] entry(byte type, byte[] data) {
+        byte[] body = new byte[data.length + 1];
+        body[0] = type;
+        System.arraycopy(data, 0, body, 1, data.length);
+        return body;
+    }
+
+    /**
+     * Serialize a record.
+     *
+     * @param record the record
+     * @return the serialized bytes
+     * @throws IOException an IOException exception
+     */
+    private static byte[] serialize(Object record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(record);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Deserialize the record of a put entry.
+     *
+     * @param body the body of the entry
+     * @return the record
+     * @throws IOException an IOException exception
+     */
+    @SuppressWarnings("unchecked")
+    private T deserialize(byte[] body) throws IOException {
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(body, 1, body.length - 1))) {
+            return (T) input.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unknown class in " + path + ".log", e);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package photo_renamer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** A class for testing SharedLogStore. */
+public class SharedLogStoreTest {
+    /** The schema keying "key=value" Strings by key. */
+    private static final DatabaseStore.Schema<String> SCHEMA = new DatabaseStore.Schema<String>() {
+        @Override
+        public String keyOf(String record) {
+            return record.split("=")[0];
+        }
+
+        @Override
+        public Collection<String> termsOf(String record) {
+            return Collections.emptyList();
+        }
+    };
+    /** The temporary directory holding the shared database. */
+    private File dir;
+    /** The path of the snapshot of the shared database. */
+    private String path;
+
+    @Before
+    /* Set up a temporary directory for the shared database. */
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("SharedLogStoreTest").toFile();
+        path = new File(dir, "shared.txt").getPath();
+    }
+
+    @After
+    /* Delete the temporary directory. */
+    public void tearDown() throws Exception {
+        Files.walk(dir.toPath()).sorted(Collections.reverseOrder()).forEach(p -> p.toFile().delete());
+    }
+
+    /**
+     * Open a SharedLogStore of the shared database.
+     *
+     * @param path the path of the snapshot
+     * @return the SharedLogStore
+     * @throws Exception an Exception
+     */
+    private static SharedLogStore<String> open(String path) throws Exception {
+        return new SharedLogStore<>(path, SCHEMA, snapshot -> new SerializedFileStore<>(snapshot, SCHEMA));
+    }
+
+    /**
+     * Return every record of a store.
+     *
+     * @param store the store
+     * @return the records in key order
+     * @throws Exception an Exception
+     */
+    private static ArrayList<String> records(DatabaseStore<String> store) throws Exception {
+        ArrayList<String> records = new ArrayList<>();
+        store.scan(null, null, records::add);
+        return records;
+    }
+
+    /**
+     * Put records numbered from 0 into the shared database, appending each on its own, as another process would.
+     *
+     * @param args the path of the snapshot, the prefix of the keys and the number of records
+     * @throws Exception an Exception
+     */
+    public static void main(String[] args) throws Exception {
+        SharedLogStore<String> store = open(args[0]);
+        for (int i = 0; i < Integer.parseInt(args[2]); i++) {
+            store.put(args[1] + i + "=" + args[1]);
+            store.flush();
+        }
+        store.close();
+    }
+
+    @Test
+    /* Test that several processes appending at once lose nothing, and that a store follows them incrementally. */
+    public void testProcesses() throws Exception {
+        SharedLogStore<String> store = open(path);
+        ArrayList<String> told = new ArrayList<>();
+        store.setChangeListener(new DatabaseStore.ChangeListener<String>() {
+            @Override
+            public void put(String record) {
+                told.add(record);
+            }
+
+            @Override
+            public void removed(String key) {
+                told.add(key);
+            }
+        });
+        store.put("mine=0");
+        store.flush();
+        ArrayList<Process> processes = new ArrayList<>();
+        for (String prefix : Arrays.asList("a", "b", "c")) {
+            processes.add(new ProcessBuilder(new File(System.getProperty("java.home"), "bin/java").getPath(),
+                    "-cp", System.getProperty("java.class.path"), SharedLogStoreTest.class.getName(),
+                    path, prefix, "40").inheritIO().start());
+        }
+        for (Process process : processes) {
+            assertEquals(0, process.waitFor());
+        }
+
+        assertEquals(120, store.refresh());
+        assertEquals(120, told.size());
+        assertEquals(121, records(store).size());
+        assertEquals(0, store.refresh());
+        assertEquals(records(store), records(open(path)));
+        store.close();
+    }
+
+    @Test
+    /* Test that pending changes win over others' and survive the log being compacted by another store. */
+    public void testConflictsAndCompaction() throws Exception {
+        SharedLogStore<String> one = open(path);
+        SharedLogStore<String> other = open(path);
+        one.put("k=one");
+        other.put("k=other");
+        other.flush();
+        one.flush();
+        other.refresh();
+        assertEquals(Arrays.asList("k=one"), records(other));
+
+        other.put("late=other");
+        one.compactBytes = 0;
+        one.put("gone=one");
+        one.remove("gone");
+        one.put("k=again");
+        one.flush();
+        assertTrue(new File(path).exists());
+        assertEquals(1, other.refresh());
+        other.flush();
+        one.refresh();
+        assertEquals(Arrays.asList("k=again", "late=other"), records(one));
+        assertEquals(records(one), records(other));
+
+        // A torn entry left by a process dying mid-append is ignored, then cut off by the next append.
+        try (FileOutputStream log = new FileOutputStream(path + ".log", true)) {
+            log.write(new byte[]{0, 0, 0, 100, 1, 2, 3});
+        }
+        assertEquals(0, one.refresh());
+        other.put("after=other");
+        other.flush();
+        assertEquals(1, one.refresh());
+        assertEquals(records(other), records(open(path)));
+        one.close();
+        other.close();
+    }
+
+    @Test
+    /* Test that entries spanning and exceeding the read chunks replay whole, and that a store caught up with a log
+       compacted by another follows the new log without reloading. */
+    public void testChunksAndCaughtUpCompaction() throws Exception {
+        SharedLogStore<String> one = open(path);
+        SharedLogStore<String> other = open(path);
+        char[] large = new char[200 * 1024];
+        Arrays.fill(large, 'x');
+        one.put("large=" + new String(large));
+        for (int i = 0; i < 5000; i++) {
+            one.put("k" + i + "=" + i);
+        }
+        one.flush();
+        assertEquals(5001, other.refresh());
+        assertEquals(records(one), records(other));
+        assertEquals(records(one), records(open(path)));
+
+        // The other store read the whole log before it was compacted, so it never loads the new snapshot.
+        int[] loads = {0};
+        SharedLogStore<String> counted = new SharedLogStore<>(path, SCHEMA, snapshot -> {
+            loads[0]++;
+            return new SerializedFileStore<>(snapshot, SCHEMA);
+        });
+        one.compactBytes = 0;
+        one.flush();
+        one.put("k0=changed");
+        one.flush();
+        assertEquals(1, counted.refresh());
+        assertEquals(1, other.refresh());
+        assertEquals(records(one), records(other));
+        assertEquals(records(one), records(counted));
+        assertEquals(1, loads[0]);
+        counted.close();
+        one.close();
+        other.close();
+    }
+}
@@ -0,0 +1,124 @@
+package photo_renamer;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A saved AlbumQuery materialized as the sorted set of the catalog rows of the ImageFiles matching it.
+ * The set is kept up to date one written or removed row at a time, and listing its images shares the set
+ * with the list rather than copying it, so opening an album takes constant time however many images it holds.
+ * A shared set is copied before it is next changed anywhere but its end.
+ */
+class SmartAlbum {
+
+    /** The name of this album. */
+    final String name;
+    /** The query the images of this album match. */
+    final AlbumQuery query;
+    /** The catalog the rows belong to. */
+    private final ImageCatalog catalog;
+    /** The rows of the matching images in ascending order, valid up to size. */
+    private int[] rows;
+    /** The number of matching images. */
+    private int size;
+    /** Whether rows is shared with a listing, so that it must be copied before a row is changed. */
+    private boolean shared;
+
+    /**
+     * Construct an empty album.
+     *
+     * @param name    the name of the album
+     * @param query   the query the images of the album match
+     * @param catalog the catalog the rows belong to
+     */
+    SmartAlbum(String name, AlbumQuery query, ImageCatalog catalog) {
+        this.name = name;
+        this.query = query;
+        this.catalog = catalog;
+        this.rows = new int[16];
+    }
+
+    /**
+     * Add a written row to this album or drop it, as its ImageFile matches the query or not.
+     *
+     * @param row   the row
+     * @param image the ImageFile written to the row
+     */
+    synchronized void written(int row, ImageFile image) {
+        int at = size > 0 && rows[size - 1] < row ? -size - 1 : Arrays.binarySearch(rows, 0, size, row);
+        boolean matching = query.matches(image);
+        if (matching && at < 0) {
+            insert(-at - 1, row);
+        } else if (!matching && at >= 0) {
+            delete(at);
+        }
+    }
+
+    /**
+     * Drop a removed row from this album.
+     *
+     * @param row the row
+     */
+    synchronized void removed(int row) {
+        int at = Arrays.binarySearch(rows, 0, size, row);
+        if (at >= 0) {
+            delete(at);
+        }
+    }
+
+    /**
+     * Return the images of this album, ordered as they were added to the catalog, in constant time.
+     * Images added or dropped later never appear in or vanish from the list.
+     *
+     * @return the immutable list of the ImageFiles
+     */
+    synchronized List<ImageFile> images() {
+        shared = true;
+        return new ImageCatalog.Snapshot(catalog, rows, size);
+    }
+
+    /**
+     * Return the number of images in this album.
+     *
+     * @return the number of images
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Insert a row.
+     *
+     * @param at  the index the row is inserted at
+     * @param row the row
+     */
+    private void insert(int at, int row) {
+        // Appending writes past the end of every listing, so only an insertion before the end copies a shared set.
+        if (size == rows.length || (shared && at < size)) {
+            rows = Arrays.copyOf(rows, size == rows.length ? size * 2 : rows.length);
+            shared = false;
+        }
+        System.arraycopy(rows, at, rows, at + 1, size - at);
+        rows[at] = row;
+        size++;
+    }
+
+    /**
+     * Delete the row at an index.
+     *
+     * @param at the index
+     */
+    private void delete(int at) {
+        if (shared) {
+            rows = Arrays.copyOf(rows, rows.length);
+            shared = false;
+        }
+        System.arraycopy(rows, at + 1, rows, at, size - at - 1);
+        size--;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
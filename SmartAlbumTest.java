@@ -0,0 +1,109 @@
+package photo_renamer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/** A class for testing SmartAlbum, SmartAlbums and AlbumQuery. */
+public class SmartAlbumTest {
+    /** The directory the catalogued images are said to be in. */
+    private String dir = new File(System.getProperty("user.dir"), "albums").getAbsolutePath() + File.separator;
+    /** The catalog the albums are materialized from. */
+    private ImageCatalog catalog;
+    /** The SmartAlbums being tested. */
+    private SmartAlbums albums;
+
+    @Before
+    /* Set up an empty catalog with albums kept in the heap for testing. */
+    public void setUp() throws Exception {
+        catalog = new ImageCatalog(null);
+        albums = new SmartAlbums(catalog, null);
+        catalog.setRowListener(albums);
+    }
+
+    /**
+     * Return a new ImageFile in the test directory carrying Tags.
+     *
+     * @param name     the name of the image
+     * @param tagNames the names of the Tags
+     * @return the ImageFile
+     * @throws Exception an Exception
+     */
+    private ImageFile image(String name, String... tagNames) throws Exception {
+        ArrayList<Tag> tags = new ArrayList<>();
+        for (String tagName : tagNames) {
+            tags.add(new Tag(tagName));
+        }
+        return new ImageFile(name, tags, dir + name);
+    }
+
+    /**
+     * Return the names of the images in a list.
+     *
+     * @param images the ImageFiles
+     * @return the names
+     */
+    private static List<String> names(List<ImageFile> images) {
+        ArrayList<String> names = new ArrayList<>();
+        for (ImageFile image : images) {
+            names.add(image.name);
+        }
+        return names;
+    }
+
+    @Test
+    /* Test matching queries combining Tags, keywords and fields with AND, OR, NOT and parentheses. */
+    public void testQuery() throws Exception {
+        ImageFile image = image("beach @2016 @Family.jpg", "2016", "Family");
+        assertTrue(new AlbumQuery("2016 AND family NOT reviewed").matches(image));
+        assertTrue(new AlbumQuery("2016 family").matches(image));
+        assertFalse(new AlbumQuery("2016 AND NOT family").matches(image));
+        assertTrue(new AlbumQuery("sun OR (name:BEACH path:albums)").matches(image));
+        assertFalse(new AlbumQuery("untagged OR missing OR renamed").matches(image));
+        assertTrue(new AlbumQuery("\"2016\" AND tag:family").matches(image));
+        assertTrue(new AlbumQuery("untagged").matches(image("plain.jpg")));
+        for (String malformed : Arrays.asList("", "family AND", "(family", "family )", "\"family")) {
+            try {
+                new AlbumQuery(malformed);
+                fail("Parsed " + malformed);
+            } catch (IllegalArgumentException e) {
+                // Expected.
+            }
+        }
+    }
+
+    @Test
+    /* Test that an album follows images as they are added, retagged, renamed and removed. */
+    public void testIncrementalUpdates() throws Exception {
+        catalog.put(image("one.jpg"));
+        catalog.put(image("two @sun.jpg", "sun"));
+        SmartAlbum untagged = albums.add("untagged", new AlbumQuery("untagged"));
+        SmartAlbum sunny = albums.add("sunny", new AlbumQuery("sun"));
+        assertEquals(Arrays.asList("one.jpg"), names(untagged.images()));
+        List<ImageFile> opened = sunny.images();
+
+        ImageFile one = catalog.get(dir + "one.jpg");
+        String oldPath = one.imgFilePath;
+        one.name = "one @sun.jpg";
+        one.imgFilePath = dir + one.name;
+        one.tags = new ArrayList<>(Arrays.asList(new Tag("sun")));
+        catalog.move(one, oldPath);
+        catalog.put(image("three.jpg"));
+        assertEquals(Arrays.asList("three.jpg"), names(untagged.images()));
+        assertEquals(Arrays.asList("one @sun.jpg", "two @sun.jpg"), names(sunny.images()));
+        assertEquals(1, opened.size());
+
+        catalog.remove(dir + "two @sun.jpg");
+        assertEquals(Arrays.asList("one @sun.jpg"), names(sunny.images()));
+        assertEquals(Arrays.asList("two @sun.jpg"), names(opened));
+    }
+}
@@ -0,0 +1,152 @@
+package photo_renamer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/**
+ * The SmartAlbums of a history database, kept up to date by the catalog as rows are written and removed.
+ * Only the names and queries are saved, one album per line, and the albums are materialized with one pass
+ * over the catalog when loaded. The catalog calls in while holding its monitor, so the monitor of the catalog
+ * is always taken before the monitor of these albums.
+ */
+class SmartAlbums implements ImageCatalog.RowListener {
+
+    /** The catalog the albums are materialized from. */
+    private final ImageCatalog catalog;
+    /** The path the names and queries of the albums are saved to, or null if they are kept in the heap only. */
+    private final String path;
+    /** The albums by name, in the order they were saved. */
+    private final LinkedHashMap<String, SmartAlbum> albums;
+
+    /**
+     * Load the albums saved for a catalog and materialize them.
+     *
+     * @param catalog the catalog the albums are materialized from
+     * @param path    the path the albums are saved to, which need not exist yet, or null to keep them in the heap
+     * @throws IOException an IOException exception
+     */
+    SmartAlbums(ImageCatalog catalog, String path) throws IOException {
+        this.catalog = catalog;
+        this.path = path;
+        this.albums = new LinkedHashMap<>();
+        if (path != null && new File(path).exists()) {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int tab = line.indexOf('\t');
+                    if (tab > 0) {
+                        String name = line.substring(0, tab);
+                        albums.put(name, new SmartAlbum(name, new AlbumQuery(line.substring(tab + 1)), catalog));
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Malformed album query in " + path, e);
+            }
+        }
+        catalog.scanRows((image, row) -> written(row, image));
+    }
+
+    /**
+     * Save an album, materializing it with one pass over the catalog and replacing any album of the same name.
+     *
+     * @param name  the name of the album
+     * @param query the query the images of the album match
+     * @return the new SmartAlbum
+     * @throws IOException an IOException exception
+     */
+    SmartAlbum add(String name, AlbumQuery query) throws IOException {
+        if (name.isEmpty() || name.indexOf('\t') >= 0 || name.indexOf('\n') >= 0) {
+            throw new IllegalArgumentException("Album names must be non-empty and on one line");
+        }
+        SmartAlbum album = new SmartAlbum(name, query, catalog);
+        // Holding the catalog while filling the album keeps every later write out until it is registered.
+        synchronized (catalog) {
+            catalog.scanRows((image, row) -> album.written(row, image));
+            synchronized (this) {
+                albums.put(name, album);
+            }
+        }
+        save();
+        return album;
+    }
+
+    /**
+     * Delete an album.
+     *
+     * @param name the name of the album
+     * @return a boolean of whether there was an album of that name
+     * @throws IOException an IOException exception
+     */
+    boolean remove(String name) throws IOException {
+        boolean removed;
+        synchronized (this) {
+            removed = albums.remove(name) != null;
+        }
+        if (removed) {
+            save();
+        }
+        return removed;
+    }
+
+    /**
+     * Return the album of a name, or null if there is none.
+     *
+     * @param name the name of the album
+     * @return the SmartAlbum, or null
+     */
+    synchronized SmartAlbum get(String name) {
+        return albums.get(name);
+    }
+
+    /**
+     * Return every album, in the order they were saved.
+     *
+     * @return an ArrayList of the SmartAlbums
+     */
+    synchronized ArrayList<SmartAlbum> getAlbums() {
+        return new ArrayList<>(albums.values());
+    }
+
+    @Override
+    public synchronized void written(int row, ImageFile image) {
+        for (SmartAlbum album : albums.values()) {
+            album.written(row, image);
+        }
+    }
+
+    @Override
+    public synchronized void removed(int row) {
+        for (SmartAlbum album : albums.values()) {
+            album.removed(row);
+        }
+    }
+
+    /**
+     * Save the names and queries of the albums, if they are not kept in the heap only.
+     *
+     * @throws IOException an IOException exception
+     */
+    private void save() throws IOException {
+        if (path == null) {
+            return;
+        }
+        ArrayList<SmartAlbum> saved = getAlbums();
+        try (Writer writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(path), StandardCharsets.UTF_8))) {
+            for (SmartAlbum album : saved) {
+                writer.write(album.name + "\t" + album.query.text.replace('\n', ' ') + "\n");
+            }
+        }
+    }
+}
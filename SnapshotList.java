@@ -0,0 +1,132 @@
+package photo_renamer;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+
+/**
+ * A list mutated by one writer at a time whose contents are published as immutable, versioned snapshots.
+ * Appends write past the end of the array shared with earlier snapshots, which never read beyond their own size,
+ * so publishing a snapshot costs O(1); only removals copy the array. Readers never lock and never block writers.
+ *
+ * @param <T> the type of the elements
+ */
+final class SnapshotList<T> {
+
+    /** The backing array of the latest contents, valid up to size. */
+    private Object[] items;
+    /** The number of elements. */
+    private int size;
+    /** The number of changes made since construction. */
+    private long version;
+    /** The latest published snapshot. */
+    private volatile Snapshot<T> snapshot;
+
+    /**
+     * Construct a list holding the argued elements.
+     *
+     * @param initial the initial elements
+     */
+    SnapshotList(Collection<? extends T> initial) {
+        this.items = initial.toArray(new Object[Math.max(16, initial.size())]);
+        this.size = initial.size();
+        this.snapshot = new Snapshot<>(items, size, version);
+    }
+
+    /**
+     * Append an element and publish the result.
+     *
+     * @param item the element
+     */
+    synchronized void add(T item) {
+        if (size == items.length) {
+            // Earlier snapshots keep the old array; only this writer sees the new one until it is published.
+            items = Arrays.copyOf(items, size * 2);
+        }
+        items[size++] = item;
+        publish();
+    }
+
+    /**
+     * Remove every element matching a filter and publish the result if any was removed.
+     *
+     * @param filter the filter selecting elements to remove
+     * @return a boolean of whether any element was removed
+     */
+    synchronized boolean removeIf(Predicate<? super T> filter) {
+        Object[] kept = new Object[items.length];
+        int keptSize = 0;
+        for (int i = 0; i < size; i++) {
+            @SuppressWarnings("unchecked")
+            T item = (T) items[i];
+            if (!filter.test(item)) {
+                kept[keptSize++] = item;
+            }
+        }
+        if (keptSize == size) {
+            return false;
+        }
+        items = kept;
+        size = keptSize;
+        publish();
+        return true;
+    }
+
+    /**
+     * Return the latest published snapshot.
+     *
+     * @return the immutable snapshot
+     */
+    Snapshot<T> snapshot() {
+        return snapshot;
+    }
+
+    /** Publish the current contents as a new snapshot. */
+    private void publish() {
+        snapshot = new Snapshot<>(items, size, ++version);
+    }
+
+    /**
+     * An immutable view of the list at one version.
+     *
+     * @param <T> the type of the elements
+     */
+    static final class Snapshot<T> extends AbstractList<T> implements RandomAccess {
+
+        /** The version of the list this snapshot was taken at. */
+        final long version;
+        /** The backing array, possibly shared with later snapshots beyond size. */
+        private final Object[] items;
+        /** The number of elements visible in this snapshot. */
+        private final int size;
+
+        /**
+         * Construct a snapshot of a prefix of an array.
+         *
+         * @param items   the backing array
+         * @param size    the number of elements visible
+         * @param version the version of the list
+         */
+        Snapshot(Object[] items, int size, long version) {
+            this.items = items;
+            this.size = size;
+            this.version = version;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return (T) items[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
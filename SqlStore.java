@@ -0,0 +1,240 @@
+package photo_renamer;
+
+import java.io.*;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Locale;
+
+/**
+ * A DatabaseStore keeping its records in an embedded, file-based SQL database reached through JDBC,
+ * so that records are read and written one at a time rather than all held in the heap.
+ * Records are stored serialized by key, with a separate table of index terms, and changes are committed on flush.
+ * The JDBC driver of the URL, for example H2 or SQLite, must be on the class path.
+ *
+ * @param <T> the type of the records
+ */
+class SqlStore<T> implements DatabaseStore<T> {
+
+    /** The statements creating the tables and indexes of a new database. */
+    private static final String[] SCHEMA = {
+            "CREATE TABLE records (record_key VARCHAR(1024) NOT NULL PRIMARY KEY, data BLOB NOT NULL)",
+            "CREATE TABLE terms (term VARCHAR(1024) NOT NULL, record_key VARCHAR(1024) NOT NULL)",
+            "CREATE INDEX terms_by_term ON terms (term)",
+            "CREATE INDEX terms_by_key ON terms (record_key)"};
+    /** The schema of the records. */
+    private final Schema<T> schema;
+    /** The connection to the database. */
+    private final Connection connection;
+    /** The statement selecting the record of a key. */
+    private final PreparedStatement selectRecord;
+    /** The statement inserting a record. */
+    private final PreparedStatement insertRecord;
+    /** The statement deleting the record of a key. */
+    private final PreparedStatement deleteRecord;
+    /** The statement inserting an index term of a record. */
+    private final PreparedStatement insertTerm;
+    /** The statement deleting the index terms of a key. */
+    private final PreparedStatement deleteTerms;
+    /** The statement selecting the records indexed under a term. */
+    private final PreparedStatement selectByTerm;
+
+    /**
+     * Construct a store of the records in a database, creating its tables if they do not exist yet.
+     *
+     * @param url    the JDBC URL of the database
+     * @param schema the schema of the records
+     * @throws IOException if the database cannot be opened
+     */
+    SqlStore(String url, Schema<T> schema) throws IOException {
+        this.schema = schema;
+        try {
+            this.connection = DriverManager.getConnection(url);
+            connection.setAutoCommit(false);
+            createTables();
+            this.selectRecord = connection.prepareStatement("SELECT data FROM records WHERE record_key = ?");
+            this.insertRecord = connection.prepareStatement("INSERT INTO records (record_key, data) VALUES (?, ?)");
+            this.deleteRecord = connection.prepareStatement("DELETE FROM records WHERE record_key = ?");
+            this.insertTerm = connection.prepareStatement("INSERT INTO terms (term, record_key) VALUES (?, ?)");
+            this.deleteTerms = connection.prepareStatement("DELETE FROM terms WHERE record_key = ?");
+            this.selectByTerm = connection.prepareStatement("SELECT r.data FROM records r JOIN terms t"
+                    + " ON r.record_key = t.record_key WHERE t.term = ? ORDER BY r.record_key");
+        } catch (SQLException e) {
+            throw new IOException("Failed to open database " + url, e);
+        }
+    }
+
+    /**
+     * Create the tables and indexes unless the database already has them.
+     *
+     * @throws SQLException an SQLException exception
+     */
+    private void createTables() throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        HashSet<String> tables = new HashSet<>();
+        try (ResultSet existing = metaData.getTables(null, null, "%", new String[]{"TABLE"})) {
+            while (existing.next()) {
+                tables.add(existing.getString("TABLE_NAME").toLowerCase(Locale.ROOT));
+            }
+        }
+        if (!tables.contains("records")) {
+            try (Statement statement = connection.createStatement()) {
+                for (String sql : SCHEMA) {
+                    statement.executeUpdate(sql);
+                }
+            }
+            connection.commit();
+        }
+    }
+
+    @Override
+    public synchronized T get(String key) throws IOException {
+        try {
+            selectRecord.setString(1, key);
+            try (ResultSet result = selectRecord.executeQuery()) {
+                return result.next() ? deserialize(result.getBytes(1)) : null;
+            }
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void put(T record) throws IOException {
+        String key = schema.keyOf(record);
+        try {
+            delete(key);
+            insertRecord.setString(1, key);
+            insertRecord.setBytes(2, serialize(record));
+            insertRecord.executeUpdate();
+            for (String term : schema.termsOf(record)) {
+                insertTerm.setString(1, term);
+                insertTerm.setString(2, key);
+                insertTerm.addBatch();
+            }
+            insertTerm.executeBatch();
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void remove(String key) throws IOException {
+        try {
+            delete(key);
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Delete the record of a key and its index terms.
+     *
+     * @param key the key
+     * @throws SQLException an SQLException exception
+     */
+    private void delete(String key) throws SQLException {
+        deleteTerms.setString(1, key);
+        deleteTerms.executeUpdate();
+        deleteRecord.setString(1, key);
+        deleteRecord.executeUpdate();
+    }
+
+    @Override
+    public synchronized void scan(String fromKey, String toKey, Visitor<T> visitor) throws IOException {
+        String sql = "SELECT data FROM records"
+                + (fromKey == null && toKey == null ? "" : " WHERE ")
+                + (fromKey == null ? "" : "record_key >= ?")
+                + (fromKey == null || toKey == null ? "" : " AND ")
+                + (toKey == null ? "" : "record_key < ?")
+                + " ORDER BY record_key";
+        try (PreparedStatement select = connection.prepareStatement(sql)) {
+            int parameter = 1;
+            if (fromKey != null) {
+                select.setString(parameter++, fromKey);
+            }
+            if (toKey != null) {
+                select.setString(parameter, toKey);
+            }
+            // Records are decoded one row at a time as the driver fetches them.
+            try (ResultSet result = select.executeQuery()) {
+                while (result.next()) {
+                    visitor.visit(deserialize(result.getBytes(1)));
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public synchronized ArrayList<T> find(String term) throws IOException {
+        ArrayList<T> found = new ArrayList<>();
+        try {
+            selectByTerm.setString(1, term);
+            try (ResultSet result = selectByTerm.executeQuery()) {
+                while (result.next()) {
+                    found.add(deserialize(result.getBytes(1)));
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+        return found;
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        try {
+            connection.commit();
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Return the serialized form of a record.
+     *
+     * @param record the record
+     * @return the serialized bytes
+     * @throws IOException an IOException exception
+     */
+    private static byte[] serialize(Object record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutput output = new ObjectOutputStream(bytes)) {
+            output.writeObject(record);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Return the record of a serialized form.
+     *
+     * @param data the serialized bytes
+     * @return the record
+     * @throws IOException an IOException exception
+     */
+    @SuppressWarnings("unchecked")
+    private T deserialize(byte[] data) throws IOException {
+        try (ObjectInput input = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            return (T) input.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package photo_renamer;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A record of how long each phase of an application startup took and when each milestone was reached,
+ * measured from the launch of the application. Phases may be recorded from any thread.
+ */
+class StartupTimings {
+
+    /** The time the application was launched, in System.nanoTime units. */
+    private final long launched;
+    /** The recorded phases and milestones, in the order they were recorded. */
+    private final ConcurrentLinkedQueue<String> entries;
+
+    /**
+     * Construct an empty record of a startup.
+     *
+     * @param launched the time the application was launched, in System.nanoTime units
+     */
+    StartupTimings(long launched) {
+        this.launched = launched;
+        this.entries = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Record a phase that has just ended, with the thread it ran on.
+     *
+     * @param phase the name of the phase
+     * @param start the time the phase started, in System.nanoTime units
+     */
+    void phase(String phase, long start) {
+        long end = System.nanoTime();
+        entries.add(String.format("  %-12s %8.1f ms  (from %.1f ms, on %s)", phase, (end - start) / 1e6,
+                (start - launched) / 1e6, Thread.currentThread().getName()));
+    }
+
+    /**
+     * Record that a milestone has just been reached.
+     *
+     * @param milestone the name of the milestone
+     */
+    void milestone(String milestone) {
+        entries.add(String.format("  %-12s at %8.1f ms", milestone, (System.nanoTime() - launched) / 1e6));
+    }
+
+    /**
+     * Return the recorded phases and milestones, one per line.
+     *
+     * @return the timing breakdown
+     */
+    @Override
+    public String toString() {
+        return String.join(System.lineSeparator(), entries);
+    }
+}
@@ -1,6 +1,7 @@
 package photo_renamer;
 
 import java.io.Serializable;
+import java.util.Locale;
 
 /** A tag applied to ImageFile objects located in the system. */
 class Tag implements Serializable {
@@ -39,8 +40,18 @@ class Tag implements Serializable {
     public boolean equals(Object comp) {
         boolean isEqual = false;
         if (comp != null && comp instanceof Tag) {
-            isEqual = this.name.toLowerCase().equals(((Tag) comp).name.toLowerCase());
+            isEqual = this.name.toLowerCase(Locale.ROOT).equals(((Tag) comp).name.toLowerCase(Locale.ROOT));
         }
         return isEqual;
     }
+
+    /**
+     * Return a hash code for this Tag consistent with its case-insensitive equality.
+     *
+     * @return the hash code of this Tag
+     */
+    @Override
+    public int hashCode() {
+        return this.name.toLowerCase(Locale.ROOT).hashCode();
+    }
 }
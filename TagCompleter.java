@@ -0,0 +1,125 @@
+package photo_renamer;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+
+/** A popup suggesting existing Tags, most used first, as the user types into a tag entry field. */
+class TagCompleter {
+
+    /** The number of suggestions shown. */
+    private static final int SUGGESTIONS = 8;
+    /** The field being completed. */
+    private final JTextField field;
+    /** The TagManager supplying completions. */
+    private final TagManager tagManager;
+    /** The model of the suggested Tags. */
+    private final DefaultListModel<Tag> suggestionModel;
+    /** The JList displaying the suggestions. */
+    private final JList<Tag> suggestionList;
+    /** The popup holding the suggestions. */
+    private final JPopupMenu popup;
+    /** Whether the field is being filled in from a suggestion rather than typed into. */
+    private boolean completing;
+
+    /**
+     * Attach tag completion to a text field.
+     *
+     * @param field      the tag entry field
+     * @param tagManager the TagManager managing the database of Tags
+     */
+    TagCompleter(JTextField field, TagManager tagManager) {
+        this.field = field;
+        this.tagManager = tagManager;
+        this.suggestionModel = new DefaultListModel<>();
+        this.suggestionList = new JList<>(suggestionModel);
+        this.popup = new JPopupMenu();
+
+        suggestionList.setFocusable(false);
+        suggestionList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        suggestionList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                accept();
+            }
+        });
+        popup.setFocusable(false);
+        popup.add(new JScrollPane(suggestionList));
+
+        field.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                suggest();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                suggest();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                suggest();
+            }
+        });
+        // Navigation keys are consumed while suggestions show, so the field's own Enter action runs afterwards.
+        field.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (!popup.isVisible()) {
+                    return;
+                }
+                int selected = suggestionList.getSelectedIndex();
+                if (e.getKeyCode() == KeyEvent.VK_DOWN) {
+                    suggestionList.setSelectedIndex(Math.min(selected + 1, suggestionModel.size() - 1));
+                    e.consume();
+                } else if (e.getKeyCode() == KeyEvent.VK_UP) {
+                    suggestionList.setSelectedIndex(Math.max(selected - 1, 0));
+                    e.consume();
+                } else if (e.getKeyCode() == KeyEvent.VK_ENTER && selected >= 0) {
+                    accept();
+                    e.consume();
+                } else if (e.getKeyCode() == KeyEvent.VK_ESCAPE) {
+                    popup.setVisible(false);
+                    e.consume();
+                }
+            }
+        });
+    }
+
+    /** Show the completions of the field's text, or hide the popup when there are none. */
+    private void suggest() {
+        if (completing) {
+            return;
+        }
+        String prefix = field.getText().trim();
+        ArrayList<Tag> completions = prefix.isEmpty()
+                ? new ArrayList<>() : tagManager.completeTag(prefix, SUGGESTIONS);
+        suggestionModel.clear();
+        completions.forEach(suggestionModel::addElement);
+        if (completions.isEmpty() || !field.isShowing()) {
+            popup.setVisible(false);
+        } else {
+            suggestionList.setVisibleRowCount(completions.size());
+            popup.pack();
+            popup.show(field, 0, field.getHeight());
+            field.requestFocusInWindow();
+        }
+    }
+
+    /** Fill the field in with the selected suggestion. */
+    private void accept() {
+        Tag chosen = suggestionList.getSelectedValue();
+        if (chosen != null) {
+            completing = true;
+            field.setText(chosen.name);
+            completing = false;
+        }
+        popup.setVisible(false);
+    }
+}
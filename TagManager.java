@@ -2,12 +2,34 @@ package photo_renamer;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /** A manager for Tag database. */
-class TagManager extends AbstractDatabaseManager {
+class TagManager extends AbstractDatabaseManager<Tag> {
 
-    /** The ArrayList containing the managed Tags. */
-    ArrayList<Tag> tags;
+    /** The schema keying stored Tags by their case-folded name. */
+    private static final DatabaseStore.Schema<Tag> SCHEMA = new DatabaseStore.Schema<Tag>() {
+        @Override
+        public String keyOf(Tag tag) {
+            return TagTrie.fold(tag.name);
+        }
+
+        @Override
+        public Collection<String> termsOf(Tag tag) {
+            return Collections.emptyList();
+        }
+    };
+
+    /** The latest immutable snapshot of the managed Tags, safe to read from any thread. */
+    volatile List<Tag> tags;
+    /** The managed Tags, mutated only while holding the monitor of this TagManager. */
+    private SnapshotList<Tag> tagList;
+    /** The case-folded prefix trie indexing the managed Tags by name. */
+    private TagTrie tagIndex;
 
     /**
      * Construct a TagManager for the database of Tags.
@@ -16,10 +38,34 @@ class TagManager extends AbstractDatabaseManager {
      * @throws IOException            an IOException exception
      * @throws ClassNotFoundException a ClassNotFoundException exception
      */
-    @SuppressWarnings("unchecked")
     TagManager(String tagsPath) throws IOException, ClassNotFoundException {
-        super(tagsPath);
-        this.tags = super.managedObjects;
+        super(DatabaseStore.open(tagsPath, SCHEMA));
+        this.tagList = new SnapshotList<Tag>(loadAll());
+        this.tags = tagList.snapshot();
+        this.tagIndex = new TagTrie();
+        for (Tag tag : tags) {
+            tagIndex.add(tag);
+        }
+        store.setChangeListener(new DatabaseStore.ChangeListener<Tag>() {
+            @Override
+            public void put(Tag tag) {
+                if (tagIndex.add(tag)) {
+                    tagList.add(tag);
+                    tags = tagList.snapshot();
+                    changedElsewhere();
+                }
+            }
+
+            @Override
+            public void removed(String key) {
+                Tag tag = tagIndex.get(key);
+                if (tag != null && tagIndex.remove(tag)) {
+                    tagList.removeIf(tag::equals);
+                    tags = tagList.snapshot();
+                    changedElsewhere();
+                }
+            }
+        });
     }
 
     /**
@@ -28,10 +74,12 @@ class TagManager extends AbstractDatabaseManager {
      * @param newTag the Tag to be added
      * @throws IOException an IOException exception
      */
-    void addTag(Tag newTag) throws IOException {
-        if (!tags.contains(newTag)) {
-            tags.add(newTag);
-            toFile();
+    synchronized void addTag(Tag newTag) throws IOException {
+        if (tagIndex.add(newTag)) {
+            tagList.add(newTag);
+            tags = tagList.snapshot();
+            store.put(newTag);
+            changed();
         }
     }
 
@@ -41,10 +89,74 @@ class TagManager extends AbstractDatabaseManager {
      * @param oldTag the Tag to be removed
      * @throws IOException an IOException exception
      */
-    void removeTag(Tag oldTag) throws IOException {
-        if (tags.contains(oldTag)) {
-            tags.remove(oldTag);
-            toFile();
+    synchronized void removeTag(Tag oldTag) throws IOException {
+        if (tagIndex.remove(oldTag)) {
+            tagList.removeIf(oldTag::equals);
+            tags = tagList.snapshot();
+            store.remove(SCHEMA.keyOf(oldTag));
+            changed();
+        }
+    }
+
+    /**
+     * Return whether a Tag of the same case-insensitive name is managed.
+     *
+     * @param tag the Tag being looked up
+     * @return a boolean of whether the Tag is managed
+     */
+    synchronized boolean hasTag(Tag tag) {
+        return tagIndex.get(tag.name) != null;
+    }
+
+    /**
+     * Return the managed Tag of a case-insensitive name, or null if there is none.
+     *
+     * @param name the name of the Tag
+     * @return the managed Tag, or null
+     */
+    synchronized Tag getTag(String name) {
+        return tagIndex.get(name);
+    }
+
+    /**
+     * Return the most used managed Tags whose names start with a prefix, most used first.
+     *
+     * @param prefix the prefix being completed
+     * @param limit  the maximum number of completions
+     * @return an ArrayList of the completing Tags
+     */
+    synchronized ArrayList<Tag> completeTag(String prefix, int limit) {
+        return tagIndex.complete(prefix, limit);
+    }
+
+    /**
+     * Record that Tags were applied to or deleted from images, ranking their completions accordingly.
+     *
+     * @param changed the Tags applied or deleted
+     * @param delta   the change in uses of each Tag
+     */
+    synchronized void recordUsage(Collection<Tag> changed, int delta) {
+        for (Tag tag : changed) {
+            tagIndex.addUsage(tag, delta);
+        }
+    }
+
+    /**
+     * Rank completions by how many of the argued ImageFiles carry each Tag.
+     *
+     * @param images the ImageFiles whose Tags are counted
+     */
+    void countUsage(Collection<ImageFile> images) {
+        HashMap<Tag, Integer> counts = new HashMap<>();
+        for (ImageFile image : images) {
+            for (Tag tag : image.tags) {
+                counts.merge(tag, 1, Integer::sum);
+            }
+        }
+        synchronized (this) {
+            for (Map.Entry<Tag, Integer> count : counts.entrySet()) {
+                tagIndex.addUsage(count.getKey(), count.getValue());
+            }
         }
     }
 }
@@ -8,6 +8,8 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
 
 import static org.junit.Assert.assertEquals;
 
@@ -89,6 +91,24 @@ public class TagManagerTest {
         assertEquals(expected, result);
     }
 
+    @Test
+    /* Test that Tags differing in case are the same Tag whatever the default locale, as they are to the TagTrie. */
+    public void testAddCasingDuplicateInLocale() throws Exception {
+        Locale locale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            Tag upper = new Tag("TITLE");
+            Tag lower = new Tag("title");
+            assertEquals(upper, lower);
+            assertEquals(upper.hashCode(), lower.hashCode());
+            tagManager.addTag(lower);
+            tagManager.addTag(upper);
+            assertEquals(Collections.singletonList(lower), new ArrayList<>(new HashSet<>(tagManager.tags)));
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
     @Test
     /* Test removing a Tag from an empty TagManager. */
     public void testRemoveNonexistent() throws Exception {
@@ -0,0 +1,286 @@
+package photo_renamer;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A searchable list of checkable Tags.
+ * Only the visible rows are rendered, and the checked Tags are kept in a single set rather than per-row components.
+ */
+class TagPicker extends JPanel {
+
+    /** The serialVersionUID for this class. */
+    private static final long serialVersionUID = 5313472604218735090L;
+    /** The TagManager whose Tags are picked from. */
+    private final TagManager tagManager;
+    /** The snapshot of the vocabulary of Tags to pick from, taken at the last refresh. */
+    private List<Tag> vocabulary;
+    /** The set of checked Tags. */
+    private final HashSet<Tag> checked;
+    /** The model of the rows matching the search. */
+    private final TagListModel listModel;
+    /** The JList displaying the matching Tags. */
+    private final JList<Tag> tagList;
+    /** The field the user searches Tags with. */
+    private final JTextField searchField;
+
+    /**
+     * Construct a picker over the vocabulary of a TagManager.
+     *
+     * @param tagManager the TagManager whose Tags are picked from
+     */
+    TagPicker(TagManager tagManager) {
+        super(new BorderLayout());
+        this.tagManager = tagManager;
+        this.vocabulary = tagManager.tags;
+        this.checked = new HashSet<>();
+        this.listModel = new TagListModel();
+        this.tagList = new JList<>(listModel);
+        this.searchField = new JTextField(20);
+
+        // A single checkbox stamps every visible row, and a fixed row height avoids measuring the vocabulary.
+        JCheckBox stamp = new JCheckBox();
+        tagList.setCellRenderer((list, tag, index, isSelected, cellHasFocus) -> {
+            stamp.setText(tag.name);
+            stamp.setSelected(checked.contains(tag));
+            stamp.setBackground(isSelected ? list.getSelectionBackground() : list.getBackground());
+            stamp.setForeground(isSelected ? list.getSelectionForeground() : list.getForeground());
+            return stamp;
+        });
+        tagList.setFixedCellHeight(stamp.getPreferredSize().height);
+        tagList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int index = tagList.locationToIndex(e.getPoint());
+                if (index >= 0 && tagList.getCellBounds(index, index).contains(e.getPoint())) {
+                    toggle(index);
+                }
+            }
+        });
+        tagList.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (e.getKeyCode() == KeyEvent.VK_SPACE && tagList.getSelectedIndex() >= 0) {
+                    toggle(tagList.getSelectedIndex());
+                }
+            }
+        });
+
+        searchField.setToolTipText("Search tags...");
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                refresh();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                refresh();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                refresh();
+            }
+        });
+        add(searchField, BorderLayout.NORTH);
+        add(new JScrollPane(tagList), BorderLayout.CENTER);
+    }
+
+    /**
+     * Check exactly the argued Tags, clearing any previous checks.
+     *
+     * @param tags the Tags to check
+     */
+    void setChecked(Collection<Tag> tags) {
+        checked.clear();
+        checked.addAll(tags);
+        tagList.repaint();
+    }
+
+    /**
+     * Check a single Tag.
+     *
+     * @param tag the Tag to check
+     */
+    void check(Tag tag) {
+        checked.add(tag);
+        tagList.repaint();
+    }
+
+    /**
+     * Return the vocabulary Tags that are checked.
+     *
+     * @return an ArrayList of the checked Tags
+     */
+    ArrayList<Tag> getCheckedTags() {
+        ArrayList<Tag> result = new ArrayList<>();
+        for (Tag tag : vocabulary) {
+            if (checked.contains(tag)) {
+                result.add(tag);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the vocabulary Tags that are not checked.
+     *
+     * @return an ArrayList of the unchecked Tags
+     */
+    ArrayList<Tag> getUncheckedTags() {
+        ArrayList<Tag> result = new ArrayList<>();
+        for (Tag tag : vocabulary) {
+            if (!checked.contains(tag)) {
+                result.add(tag);
+            }
+        }
+        return result;
+    }
+
+    /** Recompute the rows matching the search after the search or the vocabulary changes. */
+    void refresh() {
+        vocabulary = tagManager.tags;
+        listModel.search(searchField.getText());
+    }
+
+    /**
+     * Toggle the check of the Tag at a row.
+     *
+     * @param index the row of the Tag
+     */
+    private void toggle(int index) {
+        Tag tag = listModel.getElementAt(index);
+        if (!checked.remove(tag)) {
+            checked.add(tag);
+        }
+        tagList.repaint(tagList.getCellBounds(index, index));
+    }
+
+    /**
+     * A ListModel of the vocabulary rows matching a search, prefix matches first.
+     * The most used prefix matches come from the TagTrie of the TagManager at once; the rest of the vocabulary
+     * is searched for the other Tags containing the query by a background task, whose matches are appended.
+     */
+    private class TagListModel extends AbstractListModel<Tag> {
+
+        /** The serialVersionUID for this class. */
+        private static final long serialVersionUID = -4788214826432960457L;
+        /** The matching rows, or null when unfiltered. */
+        private ArrayList<Tag> rows;
+        /** The background task searching the vocabulary for the current query, or null if there is none. */
+        private SearchWorker searchWorker;
+
+        @Override
+        public int getSize() {
+            return rows == null ? vocabulary.size() : rows.size();
+        }
+
+        @Override
+        public Tag getElementAt(int index) {
+            return rows == null ? vocabulary.get(index) : rows.get(index);
+        }
+
+        /**
+         * Narrow the rows down to the Tags containing a query, listing those starting with it first.
+         * Must be called on the Event Dispatch Thread.
+         *
+         * @param query the search text
+         */
+        void search(String query) {
+            int oldSize = getSize();
+            String folded = query.trim().toLowerCase(Locale.ROOT);
+            if (searchWorker != null) {
+                searchWorker.cancel(false);
+                searchWorker = null;
+            }
+            if (folded.isEmpty()) {
+                rows = null;
+            } else {
+                rows = tagManager.completeTag(folded, TagTrie.MAX_COMPLETIONS);
+                searchWorker = new SearchWorker(folded, vocabulary, new HashSet<>(rows));
+                searchWorker.execute();
+            }
+            if (oldSize > 0) {
+                fireIntervalRemoved(this, 0, oldSize - 1);
+            }
+            if (getSize() > 0) {
+                fireIntervalAdded(this, 0, getSize() - 1);
+            }
+        }
+
+        /** A background task collecting the vocabulary Tags matching a query that the TagTrie did not complete. */
+        private class SearchWorker extends SwingWorker<ArrayList<Tag>, Void> {
+
+            /** The case-folded query being matched. */
+            private final String folded;
+            /** The snapshot of the vocabulary being searched. */
+            private final List<Tag> searched;
+            /** The Tags already listed. */
+            private final HashSet<Tag> listed;
+
+            /**
+             * Construct a task searching a vocabulary for a query.
+             *
+             * @param folded   the case-folded query
+             * @param searched the snapshot of the vocabulary
+             * @param listed   the Tags already listed
+             */
+            SearchWorker(String folded, List<Tag> searched, HashSet<Tag> listed) {
+                this.folded = folded;
+                this.searched = searched;
+                this.listed = listed;
+            }
+
+            /** Collect the unlisted Tags starting with the query, then those containing it elsewhere. */
+            @Override
+            protected ArrayList<Tag> doInBackground() {
+                ArrayList<Tag> prefixed = new ArrayList<>();
+                ArrayList<Tag> contained = new ArrayList<>();
+                for (int i = 0; i < searched.size() && !isCancelled(); i++) {
+                    Tag tag = searched.get(i);
+                    int at = tag.name.toLowerCase(Locale.ROOT).indexOf(folded);
+                    if (at == 0 && !listed.contains(tag)) {
+                        prefixed.add(tag);
+                    } else if (at > 0) {
+                        contained.add(tag);
+                    }
+                }
+                prefixed.addAll(contained);
+                return prefixed;
+            }
+
+            /** Append the matches to the rows, unless another search replaced this one. */
+            @Override
+            protected void done() {
+                if (searchWorker != this || isCancelled()) {
+                    return;
+                }
+                searchWorker = null;
+                ArrayList<Tag> found;
+                try {
+                    found = get();
+                } catch (InterruptedException | ExecutionException e) {
+                    return;
+                }
+                if (!found.isEmpty()) {
+                    int first = rows.size();
+                    rows.addAll(found);
+                    fireIntervalAdded(TagListModel.this, first, rows.size() - 1);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package photo_renamer;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Statistics of how often Tags are carried by images and carried together, kept up to date one change at a time.
+ * Tags are numbered by case-folded name, and the co-occurrence counts of each Tag are a sparse primitive map of
+ * the numbers of the Tags seen with it. Each Tag also keeps its MAX_SUGGESTIONS most frequent partners, adjusted
+ * as counts grow and recomputed only when a listed count shrinks, so suggesting Tags for an image reads a few
+ * short lists regardless of the size of the vocabulary or the history.
+ */
+class TagStatistics implements Serializable {
+
+    /** The serialVersionUID for this class. */
+    private static final long serialVersionUID = -6470113525046417393L;
+    /** The number of most frequent partners kept for each Tag, and the most suggestions made at once. */
+    static final int MAX_SUGGESTIONS = 10;
+
+    /** The number of each Tag by case-folded name. */
+    private final HashMap<String, Integer> ids;
+    /** The name each Tag was first seen with, by number. */
+    private final ArrayList<String> names;
+    /** The number of images carrying each Tag, by number. */
+    private int[] frequency;
+    /** The number of images carrying each Tag together with each other Tag, by number. */
+    private final ArrayList<Counts> partners;
+    /** The number of images counted. */
+    private long imageCount;
+    /** The sum over the counted images of the number of their Tags. */
+    private long tagCount;
+    /** The sum over the counted images of the checksum of their list of Tags. */
+    private long checksum;
+    /** The most frequent partners of each Tag, most frequent first, or null where they must be recomputed. */
+    private transient ArrayList<int[]> topPartners;
+    /** The most frequent Tags, most frequent first, or null if they must be recomputed. */
+    private transient int[] topTags;
+
+    /** Construct statistics counting no images. */
+    TagStatistics() {
+        this.ids = new HashMap<>();
+        this.names = new ArrayList<>();
+        this.frequency = new int[64];
+        this.partners = new ArrayList<>();
+        this.topPartners = new ArrayList<>();
+    }
+
+    /**
+     * Count images carrying a list of Tags, or stop counting them.
+     *
+     * @param tags  the Tags of the images
+     * @param delta the number of images counted, negative when they are no longer counted
+     */
+    synchronized void update(List<Tag> tags, int delta) {
+        imageCount += delta;
+        tagCount += (long) delta * tags.size();
+        checksum += delta * checksumOf(tags);
+        int[] tagIds = new int[tags.size()];
+        for (int i = 0; i < tagIds.length; i++) {
+            tagIds[i] = idOf(tags.get(i).name);
+            frequency[tagIds[i]] += delta;
+            topTags = adjust(topTags, tagIds[i], delta, id -> frequency[id]);
+        }
+        for (int a : tagIds) {
+            Counts counts = partners.get(a);
+            for (int b : tagIds) {
+                if (a != b) {
+                    counts.add(b, delta);
+                    topPartners.set(a, adjust(topPartners.get(a), b, delta, counts::get));
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the Tags most likely to be carried by an image also carrying the argued Tags, most likely first.
+     * A candidate scores the sum over the argued Tags of the fraction of their images also carrying it; with no
+     * known argued Tags, the most frequent Tags are suggested.
+     *
+     * @param current the Tags the image carries, which are never suggested
+     * @param limit   the maximum number of suggestions, at most MAX_SUGGESTIONS
+     * @return an ArrayList of the suggested Tags
+     */
+    synchronized ArrayList<Tag> suggest(Collection<Tag> current, int limit) {
+        ArrayList<Integer> known = new ArrayList<>();
+        for (Tag tag : current) {
+            Integer id = ids.get(TagTrie.fold(tag.name));
+            if (id != null && frequency[id] > 0) {
+                known.add(id);
+            }
+        }
+        LinkedHashMap<Integer, Double> scores = new LinkedHashMap<>();
+        if (known.isEmpty()) {
+            for (int id : topTags()) {
+                scores.put(id, (double) frequency[id]);
+            }
+        } else {
+            for (int a : known) {
+                for (int b : topPartners(a)) {
+                    if (!known.contains(b) && !scores.containsKey(b)) {
+                        double score = 0;
+                        for (int c : known) {
+                            score += (double) partners.get(c).get(b) / frequency[c];
+                        }
+                        scores.put(b, score);
+                    }
+                }
+            }
+        }
+        ArrayList<Map.Entry<Integer, Double>> ranked = new ArrayList<>(scores.entrySet());
+        ranked.sort((x, y) -> {
+            int byScore = Double.compare(y.getValue(), x.getValue());
+            return byScore != 0 ? byScore : Integer.compare(frequency[y.getKey()], frequency[x.getKey()]);
+        });
+        ArrayList<Tag> suggestions = new ArrayList<>();
+        for (Map.Entry<Integer, Double> entry : ranked) {
+            if (suggestions.size() == limit || entry.getValue() <= 0) {
+                break;
+            }
+            suggestions.add(new Tag(names.get(entry.getKey())));
+        }
+        return suggestions;
+    }
+
+    /**
+     * Return the number of images carrying a Tag.
+     *
+     * @param tag the Tag
+     * @return the number of images
+     */
+    synchronized int frequencyOf(Tag tag) {
+        Integer id = ids.get(TagTrie.fold(tag.name));
+        return id == null ? 0 : frequency[id];
+    }
+
+    /**
+     * Return the number of images carrying two Tags together.
+     *
+     * @param a one Tag
+     * @param b the other Tag
+     * @return the number of images
+     */
+    synchronized int cooccurrenceOf(Tag a, Tag b) {
+        Integer idA = ids.get(TagTrie.fold(a.name));
+        Integer idB = ids.get(TagTrie.fold(b.name));
+        return idA == null || idB == null || idA.equals(idB) ? 0 : partners.get(idA).get(idB);
+    }
+
+    /**
+     * Return whether these statistics count the argued numbers of images and Tags carried by them, and the argued
+     * sum of the checksums of the images' lists of Tags, which changes when Tags move between images.
+     *
+     * @param images   the number of images
+     * @param tags     the sum over the images of the number of their Tags
+     * @param checksum the sum over the images of the checksumOf their list of Tags
+     * @return a boolean of whether the totals match
+     */
+    synchronized boolean counts(long images, long tags, long checksum) {
+        return imageCount == images && tagCount == tags && this.checksum == checksum;
+    }
+
+    /**
+     * Return the checksum of a list of Tags, which depends on their case-folded names but not on their order.
+     * Summed over images, it tells apart images carrying Tags together from images carrying them apart.
+     *
+     * @param tags the Tags
+     * @return the checksum
+     */
+    static long checksumOf(List<Tag> tags) {
+        long sum = 0;
+        for (Tag tag : tags) {
+            long hash = 0xcbf29ce484222325L;
+            for (char c : TagTrie.fold(tag.name).toCharArray()) {
+                hash = (hash ^ c) * 0x100000001b3L;
+            }
+            sum += hash;
+        }
+        // Mixing the sum keeps the checksums of separate lists from adding up to that of their union.
+        sum = (sum ^ (sum >>> 33)) * 0xff51afd7ed558ccdL;
+        sum = (sum ^ (sum >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return sum ^ (sum >>> 33);
+    }
+
+    /**
+     * Save these statistics to a file.
+     *
+     * @param path the path of the file
+     * @throws IOException an IOException exception
+     */
+    synchronized void save(String path) throws IOException {
+        // Writing a new file and moving it over the old one never leaves half written statistics behind.
+        File temp = new File(path + ".tmp");
+        try (ObjectOutput output = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            output.writeObject(this);
+        }
+        Files.move(temp.toPath(), new File(path).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Load statistics saved to a file.
+     *
+     * @param path the path of the file
+     * @return the statistics, or null if the file is missing or unreadable
+     */
+    static TagStatistics load(String path) {
+        if (!new File(path).exists()) {
+            return null;
+        }
+        try (ObjectInput input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            return (TagStatistics) input.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            // The statistics are derived from the history, so unreadable ones are simply counted again.
+            return null;
+        }
+    }
+
+    /**
+     * Return the number of a Tag name, numbering it if it is new.
+     *
+     * @param name the name of the Tag
+     * @return the number of the Tag
+     */
+    private int idOf(String name) {
+        String key = TagTrie.fold(name);
+        Integer id = ids.get(key);
+        if (id == null) {
+            id = names.size();
+            ids.put(key, id);
+            names.add(name);
+            partners.add(new Counts());
+            topPartners.add(new int[0]);
+            if (id == frequency.length) {
+                frequency = Arrays.copyOf(frequency, id * 2);
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Return the most frequent partners of a Tag, recomputing them if a listed count shrank.
+     *
+     * @param id the number of the Tag
+     * @return the numbers of the partners, most frequent first
+     */
+    private int[] topPartners(int id) {
+        int[] top = topPartners.get(id);
+        if (top == null) {
+            Counts counts = partners.get(id);
+            top = new int[0];
+            for (int slot = 0; slot < counts.keys.length; slot++) {
+                if (counts.keys[slot] != 0) {
+                    top = adjust(top, counts.keys[slot] - 1, 1, counts::get);
+                }
+            }
+            topPartners.set(id, top);
+        }
+        return top;
+    }
+
+    /**
+     * Return the most frequent Tags, recomputing them if a listed frequency shrank.
+     *
+     * @return the numbers of the Tags, most frequent first
+     */
+    private int[] topTags() {
+        if (topTags == null) {
+            topTags = new int[0];
+            for (int id = 0; id < names.size(); id++) {
+                topTags = adjust(topTags, id, 1, i -> frequency[i]);
+            }
+        }
+        return topTags;
+    }
+
+    /**
+     * Adjust a list of the most counted numbers after the count of one of them changed.
+     * A grown count is moved up or enters the list; a shrunk count of a listed number invalidates the list,
+     * as a number outside it may now count more.
+     *
+     * @param top     the list, most counted first, or null if it must be recomputed anyway
+     * @param id      the number whose count changed
+     * @param delta   the change in its count
+     * @param countOf the count of each number
+     * @return the adjusted list, or null if it must be recomputed
+     */
+    private static int[] adjust(int[] top, int id, int delta, IntUnaryOperator countOf) {
+        if (top == null || delta == 0) {
+            return top;
+        }
+        int at = -1;
+        for (int i = 0; i < top.length; i++) {
+            if (top[i] == id) {
+                at = i;
+            }
+        }
+        int count = countOf.applyAsInt(id);
+        if (delta < 0) {
+            return at < 0 ? top : null;
+        }
+        if (count <= 0) {
+            return top;
+        }
+        if (at < 0) {
+            if (top.length < MAX_SUGGESTIONS) {
+                top = Arrays.copyOf(top, top.length + 1);
+            } else if (count <= countOf.applyAsInt(top[top.length - 1])) {
+                return top;
+            } else {
+                top = top.clone();
+            }
+            at = top.length - 1;
+            top[at] = id;
+        } else {
+            top = top.clone();
+        }
+        // Move the grown number up past every number counting less.
+        while (at > 0 && countOf.applyAsInt(top[at - 1]) < count) {
+            top[at] = top[at - 1];
+            top[--at] = id;
+        }
+        return top;
+    }
+
+    /**
+     * Restore the lists of most frequent partners, which are not saved, after reading statistics from a stream.
+     *
+     * @param in the stream
+     * @throws IOException            an IOException exception
+     * @throws ClassNotFoundException a ClassNotFoundException exception
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        topPartners = new ArrayList<>(Collections.nCopies(names.size(), (int[]) null));
+    }
+
+    /** An open-addressing map from Tag numbers to counts, without boxing. */
+    private static final class Counts implements Serializable {
+
+        /** The serialVersionUID for this class. */
+        private static final long serialVersionUID = 8824075815926540118L;
+        /** The slots of the keys, holding each Tag number plus one, or 0 if empty. */
+        private int[] keys = new int[4];
+        /** The count of the key in the same slot. */
+        private int[] values = new int[4];
+        /** The number of keys. */
+        private int size;
+
+        /**
+         * Return the count of a Tag number.
+         *
+         * @param key the Tag number
+         * @return the count, or 0 if there is none
+         */
+        int get(int key) {
+            int mask = keys.length - 1;
+            for (int i = (key * 0x9E3779B9 >>> 16) & mask; keys[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == key + 1) {
+                    return values[i];
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Add to the count of a Tag number. Keys whose counts fall to 0 are kept, to be reused.
+         *
+         * @param key   the Tag number
+         * @param delta the change in the count
+         */
+        void add(int key, int delta) {
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+            }
+            int mask = keys.length - 1;
+            int i = (key * 0x9E3779B9 >>> 16) & mask;
+            while (keys[i] != 0 && keys[i] != key + 1) {
+                i = (i + 1) & mask;
+            }
+            if (keys[i] == 0) {
+                keys[i] = key + 1;
+                size++;
+            }
+            values[i] += delta;
+        }
+
+        /** Double the number of slots, reinserting every key. */
+        private void grow() {
+            int[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new int[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    add(oldKeys[i] - 1, oldValues[i]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package photo_renamer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** A class for testing TagStatistics. */
+public class TagStatisticsTest {
+    /** The path where the tested statistics are saved. */
+    private String path = System.getProperty("user.dir") + "/TagStatisticsTest.txt";
+    /** The TagStatistics being tested. */
+    private TagStatistics statistics;
+
+    @Before
+    /* Set up statistics counting a few images for testing. */
+    public void setUp() throws Exception {
+        statistics = new TagStatistics();
+        statistics.update(tags("beach", "sun", "sea"), 3);
+        statistics.update(tags("beach", "sun"), 2);
+        statistics.update(tags("beach", "family"), 1);
+        statistics.update(tags("city"), 4);
+    }
+
+    @After
+    /* Delete the statistics saved by a test. */
+    public void tearDown() throws Exception {
+        new File(path).delete();
+    }
+
+    /**
+     * Return a list of new Tags.
+     *
+     * @param names the names of the Tags
+     * @return the list of Tags
+     */
+    private static List<Tag> tags(String... names) {
+        ArrayList<Tag> tags = new ArrayList<>();
+        for (String name : names) {
+            tags.add(new Tag(name));
+        }
+        return tags;
+    }
+
+    /**
+     * Return the checksum of the images counted in setUp.
+     *
+     * @return the sum over the images of the checksum of their list of Tags
+     */
+    private static long setUpChecksum() {
+        return 3 * TagStatistics.checksumOf(tags("beach", "sun", "sea"))
+                + 2 * TagStatistics.checksumOf(tags("beach", "sun"))
+                + TagStatistics.checksumOf(tags("beach", "family"))
+                + 4 * TagStatistics.checksumOf(tags("city"));
+    }
+
+    /**
+     * Return the names of a list of Tags.
+     *
+     * @param tags the Tags
+     * @return the names
+     */
+    private static List<String> names(List<Tag> tags) {
+        ArrayList<String> names = new ArrayList<>();
+        for (Tag tag : tags) {
+            names.add(tag.name);
+        }
+        return names;
+    }
+
+    @Test
+    /* Test counting frequencies and co-occurrences case-insensitively. */
+    public void testCounts() throws Exception {
+        assertEquals(6, statistics.frequencyOf(new Tag("BEACH")));
+        assertEquals(5, statistics.cooccurrenceOf(new Tag("beach"), new Tag("Sun")));
+        assertEquals(3, statistics.cooccurrenceOf(new Tag("sea"), new Tag("sun")));
+        assertEquals(0, statistics.cooccurrenceOf(new Tag("city"), new Tag("sun")));
+        assertTrue(statistics.counts(10, 3 * 3 + 2 * 2 + 2 + 4, setUpChecksum()));
+    }
+
+    @Test
+    /* Test suggesting the Tags most often carried with an image's Tags. */
+    public void testSuggest() throws Exception {
+        assertEquals(Arrays.asList("sun", "sea", "family"), names(statistics.suggest(tags("beach"), 5)));
+        assertEquals(Arrays.asList("beach", "sea"), names(statistics.suggest(tags("sun"), 5)));
+        assertEquals(Arrays.asList("beach", "sun"), names(statistics.suggest(Collections.emptyList(), 2)));
+        assertTrue(statistics.suggest(tags("city"), 5).isEmpty());
+    }
+
+    @Test
+    /* Test that suggestions follow counts as they shrink. */
+    public void testUncount() throws Exception {
+        statistics.update(tags("beach", "sun", "sea"), -3);
+        statistics.update(tags("beach", "family"), 4);
+        assertEquals(Arrays.asList("family", "sun"), names(statistics.suggest(tags("beach"), 5)));
+        assertEquals(Arrays.asList("beach", "family"), names(statistics.suggest(Collections.emptyList(), 2)));
+    }
+
+    @Test
+    /* Test that saved statistics load with the same counts and suggestions. */
+    public void testSaveLoad() throws Exception {
+        statistics.save(path);
+        TagStatistics loaded = TagStatistics.load(path);
+        assertEquals(5, loaded.cooccurrenceOf(new Tag("beach"), new Tag("sun")));
+        assertEquals(names(statistics.suggest(tags("beach"), 5)), names(loaded.suggest(tags("beach"), 5)));
+        assertTrue(loaded.counts(10, 19, setUpChecksum()));
+        assertTrue(!new File(path + ".tmp").exists());
+    }
+
+    @Test
+    /* Test that moving Tags between images keeps the totals but changes the checksum, whatever the Tags' order. */
+    public void testChecksum() throws Exception {
+        assertEquals(TagStatistics.checksumOf(tags("Sun", "sea")), TagStatistics.checksumOf(tags("sea", "sun")));
+        TagStatistics together = new TagStatistics();
+        together.update(tags("sun", "sea"), 1);
+        together.update(tags(), 1);
+        TagStatistics apart = new TagStatistics();
+        apart.update(tags("sun"), 1);
+        apart.update(tags("sea"), 1);
+        long checksum = TagStatistics.checksumOf(tags("sun", "sea")) + TagStatistics.checksumOf(tags());
+        assertTrue(together.counts(2, 2, checksum));
+        assertTrue(!apart.counts(2, 2, checksum));
+    }
+
+    @Test
+    /* Test that an ImageCatalog keeps the statistics up to date as images are tagged and removed. */
+    public void testCatalogUpdates() throws Exception {
+        ImageCatalog catalog = new ImageCatalog(null);
+        TagStatistics counted = new TagStatistics();
+        catalog.setTagSetListener(counted::update);
+        String dir = new File(System.getProperty("user.dir")).getAbsolutePath() + File.separator;
+        ImageFile image = new ImageFile("one.jpg", new ArrayList<>(), dir + "one.jpg");
+        catalog.put(image);
+        String oldPath = image.imgFilePath;
+        image.name = "one @sun @sea.jpg";
+        image.imgFilePath = dir + image.name;
+        image.tags = new ArrayList<>(tags("sun", "sea"));
+        catalog.move(image, oldPath);
+        assertEquals(1, counted.cooccurrenceOf(new Tag("sun"), new Tag("sea")));
+        catalog.remove(image.imgFilePath);
+        assertEquals(0, counted.frequencyOf(new Tag("sun")));
+        assertTrue(counted.counts(0, 0, 0));
+    }
+
+    @Test
+    /* Test that a history reloads counted statistics if its saved ones are stale, though the totals match. */
+    public void testStaleSaved() throws Exception {
+        File dir = Files.createTempDirectory("TagStatisticsTest").toFile();
+        try {
+            for (String name : Arrays.asList("a.jpg", "b.jpg")) {
+                Files.write(new File(dir, name).toPath(), name.getBytes("UTF-8"));
+            }
+            String history = new File(dir, "history.ser").getPath();
+            ImageHistoryManager manager = new ImageHistoryManager(history);
+            ArrayList<ImageFile> images = ImageFileManager.getImages(dir, new ArrayList<>(), manager);
+            images.sort((x, y) -> x.name.compareTo(y.name));
+            images.get(0).tags = new ArrayList<>(tags("sun", "sea"));
+            manager.changed(images);
+            manager.toFile();
+            File stale = new File(dir, "stale.stats");
+            Files.copy(new File(history + ".stats").toPath(), stale.toPath());
+
+            // A crash after saving the retagged history leaves the statistics of before behind.
+            images.get(0).tags = new ArrayList<>(tags("sun"));
+            images.get(1).tags = new ArrayList<>(tags("sea"));
+            manager.changed(images);
+            manager.toFile();
+            Files.copy(stale.toPath(), new File(history + ".stats").toPath(), StandardCopyOption.REPLACE_EXISTING);
+            TagStatistics reloaded = new ImageHistoryManager(history).statistics;
+            assertEquals(0, reloaded.cooccurrenceOf(new Tag("sun"), new Tag("sea")));
+            assertEquals(1, reloaded.frequencyOf(new Tag("sea")));
+        } finally {
+            Files.walk(dir.toPath()).sorted(Collections.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
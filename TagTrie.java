@@ -0,0 +1,306 @@
+package photo_renamer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A case-folded prefix trie over a vocabulary of Tags.
+ * Every node caches the most frequently used Tags beneath it, so completing a prefix costs
+ * the length of the prefix plus the number of completions, independent of the vocabulary size.
+ */
+class TagTrie {
+
+    /** The number of ranked completions cached at every node. */
+    static final int MAX_COMPLETIONS = 10;
+    /** The root node of this trie, standing for the empty prefix. */
+    private final Node root;
+    /** The number of Tags in this trie. */
+    private int size;
+
+    /** Construct an empty TagTrie. */
+    TagTrie() {
+        this.root = new Node();
+    }
+
+    /**
+     * Return the number of Tags in this trie.
+     *
+     * @return the number of Tags
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Add a Tag to this trie if no Tag of the same case-folded name is present.
+     *
+     * @param tag the Tag to add
+     * @return a boolean of whether the Tag was added
+     */
+    boolean add(Tag tag) {
+        String key = fold(tag.name);
+        Node[] path = new Node[key.length() + 1];
+        path[0] = root;
+        for (int i = 0; i < key.length(); i++) {
+            path[i + 1] = path[i].childOrCreate(key.charAt(i));
+        }
+        Node end = path[key.length()];
+        if (end.tag != null) {
+            return false;
+        }
+        end.tag = tag;
+        end.frequency = 0;
+        size++;
+        rerank(path);
+        return true;
+    }
+
+    /**
+     * Remove the Tag of the same case-folded name as the argued Tag, if present.
+     *
+     * @param tag the Tag to remove
+     * @return a boolean of whether a Tag was removed
+     */
+    boolean remove(Tag tag) {
+        Node[] path = walk(fold(tag.name));
+        if (path == null || path[path.length - 1].tag == null) {
+            return false;
+        }
+        path[path.length - 1].tag = null;
+        path[path.length - 1].frequency = 0;
+        size--;
+        // Prune the nodes left without Tags beneath them before reranking what remains.
+        for (int i = path.length - 1; i > 0 && path[i].isEmpty(); i--) {
+            path[i - 1].removeChild(path[i]);
+        }
+        rerank(path);
+        return true;
+    }
+
+    /**
+     * Return the Tag in this trie of the same case-folded name, or null if there is none.
+     *
+     * @param name the name of the Tag
+     * @return the matching Tag, or null
+     */
+    Tag get(String name) {
+        Node[] path = walk(fold(name));
+        return path == null ? null : path[path.length - 1].tag;
+    }
+
+    /**
+     * Return how many times the Tag of the argued name is in use.
+     *
+     * @param name the name of the Tag
+     * @return the usage frequency, or 0 if no such Tag is present
+     */
+    int frequency(String name) {
+        Node[] path = walk(fold(name));
+        return path == null ? 0 : path[path.length - 1].frequency;
+    }
+
+    /**
+     * Adjust the usage frequency of a Tag present in this trie.
+     *
+     * @param tag   the Tag whose usage changed
+     * @param delta the change in the number of uses
+     */
+    void addUsage(Tag tag, int delta) {
+        Node[] path = walk(fold(tag.name));
+        if (path != null && path[path.length - 1].tag != null) {
+            Node end = path[path.length - 1];
+            end.frequency = Math.max(0, end.frequency + delta);
+            rerank(path);
+        }
+    }
+
+    /**
+     * Return the most used Tags whose names start with a prefix, most used first.
+     *
+     * @param prefix the prefix being completed
+     * @param limit  the maximum number of completions, at most MAX_COMPLETIONS
+     * @return an ArrayList of the completions
+     */
+    ArrayList<Tag> complete(String prefix, int limit) {
+        ArrayList<Tag> completions = new ArrayList<>();
+        Node[] path = walk(fold(prefix));
+        if (path != null) {
+            Node node = path[path.length - 1];
+            for (int i = 0; i < node.rankedCount && i < limit; i++) {
+                completions.add(node.ranked[i].tag);
+            }
+        }
+        return completions;
+    }
+
+    /**
+     * Return the nodes from the root to the node of a case-folded key, or null if there is no such node.
+     *
+     * @param key the case-folded key
+     * @return the array of nodes along the key, or null
+     */
+    private Node[] walk(String key) {
+        Node[] path = new Node[key.length() + 1];
+        path[0] = root;
+        for (int i = 0; i < key.length(); i++) {
+            path[i + 1] = path[i].child(key.charAt(i));
+            if (path[i + 1] == null) {
+                return null;
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Recompute the ranked completions of every node along a path, deepest first.
+     *
+     * @param path the nodes from the root down to a changed node
+     */
+    private static void rerank(Node[] path) {
+        for (int i = path.length - 1; i >= 0; i--) {
+            path[i].rerank();
+        }
+    }
+
+    /**
+     * Return the case-folded form of a Tag name.
+     *
+     * @param name the Tag name
+     * @return the case-folded name
+     */
+    static String fold(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /** A node of the trie, standing for the prefix spelled out by the path to it. */
+    private static class Node {
+
+        /** The characters labelling the edges to the children of this node, in ascending order. */
+        private char[] labels = new char[0];
+        /** The children of this node, parallel to labels. */
+        private Node[] children = new Node[0];
+        /** The Tag whose case-folded name ends at this node, or null. */
+        private Tag tag;
+        /** The usage frequency of the Tag ending at this node. */
+        private int frequency;
+        /** The nodes of the most used Tags beneath this node, most used first. */
+        private final Node[] ranked = new Node[MAX_COMPLETIONS];
+        /** The number of valid entries of ranked. */
+        private int rankedCount;
+
+        /**
+         * Return the child along an edge, or null if there is none.
+         *
+         * @param label the edge character
+         * @return the child node, or null
+         */
+        Node child(char label) {
+            int at = Arrays.binarySearch(labels, label);
+            return at >= 0 ? children[at] : null;
+        }
+
+        /**
+         * Return the child along an edge, creating it if absent.
+         *
+         * @param label the edge character
+         * @return the child node
+         */
+        Node childOrCreate(char label) {
+            int at = Arrays.binarySearch(labels, label);
+            if (at >= 0) {
+                return children[at];
+            }
+            int insert = -at - 1;
+            char[] newLabels = new char[labels.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(labels, 0, newLabels, 0, insert);
+            System.arraycopy(children, 0, newChildren, 0, insert);
+            System.arraycopy(labels, insert, newLabels, insert + 1, labels.length - insert);
+            System.arraycopy(children, insert, newChildren, insert + 1, children.length - insert);
+            newLabels[insert] = label;
+            newChildren[insert] = new Node();
+            labels = newLabels;
+            children = newChildren;
+            return newChildren[insert];
+        }
+
+        /**
+         * Detach a child of this node.
+         *
+         * @param child the child node to detach
+         */
+        void removeChild(Node child) {
+            for (int i = 0; i < children.length; i++) {
+                if (children[i] == child) {
+                    char[] newLabels = new char[labels.length - 1];
+                    Node[] newChildren = new Node[children.length - 1];
+                    System.arraycopy(labels, 0, newLabels, 0, i);
+                    System.arraycopy(children, 0, newChildren, 0, i);
+                    System.arraycopy(labels, i + 1, newLabels, i, labels.length - i - 1);
+                    System.arraycopy(children, i + 1, newChildren, i, children.length - i - 1);
+                    labels = newLabels;
+                    children = newChildren;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Return whether no Tag ends at or beneath this node.
+         *
+         * @return a boolean of whether this node is empty
+         */
+        boolean isEmpty() {
+            return tag == null && children.length == 0;
+        }
+
+        /** Rebuild the ranked completions of this node from its own Tag and its children's rankings. */
+        void rerank() {
+            rankedCount = 0;
+            if (tag != null) {
+                offer(this);
+            }
+            for (Node child : children) {
+                for (int i = 0; i < child.rankedCount; i++) {
+                    offer(child.ranked[i]);
+                }
+            }
+        }
+
+        /**
+         * Insert a candidate node into the ranked completions if it ranks high enough.
+         *
+         * @param candidate the node of a candidate Tag
+         */
+        private void offer(Node candidate) {
+            int at = rankedCount;
+            while (at > 0 && outranks(candidate, ranked[at - 1])) {
+                at--;
+            }
+            if (at < MAX_COMPLETIONS) {
+                int last = Math.min(rankedCount, MAX_COMPLETIONS - 1);
+                System.arraycopy(ranked, at, ranked, at + 1, last - at);
+                ranked[at] = candidate;
+                rankedCount = Math.min(rankedCount + 1, MAX_COMPLETIONS);
+            }
+        }
+
+        /**
+         * Return whether one Tag node ranks above another: more uses first, then shorter, then alphabetical.
+         *
+         * @param a the first node
+         * @param b the second node
+         * @return a boolean of whether a ranks above b
+         */
+        private static boolean outranks(Node a, Node b) {
+            if (a.frequency != b.frequency) {
+                return a.frequency > b.frequency;
+            }
+            if (a.tag.name.length() != b.tag.name.length()) {
+                return a.tag.name.length() < b.tag.name.length();
+            }
+            return a.tag.name.compareToIgnoreCase(b.tag.name) < 0;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package photo_renamer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/** A class for testing TagTrie. */
+public class TagTrieTest {
+    /** The TagTrie being tested. */
+    private TagTrie tagTrie;
+
+    @Before
+    /* Set up a new, empty TagTrie for testing. */
+    public void setUp() throws Exception {
+        tagTrie = new TagTrie();
+    }
+
+    @Test
+    /* Test completing a prefix in an empty TagTrie. */
+    public void testCompleteEmpty() throws Exception {
+        Object result = tagTrie.complete("a", 5);
+        ArrayList<Tag> expected = new ArrayList<>();
+        assertEquals(expected, result);
+    }
+
+    @Test
+    /* Test that completions are case-folded and exclude Tags not sharing the prefix. */
+    public void testCompleteCasing() throws Exception {
+        Tag beach = new Tag("Beach");
+        tagTrie.add(beach);
+        tagTrie.add(new Tag("forest"));
+        Object result = tagTrie.complete("BEA", 5);
+        ArrayList<Tag> expected = new ArrayList<>(Collections.singletonList(beach));
+        assertEquals(expected, result);
+    }
+
+    @Test
+    /* Test that adding a Tag differing only by case is rejected. */
+    public void testAddCasingDuplicate() throws Exception {
+        assertTrue(tagTrie.add(new Tag("cat")));
+        assertFalse(tagTrie.add(new Tag("CAT")));
+        assertEquals(1, tagTrie.size());
+    }
+
+    @Test
+    /* Test that completions are ranked by usage frequency. */
+    public void testCompleteRanked() throws Exception {
+        Tag car = new Tag("car");
+        Tag cat = new Tag("cat");
+        Tag cathedral = new Tag("cathedral");
+        tagTrie.add(car);
+        tagTrie.add(cat);
+        tagTrie.add(cathedral);
+        tagTrie.addUsage(cathedral, 5);
+        tagTrie.addUsage(car, 2);
+        Object result = tagTrie.complete("ca", 5);
+        ArrayList<Tag> expected = new ArrayList<>(Arrays.asList(cathedral, car, cat));
+        assertEquals(expected, result);
+    }
+
+    @Test
+    /* Test that a removed Tag is no longer found or completed. */
+    public void testRemove() throws Exception {
+        Tag dog = new Tag("dog");
+        Tag dogwood = new Tag("dogwood");
+        tagTrie.add(dog);
+        tagTrie.add(dogwood);
+        tagTrie.remove(new Tag("DOGWOOD"));
+        assertNull(tagTrie.get("dogwood"));
+        Object result = tagTrie.complete("dog", 5);
+        ArrayList<Tag> expected = new ArrayList<>(Collections.singletonList(dog));
+        assertEquals(expected, result);
+    }
+
+    @Test
+    /* Test that only the most used Tags are kept among a large vocabulary. */
+    public void testCompleteLimit() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            tagTrie.add(new Tag("tag" + i));
+        }
+        tagTrie.addUsage(new Tag("tag777"), 3);
+        ArrayList<Tag> result = tagTrie.complete("t", 3);
+        assertEquals(3, result.size());
+        assertEquals(new Tag("tag777"), result.get(0));
+    }
+}
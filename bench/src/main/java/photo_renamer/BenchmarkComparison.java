@@ -0,0 +1,146 @@
+package photo_renamer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A command line tool comparing two JMH result files written with "-rf csv", reporting every benchmark
+ * whose score regressed by more than a tolerance and exiting with status 1 if any did.
+ */
+public class BenchmarkComparison {
+
+    /** The default tolerated regression, in percent. */
+    private static final double DEFAULT_TOLERANCE = 10;
+
+    /**
+     * Compare a baseline result file with a current one.
+     *
+     * @param args the baseline CSV, the current CSV and optionally the tolerance in percent
+     * @throws IOException an IOException exception
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("usage: BenchmarkComparison <baseline.csv> <current.csv> [<tolerance-percent>]");
+            System.exit(2);
+        }
+        double tolerance = args.length == 3 ? Double.parseDouble(args[2]) : DEFAULT_TOLERANCE;
+        Map<String, Result> baseline = read(args[0]);
+        Map<String, Result> current = read(args[1]);
+        int regressions = 0;
+        for (Map.Entry<String, Result> entry : current.entrySet()) {
+            Result before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.println("NEW        " + entry.getKey());
+                continue;
+            }
+            double change = entry.getValue().slowdown(before);
+            boolean regressed = change > tolerance;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("%-10s %s %+.1f%%%n", regressed ? "REGRESSED" : "OK", entry.getKey(), change);
+        }
+        System.exit(regressions > 0 ? 1 : 0);
+    }
+
+    /**
+     * Read the results of a JMH CSV file, keyed by benchmark name and parameters.
+     *
+     * @param path the path of the CSV file
+     * @return the results by key
+     * @throws IOException an IOException exception
+     */
+    static Map<String, Result> read(String path) throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8);
+        Map<String, Result> results = new LinkedHashMap<>();
+        if (lines.isEmpty()) {
+            return results;
+        }
+        List<String> header = fields(lines.get(0));
+        int benchmark = header.indexOf("Benchmark");
+        int mode = header.indexOf("Mode");
+        int score = header.indexOf("Score");
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            List<String> row = fields(line);
+            StringBuilder key = new StringBuilder(row.get(benchmark));
+            for (int i = 0; i < header.size(); i++) {
+                if (header.get(i).startsWith("Param: ") && !row.get(i).isEmpty()) {
+                    key.append(' ').append(header.get(i).substring(7)).append('=').append(row.get(i));
+                }
+            }
+            results.put(key.toString(), new Result(row.get(mode), Double.parseDouble(row.get(score))));
+        }
+        return results;
+    }
+
+    /**
+     * Split a CSV line into its fields, removing quotes.
+     *
+     * @param line the line
+     * @return the fields
+     */
+    static List<String> fields(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /** The score of one benchmark run. */
+    static class Result {
+        /** The JMH mode of the run, "thrpt" being the only one in which higher scores are better. */
+        final String mode;
+        /** The score of the run. */
+        final double score;
+
+        /**
+         * Construct the result of a run.
+         *
+         * @param mode  the JMH mode
+         * @param score the score
+         */
+        Result(String mode, double score) {
+            this.mode = mode;
+            this.score = score;
+        }
+
+        /**
+         * Return how much slower this result is than a baseline, in percent, negative if it is faster.
+         *
+         * @param baseline the baseline result
+         * @return the slowdown in percent
+         */
+        double slowdown(Result baseline) {
+            if (mode.equals("thrpt")) {
+                return (baseline.score / score - 1) * 100;
+            }
+            return (score / baseline.score - 1) * 100;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package photo_renamer;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/** A helper creating and deleting the synthetic image trees and databases used by the benchmarks. */
+final class BenchmarkFiles {
+
+    /** The number of images placed in each directory of a synthetic tree. */
+    static final int IMAGES_PER_DIRECTORY = 100;
+
+    /** Prevent instantiation of this helper. */
+    private BenchmarkFiles() {
+    }
+
+    /**
+     * Create a temporary tree of small image files, spread over directories of IMAGES_PER_DIRECTORY images.
+     *
+     * @param imageCount the number of image files
+     * @return the root directory of the tree
+     * @throws IOException an IOException exception
+     */
+    static File createTree(int imageCount) throws IOException {
+        File root = Files.createTempDirectory("photo-renamer-bench").toFile();
+        byte[] content = new byte[256];
+        for (int i = 0; i < imageCount; i++) {
+            File dir = new File(root, "dir" + i / IMAGES_PER_DIRECTORY);
+            if (i % IMAGES_PER_DIRECTORY == 0 && !dir.mkdir()) {
+                throw new IOException("Failed to create " + dir);
+            }
+            // Vary the content so that no two images share a content fingerprint.
+            content[0] = (byte) i;
+            content[1] = (byte) (i >> 8);
+            content[2] = (byte) (i >> 16);
+            Files.write(new File(dir, "img" + i + ".jpg").toPath(), content);
+        }
+        return root;
+    }
+
+    /**
+     * Create a temporary directory of decodable JPEG photos of a size, each a noisy gradient of its own.
+     *
+     * @param imageCount the number of photos
+     * @param width      the width of each photo
+     * @param height     the height of each photo
+     * @return the directory
+     * @throws IOException an IOException exception
+     */
+    static File createPhotos(int imageCount, int width, int height) throws IOException {
+        File dir = Files.createTempDirectory("photo-renamer-bench").toFile();
+        Random random = new Random(imageCount);
+        BufferedImage photo = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int i = 0; i < imageCount; i++) {
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    photo.setRGB(x, y, (x * 255 / width) << 16 | (y * 255 / height) << 8 | random.nextInt(64));
+                }
+            }
+            ImageIO.write(photo, "jpg", new File(dir, "photo" + i + ".jpg"));
+        }
+        return dir;
+    }
+
+    /**
+     * Return ImageFiles at synthetic paths that do not exist on disk, spread over directories as in createTree.
+     *
+     * @param imageCount the number of ImageFiles
+     * @param tags       the Tags given to every ImageFile
+     * @return an ArrayList of the ImageFiles
+     * @throws Exception an Exception
+     */
+    static ArrayList<ImageFile> syntheticImages(int imageCount, ArrayList<Tag> tags) throws Exception {
+        ArrayList<ImageFile> images = new ArrayList<>(imageCount);
+        for (int i = 0; i < imageCount; i++) {
+            String name = "img" + i + ".jpg";
+            images.add(new ImageFile(name, new ArrayList<>(tags), syntheticPath(i)));
+        }
+        return images;
+    }
+
+    /**
+     * Return the synthetic path of the image of an index.
+     *
+     * @param index the index of the image
+     * @return the path
+     */
+    static String syntheticPath(int index) {
+        return "/bench/dir" + index / IMAGES_PER_DIRECTORY + "/img" + index + ".jpg";
+    }
+
+    /**
+     * Open a history database held in memory only.
+     *
+     * @return the ImageHistoryManager
+     * @throws Exception an Exception
+     */
+    static ImageHistoryManager memoryHistory() throws Exception {
+        System.setProperty(DatabaseStore.STORAGE_PROPERTY, "memory");
+        ImageHistoryManager historyManager = new ImageHistoryManager("memory");
+        historyManager.setAutoSave(false);
+        return historyManager;
+    }
+
+    /**
+     * Delete a directory and everything under it.
+     *
+     * @param root the directory
+     * @throws IOException an IOException exception
+     */
+    static void deleteTree(File root) throws IOException {
+        if (root == null || !root.exists()) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(root.toPath())) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package photo_renamer;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/** A benchmark of loading and saving the history database file. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DatabaseBenchmark {
+
+    /** The number of images in the history. */
+    @Param({"10000", "100000"})
+    public int imageCount;
+    /** The directory holding the database file. */
+    private File dir;
+    /** The path of the database file. */
+    private String path;
+    /** The manager of the loaded database, saved by the save benchmark. */
+    private ImageHistoryManager historyManager;
+
+    /**
+     * Write a history database file of imageCount tagged images.
+     *
+     * @throws Exception an Exception
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        System.setProperty(DatabaseStore.STORAGE_PROPERTY, "file");
+        dir = Files.createTempDirectory("photo-renamer-bench").toFile();
+        path = new File(dir, "history.txt").getPath();
+        historyManager = new ImageHistoryManager(path);
+        historyManager.setAutoSave(false);
+        ArrayList<Tag> tags = new ArrayList<>(Arrays.asList(new Tag("beach"), new Tag("family")));
+        for (ImageFile image : BenchmarkFiles.syntheticImages(imageCount, tags)) {
+            historyManager.historicizeImage(image);
+        }
+        historyManager.toFile();
+    }
+
+    /**
+     * Load the history database file.
+     *
+     * @return the loaded manager
+     * @throws Exception an Exception
+     */
+    @Benchmark
+    public ImageHistoryManager load() throws Exception {
+        return new ImageHistoryManager(path);
+    }
+
+    /**
+     * Save the history database file.
+     *
+     * @throws Exception an Exception
+     */
+    @Benchmark
+    public void save() throws Exception {
+        historyManager.toFile();
+    }
+
+    /**
+     * Delete the database file.
+     *
+     * @throws Exception an Exception
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        BenchmarkFiles.deleteTree(dir);
+    }
+}
@@ -0,0 +1,66 @@
+package photo_renamer;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/** A benchmark of ImageHistoryManager.historicizeImage at several history sizes. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HistoryBenchmark {
+
+    /** The number of images recorded before measuring. */
+    @Param({"1000", "10000", "100000"})
+    public int historySize;
+    /** The history database being measured. */
+    private ImageHistoryManager historyManager;
+    /** The index of the next recorded image looked up. */
+    private int nextRecorded;
+    /** The index of the next new image recorded. */
+    private int nextNew;
+
+    /**
+     * Record historySize images at synthetic paths, afresh for each iteration so new images do not accumulate.
+     *
+     * @throws Exception an Exception
+     */
+    @Setup(Level.Iteration)
+    public void setUp() throws Exception {
+        historyManager = BenchmarkFiles.memoryHistory();
+        for (ImageFile image : BenchmarkFiles.syntheticImages(historySize, new ArrayList<>())) {
+            historyManager.historicizeImage(image);
+        }
+        nextNew = historySize;
+    }
+
+    /**
+     * Look up an image that is already recorded.
+     *
+     * @return the recorded image
+     * @throws Exception an Exception
+     */
+    @Benchmark
+    public ImageFile historicizeRecorded() throws Exception {
+        int index = nextRecorded++ % historySize;
+        return historyManager.historicizeImage(
+                new ImageFile("img" + index + ".jpg", new ArrayList<>(), BenchmarkFiles.syntheticPath(index)));
+    }
+
+    /**
+     * Record an image that is not yet recorded.
+     *
+     * @return the recorded image
+     * @throws Exception an Exception
+     */
+    @Benchmark
+    public ImageFile historicizeNew() throws Exception {
+        int index = nextNew++;
+        return historyManager.historicizeImage(
+                new ImageFile("img" + index + ".jpg", new ArrayList<>(), BenchmarkFiles.syntheticPath(index)));
+    }
+}
@@ -0,0 +1,81 @@
+package photo_renamer;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A benchmark of reading photos through ImageBytes: fingerprinting, reading dimensions and hashing them.
+ * Run with the gc profiler, -prof gc, to compare the bytes allocated per photo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ImageBytesBenchmark {
+
+    /** The number of photos read per invocation. */
+    private static final int PHOTO_COUNT = 20;
+    /** The directory of the photos. */
+    private File dir;
+    /** The photos. */
+    private File[] photos;
+
+    /**
+     * Create the photos once.
+     *
+     * @throws Exception an Exception
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = BenchmarkFiles.createPhotos(PHOTO_COUNT, 1600, 1200);
+        photos = dir.listFiles();
+    }
+
+    /**
+     * Fingerprint every photo, as when a directory is first scanned.
+     *
+     * @return the combined hash code of the fingerprints
+     * @throws Exception an Exception
+     */
+    @Benchmark
+    public int fingerprint() throws Exception {
+        int hash = 0;
+        for (File photo : photos) {
+            hash += ContentFingerprint.of(photo).hashCode();
+        }
+        return hash;
+    }
+
+    /**
+     * Fingerprint, read the dimensions of and perceptually hash every photo, each within one visit.
+     *
+     * @return the combined hashes
+     * @throws Exception an Exception
+     */
+    @Benchmark
+    public long visit() throws Exception {
+        long hash = 0;
+        for (File photo : photos) {
+            try (ImageBytes visit = ImageBytes.visit(photo)) {
+                Dimension size = ImageDecoder.readSize(photo);
+                hash += ContentFingerprint.of(photo).hashCode() + size.width + PerceptualHash.of(photo);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Delete the photos.
+     *
+     * @throws Exception an Exception
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        BenchmarkFiles.deleteTree(dir);
+    }
+}
@@ -0,0 +1,238 @@
+package photo_renamer;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A headless load test driving a library made by SyntheticLibrary through the application's own classes.
+ * It loads the databases, scans the library, then tags, untags and reverts a random sample of images,
+ * each of which renames the image file, and saves the databases, reporting the throughput and latency
+ * percentiles of each phase and the peak heap use of the whole run.
+ */
+public class LoadTest {
+
+    /** The usage message of the command line. */
+    private static final String USAGE =
+            "usage: LoadTest <out-dir of SyntheticLibrary> [--sample N] [--seed N]";
+
+    /** The number of images tagged, untagged and reverted. */
+    int sampleSize = 1000;
+    /** The seed choosing the sample. */
+    long seed = 7;
+
+    /** The latencies of the operations of one phase. */
+    static class Phase {
+        /** The name of the phase. */
+        final String name;
+        /** The latency of each operation, in nanoseconds. */
+        private long[] latencies = new long[1024];
+        /** The number of operations. */
+        private int count;
+        /** The wall-clock time of the whole phase, in nanoseconds. */
+        long elapsed;
+
+        /**
+         * Construct an empty phase.
+         *
+         * @param name the name of the phase
+         */
+        Phase(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Record the latency of one operation.
+         *
+         * @param nanos the latency in nanoseconds
+         */
+        void record(long nanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+        }
+
+        /**
+         * Return a line reporting the operations, throughput and latency percentiles of this phase.
+         *
+         * @return the report line
+         */
+        String report() {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            return String.format("%-8s %9d %10.1f %12.1f %10.1f %10.1f %10.1f %10.1f", name, count,
+                    elapsed / 1e6, count / (elapsed / 1e9),
+                    percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99), percentile(sorted, 100));
+        }
+
+        /**
+         * Return a percentile of sorted latencies, in microseconds.
+         *
+         * @param sorted  the sorted latencies
+         * @param percent the percentile
+         * @return the latency at the percentile
+         */
+        private static double percentile(long[] sorted, int percent) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(0, index)] / 1e3;
+        }
+    }
+
+    /** An operation on one image. */
+    private interface Operation {
+        /**
+         * Run the operation.
+         *
+         * @param manager the ImageFileManager of the image
+         * @throws Exception an Exception
+         */
+        void run(ImageFileManager manager) throws Exception;
+    }
+
+    /**
+     * Run the load test on a synthetic library and print the report.
+     *
+     * @param outDir the directory SyntheticLibrary wrote the library and databases to
+     * @throws Exception an Exception
+     */
+    void run(File outDir) throws Exception {
+        File root = new File(outDir, "library");
+        String dbDir = new File(outDir, "db").getPath() + File.separator;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+        ArrayList<Phase> phases = new ArrayList<>();
+        System.setProperty(DatabaseStore.STORAGE_PROPERTY, "file");
+
+        Phase load = new Phase("load");
+        long start = System.nanoTime();
+        TagManager tagManager = new TagManager(dbDir + "tags.txt");
+        ImageHistoryManager historyManager = new ImageHistoryManager(dbDir + "history.txt");
+        tagManager.setAutoSave(false);
+        historyManager.setAutoSave(false);
+        load.elapsed = System.nanoTime() - start;
+        load.record(load.elapsed);
+        phases.add(load);
+
+        // The latency of each scanned image is the time since the previous one was found.
+        Phase scan = new Phase("scan");
+        ArrayList<ImageFile> images = new ArrayList<>();
+        long[] last = {System.nanoTime()};
+        start = last[0];
+        ImageFileManager.visitImages(root, historyManager, image -> {
+            images.add(image);
+            long now = System.nanoTime();
+            scan.record(now - last[0]);
+            last[0] = now;
+        });
+        scan.elapsed = System.nanoTime() - start;
+        phases.add(scan);
+
+        List<Tag> vocabulary = tagManager.tags;
+        Random random = new Random(seed);
+        ArrayList<ImageFile> sample = new ArrayList<>(images);
+        Collections.shuffle(sample, random);
+        sample = new ArrayList<>(sample.subList(0, Math.min(sampleSize, sample.size())));
+        ArrayList<ArrayList<Tag>> chosen = new ArrayList<>();
+        for (int i = 0; i < sample.size(); i++) {
+            chosen.add(new ArrayList<>(Collections.singletonList(vocabulary.get(random.nextInt(vocabulary.size())))));
+        }
+        int[] next = {0};
+        phases.add(time("tag", sample, historyManager, manager ->
+                tagManager.recordUsage(manager.applyTags(chosen.get(next[0]++)), 1)));
+        next[0] = 0;
+        phases.add(time("untag", sample, historyManager, manager ->
+                tagManager.recordUsage(manager.deleteTags(chosen.get(next[0]++)), -1)));
+        phases.add(time("revert", sample, historyManager, manager ->
+                manager.revertTo(manager.getManagedImage().nameHistory.get(0), tagManager)));
+
+        Phase save = new Phase("save");
+        start = System.nanoTime();
+        tagManager.toFile();
+        historyManager.toFile();
+        save.elapsed = System.nanoTime() - start;
+        save.record(save.elapsed);
+        phases.add(save);
+
+        System.out.println(String.format("%-8s %9s %10s %12s %10s %10s %10s %10s",
+                "phase", "ops", "total-ms", "ops/s", "p50-us", "p90-us", "p99-us", "max-us"));
+        for (Phase phase : phases) {
+            System.out.println(phase.report());
+        }
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peakHeap += pool.getPeakUsage().getUsed();
+            }
+        }
+        System.out.printf("images %d, peak heap %.1f MB%n", images.size(), peakHeap / 1048576.0);
+    }
+
+    /**
+     * Time an operation on each image of a sample, as the application's front ends run it.
+     *
+     * @param name           the name of the phase
+     * @param sample         the images operated on
+     * @param historyManager the ImageHistoryManager recording the renames
+     * @param operation      the operation
+     * @return the timed phase
+     * @throws Exception an Exception
+     */
+    private static Phase time(String name, List<ImageFile> sample, ImageHistoryManager historyManager,
+                              Operation operation) throws Exception {
+        Phase phase = new Phase(name);
+        PhotoRenameLogger logger = PhotoRenameLogger.getInstance();
+        long start = System.nanoTime();
+        for (ImageFile image : sample) {
+            long before = System.nanoTime();
+            ImageFileManager manager = new ImageFileManager(image, logger, historyManager);
+            image.addObserver(manager);
+            try {
+                operation.run(manager);
+            } finally {
+                image.deleteObserver(manager);
+            }
+            phase.record(System.nanoTime() - before);
+        }
+        phase.elapsed = System.nanoTime() - start;
+        return phase;
+    }
+
+    /**
+     * Execute the load test.
+     *
+     * @param args a String array of arguments
+     * @throws Exception an Exception
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0 || args.length % 2 == 0) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        LoadTest loadTest = new LoadTest();
+        for (int i = 1; i < args.length; i += 2) {
+            switch (args[i]) {
+                case "--sample":
+                    loadTest.sampleSize = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--seed":
+                    loadTest.seed = Long.parseLong(args[i + 1]);
+                    break;
+                default:
+                    System.err.println(USAGE);
+                    System.exit(2);
+            }
+        }
+        loadTest.run(new File(args[0]));
+    }
+}
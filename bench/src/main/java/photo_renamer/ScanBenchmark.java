@@ -0,0 +1,69 @@
+package photo_renamer;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/** A benchmark of ImageFileManager.getImages scanning synthetic trees. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ScanBenchmark {
+
+    /** The number of images in the tree. */
+    @Param({"1000", "10000"})
+    public int imageCount;
+    /** The root of the synthetic tree. */
+    private File root;
+    /** The history database already holding every image of the tree. */
+    private ImageHistoryManager recordedHistory;
+
+    /**
+     * Create the tree and record its images once.
+     *
+     * @throws Exception an Exception
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        root = BenchmarkFiles.createTree(imageCount);
+        recordedHistory = BenchmarkFiles.memoryHistory();
+        ImageFileManager.getImages(root, new ArrayList<>(), recordedHistory);
+    }
+
+    /**
+     * Scan the tree against a history already recording it, as when a directory is opened again.
+     *
+     * @return the images found
+     * @throws Exception an Exception
+     */
+    @Benchmark
+    public ArrayList<ImageFile> rescan() throws Exception {
+        return ImageFileManager.getImages(root, new ArrayList<>(), recordedHistory);
+    }
+
+    /**
+     * Scan the tree into an empty history, fingerprinting and recording every image.
+     *
+     * @return the images found
+     * @throws Exception an Exception
+     */
+    @Benchmark
+    public ArrayList<ImageFile> firstScan() throws Exception {
+        return ImageFileManager.getImages(root, new ArrayList<>(), BenchmarkFiles.memoryHistory());
+    }
+
+    /**
+     * Delete the tree.
+     *
+     * @throws Exception an Exception
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        BenchmarkFiles.deleteTree(root);
+    }
+}
@@ -0,0 +1,213 @@
+package photo_renamer;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * A generator of reproducible synthetic image libraries for load testing.
+ * A library is a tree of small valid JPEG, PNG and BMP files whose names carry Tags, together with
+ * tags.txt and history.txt databases recording them, so real libraries never need to be shared.
+ * The same arguments and seed always produce the same library.
+ */
+public class SyntheticLibrary {
+
+    /** The usage message of the command line. */
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "usage: SyntheticLibrary <out-dir> [--images N] [--per-dir N] [--fanout N] [--vocabulary N]",
+            "                        [--max-tags N] [--seed N]",
+            "  writes images under <out-dir>/library and tags.txt and history.txt under <out-dir>/db");
+    /** The formats of the generated images, with the extension each is saved with. */
+    private static final String[][] FORMATS = {{"jpg", ".jpg"}, {"png", ".png"}, {"bmp", ".bmp"}};
+    /** The number of distinct pictures encoded in each format. */
+    private static final int PICTURES = 16;
+    /** The side of every generated picture, in pixels. */
+    private static final int PICTURE_SIZE = 16;
+
+    /** The number of images generated. */
+    int imageCount = 10000;
+    /** The number of images in each directory. */
+    int imagesPerDirectory = 100;
+    /** The number of subdirectories of each directory; 1 gives a single deep chain. */
+    int fanout = 10;
+    /** The number of distinct Tags. */
+    int vocabularySize = 1000;
+    /** The largest number of Tags in the name of an image. */
+    int maxTagsPerImage = 3;
+    /** The seed of the generator. */
+    long seed = 42;
+
+    /**
+     * Return the directory of a directory index, numbering directories breadth first from the root at 0.
+     * With a fanout of 1 every directory is the only child of the one before.
+     *
+     * @param root  the root of the library
+     * @param index the index of the directory
+     * @return the directory
+     */
+    File directory(File root, int index) {
+        ArrayList<String> segments = new ArrayList<>();
+        while (index > 0) {
+            segments.add(0, "d" + (index - 1) % fanout);
+            index = (index - 1) / fanout;
+        }
+        File dir = root;
+        for (String segment : segments) {
+            dir = new File(dir, segment);
+        }
+        return dir;
+    }
+
+    /**
+     * Generate the library and its databases.
+     *
+     * @param outDir the directory the library and databases are written to
+     * @throws Exception an Exception
+     */
+    void generate(File outDir) throws Exception {
+        File root = new File(outDir, "library");
+        File dbDir = new File(outDir, "db");
+        if (!dbDir.mkdirs() && !dbDir.isDirectory()) {
+            throw new IOException("Failed to create " + dbDir);
+        }
+        Random random = new Random(seed);
+        byte[][][] pictures = encodePictures(random);
+        System.setProperty(DatabaseStore.STORAGE_PROPERTY, "file");
+        TagManager tagManager = new TagManager(new File(dbDir, "tags.txt").getPath());
+        ImageHistoryManager historyManager = new ImageHistoryManager(new File(dbDir, "history.txt").getPath());
+        tagManager.setAutoSave(false);
+        historyManager.setAutoSave(false);
+        Tag[] vocabulary = new Tag[vocabularySize];
+        for (int i = 0; i < vocabularySize; i++) {
+            vocabulary[i] = new Tag("tag" + i);
+            tagManager.addTag(vocabulary[i]);
+        }
+        File dir = null;
+        for (int i = 0; i < imageCount; i++) {
+            if (i % imagesPerDirectory == 0) {
+                dir = directory(root, i / imagesPerDirectory);
+                if (!dir.mkdirs() && !dir.isDirectory()) {
+                    throw new IOException("Failed to create " + dir);
+                }
+            }
+            // Tags are skewed towards the start of the vocabulary, as real tag usage is.
+            ArrayList<Tag> tags = new ArrayList<>();
+            int tagCount = random.nextInt(maxTagsPerImage + 1);
+            for (int t = 0; t < tagCount; t++) {
+                double skew = random.nextDouble();
+                Tag tag = vocabulary[(int) (vocabularySize * skew * skew * skew)];
+                if (!tags.contains(tag)) {
+                    tags.add(tag);
+                }
+            }
+            int formatIndex = random.nextInt(FORMATS.length);
+            String extension = FORMATS[formatIndex][1];
+            String baseName = String.format("img%07d", i);
+            StringBuilder name = new StringBuilder(baseName);
+            for (Tag tag : tags) {
+                name.append(" @").append(tag.name);
+            }
+            name.append(extension);
+            File file = new File(dir, name.toString());
+            writeImage(file, pictures[formatIndex][random.nextInt(PICTURES)], i);
+            ImageFile image = new ImageFile(file.getName(), tags, file.getAbsolutePath());
+            image.nameHistory = NameHistory.EMPTY.with(baseName + extension).with(file.getName());
+            historyManager.historicizeImage(image);
+            tagManager.recordUsage(tags, 1);
+        }
+        tagManager.toFile();
+        historyManager.toFile();
+    }
+
+    /**
+     * Encode PICTURES random pictures in each format.
+     *
+     * @param random the source of randomness
+     * @return the encoded pictures, by format then picture
+     * @throws IOException an IOException exception
+     */
+    private static byte[][][] encodePictures(Random random) throws IOException {
+        byte[][][] pictures = new byte[FORMATS.length][PICTURES][];
+        for (int p = 0; p < PICTURES; p++) {
+            BufferedImage picture = new BufferedImage(PICTURE_SIZE, PICTURE_SIZE, BufferedImage.TYPE_INT_RGB);
+            for (int y = 0; y < PICTURE_SIZE; y++) {
+                for (int x = 0; x < PICTURE_SIZE; x++) {
+                    picture.setRGB(x, y, random.nextInt(0x1000000));
+                }
+            }
+            for (int f = 0; f < FORMATS.length; f++) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                if (!ImageIO.write(picture, FORMATS[f][0], bytes)) {
+                    throw new IOException("No ImageIO writer for " + FORMATS[f][0]);
+                }
+                pictures[f][p] = bytes.toByteArray();
+            }
+        }
+        return pictures;
+    }
+
+    /**
+     * Write an encoded picture to a file, followed by the index of the image after the end of the picture data,
+     * which decoders ignore, so that no two images share a content fingerprint.
+     *
+     * @param file    the file
+     * @param picture the encoded picture
+     * @param index   the index of the image
+     * @throws IOException an IOException exception
+     */
+    private static void writeImage(File file, byte[] picture, int index) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            out.write(picture);
+            out.write(new byte[]{(byte) (index >> 24), (byte) (index >> 16), (byte) (index >> 8), (byte) index});
+        }
+    }
+
+    /**
+     * Execute the generator.
+     *
+     * @param args a String array of arguments
+     * @throws Exception an Exception
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0 || args.length % 2 == 0) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        SyntheticLibrary library = new SyntheticLibrary();
+        for (int i = 1; i < args.length; i += 2) {
+            long value = Long.parseLong(args[i + 1]);
+            switch (args[i]) {
+                case "--images":
+                    library.imageCount = (int) value;
+                    break;
+                case "--per-dir":
+                    library.imagesPerDirectory = (int) value;
+                    break;
+                case "--fanout":
+                    library.fanout = (int) value;
+                    break;
+                case "--vocabulary":
+                    library.vocabularySize = (int) value;
+                    break;
+                case "--max-tags":
+                    library.maxTagsPerImage = (int) value;
+                    break;
+                case "--seed":
+                    library.seed = value;
+                    break;
+                default:
+                    System.err.println(USAGE);
+                    System.exit(2);
+            }
+        }
+        long start = System.nanoTime();
+        library.generate(new File(args[0]));
+        System.out.printf("Generated %d images in %.1f s%n", library.imageCount, (System.nanoTime() - start) / 1e9);
+    }
+}
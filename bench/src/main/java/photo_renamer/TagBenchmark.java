@@ -0,0 +1,67 @@
+package photo_renamer;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/** A benchmark of ImageFileManager.applyTags and deleteTags renaming a real image file. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TagBenchmark {
+
+    /** The number of Tags applied and deleted at once. */
+    @Param({"1", "10"})
+    public int tagCount;
+    /** The directory holding the image. */
+    private File root;
+    /** The manager of the image being tagged. */
+    private ImageFileManager manager;
+    /** The Tags applied and deleted. */
+    private ArrayList<Tag> tags;
+
+    /**
+     * Create and record a single image and the Tags to apply to it.
+     *
+     * @throws Exception an Exception
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        root = BenchmarkFiles.createTree(1);
+        ImageHistoryManager historyManager = BenchmarkFiles.memoryHistory();
+        ImageFile image = ImageFileManager.getImages(root, new ArrayList<>(), historyManager).get(0);
+        manager = new ImageFileManager(image, PhotoRenameLogger.getInstance(), historyManager);
+        image.addObserver(manager);
+        tags = new ArrayList<>();
+        for (int i = 0; i < tagCount; i++) {
+            tags.add(new Tag("tag" + i));
+        }
+    }
+
+    /**
+     * Apply the Tags to the image and delete them again, renaming the image file twice.
+     *
+     * @return the Tags deleted
+     * @throws Exception an Exception
+     */
+    @Benchmark
+    public ArrayList<Tag> applyThenDelete() throws Exception {
+        manager.applyTags(tags);
+        return manager.deleteTags(tags);
+    }
+
+    /**
+     * Delete the image.
+     *
+     * @throws Exception an Exception
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        BenchmarkFiles.deleteTree(root);
+    }
+}
@@ -0,0 +1,93 @@
+package photo_renamer;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+/** A benchmark of looking up Tags by case-insensitive name, as Tag.equals does. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TagLookupBenchmark {
+
+    /** The number of Tags in the vocabulary. */
+    @Param({"100", "10000"})
+    public int vocabularySize;
+    /** The vocabulary as a list, searched with Tag.equals. */
+    private ArrayList<Tag> tagList;
+    /** The vocabulary as a hash set, using Tag.hashCode. */
+    private HashSet<Tag> tagSet;
+    /** The TagManager holding the vocabulary in its trie. */
+    private TagManager tagManager;
+    /** The Tags looked up, in a different case from the vocabulary. */
+    private Tag[] queries;
+    /** The index of the next query. */
+    private int nextQuery;
+
+    /**
+     * Build the vocabulary in each structure.
+     *
+     * @throws Exception an Exception
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        System.setProperty(DatabaseStore.STORAGE_PROPERTY, "memory");
+        tagManager = new TagManager("memory");
+        tagManager.setAutoSave(false);
+        tagList = new ArrayList<>();
+        for (int i = 0; i < vocabularySize; i++) {
+            Tag tag = new Tag("Tag" + i);
+            tagList.add(tag);
+            tagManager.addTag(tag);
+        }
+        tagSet = new HashSet<>(tagList);
+        queries = new Tag[1024];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = new Tag("TAG" + (i * 7919) % vocabularySize);
+        }
+    }
+
+    /**
+     * Return the next query.
+     *
+     * @return the Tag to look up
+     */
+    private Tag nextQuery() {
+        return queries[nextQuery++ & (queries.length - 1)];
+    }
+
+    /**
+     * Look up a Tag by scanning the list with Tag.equals.
+     *
+     * @return whether the Tag was found
+     */
+    @Benchmark
+    public boolean listContains() {
+        return tagList.contains(nextQuery());
+    }
+
+    /**
+     * Look up a Tag in the hash set.
+     *
+     * @return whether the Tag was found
+     */
+    @Benchmark
+    public boolean setContains() {
+        return tagSet.contains(nextQuery());
+    }
+
+    /**
+     * Look up a Tag in the trie of the TagManager.
+     *
+     * @return whether the Tag was found
+     */
+    @Benchmark
+    public boolean managerHasTag() {
+        return tagManager.hasTag(nextQuery());
+    }
+}